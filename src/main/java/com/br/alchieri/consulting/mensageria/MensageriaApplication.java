@@ -31,6 +31,7 @@ public class MensageriaApplication {
 
 	public static void main(String[] args) {
 
+        // Virtual threads do Reactor: ver VirtualThreadsEnvironmentPostProcessor (spring.threads.virtual.enabled)
         Hooks.enableAutomaticContextPropagation();
 		SpringApplication.run(MensageriaApplication.class, args);
 	}
@@ -0,0 +1,105 @@
+package com.br.alchieri.consulting.mensageria.chat.consumer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.br.alchieri.consulting.mensageria.chat.dto.request.OutgoingMessageRequest;
+import com.br.alchieri.consulting.mensageria.chat.service.WhatsAppCloudApiService;
+import com.br.alchieri.consulting.mensageria.exception.RateLimitExceededException;
+import com.br.alchieri.consulting.mensageria.model.User;
+
+import io.awspring.cloud.sqs.annotation.SqsListener;
+import io.awspring.cloud.sqs.listener.Visibility;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Consumer assíncrono da fila de saída (sqs.outgoing.consumer.async=true).
+ *
+ * Em vez de bloquear a thread do listener durante o round-trip da Graph API, devolve um
+ * {@link CompletableFuture} construído a partir do pipeline reativo: a thread é liberada assim que a
+ * requisição é disparada e a mensagem só é confirmada (ou reentregue) quando o future completa.
+ * A busca do usuário e o rate limit (Redis/banco) também rodam no pipeline, fora da thread do listener.
+ * O número de envios em voo é limitado por maxConcurrentMessages, não pelo número de threads.
+ * As regras de retentativa são as mesmas do {@link WhatsAppMessageConsumer}.
+ */
+@Component
+@ConditionalOnProperty(name = "sqs.outgoing.consumer.async", havingValue = "true")
+@Slf4j
+public class AsyncWhatsAppMessageConsumer {
+
+    private static final List<Integer> RETRYABLE_STATUS = List.of(408, 429, 503, 504);
+
+    private final WhatsAppCloudApiService whatsAppCloudApiService;
+    private final OutgoingUserCache userCache;
+    private final OutgoingMessageThrottler throttler;
+
+    @Value("${sqs.outgoing.consumer.api-call-timeout-seconds:30}")
+    private long apiCallTimeoutSeconds;
+
+    public AsyncWhatsAppMessageConsumer(@Lazy WhatsAppCloudApiService whatsAppCloudApiService,
+                                        OutgoingUserCache userCache,
+                                        OutgoingMessageThrottler throttler) {
+        this.whatsAppCloudApiService = whatsAppCloudApiService;
+        this.userCache = userCache;
+        this.throttler = throttler;
+    }
+
+    @SqsListener(value = "${sqs.queue.outgoing}",
+                 maxConcurrentMessages = "${sqs.outgoing.consumer.async.max-in-flight:200}",
+                 maxMessagesPerPoll = "${sqs.outgoing.consumer.async.max-messages-per-poll:10}")
+    public CompletableFuture<Void> receiveOutgoingMessage(@Payload OutgoingMessageRequest message, Visibility visibility) {
+        // Busca do usuário e consumo do token (banco/Redis) também ficam fora da thread do listener
+        return Mono.fromCallable(() -> userCache.findById(message.getUserId()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(userOpt -> userOpt
+                        .map(user -> admit(user, message, visibility)
+                                .flatMap(admitted -> admitted ? send(message, user) : Mono.<Void>empty()))
+                        .orElseGet(() -> {
+                            log.error("Usuário com ID {} da mensagem SQS não encontrado. Descartando mensagem (ACK). TraceID: {}",
+                                    message.getUserId(), message.getOriginalRequestId());
+                            return Mono.empty();
+                        }))
+                .toFuture();
+    }
+
+    /**
+     * Consome o token do número remetente. false = erro de negócio (mensagem descartada com ACK);
+     * rate limit atingido termina com erro para que a mensagem não seja confirmada.
+     */
+    private Mono<Boolean> admit(User user, OutgoingMessageRequest message, Visibility visibility) {
+        return throttler.acquireAsync(user, message, visibility)
+                .thenReturn(true)
+                .onErrorResume(e -> !(e instanceof RateLimitExceededException), e -> {
+                    log.error("Erro de negócio irrecuperável ao processar mensagem SQS. A mensagem será descartada (ACK). Causa: {}", e.getMessage());
+                    return Mono.just(false);
+                });
+    }
+
+    private Mono<Void> send(OutgoingMessageRequest message, User user) {
+        return Mono.defer(() -> whatsAppCloudApiService.sendFromQueue(message, user))
+                .timeout(Duration.ofSeconds(apiCallTimeoutSeconds))
+                .doOnSuccess(v -> log.info("Mensagem SQS (solicitada por Usuário ID {}) processada com sucesso pela API Meta. TraceID: {}",
+                        user.getId(), message.getOriginalRequestId()))
+                .onErrorResume(WebClientResponseException.class, e -> {
+                    if (e.getStatusCode().is5xxServerError() || RETRYABLE_STATUS.contains(e.getStatusCode().value())) {
+                        log.warn("Erro recuperável ({}), mensagem será reentregue pela fila SQS.", e.getStatusCode());
+                        return Mono.error(new RuntimeException("Erro recuperável da API Meta (" + e.getStatusCode() + "), permitindo retentativa SQS.", e));
+                    }
+                    log.error("Erro NÃO recuperável ({}) da API Meta. Mensagem NÃO será reenfileirada (ACK). Detalhes: {}",
+                            e.getStatusCode(), e.getResponseBodyAsString());
+                    return Mono.empty();
+                })
+                .doOnError(e -> !(e.getCause() instanceof WebClientResponseException),
+                        e -> log.error("Erro no processamento assíncrono da mensagem SQS (será reentregue): {}", e.getMessage()));
+    }
+}
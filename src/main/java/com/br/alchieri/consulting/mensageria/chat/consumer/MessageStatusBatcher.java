@@ -0,0 +1,128 @@
+package com.br.alchieri.consulting.mensageria.chat.consumer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.br.alchieri.consulting.mensageria.chat.dto.webhook.MessageStatusUpdate;
+import com.br.alchieri.consulting.mensageria.chat.service.impl.MessageStatusBatchWriter;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Estágio de agrupamento da ingestão de status de mensagens.
+ *
+ * As threads do {@link WebhookSqsListener} entregam os status de cada webhook e aguardam o
+ * {@link CompletableFuture} retornado; um flush periódico drena o buffer em lotes e os aplica
+ * com o {@link MessageStatusBatchWriter}. Como o listener só confirma a mensagem SQS após o
+ * flush, um crash antes da gravação faz o evento ser reentregue pela fila.
+ *
+ * Cada envio é aplicado uma única vez: ou pelo flush, ou pelo chamador que desistiu de esperar e o
+ * retirou com {@link #withdraw} (quem reivindicar primeiro).
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MessageStatusBatcher {
+
+    private final MessageStatusBatchWriter batchWriter;
+
+    private final LinkedBlockingQueue<PendingStatus> buffer = new LinkedBlockingQueue<>();
+
+    @Value("${webhook.status-batch.enabled:true}")
+    private boolean enabled;
+
+    @Value("${webhook.status-batch.max-size:500}")
+    private int maxBatchSize;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enfileira as atualizações de status de um webhook para o próximo flush.
+     * @return Future concluído quando o lote que contém estas atualizações for gravado.
+     */
+    public CompletableFuture<Void> submit(List<MessageStatusUpdate> updates) {
+        if (updates == null || updates.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        PendingStatus pending = new PendingStatus(updates);
+        buffer.add(pending);
+        return pending;
+    }
+
+    /**
+     * Retira do próximo flush atualizações que ainda não foram drenadas (ex.: o chamador desistiu de esperar).
+     * @return true se foram retiradas e o chamador passa a ser o responsável por aplicá-las;
+     *         false se o flush já as pegou (o future será concluído com o resultado do lote).
+     */
+    public boolean withdraw(CompletableFuture<Void> submitted) {
+        if (submitted instanceof PendingStatus pending && pending.claim()) {
+            buffer.remove(pending);
+            return true;
+        }
+        return false;
+    }
+
+    @Scheduled(fixedDelayString = "${webhook.status-batch.flush-interval-ms:100}")
+    public void flush() {
+        while (!buffer.isEmpty()) {
+            List<PendingStatus> drained = new ArrayList<>();
+            List<MessageStatusUpdate> batch = new ArrayList<>();
+            PendingStatus next;
+            while (batch.size() < maxBatchSize && (next = buffer.poll()) != null) {
+                if (next.claim()) { // Retirados pelo chamador ficam de fora
+                    drained.add(next);
+                    batch.addAll(next.updates());
+                }
+            }
+            if (drained.isEmpty()) {
+                continue;
+            }
+            writeBatch(drained, batch);
+        }
+    }
+
+    private void writeBatch(List<PendingStatus> drained, List<MessageStatusUpdate> batch) {
+        try {
+            // Os callbacks de status entram no outbox na mesma transação do lote
+            batchWriter.applyBatch(batch);
+        } catch (Exception e) {
+            log.error("Falha ao gravar lote de {} atualizações de status. Os eventos serão reprocessados pela fila. Erro: {}",
+                    batch.size(), e.getMessage(), e);
+            drained.forEach(pending -> pending.completeExceptionally(e));
+            return;
+        }
+
+        drained.forEach(pending -> pending.complete(null));
+    }
+
+    /**
+     * Atualizações de um webhook e o future do lote que as gravar. {@code claimed} garante um único responsável.
+     */
+    private static final class PendingStatus extends CompletableFuture<Void> {
+
+        private final List<MessageStatusUpdate> updates;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        PendingStatus(List<MessageStatusUpdate> updates) {
+            this.updates = updates;
+        }
+
+        List<MessageStatusUpdate> updates() {
+            return updates;
+        }
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.br.alchieri.consulting.mensageria.chat.consumer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.br.alchieri.consulting.mensageria.chat.dto.request.OutgoingMessageRequest;
+import com.br.alchieri.consulting.mensageria.chat.util.PhoneNumberRateLimiter;
+import com.br.alchieri.consulting.mensageria.exception.RateLimitExceededException;
+import com.br.alchieri.consulting.mensageria.model.User;
+
+import io.awspring.cloud.sqs.listener.Visibility;
+import io.github.bucket4j.ConsumptionProbe;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Aplica o rate limit por número remetente aos consumers da fila de saída.
+ * Quando não há token, adia a reentrega da mensagem pelo tempo que o bucket precisa para reabastecer,
+ * em vez de esperar o visibility timeout completo da fila.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OutgoingMessageThrottler {
+
+    // Limite do SQS para ChangeMessageVisibility (12h)
+    private static final int MAX_VISIBILITY_SECONDS = 43200;
+
+    private final PhoneNumberRateLimiter phoneNumberRateLimiter;
+
+    @Value("${whatsapp.meta.api.rate-limit.min-delay-seconds:1}")
+    private int minThrottleDelaySeconds;
+
+    /**
+     * Consome um token do número remetente da mensagem (bloqueante: Redis e, no primeiro uso, banco).
+     * @throws RateLimitExceededException se o envio foi adiado (a mensagem não deve ser confirmada).
+     */
+    public void acquire(User user, OutgoingMessageRequest message, Visibility visibility) {
+        ConsumptionProbe probe = phoneNumberRateLimiter.tryConsume(user.getCompany(), message.resolveFromPhoneNumberId());
+        if (probe.isConsumed()) {
+            return;
+        }
+        int delaySeconds = delaySeconds(probe);
+        try {
+            visibility.changeTo(delaySeconds);
+        } catch (Exception e) {
+            logVisibilityFailure(e);
+        }
+        throw rateLimited(message, probe, delaySeconds);
+    }
+
+    /**
+     * Versão não bloqueante de {@link #acquire}: o consumo do token roda no boundedElastic e o adiamento usa
+     * {@code changeToAsync}, sem ocupar a thread do listener.
+     * Termina com {@link RateLimitExceededException} se o envio foi adiado.
+     */
+    public Mono<Void> acquireAsync(User user, OutgoingMessageRequest message, Visibility visibility) {
+        return Mono.fromCallable(() -> phoneNumberRateLimiter.tryConsume(user.getCompany(), message.resolveFromPhoneNumberId()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(probe -> {
+                    if (probe.isConsumed()) {
+                        return Mono.empty();
+                    }
+                    int delaySeconds = delaySeconds(probe);
+                    return Mono.fromFuture(() -> visibility.changeToAsync(delaySeconds))
+                            .onErrorResume(e -> {
+                                logVisibilityFailure(e);
+                                return Mono.empty();
+                            })
+                            .then(Mono.error(() -> rateLimited(message, probe, delaySeconds)));
+                });
+    }
+
+    private int delaySeconds(ConsumptionProbe probe) {
+        long waitForRefillNanos = probe.getNanosToWaitForRefill();
+        return (int) Math.min(MAX_VISIBILITY_SECONDS,
+                Math.max(minThrottleDelaySeconds, TimeUnit.NANOSECONDS.toSeconds(waitForRefillNanos + 999_999_999L)));
+    }
+
+    private RateLimitExceededException rateLimited(OutgoingMessageRequest message, ConsumptionProbe probe, int delaySeconds) {
+        long waitMillis = TimeUnit.NANOSECONDS.toMillis(probe.getNanosToWaitForRefill());
+        log.warn("Rate limit do número remetente atingido. Mensagem voltará para a fila SQS em {}s (espera estimada: {} ms). TraceID: {}",
+                delaySeconds, waitMillis, message.getOriginalRequestId());
+        return new RateLimitExceededException("Rate limit da Meta atingido, reentrega adiada em " + delaySeconds + "s.", waitMillis);
+    }
+
+    private void logVisibilityFailure(Throwable e) {
+        log.warn("Falha ao alterar visibilidade da mensagem SQS, ela voltará após o visibility timeout padrão: {}", e.getMessage());
+    }
+}
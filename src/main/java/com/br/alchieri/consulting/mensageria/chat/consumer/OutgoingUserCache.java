@@ -0,0 +1,35 @@
+package com.br.alchieri.consulting.mensageria.chat.consumer;
+
+import java.util.Optional;
+
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Component;
+
+import com.br.alchieri.consulting.mensageria.model.User;
+import com.br.alchieri.consulting.mensageria.repository.UserRepository;
+import com.br.alchieri.consulting.mensageria.service.impl.TenantConfigCache;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Cache curto dos usuários solicitantes das mensagens da fila de saída (cache {@value TenantConfigCache#OUTGOING_USERS}).
+ * O User carrega a Company e as roles (EAGER), então uma entrada atende às duas consultas
+ * sem ir ao banco a cada mensagem SQS. As entidades são usadas apenas como referência (detached).
+ *
+ * Alterações de usuário/empresa removem as entradas após o commit via {@link TenantConfigCache#evictUser}
+ * e {@link TenantConfigCache#evictCompany}; o TTL do ehcache.xml só cobre invalidações perdidas.
+ */
+@Component
+@RequiredArgsConstructor
+public class OutgoingUserCache {
+
+    private final UserRepository userRepository;
+
+    @Cacheable(cacheNames = TenantConfigCache.OUTGOING_USERS, key = "#userId", condition = "#userId != null")
+    public Optional<User> findById(Long userId) {
+        if (userId == null) {
+            return Optional.empty();
+        }
+        return userRepository.findById(userId);
+    }
+}
@@ -1,13 +1,19 @@
 package com.br.alchieri.consulting.mensageria.chat.consumer;
 
+import java.io.IOException;
 import java.time.Duration;
+import java.util.List;
 
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
 
-import com.br.alchieri.consulting.mensageria.chat.dto.webhook.WebhookEventPayload;
+import com.br.alchieri.consulting.mensageria.chat.dto.webhook.WebhookEvent;
+import com.br.alchieri.consulting.mensageria.chat.dto.webhook.WebhookEvent.InboundMessageEvent;
+import com.br.alchieri.consulting.mensageria.chat.dto.webhook.WebhookEvent.StatusEvent;
 import com.br.alchieri.consulting.mensageria.chat.service.WebhookService;
+import com.br.alchieri.consulting.mensageria.chat.util.WebhookEventDecoder;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -23,14 +29,42 @@ public class WebhookSqsListener {
     private final WebhookService webhookService;
     private final StringRedisTemplate redisTemplate;
     private final ObjectMapper objectMapper;
+    private final WebhookEventDecoder eventDecoder;
 
-    @SqsListener("${webhook-queue.name}")
-    public void processWebhookEvent(@Payload WebhookEventPayload eventPayload) {
+    // Em filas FIFO, grupos distintos são processados em paralelo (até maxConcurrentMessages);
+    // a ordem é mantida apenas dentro de cada grupo (ver WebhookMessageGroupResolver).
+    @SqsListener(value = "${webhook-queue.name}",
+                 maxConcurrentMessages = "${webhook-queue.listener.max-concurrent-messages:10}",
+                 maxMessagesPerPoll = "${webhook-queue.listener.max-messages-per-poll:10}")
+    public void processWebhookEvent(@Payload String body,
+                                    @Header(name = WebhookService.SIGNATURE_ATTRIBUTE, required = false) String signature,
+                                    @Header(name = WebhookService.VERIFIED_ATTRIBUTE, required = false) String verified) {
         
         log.info("Processing webhook event from SQS queue.");
-        
-        String payloadJson = eventPayload.getRawPayload();
-        String wamid = extractWamid(payloadJson);
+
+        // Mensagens da ingestão binária: corpo = payload original da Meta e assinatura em atributo.
+        // Sem o atributo, é o envelope legado (WebhookEventPayload) publicado antes dessa mudança.
+        String payloadJson;
+        boolean alreadyVerified = signature != null && "true".equals(verified);
+        if (signature == null) {
+            JsonNode envelope = readLegacyEnvelope(body);
+            payloadJson = envelope.path("rawPayload").asText(null);
+            signature = envelope.path("signature").asText(null);
+        } else {
+            payloadJson = body;
+        }
+        if (payloadJson == null) {
+            throw new IllegalArgumentException("Mensagem de webhook sem payload.");
+        }
+        if (!alreadyVerified && !webhookService.verifySignature(payloadJson, signature)) {
+            log.warn("Assinatura do webhook inválida no consumidor SQS. Descartando mensagem.");
+            // Não lançar exceção para que a mensagem seja removida da fila e não vá para a DLQ
+            return;
+        }
+
+        // Parse único: os mesmos eventos servem para a idempotência e para o processamento
+        List<WebhookEvent> events = decode(payloadJson);
+        String wamid = idempotencyWamid(events);
 
         // LÓGICA DE IDEMPOTÊNCIA
         if (wamid != null) {
@@ -45,7 +79,7 @@ public class WebhookSqsListener {
         }
 
         try {
-            webhookService.processWebhookPayload(payloadJson, eventPayload.getSignature());
+            webhookService.processWebhookEvents(events);
             log.info("Webhook event processed successfully.");
         } catch (Exception e) {
             log.error("Erro ao processar evento de webhook: {}", e.getMessage(), e);
@@ -57,34 +91,37 @@ public class WebhookSqsListener {
         }
     }
 
-    private String extractWamid(String json) {
-        
+    private JsonNode readLegacyEnvelope(String body) {
         try {
-            JsonNode root = objectMapper.readTree(json);
-            
-            // Navegação segura para evitar NullPointerException
-            JsonNode entryNode = root.path("entry");
-            if (entryNode.isArray() && !entryNode.isEmpty()) {
-                JsonNode changesNode = entryNode.get(0).path("changes");
-                if (changesNode.isArray() && !changesNode.isEmpty()) {
-                    JsonNode valueNode = changesNode.get(0).path("value");
-                    
-                    // Caso 1: Mensagem recebida (messages)
-                    JsonNode messagesNode = valueNode.path("messages");
-                    if (messagesNode.isArray() && !messagesNode.isEmpty()) {
-                        return messagesNode.get(0).path("id").asText(null);
-                    }
-                    
-                    // Caso 2: Atualização de status (statuses) - também tem ID único
-                    JsonNode statusesNode = valueNode.path("statuses");
-                    if (statusesNode.isArray() && !statusesNode.isEmpty()) {
-                        return statusesNode.get(0).path("id").asText(null);
-                    }
-                }
-            }
+            return objectMapper.readTree(body);
         } catch (Exception e) {
-            log.warn("Não foi possível extrair WAMID do payload: {}", e.getMessage());
+            throw new IllegalArgumentException("Mensagem de webhook sem assinatura e fora do formato legado.", e);
+        }
+    }
+
+    private List<WebhookEvent> decode(String payloadJson) {
+        try {
+            return eventDecoder.decode(payloadJson);
+        } catch (IOException e) {
+            // JSON inválido não melhora com retry: a exceção leva a mensagem para a DLQ
+            throw new IllegalArgumentException("Payload de webhook com JSON inválido.", e);
+        }
+    }
+
+    /**
+     * WAMID usado na checagem de duplicidade: primeira mensagem recebida ou, na falta dela, primeiro status.
+     * @return null se não houver (processa sem verificação de duplicidade).
+     */
+    private String idempotencyWamid(List<WebhookEvent> events) {
+        String statusWamid = null;
+        for (WebhookEvent event : events) {
+            if (event instanceof InboundMessageEvent message && message.wamid() != null) {
+                return message.wamid();
+            }
+            if (statusWamid == null && event instanceof StatusEvent status) {
+                statusWamid = status.wamid();
+            }
         }
-        return null; // Retorna null se não encontrar, processa sem verificação de duplicidade
+        return statusWamid;
     }
 }
@@ -2,10 +2,9 @@ package com.br.alchieri.consulting.mensageria.chat.consumer;
 
 import java.time.Duration;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 
 import org.slf4j.MDC;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
@@ -15,16 +14,16 @@ import org.springframework.web.reactive.function.client.WebClientResponseExcepti
 import com.br.alchieri.consulting.mensageria.chat.dto.request.OutgoingMessageRequest;
 import com.br.alchieri.consulting.mensageria.chat.service.WhatsAppCloudApiService;
 import com.br.alchieri.consulting.mensageria.exception.BusinessException;
+import com.br.alchieri.consulting.mensageria.exception.RateLimitExceededException;
 import com.br.alchieri.consulting.mensageria.model.User;
-import com.br.alchieri.consulting.mensageria.repository.UserRepository;
 
 import io.awspring.cloud.sqs.annotation.SqsListener;
-import io.github.bucket4j.Bucket;
-import io.github.bucket4j.ConsumptionProbe;
+import io.awspring.cloud.sqs.listener.Visibility;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 @Component
+@ConditionalOnProperty(name = "sqs.outgoing.consumer.async", havingValue = "false", matchIfMissing = true)
 @Slf4j
 @RequiredArgsConstructor // Usar RequiredArgsConstructor para injeção final
 public class WhatsAppMessageConsumer {
@@ -32,29 +31,16 @@ public class WhatsAppMessageConsumer {
     @Lazy
     private final WhatsAppCloudApiService whatsAppCloudApiService;
 
-    private final UserRepository userRepository;
+    private final OutgoingUserCache userCache;
 
-    @Qualifier("metaApiRateLimiterBucket") // Injeta o bucket específico que criamos
-    private final Bucket metaApiRateLimiterBucket;
+    private final OutgoingMessageThrottler throttler;
 
     // Timeout para chamadas bloqueantes dentro do listener
     private static final Duration API_CALL_TIMEOUT = Duration.ofSeconds(30);
 
     @SqsListener(value = "${sqs.queue.outgoing}")
     @Transactional
-    public void receiveOutgoingMessage(@Payload OutgoingMessageRequest message) {
-
-        // Consome 1 token do bucket. tryConsume retorna true se conseguiu, false caso contrário.
-        // Não bloqueia a thread se não houver tokens.
-        ConsumptionProbe probe = metaApiRateLimiterBucket.tryConsumeAndReturnRemaining(1);
-
-        if (!probe.isConsumed()) {
-            long waitForRefillNanos = probe.getNanosToWaitForRefill();
-            // Lança exceção para reenfileirar, indicando o tempo estimado de espera
-            log.warn("Rate limit Bucket4j atingido. Mensagem voltará para a fila SQS (espera estimada: {} ms). TraceID: {}",
-                     TimeUnit.NANOSECONDS.toMillis(waitForRefillNanos), message.getOriginalRequestId());
-            throw new RuntimeException("Rate limit hit (Bucket4j), allowing SQS to redrive message.");
-        }
+    public void receiveOutgoingMessage(@Payload OutgoingMessageRequest message, Visibility visibility) {
 
         try (@SuppressWarnings("unused")
             MDC.MDCCloseable closable = MDC.putCloseable("traceId", message.getOriginalRequestId() != null ? message.getOriginalRequestId() : "consumer-" + System.nanoTime());
@@ -63,12 +49,16 @@ public class WhatsAppMessageConsumer {
 
             log.info("Processando mensagem SQS solicitada pelo Usuário ID: {}", message.getUserId());
 
-            User user = userRepository.findById(message.getUserId())
+            User user = userCache.findById(message.getUserId())
                     .orElseThrow(() -> {
                         log.error("Usuário com ID {} da mensagem SQS não encontrado. Descartando mensagem.", message.getUserId());
                         return new BusinessException("Usuário solicitante (" + message.getUserId() + ") não encontrado.");
                     });
 
+            // Consome 1 token do bucket do número remetente (compartilhado entre os nós via Redis).
+            // Não bloqueia a thread se não houver tokens.
+            throttler.acquire(user, message, visibility);
+
             try {
 
                 log.debug("CONSUMER DA SQS: Empresa ID {}: Enviando payload para Meta API: {}", user.getCompany().getId(), message);
@@ -104,6 +94,8 @@ public class WhatsAppMessageConsumer {
                 throw new RuntimeException("Erro inesperado no processamento da mensagem SQS.", e); // Reenfileira
             }
 
+        } catch (RateLimitExceededException rle) {
+            throw rle; // Não confirma: a mensagem volta a ficar visível após a espera do bucket
         } catch (BusinessException be) {
             // Captura o erro se o usuário não for encontrado e evita que a mensagem seja reenfileirada.
             log.error("Erro de negócio irrecuperável ao processar mensagem SQS. A mensagem será descartada (ACK). Causa: {}", be.getMessage());
@@ -1,12 +1,16 @@
 package com.br.alchieri.consulting.mensageria.chat.controller;
 
+import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.util.List;
 
 import org.springdoc.core.annotations.ParameterObject;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -17,10 +21,13 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.br.alchieri.consulting.mensageria.chat.dto.response.ActiveChatResponse;
+import com.br.alchieri.consulting.mensageria.chat.dto.response.MessageHistoryCursorResponse;
+import com.br.alchieri.consulting.mensageria.chat.dto.response.MessageLogArchiveResponse;
 import com.br.alchieri.consulting.mensageria.chat.dto.response.MessageLogResponse;
 import com.br.alchieri.consulting.mensageria.chat.model.Contact;
 import com.br.alchieri.consulting.mensageria.chat.model.WhatsAppMessageLog;
 import com.br.alchieri.consulting.mensageria.chat.repository.ContactRepository;
+import com.br.alchieri.consulting.mensageria.chat.service.MessageLogArchiveService;
 import com.br.alchieri.consulting.mensageria.chat.service.MessageLogService;
 import com.br.alchieri.consulting.mensageria.exception.ResourceNotFoundException;
 import com.br.alchieri.consulting.mensageria.model.Company;
@@ -43,18 +50,26 @@ public class ChatController {
     private final MessageLogService messageLogService;
     private final ContactRepository contactRepository; // Para buscar o contato pelo número
     private final SecurityUtils securityUtils;
+    private final MessageLogArchiveService archiveService;
 
     @GetMapping(value = "/active", produces = MediaType.APPLICATION_JSON_VALUE)
     @Operation(summary = "Listar Chats Ativos",
-               description = "Retorna uma lista de conversas que tiveram uma mensagem recebida (do cliente para a empresa) nas últimas 24 horas, ordenadas pela última mensagem.")
+               description = "Retorna as conversas que tiveram uma mensagem recebida (do cliente para a empresa) nas últimas 24 horas, ordenadas pela última mensagem. " +
+                             "Paginação por cursor: para a próxima página, envie 'beforeTimestamp' e 'beforeId' com o 'lastMessageTimestamp' e o 'conversationId' do último item.")
     public ResponseEntity<List<ActiveChatResponse>> getActiveChats(
             @Parameter(description = "Período em horas para considerar um chat como ativo (baseado na última mensagem recebida).", example = "24")
-            @RequestParam(defaultValue = "24") int sinceHours
+            @RequestParam(defaultValue = "24") int sinceHours,
+            @Parameter(description = "Cursor: 'lastMessageTimestamp' do último item da página anterior.")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime beforeTimestamp,
+            @Parameter(description = "Cursor: 'conversationId' do último item da página anterior.")
+            @RequestParam(required = false) Long beforeId,
+            @Parameter(description = "Quantidade de conversas por página.", example = "50")
+            @RequestParam(defaultValue = "50") int size
     ) {
         User currentUser = securityUtils.getAuthenticatedUser();
         Company currentCompany = currentUser.getCompany(); // getCompanyOfUser do seu serviço
 
-        List<ActiveChatResponse> activeChats = messageLogService.getActiveChats(currentCompany, sinceHours);
+        List<ActiveChatResponse> activeChats = messageLogService.getActiveChats(currentCompany, sinceHours, beforeTimestamp, beforeId, size);
         return ResponseEntity.ok(activeChats);
     }
 
@@ -73,7 +88,7 @@ public class ChatController {
         // Encontrar o contato pelo número para passar ao serviço.
         // Isso também serve como uma forma de garantir que estamos lidando com um contato conhecido,
         // embora o serviço de log possa funcionar apenas com o número.
-        Contact contact = contactRepository.findByCompanyAndPhoneNumber(currentCompany, phoneNumber)
+        Contact contact = contactRepository.findByCompanyAndPhone(currentCompany, phoneNumber)
                 .orElseThrow(() -> new ResourceNotFoundException("Nenhum contato encontrado com o número " + phoneNumber + " para sua empresa."));
 
         Page<WhatsAppMessageLog> messageLogPage = messageLogService.getMessageHistoryForContact(contact, currentCompany, pageable);
@@ -82,11 +97,18 @@ public class ChatController {
 
     @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
     @Operation(summary = "Listar Conversas",
-               description = "Retorna uma lista de todas as conversas da empresa, ordenadas pela última mensagem. Inclui a contagem de mensagens não lidas.")
-    public ResponseEntity<List<ActiveChatResponse>> getChatList() {
+               description = "Retorna as conversas da empresa, ordenadas pela última mensagem. Inclui a contagem de mensagens não lidas. " +
+                             "Paginação por cursor: para a próxima página, envie 'beforeTimestamp' e 'beforeId' com o 'lastMessageTimestamp' e o 'conversationId' do último item.")
+    public ResponseEntity<List<ActiveChatResponse>> getChatList(
+            @Parameter(description = "Cursor: 'lastMessageTimestamp' do último item da página anterior.")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime beforeTimestamp,
+            @Parameter(description = "Cursor: 'conversationId' do último item da página anterior.")
+            @RequestParam(required = false) Long beforeId,
+            @Parameter(description = "Quantidade de conversas por página.", example = "50")
+            @RequestParam(defaultValue = "50") int size) {
         User currentUser = securityUtils.getAuthenticatedUser();
         Company currentCompany = currentUser.getCompany();
-        List<ActiveChatResponse> activeChats = messageLogService.getChatList(currentCompany); // <<< MUDOU AQUI
+        List<ActiveChatResponse> activeChats = messageLogService.getChatList(currentCompany, beforeTimestamp, beforeId, size);
         return ResponseEntity.ok(activeChats);
     }
 
@@ -105,6 +127,58 @@ public class ChatController {
         return ResponseEntity.ok(messageLogPage.map(MessageLogResponse::fromEntity));
     }
 
+    @GetMapping(value = "/{phoneNumber}/history", params = "before", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Obter Histórico de Mensagens de uma Conversa (cursor)",
+               description = "Histórico paginado por cursor, estável para rolagem profunda. Envie 'before' vazio para a página mais recente " +
+                             "e, nas seguintes, o 'nextBefore' retornado na página anterior.")
+    public ResponseEntity<MessageHistoryCursorResponse> getMessageHistoryBefore(
+            @Parameter(description = "Número de telefone do contato no formato E.164.", required = true)
+            @PathVariable String phoneNumber,
+            @Parameter(description = "Cursor: ID da última mensagem da página anterior (vazio = mais recentes).")
+            @RequestParam(required = false) Long before,
+            @Parameter(description = "Quantidade de mensagens por página.", example = "30")
+            @RequestParam(defaultValue = "30") int size) {
+
+        User currentUser = securityUtils.getAuthenticatedUser();
+        Company currentCompany = currentUser.getCompany();
+        Slice<WhatsAppMessageLog> slice = messageLogService.getMessageHistoryBefore(phoneNumber, currentCompany, before, size);
+
+        List<MessageLogResponse> messages = slice.getContent().stream().map(MessageLogResponse::fromEntity).toList();
+        return ResponseEntity.ok(MessageHistoryCursorResponse.builder()
+                .messages(messages)
+                .hasMore(slice.hasNext())
+                .nextBefore(slice.hasNext() ? messages.get(messages.size() - 1).getId() : null)
+                .build());
+    }
+
+    @GetMapping(value = "/archives", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Listar Histórico Arquivado",
+               description = "Lista os períodos de histórico de mensagens que já saíram da retenção do banco e foram arquivados.")
+    public ResponseEntity<List<MessageLogArchiveResponse>> listArchives() {
+        User currentUser = securityUtils.getAuthenticatedUser();
+        List<MessageLogArchiveResponse> archives = archiveService.listArchives(currentUser.getCompany()).stream()
+                .map(MessageLogArchiveResponse::fromEntity)
+                .toList();
+        return ResponseEntity.ok(archives);
+    }
+
+    @GetMapping(value = "/{phoneNumber}/history/archived", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Obter Histórico Arquivado de uma Conversa",
+               description = "Retorna as mensagens de um mês já arquivado (fora da retenção do banco), da mais recente para a mais antiga.")
+    public ResponseEntity<List<MessageLogResponse>> getArchivedHistory(
+            @Parameter(description = "Número de telefone do contato no formato E.164.", required = true)
+            @PathVariable String phoneNumber,
+            @Parameter(description = "Mês no formato yyyy-MM.", required = true, example = "2025-01")
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM") YearMonth month,
+            @Parameter(description = "Quantidade máxima de mensagens.", example = "500")
+            @RequestParam(defaultValue = "500") int limit) {
+
+        User currentUser = securityUtils.getAuthenticatedUser();
+        List<MessageLogResponse> messages = archiveService.getArchivedHistory(
+                currentUser.getCompany(), phoneNumber, month, Math.max(1, Math.min(limit, 5000)));
+        return ResponseEntity.ok(messages);
+    }
+
     @PostMapping(value = "/{contactId}/read")
     @Operation(summary = "Registrar Leitura", 
                description = "Registra que o usuário atual visualizou a conversa e zera o contador de não lidas.")
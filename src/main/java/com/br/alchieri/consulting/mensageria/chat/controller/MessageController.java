@@ -9,6 +9,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -25,19 +26,22 @@ import com.br.alchieri.consulting.mensageria.chat.dto.request.SendMultiProductMe
 import com.br.alchieri.consulting.mensageria.chat.dto.request.SendProductMessageRequest;
 import com.br.alchieri.consulting.mensageria.chat.dto.request.SendTemplateMessageRequest;
 import com.br.alchieri.consulting.mensageria.chat.dto.request.SendTextMessageRequest;
+import com.br.alchieri.consulting.mensageria.chat.dto.response.BulkJobStatusResponse;
 import com.br.alchieri.consulting.mensageria.chat.dto.response.BulkMessageResponse;
 import com.br.alchieri.consulting.mensageria.chat.dto.response.MessageStatusResponse;
+import com.br.alchieri.consulting.mensageria.chat.producer.SqsMicroBatchPublisher;
 import com.br.alchieri.consulting.mensageria.chat.service.BulkMessageService;
 import com.br.alchieri.consulting.mensageria.chat.service.WhatsAppCloudApiService;
+import com.br.alchieri.consulting.mensageria.chat.util.OutgoingMessageGroupResolver;
 import com.br.alchieri.consulting.mensageria.dto.response.ApiResponse;
 import com.br.alchieri.consulting.mensageria.exception.BusinessException;
 import com.br.alchieri.consulting.mensageria.model.Company;
 import com.br.alchieri.consulting.mensageria.model.User;
 import com.br.alchieri.consulting.mensageria.service.impl.SessionService;
+import com.br.alchieri.consulting.mensageria.util.PhoneNumberNormalizer;
 import com.br.alchieri.consulting.mensageria.util.SecurityUtils;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import io.awspring.cloud.sqs.operations.SqsTemplate;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -56,12 +60,13 @@ public class MessageController {
 
     private static final Logger logger = LoggerFactory.getLogger(MessageController.class);
 
-    private final SqsTemplate sqsTemplate;
+    private final SqsMicroBatchPublisher sqsPublisher;
     private final ObjectMapper objectMapper;
 
     private final BulkMessageService bulkMessageService;
     private final WhatsAppCloudApiService whatsAppCloudApiService;
     private final SessionService sessionService;
+    private final OutgoingMessageGroupResolver messageGroupResolver;
 
     private static final Duration BLOCK_TIMEOUT = Duration.ofSeconds(10);
 
@@ -89,7 +94,7 @@ public class MessageController {
             @Valid @RequestBody SendTextMessageRequest request) {
 
         User currentUser = securityUtils.getAuthenticatedUser();
-        String normalizedTo = normalizePhoneNumber(request.getTo());
+        String normalizedTo = PhoneNumberNormalizer.normalize(request.getTo());
         request.setTo(normalizedTo);
         logger.info("Usuário ID {}: Recebida requisição para ENFILEIRAR (SQS) mensagem de texto para: {}", currentUser.getId(), request.getTo());
 
@@ -104,11 +109,11 @@ public class MessageController {
 
         try {
             String jsonPayload = objectMapper.writeValueAsString(queuePayload);
-            String messageGroupId = "company-" + (currentUser.getCompany() != null ? currentUser.getCompany().getId() : "no-company");
+            String messageGroupId = messageGroupResolver.resolve("company-" + (currentUser.getCompany() != null ? currentUser.getCompany().getId() : "no-company"), request.getTo());
             
-            sqsTemplate.send(to -> to.queue(outgoingQueueName)
-                                      .payload(jsonPayload)
-                                      .header("message-group-id", messageGroupId));
+            sqsPublisher.publish(outgoingQueueName, MessageBuilder.withPayload(jsonPayload)
+                    .setHeader("message-group-id", messageGroupId)
+                    .build());
 
             logger.info("Mensagem de texto para {} (solicitada pelo Usuário ID {}) enfileirada (SQS) com sucesso.", request.getTo(), currentUser.getId());
             return ResponseEntity.accepted().body(new ApiResponse(true, "Solicitação de envio de texto recebida e enfileirada.", null));
@@ -142,7 +147,7 @@ public class MessageController {
         User currentUser = securityUtils.getAuthenticatedUser();
 
         if (request.getTo() != null) {
-            String normalizedTo = normalizePhoneNumber(request.getTo());
+            String normalizedTo = PhoneNumberNormalizer.normalize(request.getTo());
             request.setTo(normalizedTo);
             sessionService.validateSessionAccess(currentUser, normalizedTo);
         }
@@ -158,11 +163,11 @@ public class MessageController {
 
         try {
             String jsonPayload = objectMapper.writeValueAsString(queuePayload);
-            String messageGroupId = "company-" + (currentUser.getCompany() != null ? currentUser.getCompany().getId() : "no-company");
+            String messageGroupId = messageGroupResolver.resolve("company-" + (currentUser.getCompany() != null ? currentUser.getCompany().getId() : "no-company"), request.getTo());
 
-            sqsTemplate.send(to -> to.queue(outgoingQueueName)
-                                      .payload(jsonPayload)
-                                      .header("message-group-id", messageGroupId));
+            sqsPublisher.publish(outgoingQueueName, MessageBuilder.withPayload(jsonPayload)
+                    .setHeader("message-group-id", messageGroupId)
+                    .build());
 
             logger.info("Mensagem de template '{}' para {} (solicitada pelo Usuário ID {}) enfileirada (SQS) com sucesso.",
                         request.getTemplateName(), request.getTo(), currentUser.getId());
@@ -188,7 +193,7 @@ public class MessageController {
             @Valid @RequestBody SendInteractiveFlowMessageRequest request
     ) {
         User currentUser = securityUtils.getAuthenticatedUser();
-        String normalizedTo = normalizePhoneNumber(request.getTo());
+        String normalizedTo = PhoneNumberNormalizer.normalize(request.getTo());
         request.setTo(normalizedTo);
 
         sessionService.validateSessionAccess(currentUser, normalizedTo);
@@ -205,11 +210,11 @@ public class MessageController {
         
         try {
             String jsonPayload = objectMapper.writeValueAsString(queuePayload);
-            String messageGroupId = "company-" + (currentUser.getCompany() != null ? currentUser.getCompany().getId() : "no-company");
+            String messageGroupId = messageGroupResolver.resolve("company-" + (currentUser.getCompany() != null ? currentUser.getCompany().getId() : "no-company"), request.getTo());
 
-            sqsTemplate.send(to -> to.queue(outgoingQueueName)
-                                      .payload(jsonPayload)
-                                      .header("message-group-id", messageGroupId));
+            sqsPublisher.publish(outgoingQueueName, MessageBuilder.withPayload(jsonPayload)
+                    .setHeader("message-group-id", messageGroupId)
+                    .build());
 
             logger.info("Mensagem de flow '{}' para {} (solicitada pelo Usuário ID {}) enfileirada (SQS) com sucesso.",
                         request.getFlowName(), request.getTo(), currentUser.getId());
@@ -229,7 +234,7 @@ public class MessageController {
         
         User currentUser = securityUtils.getAuthenticatedUser();
         
-        String normalizedTo = normalizePhoneNumber(request.getTo());
+        String normalizedTo = PhoneNumberNormalizer.normalize(request.getTo());
         request.setTo(normalizedTo);
 
         sessionService.validateSessionAccess(currentUser, normalizedTo);
@@ -369,13 +374,30 @@ public class MessageController {
         return ResponseEntity.status(status).body(response);
     }
 
+    @GetMapping(value = "/bulk/{jobId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Consultar Progresso de Envio em Massa",
+               description = "Retorna o status de um job de envio em massa e os contadores de mensagens enfileiradas, enviadas, entregues e com falha.")
+    @ApiResponses(value = {
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Progresso do job recuperado.",
+                    content = @Content(schema = @Schema(implementation = BulkJobStatusResponse.class))),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "403", description = "Acesso Proibido (job de outra empresa).", content = @Content),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "404", description = "Job não encontrado.", content = @Content)
+    })
+    public ResponseEntity<BulkJobStatusResponse> getBulkJobStatus(
+            @Parameter(description = "ID do job retornado pelo envio em massa.", required = true)
+            @PathVariable Long jobId
+    ) {
+        User currentUser = securityUtils.getAuthenticatedUser();
+        return ResponseEntity.ok(bulkMessageService.getJobStatus(jobId, currentUser));
+    }
+
     @PostMapping("/interactive/product")
     @Operation(summary = "Enviar Mensagem de Produto Único", description = "Envia um único produto do catálogo.")
     public ResponseEntity<ApiResponse> sendProduct(
             @Valid @RequestBody SendProductMessageRequest request) {
         
         User currentUser = securityUtils.getAuthenticatedUser();
-        String normalizedTo = normalizePhoneNumber(request.getTo());
+        String normalizedTo = PhoneNumberNormalizer.normalize(request.getTo());
         request.setTo(normalizedTo);
 
         sessionService.validateSessionAccess(currentUser, normalizedTo);
@@ -391,7 +413,7 @@ public class MessageController {
             @Valid @RequestBody SendMultiProductMessageRequest request) {
         
         User currentUser = securityUtils.getAuthenticatedUser();
-        String normalizedTo = normalizePhoneNumber(request.getTo());
+        String normalizedTo = PhoneNumberNormalizer.normalize(request.getTo());
         request.setTo(normalizedTo);
 
         sessionService.validateSessionAccess(currentUser, normalizedTo);
@@ -400,17 +422,4 @@ public class MessageController {
         
         return ResponseEntity.ok(new ApiResponse(true, "Mensagem multiproduto enviada/enfileirada com sucesso.", null));
     }
-
-    private String normalizePhoneNumber(String phoneNumber) {
-        if (phoneNumber == null) return null;
-        String cleaned = phoneNumber.replaceAll("\\D", ""); // Remove não numéricos
-        
-        // Lógica do 9º dígito: Se for 55 + DDD + 8 digitos -> Insere o 9
-        if (cleaned.startsWith("55") && cleaned.length() == 12) {
-            String normalized = cleaned.substring(0, 4) + "9" + cleaned.substring(4);
-            // logger.debug("Normalizando telefone no envio: {} -> {}", cleaned, normalized);
-            return normalized;
-        }
-        return cleaned;
-    }
 }
@@ -57,10 +57,10 @@ public class WebhookController {
 
     @PostMapping
     public ResponseEntity<Void> handleWebhookNotification(
-            @RequestBody String payload,
+            @RequestBody byte[] payload,
             @RequestHeader(value = "X-Hub-Signature-256", required = false) String signature) {
 
-        // 1. SEGURANÇA IMEDIATA: Validação da Assinatura
+        // 1. SEGURANÇA IMEDIATA: Validação da Assinatura (HMAC sobre os bytes exatos recebidos)
         if (signature == null || !signatureUtil.verifySignature(payload, signature)) {
             logger.warn("Assinatura inválida ou ausente. IP de origem suspeito.");
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build(); // 403 Bloqueia ataque
@@ -71,7 +71,7 @@ public class WebhookController {
             logger.info("Webhook event successfully queued.");
             return ResponseEntity.ok().build();
         } catch (Exception e) {
-            logger.error("Failed to queue webhook event. Payload: {}", payload, e);
+            logger.error("Failed to queue webhook event ({} bytes).", payload.length, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
@@ -0,0 +1,10 @@
+package com.br.alchieri.consulting.mensageria.chat.dto.audience;
+
+/**
+ * Projeção mínima de um contato do público-alvo (envio em massa / campanha).
+ * Carregada em páginas por keyset, sem entidades gerenciadas no contexto de persistência.
+ *
+ * @param contactId ID do contato.
+ * @param phoneNumber Número do contato (E.164, apenas dígitos). Também é a chave do keyset.
+ */
+public record AudienceTarget(Long contactId, String phoneNumber) {}
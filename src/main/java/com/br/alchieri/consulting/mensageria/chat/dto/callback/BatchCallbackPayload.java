@@ -0,0 +1,41 @@
+package com.br.alchieri.consulting.mensageria.chat.dto.callback;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Lote de eventos (status de mensagem e mensagens recebidas) enviado em um único POST para a URL
+ * de callback do cliente, quando a empresa habilita a entrega em lote.
+ * O corpo é assinado com HMAC-SHA256 (header X-Callback-Signature: sha256=...).
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchCallbackPayload {
+
+    private String batchId;
+    private Long companyId;
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss.SSS")
+    private LocalDateTime sentAt;
+    private int count;
+    private List<BatchEvent> events;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BatchEvent {
+        private String eventId;
+        private String eventType; // MESSAGE_STATUS, INCOMING_MESSAGE
+        @JsonRawValue
+        private String data; // Mesmo payload enviado no modo individual
+    }
+}
@@ -30,4 +30,17 @@ public class OutgoingMessageRequest implements Serializable {
 
     // Adicionar outros tipos se necessário
     private Long scheduledMessageId;
+    private Long bulkJobId; // Job de envio em massa de origem (BulkJob), para os contadores de progresso
+
+    /**
+     * ID do número remetente informado no payload, ou null para usar o número padrão da empresa.
+     */
+    public String resolveFromPhoneNumberId() {
+        if (textRequest != null) return textRequest.getFromPhoneNumberId();
+        if (templateRequest != null) return templateRequest.getFromPhoneNumberId();
+        if (interactiveFlowRequest != null) return interactiveFlowRequest.getFromPhoneNumberId();
+        if (productRequest != null) return productRequest.getFromPhoneNumberId();
+        if (multiProductRequest != null) return multiProductRequest.getFromPhoneNumberId();
+        return null;
+    }
 }
@@ -18,6 +18,9 @@ import lombok.NoArgsConstructor;
 @Schema(description = "Representa um chat ativo, com informações do último contato.")
 public class ActiveChatResponse {
 
+    @Schema(description = "ID da conversa (usado com lastMessageTimestamp como cursor da próxima página).")
+    private Long conversationId;
+
     @Schema(description = "Número de telefone do contato externo (cliente final).")
     private String contactPhoneNumber;
 
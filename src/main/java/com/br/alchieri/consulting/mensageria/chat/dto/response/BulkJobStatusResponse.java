@@ -0,0 +1,47 @@
+package com.br.alchieri.consulting.mensageria.chat.dto.response;
+
+import java.time.LocalDateTime;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+@Schema(description = "Progresso de um job de envio em massa.")
+public class BulkJobStatusResponse {
+
+    @Schema(description = "ID do job.")
+    private String jobId;
+
+    @Schema(description = "Status do job (PENDING, RUNNING, COMPLETED, FAILED).")
+    private String status;
+
+    private String templateName;
+
+    @Schema(description = "Número estimado de contatos no momento da criação do job.")
+    private int totalContacts;
+
+    @Schema(description = "Mensagens enfileiradas para envio.")
+    private int enqueued;
+
+    @Schema(description = "Mensagens que não puderam ser geradas ou enfileiradas.")
+    private int enqueueFailed;
+
+    @Schema(description = "Mensagens aceitas pela Meta (inclui as já entregues e lidas).")
+    private long sent;
+
+    @Schema(description = "Mensagens entregues ao destinatário (inclui as lidas).")
+    private long delivered;
+
+    @Schema(description = "Mensagens lidas pelo destinatário.")
+    private long read;
+
+    @Schema(description = "Mensagens com falha no envio ou na entrega.")
+    private long failed;
+
+    private String errorMessage;
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
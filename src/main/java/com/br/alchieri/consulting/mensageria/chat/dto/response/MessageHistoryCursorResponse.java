@@ -0,0 +1,22 @@
+package com.br.alchieri.consulting.mensageria.chat.dto.response;
+
+import java.util.List;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+@Schema(description = "Página do histórico de uma conversa, paginada por cursor (da mensagem mais recente para a mais antiga).")
+public class MessageHistoryCursorResponse {
+
+    @Schema(description = "Mensagens da página, da mais recente para a mais antiga.")
+    private List<MessageLogResponse> messages;
+
+    @Schema(description = "Cursor da próxima página (enviar como 'before'). Nulo se não houver mais mensagens.")
+    private Long nextBefore;
+
+    @Schema(description = "Indica se existem mensagens mais antigas.")
+    private boolean hasMore;
+}
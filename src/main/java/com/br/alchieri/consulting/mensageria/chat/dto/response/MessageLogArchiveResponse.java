@@ -0,0 +1,35 @@
+package com.br.alchieri.consulting.mensageria.chat.dto.response;
+
+import java.time.LocalDateTime;
+
+import com.br.alchieri.consulting.mensageria.chat.model.MessageLogArchive;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+@Schema(description = "Segmento de histórico de mensagens arquivado (fora do banco).")
+public class MessageLogArchiveResponse {
+
+    @Schema(description = "Data/hora da mensagem mais antiga do segmento.")
+    private LocalDateTime firstMessageAt;
+
+    @Schema(description = "Data/hora da mensagem mais recente do segmento.")
+    private LocalDateTime lastMessageAt;
+
+    @Schema(description = "Quantidade de mensagens no segmento.")
+    private long messageCount;
+
+    private LocalDateTime archivedAt;
+
+    public static MessageLogArchiveResponse fromEntity(MessageLogArchive archive) {
+        return MessageLogArchiveResponse.builder()
+                .firstMessageAt(archive.getFirstMessageAt())
+                .lastMessageAt(archive.getLastMessageAt())
+                .messageCount(archive.getRowCount())
+                .archivedAt(archive.getArchivedAt())
+                .build();
+    }
+}
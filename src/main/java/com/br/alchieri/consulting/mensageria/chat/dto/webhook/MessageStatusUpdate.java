@@ -0,0 +1,29 @@
+package com.br.alchieri.consulting.mensageria.chat.dto.webhook;
+
+import java.time.LocalDateTime;
+
+/**
+ * Atualização de status de mensagem (sent, delivered, read, failed) extraída de um webhook da Meta,
+ * já normalizada para ser aplicada em lote sobre os logs de mensagem.
+ *
+ * @param wamid WAMID da mensagem enviada.
+ * @param status Status em caixa alta (SENT, DELIVERED, READ, FAILED...).
+ * @param timestamp Momento do status informado pela Meta.
+ * @param errorsJson Nó 'errors' serializado (apenas para FAILED), ou null.
+ * @param pricingCategory Categoria de preço do nó 'pricing', ou null.
+ * @param billable Flag 'billable' do nó 'pricing'; null se o webhook não trouxe 'pricing'.
+ * @param companyHintId Empresa dona do número que recebeu o webhook (usada se o log não tiver empresa).
+ */
+public record MessageStatusUpdate(
+        String wamid,
+        String status,
+        LocalDateTime timestamp,
+        String errorsJson,
+        String pricingCategory,
+        Boolean billable,
+        Long companyHintId) {
+
+    public boolean hasPricing() {
+        return billable != null;
+    }
+}
@@ -0,0 +1,102 @@
+package com.br.alchieri.consulting.mensageria.chat.dto.webhook;
+
+import java.util.List;
+
+/**
+ * Evento tipado extraído de um webhook da Meta pelo {@code WebhookEventDecoder}.
+ * Cada 'change' do payload vira um ou mais eventos, na ordem em que aparecem.
+ */
+public sealed interface WebhookEvent {
+
+    /**
+     * WAMID usado na checagem de idempotência (null para eventos sem mensagem).
+     */
+    default String wamid() {
+        return null;
+    }
+
+    /**
+     * Atualização de status de uma mensagem enviada (field 'messages', nó 'statuses').
+     * @param timestamp Epoch em segundos.
+     * @param errorsJson Nó 'errors' serializado (null se ausente).
+     */
+    record StatusEvent(String wabaId,
+                       String phoneNumberId,
+                       String wamid,
+                       String status,
+                       long timestamp,
+                       String recipientId,
+                       String errorsJson,
+                       String pricingCategory,
+                       Boolean billable) implements WebhookEvent {}
+
+    /**
+     * Mensagem recebida (field 'messages', nó 'messages'), com conteúdo e metadata já no formato do log.
+     * @param timestamp Epoch em segundos.
+     * @param profileName Nome do perfil em 'contacts' (null se ausente).
+     * @param interactiveType Subtipo de mensagens interativas (button_reply, list_reply, nfm_reply...).
+     * @param replyId ID do botão/linha escolhido em respostas interativas.
+     * @param flowResponseJson 'response_json' de uma resposta de Flow (nfm_reply); null se ausente ou inválido.
+     * @param orderItems Itens de mensagens do tipo 'order' (vazio nos demais tipos).
+     */
+    record InboundMessageEvent(String wabaId,
+                               String phoneNumberId,
+                               String wamid,
+                               String from,
+                               String type,
+                               long timestamp,
+                               String profileName,
+                               String content,
+                               String metadataJson,
+                               String interactiveType,
+                               String replyId,
+                               String flowResponseJson,
+                               String flowToken,
+                               String flowId,
+                               List<OrderItem> orderItems) implements WebhookEvent {
+
+        public boolean isFlowResponse() {
+            return "interactive".equals(type) && "nfm_reply".equals(interactiveType);
+        }
+
+        /**
+         * Entrada para o motor de bot: texto digitado ou ID do botão/linha escolhido.
+         */
+        public String botInput() {
+            if ("text".equals(type)) {
+                return content != null ? content : "";
+            }
+            if ("interactive".equals(type) && replyId != null
+                    && ("button_reply".equals(interactiveType) || "list_reply".equals(interactiveType))) {
+                return replyId;
+            }
+            return "";
+        }
+    }
+
+    record OrderItem(String productRetailerId, int quantity, String itemPrice, String currency) {}
+
+    /**
+     * Evento do field 'flows' (mudança de status e alertas de saúde).
+     * @param rawJson Nó 'value' serializado, guardado no alerta para auditoria.
+     */
+    record FlowEvent(String wabaId,
+                     String event,
+                     String flowId,
+                     String message,
+                     String alertState,
+                     String newStatus,
+                     String oldStatus,
+                     String warning,
+                     String rawJson) implements WebhookEvent {}
+
+    /**
+     * Evento do field 'account_update' (ex.: VOLUME_BASED_PRICING_TIER_UPDATE).
+     */
+    record AccountUpdateEvent(String wabaId,
+                              String event,
+                              String region,
+                              String pricingCategory,
+                              String tier,
+                              String effectiveMonth) implements WebhookEvent {}
+}
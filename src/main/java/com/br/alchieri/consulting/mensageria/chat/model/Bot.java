@@ -52,7 +52,11 @@ public class Bot {
     private LocalTime endTime;
     
     // Dias da semana (ex: "1,2,3,4,5" para Seg-Sex)
-    private String activeDays; 
+    private String activeDays;
+
+    // Incrementada a cada mudança de passos/opções; identifica a versão compilada do bot (BotCompiler)
+    @Column(name = "structure_version", columnDefinition = "bigint default 0")
+    private Long structureVersion = 0L;
 
     // O primeiro passo do fluxo
     @OneToOne
@@ -0,0 +1,98 @@
+package com.br.alchieri.consulting.mensageria.chat.model;
+
+import java.time.LocalDateTime;
+
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.Filter;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import com.br.alchieri.consulting.mensageria.model.Company;
+import com.br.alchieri.consulting.mensageria.model.User;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * Job de envio em massa de template (POST /api/v1/messages/bulk/template).
+ * O público é resolvido e enfileirado em background; os contadores de entrega
+ * (enviadas/entregues/falhas) vêm dos logs de mensagem marcados com o ID do job.
+ */
+@Entity
+@Table(name = "bulk_jobs", indexes = {
+        @Index(name = "idx_bj_company_created", columnList = "company_id, createdAt")
+})
+@Filter(name = "tenantFilter", condition = "company_id = :companyId")
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+public class BulkJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @EqualsAndHashCode.Include
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "company_id", nullable = false)
+    private Company company;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User createdByUser;
+
+    @Column(nullable = false)
+    private String templateName;
+
+    @Column(nullable = false)
+    private String languageCode;
+
+    @Column(columnDefinition = "TEXT")
+    private String requestJson; // Requisição original (segmentação + mapeamentos), para auditoria
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private BulkJobStatus status = BulkJobStatus.PENDING;
+
+    @Column(nullable = false)
+    private Integer totalContacts = 0; // Estimativa no momento da criação
+
+    @Column(nullable = false)
+    private Integer enqueuedCount = 0; // Mensagens aceitas pela fila SQS
+
+    @Column(nullable = false)
+    private Integer enqueueFailedCount = 0; // Mensagens que não puderam ser geradas/enfileiradas
+
+    @Column(columnDefinition = "TEXT")
+    private String errorMessage;
+
+    private LocalDateTime startedAt;
+
+    private LocalDateTime finishedAt;
+
+    @Column(nullable = false, updatable = false)
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+
+    public enum BulkJobStatus {
+        PENDING,    // Criado, aguardando o executor
+        RUNNING,    // Resolvendo o público e enfileirando
+        COMPLETED,  // Todas as mensagens foram processadas (enfileiradas ou com falha)
+        FAILED      // Interrompido por erro
+    }
+}
@@ -0,0 +1,104 @@
+package com.br.alchieri.consulting.mensageria.chat.model;
+
+import java.time.LocalDateTime;
+
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outbox de callbacks para endpoints de clientes.
+ * Cada linha é uma entrega pendente/concluída; o CallbackDispatcher consome as linhas vencidas,
+ * então as retentativas sobrevivem a reinícios da aplicação.
+ */
+@Entity
+@Table(name = "callback_deliveries", indexes = {
+        @Index(name = "idx_cd_status_next_attempt", columnList = "status, nextAttemptAt"),
+        @Index(name = "idx_cd_company_status", columnList = "companyId, status")
+})
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+public class CallbackDelivery {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @EqualsAndHashCode.Include
+    private Long id;
+
+    @Column(nullable = false)
+    private Long companyId;
+
+    @Column(nullable = false, length = 2048)
+    private String targetUrl;
+
+    @Column(nullable = false, length = 50)
+    private String eventType; // MESSAGE_STATUS, INCOMING_MESSAGE, CAMPAIGN_STATUS...
+
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String payload; // JSON já serializado
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 30)
+    private CallbackEntityType entityType; // Entidade cujo lastCallbackStatus deve ser atualizado (opcional)
+
+    private Long entityId;
+
+    @Column(length = 500)
+    private String logContext;
+
+    // Pode ser agrupada com outras entregas da mesma empresa/URL em um único POST (modo lote)
+    @Column(nullable = false, columnDefinition = "boolean default false")
+    private boolean batchable = false;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private DeliveryStatus status = DeliveryStatus.PENDING;
+
+    @Column(nullable = false)
+    private int attempts = 0;
+
+    @Column(nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    private LocalDateTime lockedUntil; // Lease do nó que está entregando (IN_PROGRESS)
+
+    private Integer lastHttpStatus;
+
+    @Column(columnDefinition = "TEXT")
+    private String lastError;
+
+    @Column(nullable = false, updatable = false)
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+
+    public enum DeliveryStatus {
+        PENDING,      // Aguardando (primeira tentativa ou backoff)
+        IN_PROGRESS,  // Reservada por um nó (até lockedUntil)
+        SUCCESS,
+        FAILED_FINAL  // Esgotou as tentativas ou erro não recuperável
+    }
+
+    public enum CallbackEntityType {
+        MESSAGE_LOG,
+        CAMPAIGN,
+        TEMPLATE,
+        FLOW,
+        FLOW_DATA
+    }
+}
@@ -18,6 +18,7 @@ import com.br.alchieri.consulting.mensageria.chat.model.enums.ContactStatus;
 import com.br.alchieri.consulting.mensageria.chat.model.enums.LeadSource;
 import com.br.alchieri.consulting.mensageria.model.Address;
 import com.br.alchieri.consulting.mensageria.model.Company;
+import com.br.alchieri.consulting.mensageria.util.PhoneNumberNormalizer;
 
 import io.hypersistence.utils.hibernate.type.json.JsonType;
 import jakarta.persistence.CascadeType;
@@ -35,6 +36,8 @@ import jakarta.persistence.JoinColumn;
 import jakarta.persistence.JoinTable;
 import jakarta.persistence.ManyToMany;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
 import jakarta.persistence.Table;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
@@ -48,7 +51,9 @@ import lombok.NoArgsConstructor;
         @Index(name = "idx_contact_company", columnList = "company_id"),
         @Index(name = "idx_contact_status", columnList = "status"), // Índice para filtrar por status
         // Constraint única para evitar contatos duplicados (mesmo número) para a mesma empresa
-        @Index(name = "uk_contact_company_phone", columnList = "company_id, phoneNumber", unique = true)
+        @Index(name = "uk_contact_company_phone", columnList = "company_id, phoneNumber", unique = true),
+        // Busca pela chave canônica (variações do 9º dígito). Não é única: a base pode ter as duas variações cadastradas
+        @Index(name = "idx_contact_company_phone_key", columnList = "company_id, phone_key")
 })
 @Filter(name = "tenantFilter", condition = "company_id = :companyId")
 @Data
@@ -73,6 +78,9 @@ public class Contact {
     @Column(nullable = false)
     private String phoneNumber; // Número no formato E.164 (ex: 5511999998888)
 
+    @Column(name = "phone_key")
+    private String phoneKey; // Chave canônica de busca, derivada do phoneNumber (ver PhoneNumberNormalizer)
+
     @Email
     @Column(nullable = true)
     private String email;
@@ -159,6 +167,12 @@ public class Contact {
     @UpdateTimestamp
     private LocalDateTime updatedAt;
 
+    @PrePersist
+    @PreUpdate
+    void syncPhoneKey() {
+        this.phoneKey = PhoneNumberNormalizer.phoneKey(phoneNumber);
+    }
+
     public enum Gender {
         MASCULINO, FEMININO, OUTRO, PREFIRO_NAO_INFORMAR
     }
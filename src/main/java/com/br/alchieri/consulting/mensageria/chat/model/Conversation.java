@@ -0,0 +1,75 @@
+package com.br.alchieri.consulting.mensageria.chat.model;
+
+import java.time.LocalDateTime;
+
+import org.hibernate.annotations.Filter;
+
+import com.br.alchieri.consulting.mensageria.chat.model.enums.MessageDirection;
+import com.br.alchieri.consulting.mensageria.model.Company;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * Resumo de uma conversa (empresa x número do contato) para a caixa de entrada dos agentes.
+ *
+ * Modelo de leitura mantido incrementalmente: cada log de mensagem (recebida ou enviada) faz um upsert
+ * nesta tabela ({@code ConversationRepository#upsertOnMessage}), então a listagem de chats não precisa
+ * agrupar o histórico de whatsapp_message_logs.
+ */
+@Entity
+@Table(name = "conversations", indexes = {
+        @Index(name = "uk_conversation_company_phone", columnList = "company_id, contactPhone", unique = true),
+        // Listagem da caixa de entrada (keyset por última mensagem)
+        @Index(name = "idx_conversation_company_last_message", columnList = "company_id, lastMessageAt, id")
+})
+@Filter(name = "tenantFilter", condition = "company_id = :companyId")
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+public class Conversation {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @EqualsAndHashCode.Include
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "company_id", nullable = false)
+    private Company company;
+
+    @Column(nullable = false)
+    private String contactPhone; // Número do contato externo (remetente se INCOMING, destinatário se OUTGOING)
+
+    private String contactName; // Nome do contato cadastrado (se houver)
+
+    @Column(length = 60)
+    private String lastMessageSnippet;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 10)
+    private MessageDirection lastMessageDirection;
+
+    @Column(nullable = false)
+    private LocalDateTime lastMessageAt;
+
+    private LocalDateTime lastIncomingAt; // Última mensagem recebida do contato (chats ativos)
+
+    @Column(nullable = false)
+    private Integer unreadCount = 0;
+
+    private LocalDateTime updatedAt;
+}
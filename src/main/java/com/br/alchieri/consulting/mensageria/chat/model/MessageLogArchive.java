@@ -0,0 +1,68 @@
+package com.br.alchieri.consulting.mensageria.chat.model;
+
+import java.time.LocalDateTime;
+
+import org.hibernate.annotations.CreationTimestamp;
+
+import com.br.alchieri.consulting.mensageria.model.Company;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * Segmento de histórico de mensagens arquivado no S3 (NDJSON compactado com gzip).
+ * Cada partição mensal arquivada gera um segmento por empresa; o intervalo [firstMessageAt, lastMessageAt]
+ * permite localizar os segmentos de um período sem listar o bucket.
+ */
+@Entity
+@Table(name = "message_log_archives", indexes = {
+        @Index(name = "idx_mla_company_period", columnList = "company_id, firstMessageAt"),
+        @Index(name = "idx_mla_partition", columnList = "partitionName")
+})
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+public class MessageLogArchive {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @EqualsAndHashCode.Include
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "company_id", nullable = true) // Nulo para logs sem empresa associada
+    private Company company;
+
+    @Column(nullable = false)
+    private String partitionName; // Partição de origem (whatsapp_message_logs_pYYYYMM)
+
+    @Column(nullable = false, length = 1024)
+    private String s3Key;
+
+    @Column(nullable = false)
+    private Long rowCount;
+
+    @Column(nullable = false)
+    private Long sizeBytes; // Tamanho compactado
+
+    @Column(nullable = false)
+    private LocalDateTime firstMessageAt;
+
+    @Column(nullable = false)
+    private LocalDateTime lastMessageAt;
+
+    @Column(nullable = false, updatable = false)
+    @CreationTimestamp
+    private LocalDateTime archivedAt;
+}
@@ -0,0 +1,33 @@
+package com.br.alchieri.consulting.mensageria.chat.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Registro de WAMIDs de mensagens recebidas, usado na deduplicação de webhooks.
+ *
+ * Tabela não particionada com o WAMID como PK: com whatsapp_message_logs particionada por created_at, a
+ * unicidade lá é apenas (wamid, created_at). O insert-if-absent (ON CONFLICT DO NOTHING) decide qual
+ * entrega do webhook grava o log. Linhas antigas são removidas pelo MessageLogPartitionManager.
+ */
+@Entity
+@Table(name = "message_wamids", indexes = {
+        @Index(name = "idx_mw_created_at", columnList = "createdAt")
+})
+@Data
+@NoArgsConstructor
+public class MessageWamid {
+
+    @Id
+    private String wamid;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -23,7 +23,8 @@ import lombok.NoArgsConstructor;
 
 @Entity
 @Table(name = "scheduled_messages", indexes = {
-        @Index(name = "idx_sm_status_scheduled_at", columnList = "status, scheduledAt")
+        @Index(name = "idx_sm_status_scheduled_at", columnList = "status, scheduledAt"),
+        @Index(name = "idx_sm_campaign_status", columnList = "campaign_id, status") // Checagem de conclusão da campanha
 })
 @Data
 @NoArgsConstructor
@@ -24,15 +24,20 @@ import jakarta.persistence.Id;
 import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.PrePersist;
 import jakarta.persistence.Table;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
 @Table(name = "whatsapp_message_logs", indexes = {
-        @Index(name = "idx_wml_wamid", columnList = "wamid", unique = true), // Index para buscar por WAMID
+        // Mesmo índice do script de particionamento: o Postgres exige created_at nas restrições únicas.
+        // A deduplicação de webhooks usa a tabela message_wamids (ver MessageWamid)
+        @Index(name = "idx_wml_wamid", columnList = "wamid, createdAt", unique = true),
         @Index(name = "idx_wml_company_timestamp", columnList = "company_id, createdAt"), // Index para buscar msg de cliente por tempo
-        @Index(name = "idx_wml_scheduled_message_id", columnList = "scheduledMessageId")
+        @Index(name = "idx_wml_scheduled_message_id", columnList = "scheduledMessageId"),
+        @Index(name = "idx_wml_bulk_job_status", columnList = "bulkJobId, status"),
+        @Index(name = "idx_wml_company_contact_created", columnList = "company_id, contactPhone, createdAt DESC, id") // Histórico de uma conversa (keyset)
 })
 @Filter(name = "tenantFilter", condition = "company_id = :companyId")
 @Data
@@ -43,7 +48,6 @@ public class WhatsAppMessageLog {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(unique = true) // WAMID é único
     private String wamid; // WhatsApp Message ID (retornado pela Meta)
 
     @ManyToOne(fetch = FetchType.LAZY) // Muitos logs para um cliente
@@ -70,6 +74,9 @@ public class WhatsAppMessageLog {
     @Column(nullable = false)
     private String recipient; // Número destinatário (nosso nº ou usuário final)
 
+    @Column(name = "contact_phone")
+    private String contactPhone; // Número do contato externo: remetente se INCOMING, destinatário se OUTGOING (preenchido no insert)
+
     @Column(nullable = false)
     private String messageType; // text, image, template, status, etc.
 
@@ -85,6 +92,9 @@ public class WhatsAppMessageLog {
     @Column(nullable = true) // Nulo para mensagens que não foram agendadas
     private Long scheduledMessageId;
 
+    @Column(nullable = true) // Job de envio em massa que originou a mensagem (BulkJob)
+    private Long bulkJobId;
+
     @Column(nullable = false, updatable = false)
     @CreationTimestamp // Gerenciado pelo Hibernate
     private LocalDateTime createdAt;
@@ -109,4 +119,11 @@ public class WhatsAppMessageLog {
 
     @Column(nullable = true)
     private String pricingCategory; // Categoria de preço retornada pelo webhook da Meta
+
+    @PrePersist
+    public void prePersist() {
+        if (this.contactPhone == null) {
+            this.contactPhone = this.direction == MessageDirection.INCOMING ? this.senderPhoneNumber : this.recipient;
+        }
+    }
 }
@@ -0,0 +1,274 @@
+package com.br.alchieri.consulting.mensageria.chat.producer;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Spool local (buffer circular num arquivo mapeado em memória) para mensagens SQS que não puderam ser publicadas.
+ *
+ * Layout: cabeçalho com os offsets de escrita e leitura, seguido de registros {@code [int tamanho][JSON]}.
+ * Um registro nunca é partido: se não couber no fim do arquivo, a escrita volta ao início (marcador
+ * {@value #WRAP_MARKER} no fim) desde que não alcance o offset de leitura. Assim o espaço drenado é
+ * reaproveitado mesmo com o spool nunca esvaziando. Os dois offsets são gravados numa única escrita
+ * de 8 bytes, só depois dos registros.
+ *
+ * As escritas vão para o page cache do SO, então sobrevivem a um crash do processo; com
+ * {@code force-on-write} cada append também é sincronizado com o disco.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SqsDiskSpool {
+
+    private static final int WRITE_OFFSET_POS = 0;
+    private static final int READ_OFFSET_POS = 4;
+    private static final int HEADER_SIZE = 16;
+    private static final int WRAP_MARKER = -1;
+
+    private final ObjectMapper objectMapper;
+
+    // Sem padrão: precisa apontar para um volume persistente (o tmpdir costuma ser limpo no restart)
+    @Value("${sqs.publisher.spool.path}")
+    private String spoolPath;
+
+    @Value("${sqs.publisher.spool.max-size-mb:256}")
+    private int maxSizeMb;
+
+    @Value("${sqs.publisher.spool.force-on-write:false}")
+    private boolean forceOnWrite;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int writeOffset;
+    private int readOffset;
+
+    /**
+     * Mensagem guardada no spool.
+     * @param attempts Quantas vezes a fila já rejeitou esta mensagem durante a drenagem.
+     */
+    public record SpooledMessage(String queue, Map<String, String> headers, String payload, int attempts) {}
+
+    /**
+     * Registros lidos a partir do offset de leitura; {@code endOffset} é passado a {@link #commit}.
+     */
+    public record Chunk(List<SpooledMessage> messages, int endOffset) {}
+
+    @PostConstruct
+    void open() throws IOException {
+        Path file = Path.of(spoolPath);
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        capacity = (int) Math.min(Integer.MAX_VALUE, maxSizeMb * 1024L * 1024L);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+
+        writeOffset = buffer.getInt(WRITE_OFFSET_POS);
+        readOffset = buffer.getInt(READ_OFFSET_POS);
+        if (writeOffset < HEADER_SIZE || writeOffset > capacity || readOffset < HEADER_SIZE || readOffset > capacity) {
+            // Arquivo novo (ou cabeçalho inválido): começa vazio
+            resetOffsets();
+        } else if (readOffset != writeOffset) {
+            log.warn("Spool SQS {} contém {} bytes pendentes de execuções anteriores; serão drenados.", file, capacity - HEADER_SIZE - freeBytes());
+        }
+        log.info("Spool SQS aberto em {} ({} MB).", file, maxSizeMb);
+    }
+
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return readOffset == writeOffset;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Espaço livre aproximado, em bytes (a sobra no fim do arquivo antes de uma volta ao início não é descontada).
+     */
+    public long freeBytes() {
+        lock.lock();
+        try {
+            if (readOffset == writeOffset) {
+                return capacity - HEADER_SIZE;
+            }
+            if (readOffset < writeOffset) {
+                return (long) (capacity - writeOffset) + (readOffset - HEADER_SIZE);
+            }
+            return readOffset - writeOffset;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Acrescenta as mensagens ao fim do spool (todas ou nenhuma).
+     * @return false se não houver espaço livre.
+     */
+    public boolean append(List<SpooledMessage> messages) {
+        List<byte[]> records = new ArrayList<>(messages.size());
+        for (SpooledMessage message : messages) {
+            records.add(serialize(message));
+        }
+
+        lock.lock();
+        try {
+            if (readOffset == writeOffset) {
+                // Vazio: recomeça do início (o cabeçalho é gravado junto com os registros)
+                readOffset = HEADER_SIZE;
+                writeOffset = HEADER_SIZE;
+            }
+            // Os registros vão para a área livre; só ficam visíveis quando o cabeçalho é atualizado
+            int offset = writeOffset;
+            for (byte[] record : records) {
+                int size = Integer.BYTES + record.length;
+                if (readOffset <= offset) {
+                    if (offset + size > capacity) {
+                        if (capacity - offset >= Integer.BYTES) {
+                            buffer.putInt(offset, WRAP_MARKER);
+                        }
+                        offset = HEADER_SIZE;
+                        // A escrita não pode alcançar a leitura (igualdade significaria vazio)
+                        if (offset + size >= readOffset) {
+                            return false;
+                        }
+                    }
+                } else if (offset + size >= readOffset) {
+                    return false;
+                }
+                buffer.putInt(offset, record.length);
+                buffer.put(offset + Integer.BYTES, record);
+                offset += size;
+            }
+            writeOffset = offset;
+            writeHeader();
+            if (forceOnWrite) {
+                buffer.force();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lê até {@code max} registros a partir do offset de leitura, sem consumi-los.
+     */
+    public Chunk peek(int max) {
+        lock.lock();
+        try {
+            List<SpooledMessage> messages = new ArrayList<>();
+            int offset = readOffset;
+            while (offset != writeOffset && messages.size() < max) {
+                if (offset > writeOffset && (capacity - offset < Integer.BYTES || buffer.getInt(offset) == WRAP_MARKER)) {
+                    offset = HEADER_SIZE; // Fim da volta: continua do início do arquivo
+                    continue;
+                }
+                int length = buffer.getInt(offset);
+                int limit = offset < writeOffset ? writeOffset : capacity;
+                if (length <= 0 || offset + Integer.BYTES + length > limit) {
+                    // Escrita interrompida no meio (ex.: crash do SO): descarta o restante
+                    log.error("Spool SQS corrompido no offset {}. {} bytes descartados.", offset, writeOffset - offset);
+                    offset = writeOffset;
+                    break;
+                }
+                byte[] record = new byte[length];
+                buffer.get(offset + Integer.BYTES, record);
+                offset += Integer.BYTES + length;
+                SpooledMessage message = deserialize(record);
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+            return new Chunk(messages, offset);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marca como consumidos os registros até {@code endOffset} (de um {@link #peek} deste mesmo leitor)
+     * e acrescenta {@code requeue} ao fim, na mesma operação, usando o espaço liberado.
+     * @return false se {@code requeue} não couber; nesse caso nada é consumido.
+     */
+    public boolean commit(int endOffset, List<SpooledMessage> requeue) {
+        lock.lock();
+        try {
+            int previousRead = readOffset;
+            int previousWrite = writeOffset;
+            readOffset = endOffset;
+            if (!requeue.isEmpty() && !append(requeue)) {
+                readOffset = previousRead;
+                writeOffset = previousWrite;
+                return false;
+            }
+            if (readOffset == writeOffset) {
+                resetOffsets();
+            } else {
+                writeHeader();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        lock.lock();
+        try {
+            buffer.force();
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void resetOffsets() {
+        writeOffset = HEADER_SIZE;
+        readOffset = HEADER_SIZE;
+        writeHeader();
+    }
+
+    private void writeHeader() {
+        // Uma única escrita de 8 bytes (big-endian: escrita em WRITE_OFFSET_POS, leitura em READ_OFFSET_POS)
+        buffer.putLong(WRITE_OFFSET_POS, ((long) writeOffset << 32) | (readOffset & 0xFFFFFFFFL));
+    }
+
+    private byte[] serialize(SpooledMessage message) {
+        try {
+            return objectMapper.writeValueAsBytes(message);
+        } catch (IOException e) {
+            throw new IllegalStateException("Falha ao serializar mensagem para o spool SQS", e);
+        }
+    }
+
+    private SpooledMessage deserialize(byte[] record) {
+        try {
+            return objectMapper.readValue(record, SpooledMessage.class);
+        } catch (IOException e) {
+            log.error("Registro ilegível no spool SQS descartado: {}", e.getMessage());
+            return null;
+        }
+    }
+}
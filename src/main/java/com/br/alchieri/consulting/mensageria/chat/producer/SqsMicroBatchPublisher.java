@@ -0,0 +1,322 @@
+package com.br.alchieri.consulting.mensageria.chat.producer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.br.alchieri.consulting.mensageria.chat.producer.SqsDiskSpool.Chunk;
+import com.br.alchieri.consulting.mensageria.chat.producer.SqsDiskSpool.SpooledMessage;
+import com.br.alchieri.consulting.mensageria.chat.util.SqsBatchSender;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Publicação assíncrona em micro-lotes para o SQS, usada pelos caminhos de ingresso (webhook e API de envio).
+ *
+ * {@link #publish} apenas coloca a mensagem no buffer da fila e retorna. Uma thread por fila junta até
+ * {@link SqsBatchSender#MAX_BATCH_SIZE} mensagens (ou o que chegar dentro de {@code linger-ms}) e envia
+ * com SendMessageBatch, com um limite de lotes em voo. Se o SQS estiver lento, indisponível ou rejeitar
+ * mensagens, elas vão para o {@link SqsDiskSpool}, drenado periodicamente quando a fila volta a aceitar.
+ *
+ * Cada mensagem aceita reserva no spool o espaço que ocuparia se o envio falhar, até ser enviada ou gravada.
+ * Sem espaço para a reserva, {@link #publish} falha na hora (o chamador responde 5xx e a Meta/cliente reenvia),
+ * em vez de a mensagem ser perdida depois que a requisição já foi respondida com sucesso.
+ *
+ * Em filas FIFO, mensagens que passaram pelo spool podem chegar depois de mensagens mais novas do mesmo grupo.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SqsMicroBatchPublisher {
+
+    private static final int SPOOL_DRAIN_CHUNK = 100;
+    // Margem por registro (tamanho, fila, atributos e estrutura JSON) além do payload
+    private static final int SPOOL_RECORD_OVERHEAD = 256;
+
+    private final SqsBatchSender batchSender;
+    private final SqsDiskSpool spool;
+
+    @Value("${sqs.publisher.linger-ms:5}")
+    private long lingerMs;
+
+    @Value("${sqs.publisher.buffer-capacity:10000}")
+    private int bufferCapacity;
+
+    @Value("${sqs.publisher.max-in-flight-batches:16}")
+    private int maxInFlightBatches;
+
+    @Value("${sqs.publisher.unavailable-backoff-ms:5000}")
+    private long unavailableBackoffMs;
+
+    @Value("${sqs.publisher.spool.max-attempts:10}")
+    private int maxSpoolAttempts;
+
+    private final ConcurrentHashMap<String, LinkedBlockingQueue<Message<String>>> lanes = new ConcurrentHashMap<>();
+    private final List<Thread> laneThreads = new ArrayList<>();
+    private ExecutorService senders;
+    private Semaphore inFlight;
+    private volatile long unavailableUntil;
+    private volatile boolean running = true;
+    // Espaço do spool reservado para as mensagens em memória (buffer ou envio em andamento)
+    private final AtomicLong reservedSpoolBytes = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        AtomicInteger counter = new AtomicInteger();
+        senders = Executors.newFixedThreadPool(maxInFlightBatches, runnable -> {
+            Thread thread = new Thread(runnable, "sqs-batch-sender-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        inFlight = new Semaphore(maxInFlightBatches);
+    }
+
+    /**
+     * Entrega a mensagem para publicação; não aguarda o SQS.
+     * @throws IllegalStateException se não houver espaço no spool para garantir a mensagem caso o envio falhe.
+     */
+    public void publish(String queueName, Message<String> message) {
+        if (!running || isSqsUnavailable()) {
+            spoolOrFail(queueName, List.of(message));
+            return;
+        }
+        long reserve = spoolReserve(message);
+        if (reservedSpoolBytes.addAndGet(reserve) > spool.freeBytes()) {
+            reservedSpoolBytes.addAndGet(-reserve);
+            throw new IllegalStateException("Spool SQS sem espaço para garantir a mensagem; publicação recusada.");
+        }
+        LinkedBlockingQueue<Message<String>> lane = lanes.computeIfAbsent(queueName, this::startLane);
+        if (!lane.offer(message)) {
+            reservedSpoolBytes.addAndGet(-reserve);
+            spoolOrFail(queueName, List.of(message));
+        }
+    }
+
+    private LinkedBlockingQueue<Message<String>> startLane(String queueName) {
+        LinkedBlockingQueue<Message<String>> lane = new LinkedBlockingQueue<>(bufferCapacity);
+        Thread thread = new Thread(() -> runLane(queueName, lane), "sqs-publisher-" + queueName);
+        thread.setDaemon(true);
+        thread.start();
+        synchronized (laneThreads) {
+            laneThreads.add(thread);
+        }
+        return lane;
+    }
+
+    private void runLane(String queueName, LinkedBlockingQueue<Message<String>> lane) {
+        long lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        while (running || !lane.isEmpty()) {
+            try {
+                Message<String> first = lane.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<Message<String>> batch = new ArrayList<>(SqsBatchSender.MAX_BATCH_SIZE);
+                batch.add(first);
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < SqsBatchSender.MAX_BATCH_SIZE) {
+                    if (lane.drainTo(batch, SqsBatchSender.MAX_BATCH_SIZE - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    Message<String> next = remaining > 0 ? lane.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                dispatch(queueName, batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Erro inesperado no publicador SQS da fila {}: {}", queueName, e.getMessage(), e);
+            }
+        }
+    }
+
+    private void dispatch(String queueName, List<Message<String>> batch) throws InterruptedException {
+        // Sem vaga para mais um lote em voo dentro do linger: o SQS está lento, o lote vai para o disco
+        if (!running || isSqsUnavailable() || !inFlight.tryAcquire(lingerMs, TimeUnit.MILLISECONDS)) {
+            spoolQuietly(queueName, batch);
+            releaseReserve(batch);
+            return;
+        }
+        try {
+            senders.execute(() -> {
+                try {
+                    send(queueName, batch);
+                } finally {
+                    releaseReserve(batch);
+                    inFlight.release();
+                }
+            });
+        } catch (Exception e) {
+            inFlight.release();
+            spoolQuietly(queueName, batch);
+            releaseReserve(batch);
+        }
+    }
+
+    private void send(String queueName, List<Message<String>> batch) {
+        List<Message<String>> rejected = batchSender.sendAll(queueName, batch);
+        if (rejected.isEmpty()) {
+            return;
+        }
+        if (rejected.size() == batch.size()) {
+            markSqsUnavailable(queueName);
+        }
+        spoolQuietly(queueName, rejected);
+    }
+
+    /**
+     * Reenvia o conteúdo do spool enquanto a fila aceitar. Um lote totalmente rejeitado interrompe a drenagem
+     * (SQS indisponível); rejeições parciais voltam ao fim do spool, até {@code max-attempts}.
+     */
+    @Scheduled(fixedDelayString = "${sqs.publisher.spool.drain-interval-ms:1000}")
+    public void drainSpool() {
+        while (running && !isSqsUnavailable() && !spool.isEmpty()) {
+            Chunk chunk = spool.peek(SPOOL_DRAIN_CHUNK);
+
+            Map<String, List<SpooledMessage>> byQueue = new LinkedHashMap<>();
+            chunk.messages().forEach(m -> byQueue.computeIfAbsent(m.queue(), q -> new ArrayList<>()).add(m));
+
+            List<SpooledMessage> retry = new ArrayList<>();
+            for (Map.Entry<String, List<SpooledMessage>> entry : byQueue.entrySet()) {
+                List<Message<String>> messages = new ArrayList<>();
+                Map<UUID, SpooledMessage> originals = new HashMap<>();
+                for (SpooledMessage spooled : entry.getValue()) {
+                    Message<String> message = toMessage(spooled);
+                    messages.add(message);
+                    originals.put(message.getHeaders().getId(), spooled);
+                }
+                for (Message<String> rejected : batchSender.sendAll(entry.getKey(), messages)) {
+                    SpooledMessage original = originals.get(rejected.getHeaders().getId());
+                    if (original != null) {
+                        retry.add(original);
+                    }
+                }
+            }
+
+            if (!chunk.messages().isEmpty() && retry.size() == chunk.messages().size()) {
+                markSqsUnavailable("spool");
+                return;
+            }
+            // As rejeitadas voltam ao fim usando o espaço do próprio trecho consumido
+            if (!spool.commit(chunk.endOffset(), nextAttempts(retry))) {
+                // Trecho fica no spool e é reenviado inteiro depois (duplicatas em vez de perda)
+                log.warn("Spool SQS sem espaço para reenfileirar {} rejeições; trecho mantido para nova tentativa.", retry.size());
+                markSqsUnavailable("spool");
+                return;
+            }
+            log.info("Spool SQS: {} mensagens reenviadas.", chunk.messages().size() - retry.size());
+        }
+    }
+
+    private List<SpooledMessage> nextAttempts(List<SpooledMessage> rejected) {
+        List<SpooledMessage> again = new ArrayList<>();
+        for (SpooledMessage message : rejected) {
+            if (message.attempts() + 1 >= maxSpoolAttempts) {
+                // O payload não é logado: contém dados pessoais dos contatos
+                log.error("Mensagem descartada do spool após {} rejeições da fila {} (grupo {}, {} bytes).",
+                        message.attempts() + 1, message.queue(), message.headers().get("message-group-id"), message.payload().length());
+            } else {
+                again.add(new SpooledMessage(message.queue(), message.headers(), message.payload(), message.attempts() + 1));
+            }
+        }
+        return again;
+    }
+
+    private void spoolOrFail(String queueName, List<Message<String>> messages) {
+        if (!spool.append(toSpooled(queueName, messages))) {
+            throw new IllegalStateException("Buffer e spool SQS cheios; mensagem não pôde ser enfileirada.");
+        }
+    }
+
+    private void spoolQuietly(String queueName, List<Message<String>> messages) {
+        if (spool.append(toSpooled(queueName, messages))) {
+            log.warn("{} mensagens da fila {} gravadas no spool local para reenvio.", messages.size(), queueName);
+        } else {
+            log.error("Spool SQS cheio: {} mensagens da fila {} foram perdidas.", messages.size(), queueName);
+        }
+    }
+
+    /**
+     * Estimativa conservadora do registro no spool: até 3 bytes UTF-8 por caractere, mais a margem fixa.
+     */
+    private static long spoolReserve(Message<String> message) {
+        return SPOOL_RECORD_OVERHEAD + 3L * message.getPayload().length();
+    }
+
+    private void releaseReserve(List<Message<String>> batch) {
+        long total = 0;
+        for (Message<String> message : batch) {
+            total += spoolReserve(message);
+        }
+        reservedSpoolBytes.addAndGet(-total);
+    }
+
+    private boolean isSqsUnavailable() {
+        return System.currentTimeMillis() < unavailableUntil;
+    }
+
+    private void markSqsUnavailable(String source) {
+        unavailableUntil = System.currentTimeMillis() + unavailableBackoffMs;
+        log.warn("SQS indisponível ({}). Novas mensagens vão para o spool local por {} ms.", source, unavailableBackoffMs);
+    }
+
+    private static List<SpooledMessage> toSpooled(String queueName, List<Message<String>> messages) {
+        List<SpooledMessage> spooled = new ArrayList<>(messages.size());
+        for (Message<String> message : messages) {
+            Map<String, String> headers = new HashMap<>();
+            message.getHeaders().forEach((name, value) -> {
+                if (!MessageHeaders.ID.equals(name) && !MessageHeaders.TIMESTAMP.equals(name)
+                        && (value instanceof String || value instanceof Number)) {
+                    headers.put(name, value.toString());
+                }
+            });
+            spooled.add(new SpooledMessage(queueName, headers, message.getPayload(), 0));
+        }
+        return spooled;
+    }
+
+    private static Message<String> toMessage(SpooledMessage spooled) {
+        return MessageBuilder.withPayload(spooled.payload()).copyHeaders(spooled.headers()).build();
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        // Daqui em diante tudo vai para o spool, que é drenado na próxima subida
+        running = false;
+        synchronized (laneThreads) {
+            for (Thread thread : laneThreads) {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            }
+        }
+        senders.shutdown();
+        if (!senders.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("Lotes SQS ainda em envio no desligamento.");
+        }
+    }
+}
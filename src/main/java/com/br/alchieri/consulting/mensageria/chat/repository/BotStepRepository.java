@@ -1,8 +1,11 @@
 package com.br.alchieri.consulting.mensageria.chat.repository;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.br.alchieri.consulting.mensageria.chat.model.BotStep;
@@ -11,4 +14,16 @@ import com.br.alchieri.consulting.mensageria.chat.model.BotStep;
 public interface BotStepRepository extends JpaRepository<BotStep, Long> {
 
     List<BotStep> findByBotId(Long botId);
+
+    /**
+     * Passos do bot com as opções já carregadas (compilação do bot).
+     */
+    @Query("SELECT DISTINCT s FROM BotStep s LEFT JOIN FETCH s.options WHERE s.bot.id = :botId")
+    List<BotStep> findGraphByBotId(@Param("botId") Long botId);
+
+    /**
+     * Passos avulsos com as opções já carregadas (destinos fora do bot compilado).
+     */
+    @Query("SELECT DISTINCT s FROM BotStep s LEFT JOIN FETCH s.options WHERE s.id IN :ids")
+    List<BotStep> findGraphByIdIn(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,44 @@
+package com.br.alchieri.consulting.mensageria.chat.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.br.alchieri.consulting.mensageria.chat.model.BulkJob;
+
+@Repository
+public interface BulkJobRepository extends JpaRepository<BulkJob, Long> {
+
+    // Atualizações atômicas: as páginas de um job são enfileiradas em paralelo
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE BulkJob j SET j.enqueuedCount = j.enqueuedCount + :enqueued, " +
+           "j.enqueueFailedCount = j.enqueueFailedCount + :failed, j.updatedAt = CURRENT_TIMESTAMP WHERE j.id = :id")
+    int addProgress(@Param("id") Long id, @Param("enqueued") int enqueued, @Param("failed") int failed);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE BulkJob j SET j.status = :status, j.startedAt = :at, j.updatedAt = :at WHERE j.id = :id")
+    int markStarted(@Param("id") Long id, @Param("status") BulkJob.BulkJobStatus status, @Param("at") LocalDateTime at);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE BulkJob j SET j.status = :status, j.errorMessage = :error, j.finishedAt = :at, j.updatedAt = :at WHERE j.id = :id")
+    int markFinished(@Param("id") Long id, @Param("status") BulkJob.BulkJobStatus status,
+                     @Param("error") String error, @Param("at") LocalDateTime at);
+
+    // Jobs sem progresso desde staleBefore (nó reiniciado/caído no meio da execução): encerra mantendo os contadores
+    @Modifying
+    @Transactional
+    @Query("UPDATE BulkJob j SET j.status = :failed, j.errorMessage = :error, j.finishedAt = :at, j.updatedAt = :at " +
+           "WHERE j.status IN :active AND COALESCE(j.updatedAt, j.createdAt) < :staleBefore")
+    int failStaleJobs(@Param("active") Collection<BulkJob.BulkJobStatus> active, @Param("failed") BulkJob.BulkJobStatus failed,
+                      @Param("error") String error, @Param("staleBefore") LocalDateTime staleBefore, @Param("at") LocalDateTime at);
+}
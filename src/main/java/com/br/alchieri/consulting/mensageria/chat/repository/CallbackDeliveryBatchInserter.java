@@ -0,0 +1,59 @@
+package com.br.alchieri.consulting.mensageria.chat.repository;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import com.br.alchieri.consulting.mensageria.chat.model.CallbackDelivery;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Inserção de entregas do outbox de callbacks via JDBC batch INSERT (IDENTITY desabilita o batch de
+ * inserts do Hibernate). Participa da transação JPA corrente; as linhas inseridas não recebem ID.
+ */
+@Repository
+@RequiredArgsConstructor
+public class CallbackDeliveryBatchInserter {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO callback_deliveries (company_id, target_url, event_type, payload, entity_type, entity_id, " +
+            "log_context, batchable, status, attempts, next_attempt_at, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * @return Quantidade de linhas enviadas.
+     */
+    public int insert(List<CallbackDelivery> deliveries) {
+        if (deliveries.isEmpty()) {
+            return 0;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(INSERT_SQL, deliveries, deliveries.size(), (ps, delivery) -> {
+            ps.setLong(1, delivery.getCompanyId());
+            ps.setString(2, delivery.getTargetUrl());
+            ps.setString(3, delivery.getEventType());
+            ps.setString(4, delivery.getPayload());
+            ps.setString(5, delivery.getEntityType() != null ? delivery.getEntityType().name() : null);
+            if (delivery.getEntityId() != null) {
+                ps.setLong(6, delivery.getEntityId());
+            } else {
+                ps.setNull(6, Types.BIGINT);
+            }
+            ps.setString(7, delivery.getLogContext());
+            ps.setBoolean(8, delivery.isBatchable());
+            ps.setString(9, delivery.getStatus().name());
+            ps.setInt(10, delivery.getAttempts());
+            ps.setTimestamp(11, Timestamp.valueOf(delivery.getNextAttemptAt()));
+            ps.setTimestamp(12, now);
+            ps.setTimestamp(13, now);
+        });
+        return deliveries.size();
+    }
+}
@@ -0,0 +1,32 @@
+package com.br.alchieri.consulting.mensageria.chat.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.br.alchieri.consulting.mensageria.chat.model.CallbackDelivery;
+
+@Repository
+public interface CallbackDeliveryRepository extends JpaRepository<CallbackDelivery, Long> {
+
+    /**
+     * Reserva entregas vencidas (ou com lease expirado) sem bloquear outros nós: linhas já travadas
+     * por outra transação são puladas (SKIP LOCKED).
+     */
+    @Query(value = "SELECT * FROM callback_deliveries " +
+                   "WHERE (status = 'PENDING' AND next_attempt_at <= :now) " +
+                   "   OR (status = 'IN_PROGRESS' AND locked_until < :now) " +
+                   "ORDER BY next_attempt_at " +
+                   "LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<CallbackDelivery> lockDueDeliveries(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    @Modifying
+    @Query("DELETE FROM CallbackDelivery d WHERE d.status IN :statuses AND d.updatedAt < :before")
+    int deleteFinishedBefore(@Param("statuses") Collection<CallbackDelivery.DeliveryStatus> statuses, @Param("before") LocalDateTime before);
+}
@@ -1,16 +1,24 @@
 package com.br.alchieri.consulting.mensageria.chat.repository;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.br.alchieri.consulting.mensageria.chat.dto.audience.AudienceTarget;
 import com.br.alchieri.consulting.mensageria.chat.model.Contact;
 import com.br.alchieri.consulting.mensageria.model.Company;
+import com.br.alchieri.consulting.mensageria.util.PhoneNumberNormalizer;
 
 @Repository
 public interface ContactRepository extends JpaRepository<Contact, Long> {
@@ -24,8 +32,126 @@ public interface ContactRepository extends JpaRepository<Contact, Long> {
     // Busca um contato pelo número de telefone dentro de uma empresa
     Optional<Contact> findByCompanyAndPhoneNumber(Company company, String phoneNumber);
 
+    // Busca pela chave canônica (índice company_id, phone_key). Contatos ainda sem chave (anteriores à coluna,
+    // até o backfill alcançá-los) são achados pelo número nas variações do 9º dígito, na mesma consulta.
+    @Query("SELECT c FROM Contact c WHERE c.company = :company AND (c.phoneKey = :phoneKey " +
+           "OR (c.phoneKey IS NULL AND c.phoneNumber IN :legacyNumbers)) ORDER BY c.id")
+    List<Contact> findByCompanyAndPhoneKey(@Param("company") Company company, @Param("phoneKey") String phoneKey,
+                                           @Param("legacyNumbers") Collection<String> legacyNumbers, Pageable pageable);
+
+    /**
+     * Contato da empresa para o telefone informado (qualquer formatação e com ou sem o 9º dígito), em uma consulta.
+     */
+    default Optional<Contact> findByCompanyAndPhone(Company company, String phoneNumber) {
+        String phoneKey = PhoneNumberNormalizer.phoneKey(phoneNumber);
+        if (phoneKey == null) {
+            return Optional.empty();
+        }
+        List<String> legacyNumbers = List.of(phoneKey, PhoneNumberNormalizer.normalize(phoneKey));
+        return findByCompanyAndPhoneKey(company, phoneKey, legacyNumbers, PageRequest.of(0, 1)).stream().findFirst();
+    }
+
     List<Contact> findByCompanyAndPhoneNumberIn(Company company, List<String> phoneNumbers);
 
     @Query("SELECT c FROM Contact c JOIN c.tags t WHERE c.company = :company AND t.name IN :tagNames")
     List<Contact> findByCompanyAndTagsNameIn(Company company, List<String> tagNames);
+
+    List<Contact> findByCompanyAndIdIn(Company company, Collection<Long> ids);
+
+    // --- Resolução de público (envio em massa / campanhas) ---
+    // Keyset por phoneNumber: usa o índice único (company_id, phoneNumber) e devolve cada número uma única vez,
+    // mesmo que o contato tenha várias das tags solicitadas.
+
+    @Query("SELECT new com.br.alchieri.consulting.mensageria.chat.dto.audience.AudienceTarget(c.id, c.phoneNumber) FROM Contact c " +
+           "WHERE c.company = :company AND c.phoneNumber > :afterPhone " +
+           "AND c.id IN (SELECT c2.id FROM Contact c2 JOIN c2.tags t WHERE c2.company = :company AND t.name IN :tagNames) " +
+           "ORDER BY c.phoneNumber")
+    List<AudienceTarget> findAudiencePageByTagNames(@Param("company") Company company, @Param("tagNames") Collection<String> tagNames,
+                                                    @Param("afterPhone") String afterPhone, Pageable pageable);
+
+    @Query("SELECT new com.br.alchieri.consulting.mensageria.chat.dto.audience.AudienceTarget(c.id, c.phoneNumber) FROM Contact c " +
+           "WHERE c.company = :company AND c.phoneNumber > :afterPhone " +
+           "AND c.id IN (SELECT c2.id FROM Contact c2 JOIN c2.tags t WHERE c2.company = :company AND t.id IN :tagIds) " +
+           "ORDER BY c.phoneNumber")
+    List<AudienceTarget> findAudiencePageByTagIds(@Param("company") Company company, @Param("tagIds") Collection<Long> tagIds,
+                                                  @Param("afterPhone") String afterPhone, Pageable pageable);
+
+    // Como em findByCompanyAndPhoneKey: contatos ainda sem phone_key são achados pelas variações do número
+    @Query("SELECT new com.br.alchieri.consulting.mensageria.chat.dto.audience.AudienceTarget(c.id, c.phoneNumber) FROM Contact c " +
+           "WHERE c.company = :company AND (c.phoneKey IN :phoneKeys " +
+           "OR (c.phoneKey IS NULL AND c.phoneNumber IN :legacyNumbers)) ORDER BY c.phoneNumber")
+    List<AudienceTarget> findAudienceByPhoneKeys(@Param("company") Company company, @Param("phoneKeys") Collection<String> phoneKeys,
+                                                 @Param("legacyNumbers") Collection<String> legacyNumbers);
+
+    /**
+     * Público pelas chaves canônicas (ver {@link PhoneNumberNormalizer#phoneKey}), incluindo contatos ainda sem chave.
+     */
+    default List<AudienceTarget> findAudienceByPhoneKeys(Company company, Collection<String> phoneKeys) {
+        return findAudienceByPhoneKeys(company, phoneKeys, legacyNumbers(phoneKeys));
+    }
+
+    @Query("SELECT new com.br.alchieri.consulting.mensageria.chat.dto.audience.AudienceTarget(c.id, c.phoneNumber) FROM Contact c " +
+           "WHERE c.company = :company AND c.id IN :ids ORDER BY c.phoneNumber")
+    List<AudienceTarget> findAudienceByIds(@Param("company") Company company, @Param("ids") Collection<Long> ids);
+
+    @Query("SELECT COUNT(DISTINCT c.id) FROM Contact c JOIN c.tags t WHERE c.company = :company AND t.name IN :tagNames")
+    long countAudienceByTagNames(@Param("company") Company company, @Param("tagNames") Collection<String> tagNames);
+
+    @Query("SELECT COUNT(DISTINCT c.id) FROM Contact c JOIN c.tags t WHERE c.company = :company AND t.id IN :tagIds")
+    long countAudienceByTagIds(@Param("company") Company company, @Param("tagIds") Collection<Long> tagIds);
+
+    @Query("SELECT COUNT(c) FROM Contact c WHERE c.company = :company AND (c.phoneKey IN :phoneKeys " +
+           "OR (c.phoneKey IS NULL AND c.phoneNumber IN :legacyNumbers))")
+    long countAudienceByPhoneKeys(@Param("company") Company company, @Param("phoneKeys") Collection<String> phoneKeys,
+                                  @Param("legacyNumbers") Collection<String> legacyNumbers);
+
+    default long countAudienceByPhoneKeys(Company company, Collection<String> phoneKeys) {
+        return countAudienceByPhoneKeys(company, phoneKeys, legacyNumbers(phoneKeys));
+    }
+
+    // Números gravados antes da chave canônica: com e sem o 9º dígito
+    private static List<String> legacyNumbers(Collection<String> phoneKeys) {
+        List<String> numbers = new ArrayList<>(phoneKeys.size() * 2);
+        for (String phoneKey : phoneKeys) {
+            numbers.add(phoneKey);
+            String normalized = PhoneNumberNormalizer.normalize(phoneKey);
+            if (!phoneKey.equals(normalized)) {
+                numbers.add(normalized);
+            }
+        }
+        return numbers;
+    }
+
+    long countByCompanyAndIdIn(Company company, Collection<Long> ids);
+
+    // --- Backfill de phone_key para contatos anteriores à coluna (por faixas de ID) ---
+
+    // A coluna foi criada como varchar(20) e o ddl-auto=update não altera o tamanho de colunas existentes
+    @Query(value = "SELECT character_maximum_length FROM information_schema.columns " +
+                   "WHERE table_name = 'contacts' AND column_name = 'phone_key'", nativeQuery = true)
+    Integer findPhoneKeyColumnLength();
+
+    // Aumentar um varchar no Postgres só altera o catálogo (sem reescrever a tabela)
+    @Modifying
+    @Transactional
+    @Query(value = "ALTER TABLE contacts ALTER COLUMN phone_key TYPE varchar(255)", nativeQuery = true)
+    void widenPhoneKeyColumn();
+
+    @Query("SELECT MIN(c.id) FROM Contact c WHERE c.phoneKey IS NULL")
+    Long findMinIdWithoutPhoneKey();
+
+    @Query("SELECT MAX(c.id) FROM Contact c")
+    Long findMaxId();
+
+    // Mesma regra de PhoneNumberNormalizer.phoneKey: só dígitos e, no Brasil com 13 dígitos, sem o 9º dígito
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE contacts c SET phone_key = CASE " +
+                   "WHEN d.digits LIKE '55%' AND length(d.digits) = 13 THEN substr(d.digits, 1, 4) || substr(d.digits, 6) " +
+                   "ELSE NULLIF(d.digits, '') END " +
+                   "FROM (SELECT id, regexp_replace(phone_number, '[^0-9]', '', 'g') AS digits FROM contacts " +
+                   "      WHERE id > :fromId AND id <= :toId AND phone_key IS NULL) d " +
+                   "WHERE c.id = d.id",
+           nativeQuery = true)
+    int backfillPhoneKey(@Param("fromId") long fromId, @Param("toId") long toId);
 }
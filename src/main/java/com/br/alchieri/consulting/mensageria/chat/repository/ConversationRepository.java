@@ -0,0 +1,128 @@
+package com.br.alchieri.consulting.mensageria.chat.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.br.alchieri.consulting.mensageria.chat.model.Conversation;
+import com.br.alchieri.consulting.mensageria.model.Company;
+
+@Repository
+public interface ConversationRepository extends JpaRepository<Conversation, Long> {
+
+    /**
+     * Upsert atômico do resumo da conversa a partir de uma mensagem registrada.
+     * Os campos da "última mensagem" só são substituídos se a mensagem for mais recente que a atual
+     * (webhooks podem chegar fora de ordem); o contador de não lidas é somado. Sem nome informado,
+     * o nome vem do contato cadastrado (ou é mantido o atual).
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO conversations (company_id, contact_phone, contact_name, last_message_snippet, " +
+                   "    last_message_direction, last_message_at, last_incoming_at, unread_count, updated_at) " +
+                   "VALUES (:companyId, :phone, " +
+                   "    COALESCE(CAST(:contactName AS varchar), (SELECT c.name FROM contacts c WHERE c.company_id = :companyId AND c.phone_number = :phone)), " +
+                   "    :snippet, :direction, :messageAt, CAST(:incomingAt AS timestamp), :unreadIncrement, now()) " +
+                   "ON CONFLICT (company_id, contact_phone) DO UPDATE SET " +
+                   "    contact_name = COALESCE(EXCLUDED.contact_name, conversations.contact_name), " +
+                   "    last_message_snippet = CASE WHEN EXCLUDED.last_message_at >= conversations.last_message_at " +
+                   "        THEN EXCLUDED.last_message_snippet ELSE conversations.last_message_snippet END, " +
+                   "    last_message_direction = CASE WHEN EXCLUDED.last_message_at >= conversations.last_message_at " +
+                   "        THEN EXCLUDED.last_message_direction ELSE conversations.last_message_direction END, " +
+                   "    last_message_at = GREATEST(conversations.last_message_at, EXCLUDED.last_message_at), " +
+                   "    last_incoming_at = GREATEST(conversations.last_incoming_at, EXCLUDED.last_incoming_at), " +
+                   "    unread_count = conversations.unread_count + EXCLUDED.unread_count, " +
+                   "    updated_at = EXCLUDED.updated_at",
+           nativeQuery = true)
+    int upsertOnMessage(@Param("companyId") Long companyId,
+                        @Param("phone") String phone,
+                        @Param("contactName") String contactName,
+                        @Param("snippet") String snippet,
+                        @Param("direction") String direction,
+                        @Param("messageAt") LocalDateTime messageAt,
+                        @Param("incomingAt") LocalDateTime incomingAt,
+                        @Param("unreadIncrement") int unreadIncrement);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Conversation c SET c.unreadCount = 0 WHERE c.company = :company AND c.contactPhone = :phone AND c.unreadCount > 0")
+    int resetUnreadCount(@Param("company") Company company, @Param("phone") String phone);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Conversation c SET c.contactName = :name WHERE c.company = :company AND c.contactPhone = :phone")
+    int updateContactName(@Param("company") Company company, @Param("phone") String phone, @Param("name") String name);
+
+    // --- Caixa de entrada (keyset por lastMessageAt DESC, id DESC; usa idx_conversation_company_last_message) ---
+
+    @Query("SELECT c FROM Conversation c WHERE c.company = :company ORDER BY c.lastMessageAt DESC, c.id DESC")
+    List<Conversation> findInboxFirstPage(@Param("company") Company company, Pageable pageable);
+
+    @Query("SELECT c FROM Conversation c WHERE c.company = :company " +
+           "AND (c.lastMessageAt < :beforeAt OR (c.lastMessageAt = :beforeAt AND c.id < :beforeId)) " +
+           "ORDER BY c.lastMessageAt DESC, c.id DESC")
+    List<Conversation> findInboxPageBefore(@Param("company") Company company,
+                                           @Param("beforeAt") LocalDateTime beforeAt,
+                                           @Param("beforeId") Long beforeId,
+                                           Pageable pageable);
+
+    @Query("SELECT c FROM Conversation c WHERE c.company = :company AND c.lastIncomingAt >= :since " +
+           "ORDER BY c.lastMessageAt DESC, c.id DESC")
+    List<Conversation> findActiveFirstPage(@Param("company") Company company,
+                                           @Param("since") LocalDateTime since,
+                                           Pageable pageable);
+
+    @Query("SELECT c FROM Conversation c WHERE c.company = :company AND c.lastIncomingAt >= :since " +
+           "AND (c.lastMessageAt < :beforeAt OR (c.lastMessageAt = :beforeAt AND c.id < :beforeId)) " +
+           "ORDER BY c.lastMessageAt DESC, c.id DESC")
+    List<Conversation> findActivePageBefore(@Param("company") Company company,
+                                            @Param("since") LocalDateTime since,
+                                            @Param("beforeAt") LocalDateTime beforeAt,
+                                            @Param("beforeId") Long beforeId,
+                                            Pageable pageable);
+
+    /**
+     * Popula os resumos a partir de uma faixa de IDs do histórico (fromId, toId]. Faixas processadas em ordem
+     * crescente convergem para o mesmo resultado de uma passada única: a "última mensagem" só é substituída
+     * por uma mais recente e o contador de não lidas só é definido na criação (vem do cadastro do contato).
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO conversations (company_id, contact_phone, contact_name, last_message_snippet, " +
+                   "    last_message_direction, last_message_at, last_incoming_at, unread_count, updated_at) " +
+                   "SELECT l.company_id, l.contact_phone, ct.name, " +
+                   "    CASE WHEN length(l.content) > 50 THEN substring(l.content, 1, 50) || '...' ELSE l.content END, " +
+                   "    l.direction, l.created_at, inc.last_incoming_at, COALESCE(ct.unread_messages_count, 0), now() " +
+                   "FROM ( " +
+                   "    SELECT DISTINCT ON (x.company_id, x.contact_phone) x.* FROM ( " +
+                   "        SELECT id, company_id, direction, content, created_at, " +
+                   "            CASE WHEN direction = 'INCOMING' THEN sender_phone_number ELSE recipient END AS contact_phone " +
+                   "        FROM whatsapp_message_logs WHERE id > :fromId AND id <= :toId AND company_id IS NOT NULL " +
+                   "    ) x ORDER BY x.company_id, x.contact_phone, x.created_at DESC, x.id DESC " +
+                   ") l " +
+                   "LEFT JOIN ( " +
+                   "    SELECT company_id, sender_phone_number AS contact_phone, MAX(created_at) AS last_incoming_at " +
+                   "    FROM whatsapp_message_logs " +
+                   "    WHERE id > :fromId AND id <= :toId AND direction = 'INCOMING' AND company_id IS NOT NULL " +
+                   "    GROUP BY company_id, sender_phone_number " +
+                   ") inc ON inc.company_id = l.company_id AND inc.contact_phone = l.contact_phone " +
+                   "LEFT JOIN contacts ct ON ct.company_id = l.company_id AND ct.phone_number = l.contact_phone " +
+                   "WHERE l.contact_phone IS NOT NULL " +
+                   "ON CONFLICT (company_id, contact_phone) DO UPDATE SET " +
+                   "    contact_name = COALESCE(conversations.contact_name, EXCLUDED.contact_name), " +
+                   "    last_message_snippet = CASE WHEN EXCLUDED.last_message_at >= conversations.last_message_at " +
+                   "        THEN EXCLUDED.last_message_snippet ELSE conversations.last_message_snippet END, " +
+                   "    last_message_direction = CASE WHEN EXCLUDED.last_message_at >= conversations.last_message_at " +
+                   "        THEN EXCLUDED.last_message_direction ELSE conversations.last_message_direction END, " +
+                   "    last_message_at = GREATEST(conversations.last_message_at, EXCLUDED.last_message_at), " +
+                   "    last_incoming_at = GREATEST(conversations.last_incoming_at, EXCLUDED.last_incoming_at)",
+           nativeQuery = true)
+    int backfillFromMessageLogs(@Param("fromId") long fromId, @Param("toId") long toId);
+}
@@ -1,8 +1,12 @@
 package com.br.alchieri.consulting.mensageria.chat.repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -17,4 +21,8 @@ public interface FlowDataRepository extends JpaRepository<FlowData, Long> {
 
     @Query("SELECT fd FROM FlowData fd WHERE fd.flow.id = :flowId AND fd.company = :company ORDER BY fd.receivedAt DESC")
     Page<FlowData> findByFlowIdAndCompany(@Param("flowId") Long flowId, @Param("company") Company company, Pageable pageable);
+
+    @Modifying
+    @Query("UPDATE FlowData e SET e.lastCallbackStatus = :status, e.lastCallbackAttempt = :attemptAt WHERE e.id IN :ids")
+    int updateCallbackStatus(@Param("ids") Collection<Long> ids, @Param("status") String status, @Param("attemptAt") LocalDateTime attemptAt);
 }
@@ -1,10 +1,13 @@
 package com.br.alchieri.consulting.mensageria.chat.repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.Optional;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -34,4 +37,8 @@ public interface FlowRepository extends JpaRepository<Flow, Long> {
     long countByCompanyAndStatus(Company company, FlowStatus status);
 
     Optional<Flow> findByIdAndCompanyAndStatus(Long id, Company company, FlowStatus status);
+
+    @Modifying
+    @Query("UPDATE Flow e SET e.lastCallbackStatus = :status, e.lastCallbackAttempt = :attemptAt WHERE e.id IN :ids")
+    int updateCallbackStatus(@Param("ids") Collection<Long> ids, @Param("status") String status, @Param("attemptAt") LocalDateTime attemptAt);
 }
@@ -0,0 +1,36 @@
+package com.br.alchieri.consulting.mensageria.chat.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.br.alchieri.consulting.mensageria.chat.model.MessageLogArchive;
+import com.br.alchieri.consulting.mensageria.model.Company;
+
+@Repository
+public interface MessageLogArchiveRepository extends JpaRepository<MessageLogArchive, Long> {
+
+    List<MessageLogArchive> findByCompanyOrderByFirstMessageAtDesc(Company company);
+
+    /**
+     * Segmentos da empresa com mensagens no intervalo [from, to).
+     */
+    @Query("SELECT a FROM MessageLogArchive a WHERE a.company = :company " +
+           "AND a.firstMessageAt < :to AND a.lastMessageAt >= :from ORDER BY a.firstMessageAt DESC")
+    List<MessageLogArchive> findOverlapping(@Param("company") Company company,
+                                            @Param("from") LocalDateTime from,
+                                            @Param("to") LocalDateTime to);
+
+    // Reexecução após falha: o segmento da empresa na partição é regravado
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM MessageLogArchive a WHERE a.partitionName = :partitionName " +
+           "AND ((:companyId IS NULL AND a.company IS NULL) OR a.company.id = :companyId)")
+    int deleteSegment(@Param("partitionName") String partitionName, @Param("companyId") Long companyId);
+}
@@ -0,0 +1,161 @@
+package com.br.alchieri.consulting.mensageria.chat.repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Operações nativas (PostgreSQL) sobre as partições mensais de whatsapp_message_logs.
+ * A conversão da tabela para particionada é feita uma única vez pelo script
+ * {@code db/partitioning/whatsapp_message_logs_partitioning.sql}.
+ */
+@Repository
+@RequiredArgsConstructor
+public class MessageLogPartitionDao {
+
+    public static final String PARENT_TABLE = "whatsapp_message_logs";
+
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final Pattern PARTITION_NAME = Pattern.compile("^whatsapp_message_logs_[a-z0-9_]+$");
+    private static final Pattern LOWER_BOUND = Pattern.compile("FROM \\('([^']+)'\\)");
+    private static final Pattern UPPER_BOUND = Pattern.compile("TO \\('([^']+)'\\)");
+    private static final int STREAM_FETCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * @param name Nome da partição.
+     * @param lowerBound Limite inferior (inclusivo) do intervalo; null para MINVALUE ou para a partição DEFAULT.
+     * @param upperBound Limite superior (exclusivo) do intervalo; null para a partição DEFAULT.
+     */
+    public record PartitionInfo(String name, LocalDateTime lowerBound, LocalDateTime upperBound) {
+
+        /**
+         * Se o intervalo da partição tem interseção com [from, to). A DEFAULT não cobre intervalo algum.
+         */
+        public boolean overlaps(LocalDateTime from, LocalDateTime to) {
+            return upperBound != null && upperBound.isAfter(from) && (lowerBound == null || lowerBound.isBefore(to));
+        }
+    }
+
+    public boolean isPartitioned() {
+        Boolean partitioned = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table pt JOIN pg_class c ON c.oid = pt.partrelid WHERE c.relname = ?)",
+                Boolean.class, PARENT_TABLE);
+        return Boolean.TRUE.equals(partitioned);
+    }
+
+    public List<PartitionInfo> listPartitions() {
+        return jdbcTemplate.query(
+                "SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) AS bound FROM pg_inherits i " +
+                "JOIN pg_class c ON c.oid = i.inhrelid JOIN pg_class p ON p.oid = i.inhparent " +
+                "WHERE p.relname = ? ORDER BY c.relname",
+                (rs, rowNum) -> new PartitionInfo(rs.getString("relname"),
+                        parseBound(LOWER_BOUND, rs.getString("bound")), parseBound(UPPER_BOUND, rs.getString("bound"))),
+                PARENT_TABLE);
+    }
+
+    /**
+     * Cria (se não existir) a partição do mês informado.
+     */
+    public void createMonthlyPartition(YearMonth month) {
+        LocalDate from = month.atDay(1);
+        LocalDate to = month.plusMonths(1).atDay(1);
+        jdbcTemplate.execute(String.format(
+                "CREATE TABLE IF NOT EXISTS %s_p%s PARTITION OF %s FOR VALUES FROM ('%s') TO ('%s')",
+                PARENT_TABLE, month.format(PARTITION_SUFFIX), PARENT_TABLE, from, to));
+    }
+
+    /**
+     * Empresas com logs na partição (pode conter null para logs sem empresa).
+     */
+    public List<Long> findCompanyIds(String partition) {
+        return jdbcTemplate.queryForList("SELECT DISTINCT company_id FROM " + checked(partition), Long.class);
+    }
+
+    /**
+     * Percorre os logs de uma empresa na partição com cursor no servidor (fetch size), sem carregar tudo em memória.
+     */
+    @Transactional(readOnly = true)
+    public void streamCompanyRows(String partition, Long companyId, RowCallbackHandler handler) {
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(STREAM_FETCH_SIZE);
+        if (companyId == null) {
+            streaming.query("SELECT * FROM " + checked(partition) + " WHERE company_id IS NULL ORDER BY created_at, id", handler);
+        } else {
+            streaming.query("SELECT * FROM " + checked(partition) + " WHERE company_id = ? ORDER BY created_at, id", handler, companyId);
+        }
+    }
+
+    /**
+     * Remove da partição os logs de uma empresa já arquivados (retenção menor que a da partição).
+     */
+    @Transactional
+    public int deleteCompanyRows(String partition, Long companyId) {
+        if (companyId == null) {
+            return jdbcTemplate.update("DELETE FROM " + checked(partition) + " WHERE company_id IS NULL");
+        }
+        return jdbcTemplate.update("DELETE FROM " + checked(partition) + " WHERE company_id = ?", companyId);
+    }
+
+    @Transactional
+    public void detachAndDrop(String partition) {
+        jdbcTemplate.execute("ALTER TABLE " + PARENT_TABLE + " DETACH PARTITION " + checked(partition));
+        jdbcTemplate.execute("DROP TABLE " + checked(partition));
+    }
+
+    /**
+     * Maior janela de retenção entre as empresas (meses), usando o padrão para as que não definiram.
+     */
+    public int maxRetentionMonths(int defaultMonths) {
+        Integer max = jdbcTemplate.queryForObject(
+                "SELECT MAX(COALESCE(message_log_retention_months, ?)) FROM companies", Integer.class, defaultMonths);
+        return max != null ? max : defaultMonths;
+    }
+
+    /**
+     * Empresas com janela de retenção própria (meses); as demais usam o padrão.
+     */
+    public Map<Long, Integer> customRetentionMonths() {
+        Map<Long, Integer> retention = new HashMap<>();
+        jdbcTemplate.query("SELECT id, message_log_retention_months FROM companies WHERE message_log_retention_months IS NOT NULL",
+                (RowCallbackHandler) rs -> retention.put(rs.getLong(1), rs.getInt(2)));
+        return retention;
+    }
+
+    private static String checked(String partition) {
+        // Nomes vêm do catálogo, mas são interpolados no SQL: valida antes
+        if (partition == null || !PARTITION_NAME.matcher(partition).matches()) {
+            throw new IllegalArgumentException("Nome de partição inválido: " + partition);
+        }
+        return partition;
+    }
+
+    private static LocalDateTime parseBound(Pattern pattern, String bound) {
+        if (bound == null) {
+            return null;
+        }
+        Matcher matcher = pattern.matcher(bound);
+        if (!matcher.find()) {
+            return null; // DEFAULT ou MINVALUE
+        }
+        String value = matcher.group(1).trim();
+        // Ex.: '2026-11-01' ou '2026-11-01 00:00:00'
+        return value.length() <= 10
+                ? LocalDate.parse(value).atStartOfDay()
+                : LocalDateTime.parse(value.substring(0, 19).replace(' ', 'T'));
+    }
+}
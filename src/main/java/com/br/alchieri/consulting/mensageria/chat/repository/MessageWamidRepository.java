@@ -0,0 +1,31 @@
+package com.br.alchieri.consulting.mensageria.chat.repository;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.br.alchieri.consulting.mensageria.chat.model.MessageWamid;
+
+@Repository
+public interface MessageWamidRepository extends JpaRepository<MessageWamid, String> {
+
+    /**
+     * Registra o WAMID se ainda não existir.
+     * @return 1 se registrado agora, 0 se já existia (webhook duplicado).
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO message_wamids (wamid, created_at) VALUES (:wamid, :createdAt) ON CONFLICT (wamid) DO NOTHING",
+           nativeQuery = true)
+    int registerIfAbsent(@Param("wamid") String wamid, @Param("createdAt") LocalDateTime createdAt);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM MessageWamid w WHERE w.createdAt < :before")
+    int deleteCreatedBefore(@Param("before") LocalDateTime before);
+}
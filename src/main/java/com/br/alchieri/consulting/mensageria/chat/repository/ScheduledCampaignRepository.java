@@ -1,9 +1,17 @@
 package com.br.alchieri.consulting.mensageria.chat.repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.br.alchieri.consulting.mensageria.chat.model.ScheduledCampaign;
 import com.br.alchieri.consulting.mensageria.model.Company;
@@ -14,4 +22,27 @@ public interface ScheduledCampaignRepository extends JpaRepository<ScheduledCamp
     Page<ScheduledCampaign> findByCompanyOrderByCreatedAtDesc(Company company, Pageable pageable);
     // Adicionar métodos de busca customizados se necessário no futuro
     // Ex: Page<ScheduledCampaign> findByCompany(Company company, Pageable pageable);
-}
\ No newline at end of file
+
+    /**
+     * Carrega as campanhas com empresa e criador em uma única query (contexto de envio do dispatcher).
+     */
+    @Query("SELECT c FROM ScheduledCampaign c JOIN FETCH c.company JOIN FETCH c.createdByUser WHERE c.id IN :ids")
+    List<ScheduledCampaign> findWithContextByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("UPDATE ScheduledCampaign c SET c.status = 'PROCESSING', c.updatedAt = CURRENT_TIMESTAMP WHERE c.id IN :ids AND c.status = 'PENDING'")
+    int markProcessing(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Conclui a campanha apenas se ainda estiver em processamento: com vários nós/workers,
+     * só quem efetivamente fizer a transição dispara o callback de conclusão.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE ScheduledCampaign c SET c.status = 'COMPLETED', c.updatedAt = CURRENT_TIMESTAMP WHERE c.id = :id AND c.status = 'PROCESSING'")
+    int markCompleted(@Param("id") Long id);
+
+    @Modifying
+    @Query("UPDATE ScheduledCampaign e SET e.lastCallbackStatus = :status, e.lastCallbackAttempt = :attemptAt WHERE e.id IN :ids")
+    int updateCallbackStatus(@Param("ids") Collection<Long> ids, @Param("status") String status, @Param("attemptAt") LocalDateTime attemptAt);
+}
@@ -0,0 +1,50 @@
+package com.br.alchieri.consulting.mensageria.chat.repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import com.br.alchieri.consulting.mensageria.chat.model.ScheduledMessage;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Inserção de ScheduledMessages de uma campanha via JDBC batch INSERT, sem passar pelo contexto de
+ * persistência do Hibernate (que, com IDENTITY, desabilita o batch de inserts e mantém cada entidade
+ * em memória até o commit). Participa da transação JPA corrente.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ScheduledMessageBatchInserter {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO scheduled_messages (campaign_id, contact_id, scheduled_at, status, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Insere uma mensagem PENDING por contato, em um único batch JDBC.
+     * @return Quantidade de linhas enviadas.
+     */
+    public int insertPending(Long campaignId, List<Long> contactIds, LocalDateTime scheduledAt) {
+        if (contactIds.isEmpty()) {
+            return 0;
+        }
+        Timestamp scheduled = Timestamp.valueOf(scheduledAt);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        String status = ScheduledMessage.MessageStatus.PENDING.name();
+        jdbcTemplate.batchUpdate(INSERT_SQL, contactIds, contactIds.size(), (ps, contactId) -> {
+            ps.setLong(1, campaignId);
+            ps.setLong(2, contactId);
+            ps.setTimestamp(3, scheduled);
+            ps.setString(4, status);
+            ps.setTimestamp(5, now);
+            ps.setTimestamp(6, now);
+        });
+        return contactIds.size();
+    }
+}
@@ -25,4 +25,19 @@ public interface ScheduledMessageRepository extends JpaRepository<ScheduledMessa
     void updateStatusForPendingMessagesByCampaign(@Param("campaignId") Long campaignId, @Param("status") ScheduledMessage.MessageStatus status);
 
     long countByCampaignAndStatus(ScheduledCampaign campaign, ScheduledMessage.MessageStatus status);
+
+    long countByCampaignIdAndStatus(Long campaignId, ScheduledMessage.MessageStatus status);
+
+    /**
+     * Reserva um lote de mensagens prontas para envio (usa idx_sm_status_scheduled_at).
+     * Linhas travadas por outro nó/worker são puladas (SKIP LOCKED); mensagens de campanhas pausadas
+     * ou canceladas não são reservadas. Os locks duram até o commit da transação do chamador.
+     */
+    @Query(value = "SELECT sm.* FROM scheduled_messages sm " +
+                   "JOIN scheduled_campaigns c ON c.id = sm.campaign_id " +
+                   "WHERE sm.status = 'PENDING' AND sm.scheduled_at <= :now " +
+                   "AND c.status IN ('PENDING', 'PROCESSING') " +
+                   "ORDER BY sm.scheduled_at " +
+                   "LIMIT :limit FOR UPDATE OF sm SKIP LOCKED", nativeQuery = true)
+    List<ScheduledMessage> lockReadyToSend(@Param("now") LocalDateTime now, @Param("limit") int limit);
 }
\ No newline at end of file
@@ -1,16 +1,19 @@
 package com.br.alchieri.consulting.mensageria.chat.repository;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.br.alchieri.consulting.mensageria.chat.dto.response.MetricCountDTO;
 import com.br.alchieri.consulting.mensageria.chat.model.WhatsAppMessageLog;
@@ -23,6 +26,19 @@ public interface WhatsAppMessageLogRepository extends JpaRepository<WhatsAppMess
 
     boolean existsByWamid(String wamid);
 
+    /**
+     * Carrega em uma única query todos os logs de um lote de WAMIDs (usado na ingestão em lote de status).
+     */
+    @Query("SELECT log FROM WhatsAppMessageLog log LEFT JOIN FETCH log.company WHERE log.wamid IN :wamids")
+    List<WhatsAppMessageLog> findByWamidInWithCompany(@Param("wamids") Collection<String> wamids);
+
+    /**
+     * Contagem dos logs de um job de envio em massa, por status (usa idx_wml_bulk_job_status).
+     * @return Linhas [status, quantidade].
+     */
+    @Query("SELECT log.status, COUNT(log) FROM WhatsAppMessageLog log WHERE log.bulkJobId = :bulkJobId GROUP BY log.status")
+    List<Object[]> countByStatusForBulkJob(@Param("bulkJobId") Long bulkJobId);
+
     @Query("SELECT log FROM WhatsAppMessageLog log LEFT JOIN FETCH log.company WHERE log.id = :id")
     Optional<WhatsAppMessageLog> findByIdWithCompany(@Param("id") Long id);
 
@@ -43,53 +59,77 @@ public interface WhatsAppMessageLogRepository extends JpaRepository<WhatsAppMess
             @Param("phoneNumber") String phoneNumber,
             Pageable pageable);
 
-       /**
-     * Encontra a última mensagem para cada conversa (definida pelo par sender/recipient)
-     * que teve uma mensagem recebida (INCOMING) dentro do período de tempo especificado.
-     * Esta é uma query complexa e pode precisar de otimização dependendo do SGBD.
-     * JPQL não suporta subqueries na cláusula FROM ou window functions facilmente,
-     * então uma query nativa pode ser mais performática, mas JPQL pode ser suficiente.
-     *
-     * Esta query busca os IDs das últimas mensagens de cada conversa ativa.
-     */
-    @Query("SELECT log.id FROM WhatsAppMessageLog log " +
-           "WHERE log.company = :company " +
-           "AND log.createdAt = (SELECT MAX(subLog.createdAt) FROM WhatsAppMessageLog subLog " +
-           "                     WHERE subLog.company = :company " +
-           "                     AND ((subLog.senderPhoneNumber = log.senderPhoneNumber AND subLog.recipient = log.recipient) OR (subLog.senderPhoneNumber = log.recipient AND subLog.recipient = log.senderPhoneNumber))) " +
-           "AND EXISTS (SELECT 1 FROM WhatsAppMessageLog incomingCheck " +
-           "            WHERE incomingCheck.company = :company " +
-           "            AND incomingCheck.direction = 'INCOMING' " +
-           "            AND (incomingCheck.senderPhoneNumber = log.senderPhoneNumber OR incomingCheck.senderPhoneNumber = log.recipient) " +
-           "            AND incomingCheck.createdAt >= :sinceTimestamp)")
-    List<Long> findActiveChatLastMessageIds(
-            @Param("company") Company company,
-            @Param("sinceTimestamp") LocalDateTime sinceTimestamp);
+    // --- Histórico de uma conversa por cursor (keyset em createdAt DESC, id DESC; usa idx_wml_company_contact_created) ---
+
+    @Query("SELECT log FROM WhatsAppMessageLog log WHERE log.company = :company AND log.contactPhone = :contactPhone " +
+           "ORDER BY log.createdAt DESC, log.id DESC")
+    List<WhatsAppMessageLog> findHistoryFirstPage(@Param("company") Company company,
+                                                  @Param("contactPhone") String contactPhone,
+                                                  Pageable pageable);
 
-    // O Spring Data JPA consegue criar esta query a partir do nome do método
-    List<WhatsAppMessageLog> findByIdIn(List<Long> ids, Sort sort);
+    @Query("SELECT log FROM WhatsAppMessageLog log WHERE log.company = :company AND log.contactPhone = :contactPhone " +
+           "AND (log.createdAt < :beforeAt OR (log.createdAt = :beforeAt AND log.id < :beforeId)) " +
+           "ORDER BY log.createdAt DESC, log.id DESC")
+    List<WhatsAppMessageLog> findHistoryPageBefore(@Param("company") Company company,
+                                                   @Param("contactPhone") String contactPhone,
+                                                   @Param("beforeAt") LocalDateTime beforeAt,
+                                                   @Param("beforeId") Long beforeId,
+                                                   Pageable pageable);
+
+    @Query("SELECT log FROM WhatsAppMessageLog log WHERE log.id = :id AND log.company = :company AND log.contactPhone = :contactPhone")
+    Optional<WhatsAppMessageLog> findCursorMessage(@Param("id") Long id,
+                                                   @Param("company") Company company,
+                                                   @Param("contactPhone") String contactPhone);
+
+    // --- Backfill de contact_phone para logs anteriores à coluna (por faixas de ID) ---
+
+    @Query("SELECT MIN(log.id) FROM WhatsAppMessageLog log WHERE log.contactPhone IS NULL")
+    Long findMinIdWithoutContactPhone();
+
+    @Query("SELECT MIN(log.id) FROM WhatsAppMessageLog log")
+    Long findMinId();
+
+    @Query("SELECT MAX(log.id) FROM WhatsAppMessageLog log")
+    Long findMaxId();
 
     /**
-     * Encontra a última mensagem de CADA conversa única para uma empresa.
-     * Esta query é mais simples agora, pois não precisamos mais checar por mensagens
-     * não lidas ou por atividade recente no nível do banco.
+     * Avança o status apenas se o novo tiver ordem maior que o atual (mesma ordem de
+     * MessageStatusBatchWriter.statusRank): um DELIVERED atrasado nunca sobrescreve um READ.
+     * @param metadata Erros do status FAILED (null mantém o metadata atual).
+     * @return 1 se o status foi alterado, 0 caso contrário.
      */
-    @Query(value = "SELECT wml.* FROM whatsapp_message_logs wml " +
-                   "INNER JOIN ( " +
-                   "    SELECT " +
-                   "        CASE " +
-                   "            WHEN direction = 'INCOMING' THEN senderPhoneNumber " +
-                   "            ELSE recipient " +
-                   "        END as contact_phone, " +
-                   "        MAX(created_at) as max_created_at " +
-                   "    FROM whatsapp_message_logs " +
-                   "    WHERE company_id = :companyId " +
-                   "    GROUP BY contact_phone " +
-                   ") latest ON ((wml.senderPhoneNumber = latest.contact_phone OR wml.recipient = latest.contact_phone) AND wml.created_at = latest.max_created_at) " +
-                   "WHERE wml.company_id = :companyId " +
-                   "ORDER BY wml.created_at DESC",
-                   nativeQuery = true)
-    List<WhatsAppMessageLog> findLastMessageOfEachChatForCompany(@Param("companyId") Long companyId);
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE whatsapp_message_logs " +
+                   "SET status = :status, updated_at = :updatedAt, metadata = COALESCE(CAST(:metadata AS TEXT), metadata) " +
+                   "WHERE id = :id AND (CASE WHEN status IS NULL THEN -1 " +
+                   "WHEN UPPER(status) = 'SENT' THEN 1 WHEN UPPER(status) = 'DELIVERED' THEN 2 " +
+                   "WHEN UPPER(status) = 'READ' THEN 3 WHEN UPPER(status) = 'FAILED' THEN 4 " +
+                   "WHEN UPPER(status) = 'CANCELED' THEN 5 ELSE 0 END) < :rank",
+           nativeQuery = true)
+    int advanceStatus(@Param("id") Long id, @Param("status") String status, @Param("rank") int rank,
+                      @Param("updatedAt") LocalDateTime updatedAt, @Param("metadata") String metadata);
+
+    /**
+     * Grava a precificação apenas uma vez por mensagem (o primeiro status com 'pricing').
+     * @return 1 se a precificação foi gravada, 0 se a mensagem já estava precificada.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE WhatsAppMessageLog log SET log.pricingCategory = COALESCE(:pricingCategory, log.pricingCategory), " +
+           "log.metaCost = :metaCost, log.platformFee = :platformFee, log.finalPrice = :finalPrice " +
+           "WHERE log.id = :id AND log.metaCost IS NULL")
+    int applyPricingIfAbsent(@Param("id") Long id, @Param("pricingCategory") String pricingCategory,
+                             @Param("metaCost") BigDecimal metaCost, @Param("platformFee") BigDecimal platformFee,
+                             @Param("finalPrice") BigDecimal finalPrice);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE whatsapp_message_logs " +
+                   "SET contact_phone = CASE WHEN direction = 'INCOMING' THEN sender_phone_number ELSE recipient END " +
+                   "WHERE id > :fromId AND id <= :toId AND contact_phone IS NULL",
+           nativeQuery = true)
+    int backfillContactPhone(@Param("fromId") long fromId, @Param("toId") long toId);
 
     // 1. Conta mensagens enviadas por usuário
     @Query("SELECT new com.br.alchieri.consulting.mensageria.chat.dto.response.MetricCountDTO(l.user.id, COUNT(l)) " +
@@ -114,4 +154,8 @@ public interface WhatsAppMessageLogRepository extends JpaRepository<WhatsAppMess
     List<MetricCountDTO> countDistinctContactsByUser(@Param("company") Company company, 
                                                      @Param("start") LocalDateTime start, 
                                                      @Param("end") LocalDateTime end);
+
+    @Modifying
+    @Query("UPDATE WhatsAppMessageLog e SET e.lastCallbackStatus = :status, e.lastCallbackAttempt = :attemptAt WHERE e.id IN :ids")
+    int updateCallbackStatus(@Param("ids") Collection<Long> ids, @Param("status") String status, @Param("attemptAt") LocalDateTime attemptAt);
 }
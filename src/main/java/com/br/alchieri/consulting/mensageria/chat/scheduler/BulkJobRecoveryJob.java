@@ -0,0 +1,58 @@
+package com.br.alchieri.consulting.mensageria.chat.scheduler;
+
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.br.alchieri.consulting.mensageria.chat.model.BulkJob.BulkJobStatus;
+import com.br.alchieri.consulting.mensageria.chat.repository.BulkJobRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Encerra jobs de envio em massa abandonados por um reinício ou queda do nó que os executava.
+ *
+ * O {@code BulkJobRunner} roda em memória e atualiza o job a cada página; um job PENDING/RUNNING sem
+ * atualização há mais de {@code bulk.job.stale-after-minutes} não tem mais quem o conclua. Ele é marcado
+ * como FAILED mantendo os contadores de progresso, para que o GET do job mostre até onde o envio chegou.
+ * O primeiro ciclo roda logo após a subida. Seguro com várias réplicas: a decisão usa só o banco
+ * (um UPDATE condicional), então jobs ativos em outros nós não são afetados.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BulkJobRecoveryJob {
+
+    private static final String INTERRUPTED_MESSAGE =
+            "Job interrompido sem conclusão (reinício ou falha do servidor). Os contadores mostram o progresso até a interrupção.";
+
+    private final BulkJobRepository bulkJobRepository;
+
+    @Value("${bulk.job.recovery.enabled:true}")
+    private boolean enabled;
+
+    @Value("${bulk.job.stale-after-minutes:30}")
+    private long staleAfterMinutes;
+
+    @Scheduled(initialDelayString = "${bulk.job.recovery.initial-delay-ms:60000}",
+               fixedDelayString = "${bulk.job.recovery.interval-ms:300000}")
+    public void failAbandonedJobs() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            int failed = bulkJobRepository.failStaleJobs(EnumSet.of(BulkJobStatus.PENDING, BulkJobStatus.RUNNING),
+                    BulkJobStatus.FAILED, INTERRUPTED_MESSAGE, now.minusMinutes(staleAfterMinutes), now);
+            if (failed > 0) {
+                log.warn("{} job(s) de envio em massa sem progresso há mais de {} min marcados como FAILED.", failed, staleAfterMinutes);
+            }
+        } catch (Exception e) {
+            log.error("Falha ao encerrar jobs de envio em massa abandonados: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package com.br.alchieri.consulting.mensageria.chat.scheduler;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.br.alchieri.consulting.mensageria.chat.dto.callback.BatchCallbackPayload;
+import com.br.alchieri.consulting.mensageria.chat.model.CallbackDelivery;
+import com.br.alchieri.consulting.mensageria.chat.model.CallbackDelivery.DeliveryStatus;
+import com.br.alchieri.consulting.mensageria.chat.service.impl.CallbackOutbox;
+import com.br.alchieri.consulting.mensageria.chat.service.impl.CallbackOutbox.DeliveryOutcome;
+import com.br.alchieri.consulting.mensageria.repository.CompanyRepository;
+import com.br.alchieri.consulting.mensageria.service.AdminNotificationService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import io.netty.channel.ChannelOption;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Entrega os callbacks do outbox (callback_deliveries) para os endpoints dos clientes.
+ *
+ * - Concorrência limitada por empresa e global: um endpoint lento ocupa no máximo
+ *   {@code per-company-max-in-flight} conexões e nenhuma thread (envio não bloqueante).
+ * - Circuit breaker por URL: após falhas consecutivas (rede, 5xx, 408, 429), as entregas daquela URL são
+ *   adiadas sem tentativa até o circuito fechar (com uma tentativa de prova em half-open).
+ * - Backoff exponencial com jitter entre tentativas; ao esgotar, a entrega vira FAILED_FINAL.
+ * - Empresas com entrega em lote recebem os eventos 'batchable' da mesma URL agrupados em um único POST
+ *   ({@link BatchCallbackPayload}, até {@code callback.batch.max-events} por requisição), assinado com HMAC-SHA256.
+ * - Os resultados são acumulados em memória e gravados em lote a cada ciclo ({@link CallbackOutbox#applyOutcomes}).
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CallbackDispatcher {
+
+    private final CallbackOutbox outbox;
+    private final AdminNotificationService adminNotificationService;
+    private final WebClient.Builder webClientBuilder;
+    private final CompanyRepository companyRepository;
+    private final ObjectMapper objectMapper;
+
+    static final String BATCH_ID_HEADER = "X-Callback-Batch-Id";
+    static final String SIGNATURE_HEADER = "X-Callback-Signature";
+
+    private final Map<Long, AtomicInteger> inFlightByCompany = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // Um circuito por URL; limitado e expirado por inatividade (URLs antigas ou de empresas removidas)
+    private Cache<String, EndpointCircuit> circuits;
+    private final ConcurrentLinkedQueue<DeliveryOutcome> outcomes = new ConcurrentLinkedQueue<>();
+
+    private WebClient webClient;
+
+    @Value("${callback.dispatcher.enabled:true}")
+    private boolean enabled;
+
+    @Value("${callback.dispatcher.batch-size:200}")
+    private int batchSize;
+
+    @Value("${callback.dispatcher.max-in-flight:500}")
+    private int maxInFlight;
+
+    @Value("${callback.dispatcher.per-company-max-in-flight:10}")
+    private int perCompanyMaxInFlight;
+
+    @Value("${callback.dispatcher.lease-seconds:60}")
+    private long leaseSeconds;
+
+    @Value("${callback.dispatcher.request-timeout-seconds:10}")
+    private long requestTimeoutSeconds;
+
+    @Value("${callback.dispatcher.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${callback.dispatcher.backoff.initial-ms:2000}")
+    private long backoffInitialMs;
+
+    @Value("${callback.dispatcher.backoff.max-ms:600000}")
+    private long backoffMaxMs;
+
+    @Value("${callback.dispatcher.circuit.failure-threshold:5}")
+    private int circuitFailureThreshold;
+
+    @Value("${callback.dispatcher.circuit.open-seconds:60}")
+    private long circuitOpenSeconds;
+
+    @Value("${callback.dispatcher.circuit.max-endpoints:10000}")
+    private long circuitMaxEndpoints;
+
+    @Value("${callback.dispatcher.circuit.idle-expire-minutes:30}")
+    private long circuitIdleExpireMinutes;
+
+    @Value("${callback.batch.max-events:100}")
+    private int batchMaxEvents;
+
+    @Value("${callback.dispatcher.retention-days:7}")
+    private long retentionDays;
+
+    @PostConstruct
+    void init() {
+        // A expiração nunca pode ser menor que o tempo aberto, senão um circuito aberto seria esquecido
+        long idleExpireSeconds = Math.max(circuitIdleExpireMinutes * 60, circuitOpenSeconds * 2);
+        circuits = CacheBuilder.newBuilder()
+                .maximumSize(circuitMaxEndpoints)
+                .expireAfterAccess(idleExpireSeconds, TimeUnit.SECONDS)
+                .build();
+        ConnectionProvider connectionProvider = ConnectionProvider.builder("client-callbacks")
+                .maxConnections(maxInFlight)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .responseTimeout(Duration.ofSeconds(requestTimeoutSeconds))
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5000);
+        this.webClient = webClientBuilder.clone()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+
+    @Scheduled(fixedDelayString = "${callback.dispatcher.poll-interval-ms:500}")
+    public void dispatch() {
+        if (!enabled) {
+            return;
+        }
+        flushOutcomes();
+
+        int capacity = Math.min(batchSize, maxInFlight - inFlight.get());
+        if (capacity <= 0) {
+            return;
+        }
+        List<CallbackDelivery> claimed;
+        try {
+            claimed = outbox.claimDue(capacity, Duration.ofSeconds(leaseSeconds));
+        } catch (Exception e) {
+            log.error("Falha ao reservar callbacks pendentes: {}", e.getMessage(), e);
+            return;
+        }
+
+        List<CallbackDelivery> individual = new ArrayList<>();
+        Map<String, List<CallbackDelivery>> batchGroups = new LinkedHashMap<>();
+        for (CallbackDelivery delivery : claimed) {
+            if (delivery.isBatchable()) {
+                batchGroups.computeIfAbsent(delivery.getCompanyId() + "|" + delivery.getTargetUrl(), k -> new ArrayList<>()).add(delivery);
+            } else {
+                individual.add(delivery);
+            }
+        }
+
+        for (CallbackDelivery delivery : individual) {
+            dispatchRequest(List.of(delivery), delivery.getPayload(), null, delivery.getLogContext());
+        }
+        if (!batchGroups.isEmpty()) {
+            Map<Long, String> secrets = loadSigningSecrets(batchGroups.values());
+            for (List<CallbackDelivery> group : batchGroups.values()) {
+                for (int from = 0; from < group.size(); from += batchMaxEvents) {
+                    List<CallbackDelivery> chunk = group.subList(from, Math.min(group.size(), from + batchMaxEvents));
+                    dispatchBatch(chunk, secrets.get(chunk.get(0).getCompanyId()));
+                }
+            }
+        }
+        flushOutcomes();
+    }
+
+    /**
+     * Aplica o circuit breaker da URL e o limite de concorrência da empresa a uma requisição
+     * (individual ou lote) e a dispara, ou adia todas as entregas envolvidas.
+     */
+    private void dispatchRequest(List<CallbackDelivery> deliveries, String body, HttpHeaders extraHeaders, String logContext) {
+        CallbackDelivery first = deliveries.get(0);
+        long now = System.currentTimeMillis();
+        EndpointCircuit circuit = circuits.asMap().computeIfAbsent(first.getTargetUrl(), url -> new EndpointCircuit());
+        if (!circuit.tryAcquire(now)) {
+            deliveries.forEach(d -> outcomes.add(deferred(d, circuit.openUntil())));
+            return;
+        }
+        AtomicInteger companyInFlight = inFlightByCompany.computeIfAbsent(first.getCompanyId(), id -> new AtomicInteger());
+        if (companyInFlight.incrementAndGet() > perCompanyMaxInFlight) {
+            companyInFlight.decrementAndGet();
+            circuit.release();
+            deliveries.forEach(d -> outcomes.add(deferred(d, now + 1000)));
+            return;
+        }
+        send(deliveries, body, extraHeaders, logContext, circuit, companyInFlight);
+    }
+
+    private void dispatchBatch(List<CallbackDelivery> chunk, String signingSecret) {
+        CallbackDelivery first = chunk.get(0);
+        String batchId = UUID.randomUUID().toString();
+        BatchCallbackPayload payload = BatchCallbackPayload.builder()
+                .batchId(batchId)
+                .companyId(first.getCompanyId())
+                .sentAt(LocalDateTime.now())
+                .count(chunk.size())
+                .events(chunk.stream()
+                        .map(d -> new BatchCallbackPayload.BatchEvent(String.valueOf(d.getId()), d.getEventType(), d.getPayload()))
+                        .toList())
+                .build();
+        String body;
+        try {
+            body = objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            log.error("Falha ao serializar lote de callbacks da empresa {}: {}", first.getCompanyId(), e.getMessage());
+            chunk.forEach(d -> outcomes.add(new DeliveryOutcome(d, DeliveryStatus.FAILED_FINAL, null, true, null, e.getMessage())));
+            return;
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(BATCH_ID_HEADER, batchId);
+        if (signingSecret != null && !signingSecret.isBlank()) {
+            headers.set(SIGNATURE_HEADER, "sha256=" + hmacSha256Hex(signingSecret, body));
+        } else {
+            log.warn("Empresa {} sem segredo de assinatura configurado. Lote {} enviado sem assinatura.", first.getCompanyId(), batchId);
+        }
+        dispatchRequest(chunk, body, headers,
+                String.format("Lote %s (%d eventos) para Empresa %d", batchId, chunk.size(), first.getCompanyId()));
+    }
+
+    private void send(List<CallbackDelivery> deliveries, String body, HttpHeaders extraHeaders, String logContext,
+                      EndpointCircuit circuit, AtomicInteger companyInFlight) {
+        inFlight.incrementAndGet();
+        webClient.post()
+                .uri(deliveries.get(0).getTargetUrl())
+                .contentType(MediaType.APPLICATION_JSON)
+                .headers(headers -> {
+                    if (extraHeaders != null) headers.addAll(extraHeaders);
+                })
+                .bodyValue(body)
+                .retrieve()
+                .toBodilessEntity()
+                .timeout(Duration.ofSeconds(requestTimeoutSeconds))
+                .doFinally(signal -> {
+                    companyInFlight.decrementAndGet();
+                    inFlight.decrementAndGet();
+                })
+                .subscribe(
+                        response -> {
+                            circuit.onSuccess();
+                            log.info("Callback para cliente enviado com sucesso. Contexto: [{}]. Status HTTP: {}",
+                                    logContext, response.getStatusCode().value());
+                            deliveries.forEach(d -> outcomes.add(new DeliveryOutcome(d, DeliveryStatus.SUCCESS, null, true,
+                                    response.getStatusCode().value(), null)));
+                        },
+                        error -> {
+                            if (isEndpointFailure(error)) {
+                                circuit.onFailure(System.currentTimeMillis(), circuitFailureThreshold, circuitOpenSeconds * 1000);
+                            } else {
+                                circuit.onSuccess(); // O endpoint respondeu: o erro é do payload, não da disponibilidade
+                            }
+                            deliveries.forEach(d -> outcomes.add(failed(d, error)));
+                        });
+    }
+
+    private Map<Long, String> loadSigningSecrets(Collection<List<CallbackDelivery>> groups) {
+        Set<Long> companyIds = groups.stream().map(g -> g.get(0).getCompanyId()).collect(Collectors.toSet());
+        Map<Long, String> secrets = new HashMap<>();
+        try {
+            companyRepository.findAllById(companyIds)
+                    .forEach(company -> secrets.put(company.getId(), company.getCallbackSigningSecret()));
+        } catch (Exception e) {
+            log.error("Falha ao carregar segredos de assinatura dos lotes de callback: {}", e.getMessage());
+        }
+        return secrets;
+    }
+
+    private static String hmacSha256Hex(String secret, String body) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return HexFormat.of().formatHex(mac.doFinal(body.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new IllegalStateException("Falha ao assinar lote de callbacks", e);
+        }
+    }
+
+    /**
+     * Falhas que indicam endpoint indisponível/sobrecarregado: erros de rede/timeout, 5xx, 408 e 429.
+     * Os demais 4xx são rejeições do payload (não contam para o circuit breaker nem são retentados).
+     */
+    private static boolean isEndpointFailure(Throwable error) {
+        if (error instanceof WebClientResponseException wcre) {
+            int httpStatus = wcre.getStatusCode().value();
+            return wcre.getStatusCode().is5xxServerError() || httpStatus == 408 || httpStatus == 429;
+        }
+        return true;
+    }
+
+    private DeliveryOutcome failed(CallbackDelivery delivery, Throwable error) {
+        Integer httpStatus = error instanceof WebClientResponseException wcre ? wcre.getStatusCode().value() : null;
+        boolean retryable = isEndpointFailure(error);
+        int attempt = delivery.getAttempts() + 1;
+        if (!retryable || attempt >= maxAttempts) {
+            log.error("FALHA FINAL ao enviar callback para cliente após {} tentativa(s). Contexto: [{}]. Erro: {}",
+                    attempt, delivery.getLogContext(), error.getMessage());
+            return new DeliveryOutcome(delivery, DeliveryStatus.FAILED_FINAL, null, true, httpStatus, error.getMessage());
+        }
+        LocalDateTime nextAttemptAt = LocalDateTime.now().plus(Duration.ofMillis(backoffWithJitter(attempt)));
+        log.warn("Falha ao enviar callback para cliente (tentativa {}/{}), nova tentativa em {}. Contexto: [{}]. Erro: {}",
+                attempt, maxAttempts, nextAttemptAt, delivery.getLogContext(), error.getMessage());
+        return new DeliveryOutcome(delivery, DeliveryStatus.PENDING, nextAttemptAt, true, httpStatus, error.getMessage());
+    }
+
+    private DeliveryOutcome deferred(CallbackDelivery delivery, long retryAtMillis) {
+        LocalDateTime nextAttemptAt = LocalDateTime.now().plus(Duration.ofMillis(Math.max(0, retryAtMillis - System.currentTimeMillis())));
+        return new DeliveryOutcome(delivery, DeliveryStatus.PENDING, nextAttemptAt, false, null, null);
+    }
+
+    /** Backoff exponencial com "equal jitter": metade fixa, metade aleatória. */
+    private long backoffWithJitter(int attempt) {
+        long exponential = backoffInitialMs << Math.min(attempt - 1, 20);
+        long capped = Math.min(backoffMaxMs, exponential);
+        long half = capped / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    private void flushOutcomes() {
+        if (outcomes.isEmpty()) {
+            return;
+        }
+        List<DeliveryOutcome> batch = new ArrayList<>();
+        DeliveryOutcome next;
+        while ((next = outcomes.poll()) != null) {
+            batch.add(next);
+        }
+        try {
+            outbox.applyOutcomes(batch);
+        } catch (Exception e) {
+            // As entregas continuam IN_PROGRESS e serão reprocessadas quando o lease expirar
+            log.error("Falha ao gravar resultado de {} callbacks: {}", batch.size(), e.getMessage(), e);
+            return;
+        }
+        batch.stream()
+                .filter(o -> o.status() == DeliveryStatus.FAILED_FINAL)
+                .forEach(o -> adminNotificationService.notifyCallbackFailure(
+                        "Falha Crítica de Callback - Cliente Externo",
+                        String.format("Não foi possível enviar callback para a URL %s. Contexto: [%s]. Erro: %s",
+                                o.delivery().getTargetUrl(), o.delivery().getLogContext(), o.error())));
+    }
+
+    @Scheduled(cron = "${callback.dispatcher.purge-cron:0 30 3 * * *}")
+    public void purgeFinishedDeliveries() {
+        int removed = outbox.purgeFinishedBefore(LocalDateTime.now().minusDays(retentionDays));
+        log.info("Limpeza do outbox de callbacks: {} entregas finalizadas removidas.", removed);
+    }
+
+    /**
+     * Circuit breaker de um endpoint (URL). Fechado: todas as entregas passam. Aberto: nenhuma passa até
+     * {@code openUntil}. Depois disso, uma única entrega de prova (half-open) decide se o circuito fecha.
+     */
+    private static final class EndpointCircuit {
+        private int consecutiveFailures;
+        private long openUntil;
+        private boolean trialInFlight;
+
+        synchronized boolean tryAcquire(long now) {
+            if (openUntil == 0) {
+                return true;
+            }
+            if (now < openUntil || trialInFlight) {
+                return false;
+            }
+            trialInFlight = true;
+            return true;
+        }
+
+        synchronized void release() {
+            trialInFlight = false;
+        }
+
+        synchronized void onSuccess() {
+            consecutiveFailures = 0;
+            openUntil = 0;
+            trialInFlight = false;
+        }
+
+        synchronized void onFailure(long now, int threshold, long openMillis) {
+            consecutiveFailures++;
+            if (trialInFlight || consecutiveFailures >= threshold) {
+                openUntil = now + openMillis;
+            }
+            trialInFlight = false;
+        }
+
+        synchronized long openUntil() {
+            return openUntil;
+        }
+    }
+}
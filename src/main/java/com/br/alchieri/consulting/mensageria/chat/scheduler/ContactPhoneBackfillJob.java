@@ -0,0 +1,60 @@
+package com.br.alchieri.consulting.mensageria.chat.scheduler;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import com.br.alchieri.consulting.mensageria.chat.repository.WhatsAppMessageLogRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Preenche a coluna contact_phone dos logs gravados antes de ela existir.
+ *
+ * Percorre a tabela em faixas de ID (uma transação curta por faixa, sem travar a tabela inteira) e só
+ * altera linhas ainda nulas, então é idempotente: pode ser interrompido e retomado na próxima subida,
+ * e rodar em várias réplicas ao mesmo tempo apenas repete trabalho. Logs novos já são gravados com a coluna.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ContactPhoneBackfillJob {
+
+    private final WhatsAppMessageLogRepository messageLogRepository;
+
+    @Value("${message-log.contact-phone-backfill.enabled:true}")
+    private boolean enabled;
+
+    @Value("${message-log.contact-phone-backfill.batch-size:5000}")
+    private int batchSize;
+
+    @Async("taskExecutor")
+    @EventListener(ApplicationReadyEvent.class)
+    public void run() {
+        if (!enabled) {
+            return;
+        }
+        Long firstId = messageLogRepository.findMinIdWithoutContactPhone();
+        if (firstId == null) {
+            return; // Nada a preencher
+        }
+        long maxId = messageLogRepository.findMaxId();
+        log.info("Backfill de contact_phone: preenchendo logs de ID {} a {}.", firstId, maxId);
+
+        long updated = 0;
+        long started = System.currentTimeMillis();
+        for (long fromId = firstId - 1; fromId < maxId; fromId += batchSize) {
+            try {
+                updated += messageLogRepository.backfillContactPhone(fromId, fromId + batchSize);
+            } catch (Exception e) {
+                log.error("Backfill de contact_phone interrompido na faixa de IDs ({}, {}]: {}. Será retomado na próxima subida.",
+                        fromId, fromId + batchSize, e.getMessage());
+                return;
+            }
+        }
+        log.info("Backfill de contact_phone concluído: {} logs atualizados em {} ms.", updated, System.currentTimeMillis() - started);
+    }
+}
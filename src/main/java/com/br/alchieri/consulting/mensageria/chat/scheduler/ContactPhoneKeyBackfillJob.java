@@ -0,0 +1,65 @@
+package com.br.alchieri.consulting.mensageria.chat.scheduler;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import com.br.alchieri.consulting.mensageria.chat.repository.ContactRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Preenche a coluna phone_key dos contatos gravados antes de ela existir.
+ *
+ * Mesmo esquema do {@link ContactPhoneBackfillJob}: faixas de ID em transações curtas, só linhas ainda nulas
+ * (idempotente). Enquanto não termina, a busca por telefone ainda acha esses contatos pelo número
+ * ({@code ContactRepository#findByCompanyAndPhone}); contatos novos ou alterados já são gravados com a chave.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ContactPhoneKeyBackfillJob {
+
+    private final ContactRepository contactRepository;
+
+    @Value("${contact.phone-key-backfill.enabled:true}")
+    private boolean enabled;
+
+    @Value("${contact.phone-key-backfill.batch-size:5000}")
+    private int batchSize;
+
+    @Async("taskExecutor")
+    @EventListener(ApplicationReadyEvent.class)
+    public void run() {
+        if (!enabled) {
+            return;
+        }
+        Integer columnLength = contactRepository.findPhoneKeyColumnLength();
+        if (columnLength != null && columnLength < 255) {
+            contactRepository.widenPhoneKeyColumn();
+            log.info("Coluna contacts.phone_key ampliada de varchar({}) para varchar(255).", columnLength);
+        }
+        Long firstId = contactRepository.findMinIdWithoutPhoneKey();
+        if (firstId == null) {
+            return; // Nada a preencher
+        }
+        long maxId = contactRepository.findMaxId();
+        log.info("Backfill de phone_key: preenchendo contatos de ID {} a {}.", firstId, maxId);
+
+        long updated = 0;
+        long started = System.currentTimeMillis();
+        for (long fromId = firstId - 1; fromId < maxId; fromId += batchSize) {
+            try {
+                updated += contactRepository.backfillPhoneKey(fromId, fromId + batchSize);
+            } catch (Exception e) {
+                log.error("Backfill de phone_key interrompido na faixa de IDs ({}, {}]: {}. Será retomado na próxima subida.",
+                        fromId, fromId + batchSize, e.getMessage());
+                return;
+            }
+        }
+        log.info("Backfill de phone_key concluído: {} contatos atualizados em {} ms.", updated, System.currentTimeMillis() - started);
+    }
+}
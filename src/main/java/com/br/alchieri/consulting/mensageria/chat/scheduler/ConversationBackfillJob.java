@@ -0,0 +1,96 @@
+package com.br.alchieri.consulting.mensageria.chat.scheduler;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import com.br.alchieri.consulting.mensageria.chat.repository.ConversationRepository;
+import com.br.alchieri.consulting.mensageria.chat.repository.WhatsAppMessageLogRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Popula a tabela de resumos de conversa a partir do histórico de whatsapp_message_logs (primeira subida).
+ *
+ * Roda em background, em faixas de ID (uma transação curta por faixa), em uma única réplica por vez
+ * (lock no Redis). O último ID processado fica no Redis, então uma execução interrompida é retomada de onde
+ * parou na próxima subida. Mensagens novas já atualizam o resumo pelo {@code ConversationSummaryUpdater}.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ConversationBackfillJob {
+
+    private static final String LOCK_KEY = "conversation_backfill:lock";
+    private static final String CURSOR_KEY = "conversation_backfill:cursor"; // Último ID processado ou DONE
+    private static final String DONE = "done";
+
+    private final ConversationRepository conversationRepository;
+    private final WhatsAppMessageLogRepository messageLogRepository;
+    private final StringRedisTemplate redisTemplate;
+
+    @Value("${conversation.backfill-on-startup:true}")
+    private boolean enabled;
+
+    @Value("${conversation.backfill.batch-size:20000}")
+    private int batchSize;
+
+    @Async("taskExecutor")
+    @EventListener(ApplicationReadyEvent.class)
+    public void run() {
+        if (!enabled) {
+            return;
+        }
+        String cursor = redisTemplate.opsForValue().get(CURSOR_KEY);
+        if (DONE.equals(cursor)) {
+            return;
+        }
+        if (cursor == null && conversationRepository.count() > 0) {
+            // Tabela já populada antes do controle por cursor
+            redisTemplate.opsForValue().set(CURSOR_KEY, DONE);
+            return;
+        }
+        // Uma réplica por vez: as demais sobem sem esperar
+        Boolean acquired = redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, "1", Duration.ofHours(6));
+        if (!Boolean.TRUE.equals(acquired)) {
+            log.info("Backfill de conversas já em execução em outra instância.");
+            return;
+        }
+        try {
+            backfill(cursor);
+        } finally {
+            redisTemplate.delete(LOCK_KEY);
+        }
+    }
+
+    private void backfill(String cursor) {
+        Long maxId = messageLogRepository.findMaxId();
+        if (maxId == null) {
+            redisTemplate.opsForValue().set(CURSOR_KEY, DONE); // Sem histórico
+            return;
+        }
+        long fromId = cursor != null ? Long.parseLong(cursor) : messageLogRepository.findMinId() - 1;
+        log.info("Backfill de conversas: processando logs de ID {} a {}.", fromId + 1, maxId);
+
+        long upserted = 0;
+        long started = System.currentTimeMillis();
+        for (; fromId < maxId; fromId += batchSize) {
+            try {
+                upserted += conversationRepository.backfillFromMessageLogs(fromId, fromId + batchSize);
+                redisTemplate.opsForValue().set(CURSOR_KEY, Long.toString(fromId + batchSize));
+            } catch (Exception e) {
+                log.error("Backfill de conversas interrompido na faixa de IDs ({}, {}]: {}. Será retomado na próxima subida.",
+                        fromId, fromId + batchSize, e.getMessage());
+                return;
+            }
+        }
+        redisTemplate.opsForValue().set(CURSOR_KEY, DONE);
+        log.info("Backfill de conversas concluído: {} resumos gravados em {} ms.", upserted, System.currentTimeMillis() - started);
+    }
+}
@@ -0,0 +1,122 @@
+package com.br.alchieri.consulting.mensageria.chat.scheduler;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.br.alchieri.consulting.mensageria.chat.repository.MessageLogPartitionDao;
+import com.br.alchieri.consulting.mensageria.chat.repository.MessageLogPartitionDao.PartitionInfo;
+import com.br.alchieri.consulting.mensageria.chat.repository.MessageWamidRepository;
+import com.br.alchieri.consulting.mensageria.chat.service.MessageLogArchiveService;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Manutenção das partições mensais de whatsapp_message_logs: cria os próximos meses com antecedência
+ * e dispara o arquivamento das partições fora da retenção. Só atua depois que a tabela foi convertida
+ * pelo script {@code db/partitioning/whatsapp_message_logs_partitioning.sql}. Também limpa o registro de
+ * WAMIDs da deduplicação de webhooks (message_wamids), que vale com ou sem particionamento.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MessageLogPartitionManager {
+
+    private static final String ARCHIVE_LOCK_KEY = "message_log_archive:lock";
+
+    private final MessageLogPartitionDao partitionDao;
+    private final MessageLogArchiveService archiveService;
+    private final StringRedisTemplate redisTemplate;
+    private final MessageWamidRepository messageWamidRepository;
+
+    @Value("${message-log.partitioning.enabled:false}")
+    private boolean partitioningEnabled;
+
+    @Value("${message-log.partitioning.months-ahead:2}")
+    private int monthsAhead;
+
+    @Value("${message-log.archive.enabled:false}")
+    private boolean archiveEnabled;
+
+    // A Meta reentrega webhooks por até 7 dias; além disso, o WAMID não precisa mais ser lembrado
+    @Value("${message-log.wamid-dedup.retention-days:30}")
+    private int wamidRetentionDays;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        ensureFuturePartitions();
+    }
+
+    @Scheduled(cron = "${message-log.partitioning.cron:0 30 3 * * *}")
+    public void maintain() {
+        ensureFuturePartitions();
+        if (archiveEnabled) {
+            archiveExpired();
+        }
+        purgeWamidRegistry();
+    }
+
+    private void purgeWamidRegistry() {
+        try {
+            int removed = messageWamidRepository.deleteCreatedBefore(LocalDateTime.now().minusDays(wamidRetentionDays));
+            if (removed > 0) {
+                log.info("{} WAMIDs com mais de {} dias removidos do registro de deduplicação.", removed, wamidRetentionDays);
+            }
+        } catch (Exception e) {
+            log.error("Falha ao limpar o registro de WAMIDs: {}", e.getMessage());
+        }
+    }
+
+    private void ensureFuturePartitions() {
+        if (!partitioningEnabled) {
+            return;
+        }
+        if (!partitionDao.isPartitioned()) {
+            log.warn("message-log.partitioning.enabled=true, mas whatsapp_message_logs não é particionada. Execute o script de conversão.");
+            return;
+        }
+        // Meses já cobertos (ex.: partição legacy até o fim do mês da conversão) são ignorados
+        List<PartitionInfo> existing = partitionDao.listPartitions();
+        YearMonth current = YearMonth.now();
+        for (int i = 0; i <= monthsAhead; i++) {
+            YearMonth month = current.plusMonths(i);
+            LocalDateTime from = month.atDay(1).atStartOfDay();
+            LocalDateTime to = month.plusMonths(1).atDay(1).atStartOfDay();
+            if (existing.stream().anyMatch(partition -> partition.overlaps(from, to))) {
+                continue;
+            }
+            try {
+                partitionDao.createMonthlyPartition(month);
+            } catch (Exception e) {
+                // Outra réplica pode ter criado no mesmo instante; a DEFAULT cobre até a próxima execução
+                log.error("Falha ao criar partição de logs para {}: {}", month, e.getMessage());
+            }
+        }
+    }
+
+    private void archiveExpired() {
+        // Uma réplica por vez: o arquivamento faz upload e DROP de partições inteiras
+        Boolean acquired = redisTemplate.opsForValue().setIfAbsent(ARCHIVE_LOCK_KEY, "1", Duration.ofHours(6));
+        if (!Boolean.TRUE.equals(acquired)) {
+            log.info("Arquivamento de logs já em execução em outra instância.");
+            return;
+        }
+        try {
+            int archived = archiveService.archiveExpiredPartitions();
+            if (archived > 0) {
+                log.info("Arquivamento de logs concluído: {} partições movidas para o S3.", archived);
+            }
+        } finally {
+            redisTemplate.delete(ARCHIVE_LOCK_KEY);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.br.alchieri.consulting.mensageria.chat.service;
 
 import com.br.alchieri.consulting.mensageria.chat.dto.request.BulkMessageTemplateRequest;
+import com.br.alchieri.consulting.mensageria.chat.dto.response.BulkJobStatusResponse;
 import com.br.alchieri.consulting.mensageria.chat.dto.response.BulkMessageResponse;
 import com.br.alchieri.consulting.mensageria.model.Company;
 import com.br.alchieri.consulting.mensageria.model.User;
@@ -8,10 +9,17 @@ import com.br.alchieri.consulting.mensageria.model.User;
 public interface BulkMessageService {
 
     /**
-     * Inicia um job de envio em massa. Busca os contatos e enfileira as mensagens individuais.
+     * Inicia um job de envio em massa. Conta os contatos, valida o limite de envio e persiste o job;
+     * a resolução do público e o enfileiramento das mensagens individuais rodam em background.
      * @param request A requisição de envio em massa.
      * @param company A empresa que está fazendo a solicitação.
      * @return Uma resposta com o resumo do job iniciado.
      */
     BulkMessageResponse startBulkTemplateJob(BulkMessageTemplateRequest request, Company company, User user);
+
+    /**
+     * Retorna o progresso de um job de envio em massa (enfileiradas, enviadas, entregues, falhas).
+     * @throws org.springframework.security.access.AccessDeniedException se o job for de outra empresa.
+     */
+    BulkJobStatusResponse getJobStatus(Long jobId, User user);
 }
@@ -1,5 +1,10 @@
 package com.br.alchieri.consulting.mensageria.chat.service;
 
+import java.util.List;
+import java.util.Map;
+
+import com.br.alchieri.consulting.mensageria.chat.model.WhatsAppMessageLog;
+
 public interface CallbackService {
 
     /** Envia notificação de mensagem recebida (iniciada pelo usuário). */
@@ -8,6 +13,12 @@ public interface CallbackService {
     /** Envia notificação de atualização de status de mensagem enviada (sent, delivered, read, failed). */
     void sendStatusCallback(Long companyId, Long messageLogId);
 
+    /**
+     * Registra no outbox, em um único batch e na transação corrente, os callbacks de status dos logs informados.
+     * @param companyIdByLogId Empresa de cada log (logs sem empresa são ignorados).
+     */
+    void enqueueStatusCallbacks(List<WhatsAppMessageLog> messageLogs, Map<Long, Long> companyIdByLogId);
+
     /** Envia notificação de atualização de status de template (APPROVED, REJECTED). */
     void sendTemplateStatusCallback(Long companyId, Long clientTemplateId);
     
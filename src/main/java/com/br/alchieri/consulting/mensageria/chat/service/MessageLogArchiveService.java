@@ -0,0 +1,29 @@
+package com.br.alchieri.consulting.mensageria.chat.service;
+
+import java.time.YearMonth;
+import java.util.List;
+
+import com.br.alchieri.consulting.mensageria.chat.dto.response.MessageLogResponse;
+import com.br.alchieri.consulting.mensageria.chat.model.MessageLogArchive;
+import com.br.alchieri.consulting.mensageria.model.Company;
+
+public interface MessageLogArchiveService {
+
+    /**
+     * Arquiva no S3 as partições mensais de whatsapp_message_logs fora da janela de retenção
+     * e as remove do banco (DETACH + DROP).
+     * @return Quantidade de partições arquivadas.
+     */
+    int archiveExpiredPartitions();
+
+    /**
+     * Lista os segmentos arquivados da empresa, do mais recente para o mais antigo.
+     */
+    List<MessageLogArchive> listArchives(Company company);
+
+    /**
+     * Lê do S3 o histórico arquivado de uma conversa em um mês.
+     * @return Mensagens da mais recente para a mais antiga, limitadas a {@code limit}.
+     */
+    List<MessageLogResponse> getArchivedHistory(Company company, String contactPhoneNumber, YearMonth month, int limit);
+}
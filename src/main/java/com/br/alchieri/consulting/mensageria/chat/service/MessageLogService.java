@@ -1,9 +1,11 @@
 package com.br.alchieri.consulting.mensageria.chat.service;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
 import com.br.alchieri.consulting.mensageria.chat.dto.response.ActiveChatResponse;
 import com.br.alchieri.consulting.mensageria.chat.model.Contact;
@@ -22,10 +24,25 @@ public interface MessageLogService {
      */
     Page<WhatsAppMessageLog> getMessageHistoryForContact(Contact contact, Company company, Pageable pageable);
 
-    List<ActiveChatResponse> getActiveChats(Company company, int hours);
+    /**
+     * Lista as conversas com mensagem recebida nas últimas {@code hours} horas, da mais recente para a mais antiga.
+     * Paginação por cursor: informe {@code beforeTimestamp}/{@code beforeId} da última conversa da página anterior.
+     */
+    List<ActiveChatResponse> getActiveChats(Company company, int hours, LocalDateTime beforeTimestamp, Long beforeId, int size);
+
+    /**
+     * Lista todas as conversas da empresa (caixa de entrada), da mais recente para a mais antiga,
+     * com a mesma paginação por cursor de {@link #getActiveChats}.
+     */
+    List<ActiveChatResponse> getChatList(Company company, LocalDateTime beforeTimestamp, Long beforeId, int size);
 
-    List<ActiveChatResponse> getChatList(Company company);
     Page<WhatsAppMessageLog> getMessageHistory(String contactPhoneNumber, Company company, Pageable pageable);
 
+    /**
+     * Histórico de uma conversa paginado por cursor (keyset), da mensagem mais recente para a mais antiga.
+     * @param beforeMessageId ID da última mensagem da página anterior (null = página mais recente).
+     */
+    Slice<WhatsAppMessageLog> getMessageHistoryBefore(String contactPhoneNumber, Company company, Long beforeMessageId, int size);
+
     void logMessageReadByUser(Long contactId, User user);
 }
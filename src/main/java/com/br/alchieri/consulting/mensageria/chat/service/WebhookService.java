@@ -1,7 +1,16 @@
 package com.br.alchieri.consulting.mensageria.chat.service;
 
+import java.util.List;
+
+import com.br.alchieri.consulting.mensageria.chat.dto.webhook.WebhookEvent;
+
 public interface WebhookService {
 
+    // Atributos SQS das mensagens publicadas pela ingestão binária (corpo = bytes originais da Meta)
+    String SIGNATURE_ATTRIBUTE = "webhook-signature";
+    String RECEIVED_AT_ATTRIBUTE = "webhook-received-at";
+    String VERIFIED_ATTRIBUTE = "webhook-verified";
+
     /**
      * Verifica a assinatura da requisição de webhook usando o App Secret.
      * @param payload Corpo da requisição (raw).
@@ -27,4 +36,23 @@ public interface WebhookService {
     void queueWebhookEvent(String payload, String signature);
 
     void processWebhookPayload(String payload, String signature);
+
+    /**
+     * Enfileira o corpo já verificado exatamente como recebido: os bytes viram o corpo da mensagem SQS
+     * (sem envelope JSON) e assinatura/recebimento seguem como atributos da mensagem.
+     * @param payload Corpo bruto da requisição da Meta.
+     * @param signature O header X-Hub-Signature-256 (já validado na ingestão).
+     */
+    void queueWebhookEvent(byte[] payload, String signature);
+
+    /**
+     * Processa um payload cuja assinatura já foi verificada na ingestão.
+     */
+    void processVerifiedWebhookPayload(String payload);
+
+    /**
+     * Processa eventos já decodificados pelo WebhookEventDecoder, na ordem do payload.
+     * Falhas em um evento são registradas e não interrompem os demais.
+     */
+    void processWebhookEvents(List<WebhookEvent> events);
 }
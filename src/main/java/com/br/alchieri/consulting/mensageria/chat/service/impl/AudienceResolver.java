@@ -0,0 +1,162 @@
+package com.br.alchieri.consulting.mensageria.chat.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import com.br.alchieri.consulting.mensageria.chat.dto.audience.AudienceTarget;
+import com.br.alchieri.consulting.mensageria.chat.repository.ContactRepository;
+import com.br.alchieri.consulting.mensageria.exception.BusinessException;
+import com.br.alchieri.consulting.mensageria.model.Company;
+import com.br.alchieri.consulting.mensageria.util.PhoneNumberNormalizer;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Resolve o público-alvo de envios em massa e campanhas em páginas de tamanho fixo.
+ *
+ * Segmentação por tags é paginada por keyset sobre (company_id, phoneNumber), então o heap usado
+ * independe do tamanho do público e cada número aparece uma única vez. Listas explícitas (números
+ * ou IDs) são deduplicadas e consultadas em blocos do mesmo tamanho.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AudienceResolver {
+
+    private final ContactRepository contactRepository;
+
+    @Value("${audience.page-size:1000}")
+    private int pageSize;
+
+    /**
+     * Critério de segmentação. Apenas um dos campos é considerado, na ordem:
+     * contactIds, phoneNumbers, tagIds, tagNames.
+     */
+    public record Criteria(Collection<Long> contactIds, Collection<String> phoneNumbers,
+                           Collection<Long> tagIds, Collection<String> tagNames) {
+
+        public static Criteria byContactIds(Collection<Long> contactIds) {
+            return new Criteria(contactIds, null, null, null);
+        }
+
+        public static Criteria byPhoneNumbers(Collection<String> phoneNumbers) {
+            return new Criteria(null, phoneNumbers, null, null);
+        }
+
+        public static Criteria byTagIds(Collection<Long> tagIds) {
+            return new Criteria(null, null, tagIds, null);
+        }
+
+        public static Criteria byTagNames(Collection<String> tagNames) {
+            return new Criteria(null, null, null, tagNames);
+        }
+    }
+
+    /** Quantidade de contatos do público, para checagem de limites antes do envio. */
+    public long count(Company company, Criteria criteria) {
+        if (notEmpty(criteria.contactIds())) {
+            return sumInChunks(new ArrayList<>(new LinkedHashSet<>(criteria.contactIds())),
+                    chunk -> contactRepository.countByCompanyAndIdIn(company, chunk));
+        }
+        if (notEmpty(criteria.phoneNumbers())) {
+            return sumInChunks(phoneKeys(criteria.phoneNumbers()),
+                    chunk -> contactRepository.countAudienceByPhoneKeys(company, chunk));
+        }
+        if (notEmpty(criteria.tagIds())) {
+            return contactRepository.countAudienceByTagIds(company, criteria.tagIds());
+        }
+        if (notEmpty(criteria.tagNames())) {
+            return contactRepository.countAudienceByTagNames(company, criteria.tagNames());
+        }
+        throw new BusinessException("Critério de segmentação (por tags, números ou contatos) é obrigatório.");
+    }
+
+    /**
+     * Percorre o público página a página. Cada página é consultada em sua própria transação
+     * (ou na transação do chamador) e descartada após o {@code pageConsumer}.
+     *
+     * @return Total de contatos entregues ao consumidor.
+     */
+    public long forEachPage(Company company, Criteria criteria, Consumer<List<AudienceTarget>> pageConsumer) {
+        if (notEmpty(criteria.contactIds())) {
+            List<Long> ids = new ArrayList<>(new LinkedHashSet<>(criteria.contactIds()));
+            return forEachChunk(ids, chunk -> contactRepository.findAudienceByIds(company, chunk), pageConsumer);
+        }
+        if (notEmpty(criteria.phoneNumbers())) {
+            return forEachChunk(phoneKeys(criteria.phoneNumbers()),
+                    chunk -> contactRepository.findAudienceByPhoneKeys(company, chunk), pageConsumer);
+        }
+        if (notEmpty(criteria.tagIds())) {
+            return forEachKeysetPage(afterPhone -> contactRepository.findAudiencePageByTagIds(
+                    company, criteria.tagIds(), afterPhone, PageRequest.of(0, pageSize)), pageConsumer);
+        }
+        if (notEmpty(criteria.tagNames())) {
+            return forEachKeysetPage(afterPhone -> contactRepository.findAudiencePageByTagNames(
+                    company, criteria.tagNames(), afterPhone, PageRequest.of(0, pageSize)), pageConsumer);
+        }
+        throw new BusinessException("Critério de segmentação (por tags, números ou contatos) é obrigatório.");
+    }
+
+    private long forEachKeysetPage(Function<String, List<AudienceTarget>> pageLoader,
+                                   Consumer<List<AudienceTarget>> pageConsumer) {
+        long total = 0;
+        String afterPhone = "";
+        while (true) {
+            List<AudienceTarget> page = pageLoader.apply(afterPhone);
+            if (page.isEmpty()) {
+                return total;
+            }
+            pageConsumer.accept(page);
+            total += page.size();
+            if (page.size() < pageSize) {
+                return total;
+            }
+            afterPhone = page.get(page.size() - 1).phoneNumber();
+        }
+    }
+
+    private <T> long forEachChunk(List<T> keys, Function<List<T>, List<AudienceTarget>> chunkLoader,
+                                  Consumer<List<AudienceTarget>> pageConsumer) {
+        long total = 0;
+        for (int from = 0; from < keys.size(); from += pageSize) {
+            List<AudienceTarget> page = chunkLoader.apply(keys.subList(from, Math.min(keys.size(), from + pageSize)));
+            if (!page.isEmpty()) {
+                pageConsumer.accept(page);
+                total += page.size();
+            }
+        }
+        return total;
+    }
+
+    private <T> long sumInChunks(List<T> keys, ToLongFunction<List<T>> counter) {
+        long total = 0;
+        for (int from = 0; from < keys.size(); from += pageSize) {
+            total += counter.applyAsLong(keys.subList(from, Math.min(keys.size(), from + pageSize)));
+        }
+        return total;
+    }
+
+    // Chaves canônicas distintas: o mesmo celular com e sem o 9º dígito conta uma única vez
+    private static List<String> phoneKeys(Collection<String> phoneNumbers) {
+        LinkedHashSet<String> keys = new LinkedHashSet<>();
+        for (String number : phoneNumbers) {
+            String key = PhoneNumberNormalizer.phoneKey(number);
+            if (key != null) keys.add(key);
+        }
+        return new ArrayList<>(keys);
+    }
+
+    private static boolean notEmpty(Collection<?> values) {
+        return values != null && !values.isEmpty();
+    }
+}
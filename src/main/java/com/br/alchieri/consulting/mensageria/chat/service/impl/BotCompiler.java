@@ -0,0 +1,262 @@
+package com.br.alchieri.consulting.mensageria.chat.service.impl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.br.alchieri.consulting.mensageria.chat.model.Bot;
+import com.br.alchieri.consulting.mensageria.chat.model.BotOption;
+import com.br.alchieri.consulting.mensageria.chat.model.BotStep;
+import com.br.alchieri.consulting.mensageria.chat.model.ClientTemplate;
+import com.br.alchieri.consulting.mensageria.chat.model.Flow;
+import com.br.alchieri.consulting.mensageria.chat.model.enums.FlowStatus;
+import com.br.alchieri.consulting.mensageria.chat.repository.BotRepository;
+import com.br.alchieri.consulting.mensageria.chat.repository.BotStepRepository;
+import com.br.alchieri.consulting.mensageria.chat.repository.ClientTemplateRepository;
+import com.br.alchieri.consulting.mensageria.chat.repository.FlowRepository;
+import com.br.alchieri.consulting.mensageria.service.impl.TenantConfigCache;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Compila o grafo Bot/BotStep/BotOption em um {@link CompiledBot}: palavras-chave normalizadas por passo,
+ * menus de texto já montados e referências de Flow/Template/mídia resolvidas.
+ *
+ * O resultado fica no cache {@value TenantConfigCache#COMPILED_BOTS} pelo ID do bot, junto com a
+ * {@code structureVersion} compilada. Um bot lido com outra versão (estrutura alterada, inclusive em outro nó)
+ * é recompilado e substitui a entrada; quem altera a estrutura chama {@link #recompileAfterCommit}.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BotCompiler {
+
+    private static final String TECHNICAL_ERROR = "Desculpe, ocorreu um erro técnico no bot.";
+
+    private final BotRepository botRepository;
+    private final BotStepRepository botStepRepository;
+    private final FlowRepository flowRepository;
+    private final ClientTemplateRepository templateRepository;
+    private final CacheManager cacheManager;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Versão compilada correspondente à {@code structureVersion} do bot informado.
+     */
+    public CompiledBot compiled(Bot bot) {
+        long version = versionOf(bot);
+        Cache cache = cacheManager.getCache(TenantConfigCache.COMPILED_BOTS);
+        CompiledBot current = cache != null ? cache.get(bot.getId(), CompiledBot.class) : null;
+        if (current != null && current.version() == version) {
+            return current;
+        }
+        CompiledBot compiled = compile(bot, version);
+        if (cache != null) {
+            cache.put(bot.getId(), compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Recompila o bot após o commit da alteração de estrutura, para que a próxima mensagem já use a nova versão.
+     */
+    public void recompileAfterCommit(Long botId) {
+        if (botId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    recompile(botId);
+                }
+            });
+        } else {
+            recompile(botId);
+        }
+    }
+
+    private void recompile(Long botId) {
+        try {
+            botRepository.findById(botId).ifPresent(this::compiled);
+        } catch (Exception e) {
+            // A compilação é refeita na próxima mensagem
+            log.error("Falha ao recompilar o bot ID {}: {}", botId, e.getMessage(), e);
+        }
+    }
+
+    private CompiledBot compile(Bot bot, long version) {
+        Map<Long, BotStep> graph = new HashMap<>();
+        botStepRepository.findGraphByBotId(bot.getId()).forEach(step -> graph.put(step.getId(), step));
+
+        // Raiz ou destinos fora dos passos do bot (ex.: ligados via linkSteps)
+        Set<Long> missing = new HashSet<>();
+        if (bot.getRootStep() != null) {
+            missing.add(bot.getRootStep().getId());
+        }
+        while (true) {
+            for (BotStep step : graph.values()) {
+                for (BotOption option : step.getOptions()) {
+                    if (option.getTargetStep() != null) {
+                        missing.add(option.getTargetStep().getId());
+                    }
+                }
+            }
+            missing.removeAll(graph.keySet());
+            if (missing.isEmpty()) {
+                break;
+            }
+            List<BotStep> loaded = botStepRepository.findGraphByIdIn(missing);
+            if (loaded.isEmpty()) {
+                break;
+            }
+            loaded.forEach(step -> graph.put(step.getId(), step));
+            missing.clear();
+        }
+
+        Map<Long, CompiledBot.Step> steps = new HashMap<>();
+        for (BotStep step : graph.values()) {
+            steps.put(step.getId(), compileStep(step));
+        }
+
+        Long rootStepId = bot.getRootStep() != null ? bot.getRootStep().getId() : null;
+        log.info("Bot '{}' (ID {}) compilado na versão {} com {} passos.", bot.getName(), bot.getId(), version, steps.size());
+        return new CompiledBot(bot.getId(), version, rootStepId, Map.copyOf(steps));
+    }
+
+    private CompiledBot.Step compileStep(BotStep step) {
+        List<BotOption> sortedOptions = new ArrayList<>(step.getOptions());
+        sortedOptions.sort(Comparator.comparing(BotOption::getSequence, Comparator.nullsLast(Integer::compare)));
+
+        // Em palavras-chave repetidas vale a primeira na ordem de exibição
+        Map<String, CompiledBot.Option> options = new HashMap<>();
+        for (BotOption option : sortedOptions) {
+            String key = CompiledBot.normalizeKeyword(option.getKeyword());
+            if (key != null) {
+                Long targetStepId = option.getTargetStep() != null ? option.getTargetStep().getId() : null;
+                options.putIfAbsent(key, new CompiledBot.Option(targetStepId, option.isHandoff()));
+            }
+        }
+
+        if (step.getStepType() == null) {
+            return new CompiledBot.Step(step.getId(), null, null, Map.copyOf(options), null, null, null, null);
+        }
+
+        try {
+            return switch (step.getStepType()) {
+                case TEXT -> textStep(step, sortedOptions, options);
+                case FLOW -> flowStep(step, options);
+                case TEMPLATE -> templateStep(step, options);
+                case MEDIA -> mediaStep(step, options);
+                case HANDOFF -> {
+                    String message = step.getContent();
+                    if (message == null || message.isBlank()) message = "Aguarde um momento.";
+                    yield new CompiledBot.Step(step.getId(), step.getStepType(), message, Map.copyOf(options), null, null, null, null);
+                }
+                default -> new CompiledBot.Step(step.getId(), step.getStepType(), step.getContent(), Map.copyOf(options), null, null, null, null);
+            };
+        } catch (Exception e) {
+            log.error("Erro ao compilar passo do bot ID {}: {}", step.getId(), e.getMessage(), e);
+            return new CompiledBot.Step(step.getId(), step.getStepType(), null, Map.copyOf(options), null, null, null, TECHNICAL_ERROR);
+        }
+    }
+
+    private CompiledBot.Step textStep(BotStep step, List<BotOption> sortedOptions, Map<String, CompiledBot.Option> options) {
+
+        StringBuilder body = new StringBuilder(Objects.toString(step.getContent(), ""));
+        if (!sortedOptions.isEmpty()) {
+            body.append("\n\n");
+            for (BotOption opt : sortedOptions) {
+                body.append("👉 *").append(opt.getKeyword()).append("* - ").append(opt.getLabel()).append("\n");
+            }
+        }
+        return new CompiledBot.Step(step.getId(), step.getStepType(), body.toString(), Map.copyOf(options), null, null, null, null);
+    }
+
+    private CompiledBot.Step flowStep(BotStep step, Map<String, CompiledBot.Option> options) throws JsonProcessingException {
+
+        Long flowId = Long.valueOf(step.getContent());
+        Flow flow = flowRepository.findById(flowId).orElse(null);
+
+        if (flow == null || flow.getStatus() != FlowStatus.PUBLISHED) {
+            return new CompiledBot.Step(step.getId(), step.getStepType(), null, Map.copyOf(options), null, null, null,
+                    "Erro técnico: Fluxo indisponível.");
+        }
+
+        String header = null;
+        String body = "Por favor, preencha os dados abaixo.";
+        String footer = null;
+        String cta = "Abrir";
+        String screen = "SUCCESS";
+
+        JsonNode metaNode = readMetadata(step);
+        if (metaNode != null) {
+            if (metaNode.has("header")) header = metaNode.path("header").asText();
+            if (metaNode.has("body")) body = metaNode.path("body").asText();
+            if (metaNode.has("footer")) footer = metaNode.path("footer").asText();
+            if (metaNode.has("cta_label")) cta = metaNode.path("cta_label").asText();
+            if (metaNode.has("screen_id")) screen = metaNode.path("screen_id").asText();
+        }
+
+        CompiledBot.FlowRef ref = new CompiledBot.FlowRef(flow.getName(), "BOT_STEP_" + step.getId(), header, body, footer, cta, screen);
+        return new CompiledBot.Step(step.getId(), step.getStepType(), null, Map.copyOf(options), ref, null, null, null);
+    }
+
+    private CompiledBot.Step templateStep(BotStep step, Map<String, CompiledBot.Option> options) throws JsonProcessingException {
+
+        Long templateId = Long.valueOf(step.getContent());
+        ClientTemplate template = templateRepository.findById(templateId).orElse(null);
+
+        if (template == null || !"APPROVED".equalsIgnoreCase(template.getStatus())) {
+            return new CompiledBot.Step(step.getId(), step.getStepType(), null, Map.copyOf(options), null, null, null,
+                    "Erro técnico: Template indisponível.");
+        }
+
+        JsonNode metaNode = readMetadata(step);
+        JsonNode components = metaNode != null && metaNode.has("components") ? metaNode.get("components") : null;
+
+        CompiledBot.TemplateRef ref = new CompiledBot.TemplateRef(template.getTemplateName(), template.getLanguage(), components);
+        return new CompiledBot.Step(step.getId(), step.getStepType(), null, Map.copyOf(options), null, ref, null, null);
+    }
+
+    private CompiledBot.Step mediaStep(BotStep step, Map<String, CompiledBot.Option> options) throws JsonProcessingException {
+
+        String type = "image";
+        String caption = null;
+
+        if (step.getMetadata() != null) {
+            JsonNode node = objectMapper.readTree(step.getMetadata());
+            if (node.has("caption")) caption = node.path("caption").asText();
+            if (node.has("type")) type = node.path("type").asText();
+        }
+
+        CompiledBot.MediaRef ref = new CompiledBot.MediaRef(step.getContent(), type, caption);
+        return new CompiledBot.Step(step.getId(), step.getStepType(), null, Map.copyOf(options), null, null, ref, null);
+    }
+
+    private JsonNode readMetadata(BotStep step) throws JsonProcessingException {
+        if (step.getMetadata() == null || step.getMetadata().isBlank()) {
+            return null;
+        }
+        return objectMapper.readTree(step.getMetadata());
+    }
+
+    private static long versionOf(Bot bot) {
+        return bot.getStructureVersion() != null ? bot.getStructureVersion() : 0L;
+    }
+}
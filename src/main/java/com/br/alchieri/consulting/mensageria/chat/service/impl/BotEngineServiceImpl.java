@@ -2,7 +2,6 @@ package com.br.alchieri.consulting.mensageria.chat.service.impl;
 
 import java.time.LocalTime;
 import java.util.List;
-import java.util.Optional;
 
 import org.springframework.stereotype.Service;
 
@@ -12,17 +11,8 @@ import com.br.alchieri.consulting.mensageria.chat.dto.request.SendTemplateMessag
 import com.br.alchieri.consulting.mensageria.chat.dto.request.SendTextMessageRequest;
 import com.br.alchieri.consulting.mensageria.chat.dto.request.TemplateComponentRequest;
 import com.br.alchieri.consulting.mensageria.chat.model.Bot;
-import com.br.alchieri.consulting.mensageria.chat.model.BotOption;
-import com.br.alchieri.consulting.mensageria.chat.model.BotStep;
-import com.br.alchieri.consulting.mensageria.chat.model.ClientTemplate;
 import com.br.alchieri.consulting.mensageria.chat.model.Contact;
-import com.br.alchieri.consulting.mensageria.chat.model.Flow;
 import com.br.alchieri.consulting.mensageria.chat.model.enums.BotTriggerType;
-import com.br.alchieri.consulting.mensageria.chat.model.enums.FlowStatus;
-import com.br.alchieri.consulting.mensageria.chat.repository.BotRepository;
-import com.br.alchieri.consulting.mensageria.chat.repository.BotStepRepository;
-import com.br.alchieri.consulting.mensageria.chat.repository.ClientTemplateRepository;
-import com.br.alchieri.consulting.mensageria.chat.repository.FlowRepository;
 import com.br.alchieri.consulting.mensageria.chat.service.BotEngineService;
 import com.br.alchieri.consulting.mensageria.chat.service.WhatsAppCloudApiService;
 import com.br.alchieri.consulting.mensageria.model.Company;
@@ -31,9 +21,8 @@ import com.br.alchieri.consulting.mensageria.model.WhatsAppPhoneNumber;
 import com.br.alchieri.consulting.mensageria.model.enums.ConversationState;
 import com.br.alchieri.consulting.mensageria.model.redis.UserSession;
 import com.br.alchieri.consulting.mensageria.service.impl.SessionService;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.br.alchieri.consulting.mensageria.service.impl.TenantConfigCache;
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.RequiredArgsConstructor;
@@ -44,13 +33,11 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class BotEngineServiceImpl implements BotEngineService {
 
-    private final BotRepository botRepository;
-    private final BotStepRepository botStepRepository;
-    private final FlowRepository flowRepository;
-    private final ClientTemplateRepository templateRepository;
+    private final BotCompiler botCompiler;
 
     private final WhatsAppCloudApiService whatsAppService;
     private final SessionService sessionService;
+    private final TenantConfigCache tenantConfigCache;
     private final CommerceFlowHandler commerceHandler;
 
     private final ObjectMapper objectMapper;
@@ -59,14 +46,20 @@ public class BotEngineServiceImpl implements BotEngineService {
     public boolean tryTriggerBot(Company company, Contact contact, UserSession session, User systemUser, 
             WhatsAppPhoneNumber channel) {
         
-        List<Bot> bots = botRepository.findByCompanyAndIsActiveTrue(company);
+        List<Bot> bots = tenantConfigCache.findActiveBots(company);
 
         for (Bot bot : bots) {
             if (shouldTrigger(bot)) {
+                CompiledBot compiled = botCompiler.compiled(bot);
+                CompiledBot.Step rootStep = compiled.step(compiled.rootStepId());
+                if (rootStep == null) {
+                    log.warn("Bot '{}' (ID {}) sem passo raiz; ignorado.", bot.getName(), bot.getId());
+                    continue;
+                }
                 log.info("Iniciando Bot '{}' para {} via canal {}", bot.getName(), contact.getPhoneNumber(), channel.getPhoneNumberId());
                 session.setBotActive(true);
                 session.setCurrentBotId(bot.getId());
-                executeStep(bot.getRootStep(), contact, session, systemUser, channel);
+                executeStep(rootStep, contact, session, systemUser, channel);
                 return true;
             }
         }
@@ -127,26 +120,22 @@ public class BotEngineServiceImpl implements BotEngineService {
     // --- EXECUÇÃO PADRÃO DO BOT ---
 
     private void processStandardBotFlow(String input, Contact contact, UserSession session, User systemUser, WhatsAppPhoneNumber channel) {
-        Long stepId = session.getCurrentStepId();
-        BotStep currentStep = botStepRepository.findById(stepId).orElse(null);
+        CompiledBot bot = findRunningBot(session, channel);
+        CompiledBot.Step currentStep = bot != null ? bot.step(session.getCurrentStepId()) : null;
 
         if (currentStep == null) {
             sessionService.resetSession(session);
             return;
         }
 
-        Optional<BotOption> match = currentStep.getOptions().stream()
-                .filter(opt -> checkMatch(input, opt.getKeyword()))
-                .findFirst();
+        CompiledBot.Option selectedOption = currentStep.match(input);
 
-        if (match.isPresent()) {
-            BotOption selectedOption = match.get();
-            
-            if (selectedOption.isHandoff()) {
+        if (selectedOption != null) {
+            if (selectedOption.handoff()) {
                 sendText(contact, "Transferindo para um atendente...", channel, systemUser);
                 executeHandoffStep(currentStep, contact, session, systemUser, channel); 
-            } else if (selectedOption.getTargetStep() != null) {
-                executeStep(selectedOption.getTargetStep(), contact, session, systemUser, channel);
+            } else if (selectedOption.targetStepId() != null && bot.step(selectedOption.targetStepId()) != null) {
+                executeStep(bot.step(selectedOption.targetStepId()), contact, session, systemUser, channel);
             } else {
                 sessionService.resetSession(session);
             }
@@ -155,131 +144,110 @@ public class BotEngineServiceImpl implements BotEngineService {
         }
     }
 
-    private void executeStep(BotStep step, Contact contact, UserSession session, User systemUser, WhatsAppPhoneNumber channel) {
-        session.setCurrentStepId(step.getId());
+    /**
+     * Versão compilada do bot da sessão, conferida contra a lista de bots ativos da empresa
+     * (null se o bot foi removido ou desativado).
+     */
+    private CompiledBot findRunningBot(UserSession session, WhatsAppPhoneNumber channel) {
+        Long botId = session.getCurrentBotId();
+        if (botId == null || channel == null || channel.getCompany() == null) {
+            return null;
+        }
+        return tenantConfigCache.findActiveBots(channel.getCompany()).stream()
+                .filter(bot -> botId.equals(bot.getId()))
+                .findFirst()
+                .map(botCompiler::compiled)
+                .orElse(null);
+    }
+
+    private void executeStep(CompiledBot.Step step, Contact contact, UserSession session, User systemUser, WhatsAppPhoneNumber channel) {
+        session.setCurrentStepId(step.id());
         sessionService.saveSession(session);
 
+        if (step.unavailableMessage() != null) {
+            sendText(contact, step.unavailableMessage(), channel, systemUser);
+            return;
+        }
+
         try {
-            switch (step.getStepType()) {
-                case TEXT -> executeTextStep(step, contact, systemUser, channel);
+            switch (step.type()) {
+                case TEXT -> sendText(contact, step.text(), channel, systemUser);
                 case FLOW -> executeFlowStep(step, contact, systemUser, channel);
                 case TEMPLATE -> executeTemplateStep(step, contact, systemUser, channel);
                 case MEDIA -> executeMediaStep(step, contact, systemUser, channel);
                 case HANDOFF -> executeHandoffStep(step, contact, session, systemUser, channel);
                 case END -> executeEndStep(step, contact, session, systemUser, channel);
-                default -> {
-                    log.warn("Tipo de passo desconhecido: {}", step.getStepType());
+                case null, default -> {
+                    log.warn("Tipo de passo desconhecido: {}", step.type());
                     sendText(contact, "Erro: Tipo de passo não suportado.", channel, systemUser);
                 }
             }
         } catch (Exception e) {
-            log.error("Erro crítico ao executar passo do bot ID {}: {}", step.getId(), e.getMessage(), e);
+            log.error("Erro crítico ao executar passo do bot ID {}: {}", step.id(), e.getMessage(), e);
             sendText(contact, "Desculpe, ocorreu um erro técnico no bot.", channel, systemUser);
         }
     }
 
-    private void executeTextStep(BotStep step, Contact contact, User systemUser, WhatsAppPhoneNumber channel) {
-        
-        StringBuilder body = new StringBuilder(step.getContent());
-        if (step.getOptions() != null && !step.getOptions().isEmpty()) {
-            body.append("\n\n");
-            step.getOptions().sort((a, b) -> Integer.compare(a.getSequence(), b.getSequence()));
-            for (BotOption opt : step.getOptions()) {
-                body.append("👉 *").append(opt.getKeyword()).append("* - ").append(opt.getLabel()).append("\n");
-            }
-        }
-        sendText(contact, body.toString(), channel, systemUser);
-    }
-
-    private void executeFlowStep(BotStep step, Contact contact, User systemUser, WhatsAppPhoneNumber channel) throws JsonProcessingException {
+    private void executeFlowStep(CompiledBot.Step step, Contact contact, User systemUser, WhatsAppPhoneNumber channel) {
         
-        Long flowId = Long.valueOf(step.getContent());
-        Flow flow = flowRepository.findById(flowId).orElse(null);
-        
-        if (flow == null || flow.getStatus() != FlowStatus.PUBLISHED) {
-            sendText(contact, "Erro técnico: Fluxo indisponível.", channel, systemUser);
-            return;
-        }
+        CompiledBot.FlowRef flow = step.flow();
 
         SendInteractiveFlowMessageRequest request = new SendInteractiveFlowMessageRequest();
         request.setTo(contact.getPhoneNumber());
         request.setFromPhoneNumberId(channel.getPhoneNumberId());
-        request.setFlowName(flow.getName());
-        request.setFlowToken("BOT_STEP_" + step.getId());
+        request.setFlowName(flow.flowName());
+        request.setFlowToken(flow.flowToken());
         request.setFlowAction("navigate");
         request.setMode("published");
-        request.setBodyText("Por favor, preencha os dados abaixo.");
-        request.setFlowCta("Abrir");
+        request.setHeaderText(flow.headerText());
+        request.setBodyText(flow.bodyText());
+        request.setFooterText(flow.footerText());
+        request.setFlowCta(flow.cta());
 
         SendInteractiveFlowMessageRequest.FlowActionPayload flowActionPayload = new SendInteractiveFlowMessageRequest.FlowActionPayload();
-        flowActionPayload.setScreen("SUCCESS");
-
-        if (step.getMetadata() != null && !step.getMetadata().isBlank()) {
-            JsonNode metaNode = objectMapper.readTree(step.getMetadata());
-            if (metaNode.has("header")) request.setHeaderText(metaNode.path("header").asText());
-            if (metaNode.has("body")) request.setBodyText(metaNode.path("body").asText());
-            if (metaNode.has("footer")) request.setFooterText(metaNode.path("footer").asText());
-            if (metaNode.has("cta_label")) request.setFlowCta(metaNode.path("cta_label").asText());
-            if (metaNode.has("screen_id")) flowActionPayload.setScreen(metaNode.path("screen_id").asText());
-        }
+        flowActionPayload.setScreen(flow.screen());
         
         request.setFlowActionPayload(flowActionPayload);
         whatsAppService.sendInteractiveFlowMessage(request, systemUser).subscribe();
     }
 
-    private void executeTemplateStep(BotStep step, Contact contact, User systemUser, WhatsAppPhoneNumber channel) throws JsonProcessingException {
-        
-        Long templateId = Long.valueOf(step.getContent());
-        ClientTemplate template = templateRepository.findById(templateId).orElse(null);
+    private void executeTemplateStep(CompiledBot.Step step, Contact contact, User systemUser, WhatsAppPhoneNumber channel) {
         
-        if (template == null || !"APPROVED".equalsIgnoreCase(template.getStatus())) {
-            sendText(contact, "Erro técnico: Template indisponível.", channel, systemUser);
-            return;
-        }
+        CompiledBot.TemplateRef template = step.template();
 
         SendTemplateMessageRequest request = new SendTemplateMessageRequest();
         request.setTo(contact.getPhoneNumber());
         request.setFromPhoneNumberId(channel.getPhoneNumberId());
-        request.setTemplateName(template.getTemplateName());
-        request.setLanguageCode(template.getLanguage());
-
-        if (step.getMetadata() != null && !step.getMetadata().isBlank()) {
-            JsonNode metaNode = objectMapper.readTree(step.getMetadata());
-            if (metaNode.has("components")) {
-                List<TemplateComponentRequest> components = objectMapper.convertValue(
-                    metaNode.get("components"),
-                    new TypeReference<List<TemplateComponentRequest>>() {}
-                );
-                request.setResolvedComponents(components);
-            }
+        request.setTemplateName(template.templateName());
+        request.setLanguageCode(template.languageCode());
+
+        if (template.components() != null) {
+            // Convertido a cada envio: a requisição recebe uma lista própria, não compartilhada entre threads
+            List<TemplateComponentRequest> components = objectMapper.convertValue(
+                template.components(),
+                new TypeReference<List<TemplateComponentRequest>>() {}
+            );
+            request.setResolvedComponents(components);
         }
         whatsAppService.sendTemplateMessage(request, systemUser, null).subscribe();
     }
 
-    private void executeMediaStep(BotStep step, Contact contact, User systemUser, WhatsAppPhoneNumber channel) throws JsonProcessingException {
+    private void executeMediaStep(CompiledBot.Step step, Contact contact, User systemUser, WhatsAppPhoneNumber channel) {
         
-        String mediaId = step.getContent();
-        String type = "image"; 
-        String caption = null;
-
-        if (step.getMetadata() != null) {
-            JsonNode node = objectMapper.readTree(step.getMetadata());
-            if (node.has("caption")) caption = node.path("caption").asText();
-            if (node.has("type")) type = node.path("type").asText();
-        }
+        CompiledBot.MediaRef media = step.media();
         
         SendMediaMessageRequest req = new SendMediaMessageRequest();
         req.setTo(contact.getPhoneNumber());
         req.setFromPhoneNumberId(channel.getPhoneNumberId());
-        req.setType(type);
-        req.setMediaId(mediaId);
-        req.setCaption(caption);
+        req.setType(media.type());
+        req.setMediaId(media.mediaId());
+        req.setCaption(media.caption());
         whatsAppService.sendMediaMessage(req, systemUser).subscribe();
     }
 
-    private void executeHandoffStep(BotStep step, Contact contact, UserSession session, User systemUser, WhatsAppPhoneNumber channel) {
+    private void executeHandoffStep(CompiledBot.Step step, Contact contact, UserSession session, User systemUser, WhatsAppPhoneNumber channel) {
         
-        String message = step.getContent();
+        String message = step.text();
         if (message == null || message.isBlank()) message = "Aguarde um momento.";
         
         sendText(contact, message, channel, systemUser);
@@ -291,10 +259,10 @@ public class BotEngineServiceImpl implements BotEngineService {
         sessionService.saveSession(session);
     }
 
-    private void executeEndStep(BotStep step, Contact contact, UserSession session, User systemUser, WhatsAppPhoneNumber channel) {
+    private void executeEndStep(CompiledBot.Step step, Contact contact, UserSession session, User systemUser, WhatsAppPhoneNumber channel) {
         
-        if (step.getContent() != null && !step.getContent().isBlank()) {
-            sendText(contact, step.getContent(), channel, systemUser);
+        if (step.text() != null && !step.text().isBlank()) {
+            sendText(contact, step.text(), channel, systemUser);
         }
         sessionService.resetSession(session);
     }
@@ -312,12 +280,6 @@ public class BotEngineServiceImpl implements BotEngineService {
         return false;
     }
 
-    private boolean checkMatch(String input, String keyword) {
-        
-        if (input == null || keyword == null) return false;
-        return input.trim().equalsIgnoreCase(keyword.trim());
-    }
-
     private void sendText(Contact contact, String msg, WhatsAppPhoneNumber channel, User user) {
         
         SendTextMessageRequest req = new SendTextMessageRequest();
@@ -35,6 +35,7 @@ import com.br.alchieri.consulting.mensageria.chat.service.BotManagementService;
 import com.br.alchieri.consulting.mensageria.exception.BusinessException;
 import com.br.alchieri.consulting.mensageria.exception.ResourceNotFoundException;
 import com.br.alchieri.consulting.mensageria.model.Company;
+import com.br.alchieri.consulting.mensageria.service.impl.TenantConfigCache;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -52,6 +53,9 @@ public class BotManagementServiceImpl implements BotManagementService {
     private final ClientTemplateRepository templateRepository;
     private final MediaUploadRepository mediaRepository;
 
+    private final TenantConfigCache tenantConfigCache;
+    private final BotCompiler botCompiler;
+
     @Override
     public List<BotResponseDTO> listBots(Company company) {
         return botRepository.findByCompany(company).stream()
@@ -74,6 +78,7 @@ public class BotManagementServiceImpl implements BotManagementService {
 
         // Salvamos para obter o ID (necessário para os passos referenciarem)
         bot = botRepository.save(bot);
+        tenantConfigCache.evictBots(company.getId());
 
         // 2. Processar a Estrutura (Steps)
         // Verificamos se há passos para salvar
@@ -115,6 +120,7 @@ public class BotManagementServiceImpl implements BotManagementService {
         }
 
         Bot savedBot = botRepository.save(bot);
+        tenantConfigCache.evictBots(company.getId());
         return toBotDTO(savedBot);
     }
 
@@ -129,6 +135,7 @@ public class BotManagementServiceImpl implements BotManagementService {
     public void deleteBot(Long botId, Company company) {
         Bot bot = findBot(botId, company);
         botRepository.delete(bot);
+        tenantConfigCache.evictBots(company.getId());
     }
 
     // --- GERENCIAMENTO DE PASSOS (STEPS) ---
@@ -160,7 +167,14 @@ public class BotManagementServiceImpl implements BotManagementService {
         step.setMetadata(dto.getMetadata());
         step.setStepType(dto.getStepType());
         
-        return toStepDTO(botStepRepository.save(step));
+        BotStep savedStep = botStepRepository.save(step);
+        if (step.getBot() != null) {
+            markStructureChanged(step.getBot());
+        } else {
+            // Bots ativos em cache carregam o passo raiz
+            tenantConfigCache.evictBots(null);
+        }
+        return toStepDTO(savedStep);
     }
 
     // --- GERENCIAMENTO DE OPÇÕES (LINKS) ---
@@ -180,6 +194,11 @@ public class BotManagementServiceImpl implements BotManagementService {
         option.setSequence(origin.getOptions().size() + 1);
 
         botOptionRepository.save(option);
+        if (origin.getBot() != null) {
+            markStructureChanged(origin.getBot());
+        } else {
+            tenantConfigCache.evictBots(null);
+        }
     }
     
     @Override
@@ -296,9 +315,19 @@ public class BotManagementServiceImpl implements BotManagementService {
             BotStep newRoot = tempIdToEntityMap.get(request.getRootStepTempId());
             if (newRoot != null) {
                 bot.setRootStep(newRoot);
-                botRepository.save(bot);
             }
         }
+        markStructureChanged(bot);
+    }
+
+    /**
+     * Passos/opções do bot mudaram: nova versão da estrutura, que substitui a compilada após o commit.
+     */
+    private void markStructureChanged(Bot bot) {
+        bot.setStructureVersion(bot.getStructureVersion() != null ? bot.getStructureVersion() + 1 : 1L);
+        botRepository.save(bot);
+        tenantConfigCache.evictBots(bot.getCompany().getId());
+        botCompiler.recompileAfterCommit(bot.getId());
     }
 
     // --- MAPPERS ---
@@ -0,0 +1,178 @@
+package com.br.alchieri.consulting.mensageria.chat.service.impl;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import com.br.alchieri.consulting.mensageria.chat.dto.audience.AudienceTarget;
+import com.br.alchieri.consulting.mensageria.chat.dto.request.BulkMessageTemplateRequest;
+import com.br.alchieri.consulting.mensageria.chat.dto.request.OutgoingMessageRequest;
+import com.br.alchieri.consulting.mensageria.chat.dto.request.SendTemplateMessageRequest;
+import com.br.alchieri.consulting.mensageria.chat.dto.request.TemplateComponentRequest;
+import com.br.alchieri.consulting.mensageria.chat.model.BulkJob;
+import com.br.alchieri.consulting.mensageria.chat.model.Contact;
+import com.br.alchieri.consulting.mensageria.chat.repository.BulkJobRepository;
+import com.br.alchieri.consulting.mensageria.chat.repository.ContactRepository;
+import com.br.alchieri.consulting.mensageria.chat.util.OutgoingMessageGroupResolver;
+import com.br.alchieri.consulting.mensageria.chat.util.SqsBatchSender;
+import com.br.alchieri.consulting.mensageria.chat.util.TemplateMappingPlan;
+import com.br.alchieri.consulting.mensageria.chat.util.TemplateParameterGenerator;
+import com.br.alchieri.consulting.mensageria.model.Company;
+import com.br.alchieri.consulting.mensageria.model.User;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Executa um {@link BulkJob} fora da requisição HTTP.
+ *
+ * O público é percorrido em páginas ({@link AudienceResolver}); cada página é processada em paralelo no
+ * bulkEnqueueExecutor (até {@code bulk.enqueue.parallelism} páginas por job), gerando os payloads e
+ * enfileirando-os com SendMessageBatch (10 mensagens por chamada, via {@link SqsBatchSender}). O progresso é somado no job a cada página.
+ */
+@Component
+@Slf4j
+public class BulkJobRunner {
+
+    private final BulkJobRepository bulkJobRepository;
+    private final AudienceResolver audienceResolver;
+    private final ContactRepository contactRepository;
+    private final TemplateParameterGenerator parameterGenerator;
+    private final OutgoingMessageGroupResolver messageGroupResolver;
+    private final SqsBatchSender sqsBatchSender;
+    private final ObjectMapper objectMapper;
+    private final Executor bulkEnqueueExecutor;
+
+    @Value("${sqs.queue.outgoing}")
+    private String outgoingQueueName;
+
+    @Value("${bulk.enqueue.parallelism:4}")
+    private int parallelism;
+
+    public BulkJobRunner(BulkJobRepository bulkJobRepository, AudienceResolver audienceResolver,
+                         ContactRepository contactRepository, TemplateParameterGenerator parameterGenerator,
+                         OutgoingMessageGroupResolver messageGroupResolver, SqsBatchSender sqsBatchSender, ObjectMapper objectMapper,
+                         @Qualifier("bulkEnqueueExecutor") Executor bulkEnqueueExecutor) {
+        this.bulkJobRepository = bulkJobRepository;
+        this.audienceResolver = audienceResolver;
+        this.contactRepository = contactRepository;
+        this.parameterGenerator = parameterGenerator;
+        this.messageGroupResolver = messageGroupResolver;
+        this.sqsBatchSender = sqsBatchSender;
+        this.objectMapper = objectMapper;
+        this.bulkEnqueueExecutor = bulkEnqueueExecutor;
+    }
+
+    /**
+     * Roda no bulkJobExecutor; lança TaskRejectedException na submissão se o executor estiver cheio.
+     */
+    @Async("bulkJobExecutor")
+    public void run(Long jobId, BulkMessageTemplateRequest request, AudienceResolver.Criteria criteria,
+                    Company company, User creator) {
+
+        log.info("Job {}: iniciando resolução do público e enfileiramento.", jobId);
+        bulkJobRepository.markStarted(jobId, BulkJob.BulkJobStatus.RUNNING, LocalDateTime.now());
+
+        Semaphore permits = new Semaphore(parallelism);
+        long total = 0;
+        Exception failure = null;
+        try {
+            // Regras de mapeamento compiladas uma única vez para todo o job
+            TemplateMappingPlan plan = parameterGenerator.compile(request.getComponents());
+            total = audienceResolver.forEachPage(company, criteria, page -> {
+                permits.acquireUninterruptibly();
+                try {
+                    bulkEnqueueExecutor.execute(() -> {
+                        try {
+                            enqueuePage(jobId, page, request, plan, company, creator);
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    permits.release();
+                    throw e;
+                }
+            });
+        } catch (Exception e) {
+            failure = e;
+        }
+        // Aguarda as páginas ainda em processamento
+        permits.acquireUninterruptibly(parallelism);
+
+        if (failure == null) {
+            log.info("Job {}: {} contatos processados.", jobId, total);
+            bulkJobRepository.markFinished(jobId, BulkJob.BulkJobStatus.COMPLETED, null, LocalDateTime.now());
+        } else {
+            log.error("Job {}: interrompido por erro: {}", jobId, failure.getMessage(), failure);
+            bulkJobRepository.markFinished(jobId, BulkJob.BulkJobStatus.FAILED, failure.getMessage(), LocalDateTime.now());
+        }
+    }
+
+    private void enqueuePage(Long jobId, List<AudienceTarget> page, BulkMessageTemplateRequest request,
+                             TemplateMappingPlan plan, Company company, User creator) {
+        int enqueued = 0;
+        int failed = 0;
+        try {
+            List<Long> ids = page.stream().map(AudienceTarget::contactId).toList();
+            List<Contact> contacts = contactRepository.findByCompanyAndIdIn(company, ids);
+            failed += page.size() - contacts.size(); // Removidos durante o job
+
+            List<Message<String>> messages = new ArrayList<>(contacts.size());
+            for (Contact contact : contacts) {
+                try {
+                    messages.add(buildMessage(jobId, request, plan, contact, company, creator));
+                } catch (Exception e) {
+                    log.error("Job {}: Falha ao gerar mensagem para o contato ID {}: {}", jobId, contact.getId(), e.getMessage());
+                    failed++;
+                }
+            }
+            int rejected = sqsBatchSender.sendAll(outgoingQueueName, messages).size();
+            enqueued += messages.size() - rejected;
+            failed += rejected;
+        } catch (Exception e) {
+            log.error("Job {}: Falha ao processar página de {} contatos: {}", jobId, page.size(), e.getMessage(), e);
+            failed = page.size() - enqueued;
+        } finally {
+            bulkJobRepository.addProgress(jobId, enqueued, failed);
+        }
+    }
+
+    private Message<String> buildMessage(Long jobId, BulkMessageTemplateRequest request, TemplateMappingPlan plan,
+                                         Contact contact, Company company, User creator) throws JsonProcessingException {
+        // Gera os componentes com parâmetros resolvidos para este contato
+        List<TemplateComponentRequest> resolvedComponents = parameterGenerator.generateComponents(
+                plan, contact, company, creator);
+
+        SendTemplateMessageRequest singleMessageRequest = SendTemplateMessageRequest.builder()
+                .to(contact.getPhoneNumber())
+                .contactId(contact.getId())
+                .templateName(request.getTemplateName())
+                .languageCode(request.getLanguageCode())
+                .resolvedComponents(resolvedComponents)
+                .build();
+
+        OutgoingMessageRequest queuePayload = OutgoingMessageRequest.builder()
+                .messageType("TEMPLATE")
+                .userId(creator.getId())
+                .templateRequest(singleMessageRequest)
+                .bulkJobId(jobId)
+                .originalRequestId("bulk-" + jobId + "-" + contact.getId())
+                .build();
+
+        String messageGroupId = messageGroupResolver.resolve("company-" + company.getId(), contact.getPhoneNumber());
+        return MessageBuilder.withPayload(objectMapper.writeValueAsString(queuePayload))
+                .setHeader("message-group-id", messageGroupId)
+                .build();
+    }
+}
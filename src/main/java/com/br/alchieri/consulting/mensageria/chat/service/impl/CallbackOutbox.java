@@ -0,0 +1,193 @@
+package com.br.alchieri.consulting.mensageria.chat.service.impl;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.br.alchieri.consulting.mensageria.chat.model.CallbackDelivery;
+import com.br.alchieri.consulting.mensageria.chat.model.CallbackDelivery.CallbackEntityType;
+import com.br.alchieri.consulting.mensageria.chat.model.CallbackDelivery.DeliveryStatus;
+import com.br.alchieri.consulting.mensageria.chat.repository.CallbackDeliveryBatchInserter;
+import com.br.alchieri.consulting.mensageria.chat.repository.CallbackDeliveryRepository;
+import com.br.alchieri.consulting.mensageria.chat.repository.FlowDataRepository;
+import com.br.alchieri.consulting.mensageria.chat.repository.FlowRepository;
+import com.br.alchieri.consulting.mensageria.chat.repository.ScheduledCampaignRepository;
+import com.br.alchieri.consulting.mensageria.chat.repository.WhatsAppMessageLogRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Persistência do outbox de callbacks (tabela callback_deliveries).
+ *
+ * Concentra as operações transacionais usadas pelo CallbackDispatcher: enfileirar, reservar lotes
+ * vencidos com SKIP LOCKED e gravar em lote os resultados das entregas, incluindo o
+ * lastCallbackStatus das entidades de origem (um UPDATE ... WHERE id IN por status e tipo).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CallbackOutbox {
+
+    private final CallbackDeliveryRepository deliveryRepository;
+    private final CallbackDeliveryBatchInserter batchInserter;
+    private final WhatsAppMessageLogRepository messageLogRepository;
+    private final ScheduledCampaignRepository campaignRepository;
+    private final FlowRepository flowRepository;
+    private final FlowDataRepository flowDataRepository;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Resultado de uma tentativa de entrega.
+     * @param nextAttemptAt Próxima tentativa (apenas para PENDING).
+     * @param attempted false quando a entrega foi apenas adiada (circuito aberto, limite de concorrência).
+     */
+    public record DeliveryOutcome(CallbackDelivery delivery, DeliveryStatus status, LocalDateTime nextAttemptAt,
+                                  boolean attempted, Integer httpStatus, String error) {}
+
+    @Transactional
+    public CallbackDelivery enqueue(Long companyId, String targetUrl, String eventType, Object payload,
+                                    CallbackEntityType entityType, Long entityId, String logContext) {
+        return enqueue(companyId, targetUrl, eventType, payload, entityType, entityId, logContext, false, Duration.ZERO);
+    }
+
+    /**
+     * @param batchable Se a entrega pode ser agrupada com outras da mesma empresa/URL.
+     * @param delay Atraso da primeira tentativa (janela de agrupamento dos lotes).
+     */
+    @Transactional
+    public CallbackDelivery enqueue(Long companyId, String targetUrl, String eventType, Object payload,
+                                    CallbackEntityType entityType, Long entityId, String logContext,
+                                    boolean batchable, Duration delay) {
+        return deliveryRepository.save(newDelivery(companyId, targetUrl, eventType, payload, entityType, entityId,
+                logContext, batchable, delay));
+    }
+
+    /**
+     * Registra várias entregas em um único batch JDBC, na transação corrente.
+     * As entregas devem vir de {@link #newDelivery}; elas não recebem ID.
+     */
+    @Transactional
+    public int enqueueAll(List<CallbackDelivery> deliveries) {
+        return batchInserter.insert(deliveries);
+    }
+
+    /**
+     * Monta uma entrega PENDING sem persisti-la (ver {@link #enqueueAll}).
+     */
+    public CallbackDelivery newDelivery(Long companyId, String targetUrl, String eventType, Object payload,
+                                        CallbackEntityType entityType, Long entityId, String logContext,
+                                        boolean batchable, Duration delay) {
+        CallbackDelivery delivery = new CallbackDelivery();
+        delivery.setCompanyId(companyId);
+        delivery.setTargetUrl(targetUrl);
+        delivery.setEventType(eventType);
+        delivery.setPayload(serialize(payload));
+        delivery.setEntityType(entityType);
+        delivery.setEntityId(entityId);
+        delivery.setLogContext(logContext != null && logContext.length() > 500 ? logContext.substring(0, 500) : logContext);
+        delivery.setBatchable(batchable);
+        delivery.setNextAttemptAt(LocalDateTime.now().plus(delay));
+        return delivery;
+    }
+
+    /**
+     * Reserva até {@code limit} entregas vencidas para este nó, marcando-as IN_PROGRESS pelo tempo do lease.
+     * As entidades de origem das primeiras tentativas passam a PENDING.
+     */
+    @Transactional
+    public List<CallbackDelivery> claimDue(int limit, Duration lease) {
+        LocalDateTime now = LocalDateTime.now();
+        List<CallbackDelivery> due = deliveryRepository.lockDueDeliveries(now, limit);
+        if (due.isEmpty()) {
+            return due;
+        }
+        List<CallbackDelivery> firstAttempts = new ArrayList<>();
+        for (CallbackDelivery delivery : due) {
+            delivery.setStatus(DeliveryStatus.IN_PROGRESS);
+            delivery.setLockedUntil(now.plus(lease));
+            if (delivery.getAttempts() == 0) {
+                firstAttempts.add(delivery);
+            }
+        }
+        updateEntityStatus(firstAttempts, "PENDING", now);
+        return due;
+    }
+
+    /**
+     * Grava os resultados de um ciclo de entregas em uma única transação.
+     */
+    @Transactional
+    public void applyOutcomes(Collection<DeliveryOutcome> outcomes) {
+        if (outcomes.isEmpty()) {
+            return;
+        }
+        Map<Long, DeliveryOutcome> byId = outcomes.stream()
+                .collect(Collectors.toMap(o -> o.delivery().getId(), Function.identity(), (a, b) -> b));
+        LocalDateTime now = LocalDateTime.now();
+
+        Map<DeliveryStatus, List<CallbackDelivery>> finished = new EnumMap<>(DeliveryStatus.class);
+        for (CallbackDelivery delivery : deliveryRepository.findAllById(byId.keySet())) {
+            DeliveryOutcome outcome = byId.get(delivery.getId());
+            delivery.setStatus(outcome.status());
+            delivery.setLockedUntil(null);
+            if (outcome.attempted()) {
+                delivery.setAttempts(delivery.getAttempts() + 1);
+                delivery.setLastHttpStatus(outcome.httpStatus());
+                delivery.setLastError(outcome.error());
+            }
+            if (outcome.status() == DeliveryStatus.PENDING) {
+                delivery.setNextAttemptAt(outcome.nextAttemptAt());
+            } else {
+                finished.computeIfAbsent(outcome.status(), k -> new ArrayList<>()).add(delivery);
+            }
+        }
+        finished.forEach((status, deliveries) -> updateEntityStatus(deliveries, status.name(), now));
+    }
+
+    @Transactional
+    public int purgeFinishedBefore(LocalDateTime before) {
+        return deliveryRepository.deleteFinishedBefore(List.of(DeliveryStatus.SUCCESS, DeliveryStatus.FAILED_FINAL), before);
+    }
+
+    private void updateEntityStatus(Collection<CallbackDelivery> deliveries, String status, LocalDateTime attemptAt) {
+        Map<CallbackEntityType, List<Long>> idsByType = new HashMap<>();
+        for (CallbackDelivery delivery : deliveries) {
+            if (delivery.getEntityType() != null && delivery.getEntityId() != null) {
+                idsByType.computeIfAbsent(delivery.getEntityType(), k -> new ArrayList<>()).add(delivery.getEntityId());
+            }
+        }
+        idsByType.forEach((type, ids) -> {
+            switch (type) {
+                case MESSAGE_LOG -> messageLogRepository.updateCallbackStatus(ids, status, attemptAt);
+                case CAMPAIGN -> campaignRepository.updateCallbackStatus(ids, status, attemptAt);
+                case FLOW -> flowRepository.updateCallbackStatus(ids, status, attemptAt);
+                case FLOW_DATA -> flowDataRepository.updateCallbackStatus(ids, status, attemptAt);
+                case TEMPLATE -> log.debug("Rastreamento de callback para ClientTemplate ainda não implementado na entidade.");
+            }
+        });
+    }
+
+    private String serialize(Object payload) {
+        if (payload instanceof String json) {
+            return json;
+        }
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Falha ao serializar payload de callback: " + e.getMessage(), e);
+        }
+    }
+}
@@ -2,14 +2,17 @@ package com.br.alchieri.consulting.mensageria.chat.service.impl;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
-import org.springframework.http.MediaType;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.BodyInserters;
-import org.springframework.web.reactive.function.client.WebClient;
-import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.br.alchieri.consulting.mensageria.chat.dto.callback.CampaignStatusCallbackPayload;
 import com.br.alchieri.consulting.mensageria.chat.dto.callback.FlowDataCallbackPayload;
@@ -18,6 +21,8 @@ import com.br.alchieri.consulting.mensageria.chat.dto.callback.IncomingMessagePa
 import com.br.alchieri.consulting.mensageria.chat.dto.callback.InternalCallbackPayload;
 import com.br.alchieri.consulting.mensageria.chat.dto.callback.MessageStatusPayload;
 import com.br.alchieri.consulting.mensageria.chat.dto.callback.TemplateStatusCallbackPayload;
+import com.br.alchieri.consulting.mensageria.chat.model.CallbackDelivery;
+import com.br.alchieri.consulting.mensageria.chat.model.CallbackDelivery.CallbackEntityType;
 import com.br.alchieri.consulting.mensageria.chat.model.ClientTemplate;
 import com.br.alchieri.consulting.mensageria.chat.model.Flow;
 import com.br.alchieri.consulting.mensageria.chat.model.FlowData;
@@ -31,25 +36,17 @@ import com.br.alchieri.consulting.mensageria.chat.repository.WhatsAppMessageLogR
 import com.br.alchieri.consulting.mensageria.chat.service.CallbackService;
 import com.br.alchieri.consulting.mensageria.model.Company;
 import com.br.alchieri.consulting.mensageria.repository.CompanyRepository;
-import com.br.alchieri.consulting.mensageria.service.AdminNotificationService;
 import com.br.alchieri.consulting.mensageria.service.InternalEventService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
-import reactor.util.retry.Retry;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j // Lombok para logger
 public class CallbackServiceImpl implements CallbackService {
 
-    // Usar WebClient padrão, pois a URL base varia e não precisamos do token da Meta
-    private final WebClient.Builder webClientBuilder;
-
-    private final AdminNotificationService adminNotificationService;
     private final WhatsAppMessageLogRepository messageLogRepository;
     private final ScheduledCampaignRepository campaignRepository;
     private final CompanyRepository companyRepository;
@@ -59,10 +56,11 @@ public class CallbackServiceImpl implements CallbackService {
     private final FlowDataRepository flowDataRepository;
 
     private final InternalEventService internalEventService;
+    private final CallbackOutbox callbackOutbox;
 
-    // Configuração de retentativa (opcional)
-    private static final int MAX_RETRIES = 3;
-    private static final Duration RETRY_DELAY = Duration.ofSeconds(10);
+    // Janela de agrupamento das entregas em lote (empresas com callbackBatchEnabled)
+    @Value("${callback.batch.window-ms:500}")
+    private long batchWindowMs;
 
     // @Value("${app.internal.api-key}")
     // private String internalApiKey;
@@ -74,7 +72,7 @@ public class CallbackServiceImpl implements CallbackService {
     // private String internalCallbackUrl; // Ex: https://mensageriaapi.alchiericonsulting.com/api/v1/internal-callbacks/events
 
 
-    @Async("taskExecutor")
+    @Transactional
     @Override
     public void sendIncomingMessageCallback(Long companyId, Long messageLogId) {
 
@@ -94,12 +92,13 @@ public class CallbackServiceImpl implements CallbackService {
         sendToInternalEndpoint(internalPayload);
 
         if (company.getGeneralCallbackUrl() != null && !company.getGeneralCallbackUrl().isBlank()) {
-            sendToClientEndpoint(company.getGeneralCallbackUrl(), clientPayload,
-                String.format("Mensagem Recebida para Empresa %d, De %s", company.getId(), messageLog.getSenderPhoneNumber()));
+            sendToClientEndpoint(company.getId(), company.getGeneralCallbackUrl(), "INCOMING_MESSAGE", clientPayload,
+                String.format("Mensagem Recebida para Empresa %d, De %s", company.getId(), messageLog.getSenderPhoneNumber()),
+                null, null, company.isCallbackBatchEnabled());
         }
     }
 
-    @Async("taskExecutor")
+    @Transactional
     @Override
     public void sendStatusCallback(Long companyId, Long messageLogId) {
 
@@ -119,13 +118,40 @@ public class CallbackServiceImpl implements CallbackService {
         sendToInternalEndpoint(internalPayload);
 
         if (company.getGeneralCallbackUrl() != null && !company.getGeneralCallbackUrl().isBlank()) {
-            sendToClientEndpoint(company.getGeneralCallbackUrl(), clientPayload,
+            sendToClientEndpoint(company.getId(), company.getGeneralCallbackUrl(), "MESSAGE_STATUS", clientPayload,
                 String.format("Status de Mensagem para Empresa %d, WAMID %s", company.getId(), messageLog.getWamid()),
-                messageLog);
+                CallbackEntityType.MESSAGE_LOG, messageLog.getId(), company.isCallbackBatchEnabled());
         }
     }
 
-    @Async("taskExecutor")
+    @Transactional
+    @Override
+    public void enqueueStatusCallbacks(List<WhatsAppMessageLog> messageLogs, Map<Long, Long> companyIdByLogId) {
+        if (messageLogs.isEmpty()) return;
+        Map<Long, Company> companies = companyRepository.findAllById(new HashSet<>(companyIdByLogId.values())).stream()
+                .collect(Collectors.toMap(Company::getId, Function.identity()));
+
+        List<CallbackDelivery> deliveries = new ArrayList<>();
+        for (WhatsAppMessageLog messageLog : messageLogs) {
+            Company company = companies.get(companyIdByLogId.get(messageLog.getId()));
+            if (company == null) continue;
+            MessageStatusPayload clientPayload = MessageStatusPayload.fromLog(messageLog);
+            sendToInternalEndpoint(buildInternalPayload("MESSAGE_STATUS", company.getId(),
+                    messageLog.getUser() != null ? messageLog.getUser().getId() : null, clientPayload));
+
+            if (company.getGeneralCallbackUrl() != null && !company.getGeneralCallbackUrl().isBlank()) {
+                boolean batchable = company.isCallbackBatchEnabled();
+                deliveries.add(callbackOutbox.newDelivery(company.getId(), company.getGeneralCallbackUrl(), "MESSAGE_STATUS",
+                        clientPayload, CallbackEntityType.MESSAGE_LOG, messageLog.getId(),
+                        String.format("Status de Mensagem para Empresa %d, WAMID %s", company.getId(), messageLog.getWamid()),
+                        batchable, batchable ? Duration.ofMillis(batchWindowMs) : Duration.ZERO));
+            }
+        }
+        callbackOutbox.enqueueAll(deliveries);
+        log.debug("{} callbacks de status registrados no outbox em lote.", deliveries.size());
+    }
+
+    @Transactional
     @Override
     public void sendTemplateStatusCallback(Long companyId, Long clientTemplateId) {
         
@@ -140,16 +166,14 @@ public class CallbackServiceImpl implements CallbackService {
         log.info("Enviando callback de status de template ({}) para Empresa ID {}, Template '{}'",
                 clientTemplate.getStatus(), company.getId(), clientTemplate.getTemplateName());
 
-        updateCallbackAttempt(clientTemplate, "PENDING");
-
         TemplateStatusCallbackPayload clientPayload = TemplateStatusCallbackPayload.fromClientTemplate(clientTemplate);
         
-        sendToClientEndpoint(targetCallbackUrl, clientPayload,
+        sendToClientEndpoint(company.getId(), targetCallbackUrl, "TEMPLATE_STATUS", clientPayload,
             String.format("Status de Template para Empresa %d, Template '%s'", company.getId(), clientTemplate.getTemplateName()),
-            clientTemplate);
+            CallbackEntityType.TEMPLATE, clientTemplate.getId(), false);
     }
 
-    @Async("taskExecutor")
+    @Transactional
     @Override
     public void sendCampaignStatusCallback(Long companyId, Long campaignId) {
 
@@ -169,13 +193,13 @@ public class CallbackServiceImpl implements CallbackService {
 
         String clientCallbackUrl = company.getGeneralCallbackUrl();
         if (clientCallbackUrl != null && !clientCallbackUrl.isBlank()) {
-            sendToClientEndpoint(clientCallbackUrl, clientPayload,
+            sendToClientEndpoint(company.getId(), clientCallbackUrl, "CAMPAIGN_STATUS", clientPayload,
                 String.format("Status de Campanha para Empresa %d, Campanha ID %d", company.getId(), campaign.getId()),
-                campaign);
+                CallbackEntityType.CAMPAIGN, campaign.getId(), false);
         }
     }
     
-    @Async("taskExecutor")
+    @Transactional
     @Override
     public void sendFlowStatusCallback(Long companyId, Long flowId) {
 
@@ -191,15 +215,13 @@ public class CallbackServiceImpl implements CallbackService {
         log.info("Enviando callback de status de Flow ({}) para {} (Empresa ID {}, Flow ID {})",
                 flow.getStatus(), targetCallbackUrl, company.getId(), flow.getId());
 
-        updateCallbackAttempt(flow, "PENDING"); // Marcar tentativa
-
         FlowStatusCallbackPayload payload = FlowStatusCallbackPayload.fromEntity(flow);
-        sendToClientEndpoint(targetCallbackUrl, payload,
+        sendToClientEndpoint(company.getId(), targetCallbackUrl, "FLOW_STATUS", payload,
             String.format("Status de Flow para Empresa %d, Flow ID %d", company.getId(), flow.getId()),
-            flow);
+            CallbackEntityType.FLOW, flow.getId(), false);
     }
 
-    @Async("taskExecutor")
+    @Transactional
     @Override
     public void sendFlowDataCallback(Long companyId, Long flowDataId) {
 
@@ -223,10 +245,14 @@ public class CallbackServiceImpl implements CallbackService {
         
         if (targetCallbackUrl != null && !targetCallbackUrl.isBlank()) {
             sendToClientEndpoint(
+                company.getId(),
                 targetCallbackUrl,
+                "FLOW_DATA",
                 clientPayload,
                 String.format("Dados de Flow para Empresa %d, FlowData ID %d", company.getId(), flowData.getId()),
-                flowData
+                CallbackEntityType.FLOW_DATA,
+                flowData.getId(),
+                false
             );
         }
     }
@@ -243,79 +269,17 @@ public class CallbackServiceImpl implements CallbackService {
         }
     }
 
-    private void sendToClientEndpoint(String clientCallbackUrl, Object clientPayload, String logContext, Object originalEntity) {
-        if (originalEntity != null) {
-            updateCallbackAttempt(originalEntity, "PENDING");
-        }
-        WebClient client = webClientBuilder.build();
-        client.post()
-                .uri(clientCallbackUrl)
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(BodyInserters.fromValue(clientPayload))
-                .retrieve()
-                .bodyToMono(String.class)
-                .doOnSuccess(responseBody -> {
-                    log.info("Callback para cliente enviado com sucesso. Contexto: [{}]. Resposta: {}", logContext, responseBody);
-                    if (originalEntity != null) updateCallbackAttempt(originalEntity, "SUCCESS");
-                })
-                .doOnError(error -> log.warn("Falha ao enviar callback para cliente. Contexto: [{}]. Erro: {}", logContext, error.getMessage()))
-                .retryWhen(Retry.backoff(MAX_RETRIES, RETRY_DELAY)
-                           .filter(throwable -> throwable instanceof WebClientResponseException && ((WebClientResponseException) throwable).getStatusCode().is5xxServerError())
-                           .doBeforeRetry(retrySignal -> log.warn("Retentativa {} para callback cliente. Contexto: [{}]. Erro: {}",
-                                        retrySignal.totalRetries() + 1, logContext, retrySignal.failure().getMessage())))
-                .onErrorResume(error -> {
-                    log.error("FALHA FINAL ao enviar callback para cliente. Contexto: [{}]. Erro: {}", logContext, error.getMessage());
-                    adminNotificationService.notifyCallbackFailure(
-                        "Falha Crítica de Callback - Cliente Externo",
-                        String.format("Não foi possível enviar callback para a URL %s. Contexto: [%s]. Erro: %s",
-                                      clientCallbackUrl, logContext, error.getMessage())
-                    );
-                    if (originalEntity != null) updateCallbackAttempt(originalEntity, "FAILED_FINAL");
-                    return Mono.empty();
-                })
-                .subscribeOn(Schedulers.boundedElastic())
-                .subscribe();
-    }
-    
-    private void sendToClientEndpoint(String clientCallbackUrl, Object clientPayload, String logContext) {
-        // Versão que não atualiza o banco (ex: para mensagens recebidas)
-        sendToClientEndpoint(clientCallbackUrl, clientPayload, logContext, null);
-    }
-
-    private void updateCallbackAttempt(Object entity, String status) {
-        try {
-            if (entity instanceof WhatsAppMessageLog log) {
-                messageLogRepository.findById(log.getId()).ifPresent(dbLog -> {
-                    dbLog.setLastCallbackAttempt(LocalDateTime.now());
-                    dbLog.setLastCallbackStatus(status);
-                    messageLogRepository.save(dbLog);
-                });
-            } else if (entity instanceof ScheduledCampaign campaign) {
-                campaignRepository.findById(campaign.getId()).ifPresent(dbCampaign -> {
-                    dbCampaign.setLastCallbackAttempt(LocalDateTime.now());
-                    dbCampaign.setLastCallbackStatus(status);
-                    campaignRepository.save(dbCampaign);
-                });
-            } else if (entity instanceof ClientTemplate template) {
-                log.debug("Rastreamento de callback para ClientTemplate ainda não implementado na entidade.");
-            } else if (entity instanceof Flow flow) {
-                flowRepository.findById(flow.getId()).ifPresent(dbFlow -> {
-                    dbFlow.setLastCallbackAttempt(LocalDateTime.now());
-                    dbFlow.setLastCallbackStatus(status);
-                    flowRepository.save(dbFlow);
-                });
-            } else if (entity instanceof FlowData flowData && flowData.getId() != null) {
-                flowDataRepository.findById(flowData.getId()).ifPresent(dbFlowData -> {
-                    dbFlowData.setLastCallbackAttempt(LocalDateTime.now());
-                    dbFlowData.setLastCallbackStatus(status);
-                    flowDataRepository.save(dbFlowData);
-                });
-            } else {
-                log.warn("Tentativa de atualizar status de callback para entidade desconhecida: {}", entity.getClass().getName());
-            }
-        } catch (Exception e) {
-            log.error("Erro ao atualizar o status do callback para a entidade {}: {}", entity, e.getMessage());
-        }
+    /**
+     * Registra o callback no outbox persistente, na transação do chamador: o callback só existe se a
+     * alteração que o originou for confirmada, e uma falha ao registrá-lo desfaz a alteração.
+     * A entrega (com retentativas, limites por empresa e circuit breaker por URL) é feita pelo CallbackDispatcher.
+     * Entregas 'batchable' aguardam a janela de agrupamento e seguem no mesmo POST que as demais da empresa.
+     */
+    private void sendToClientEndpoint(Long companyId, String clientCallbackUrl, String eventType, Object clientPayload,
+                                      String logContext, CallbackEntityType entityType, Long entityId, boolean batchable) {
+        callbackOutbox.enqueue(companyId, clientCallbackUrl, eventType, clientPayload, entityType, entityId, logContext,
+                batchable, batchable ? Duration.ofMillis(batchWindowMs) : Duration.ZERO);
+        log.debug("Callback para cliente registrado no outbox. Contexto: [{}]", logContext);
     }
 
     private <T> InternalCallbackPayload<T> buildInternalPayload(String eventType, Long companyId, Long userId, T data) {
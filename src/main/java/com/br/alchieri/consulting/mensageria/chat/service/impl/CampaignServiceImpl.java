@@ -1,9 +1,6 @@
 package com.br.alchieri.consulting.mensageria.chat.service.impl;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
@@ -15,12 +12,12 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.reactive.function.client.WebClient;
 
+import com.br.alchieri.consulting.mensageria.chat.dto.audience.AudienceTarget;
 import com.br.alchieri.consulting.mensageria.chat.dto.request.ScheduleCampaignRequest;
-import com.br.alchieri.consulting.mensageria.chat.model.Contact;
 import com.br.alchieri.consulting.mensageria.chat.model.ScheduledCampaign;
 import com.br.alchieri.consulting.mensageria.chat.model.ScheduledMessage;
-import com.br.alchieri.consulting.mensageria.chat.repository.ContactRepository;
 import com.br.alchieri.consulting.mensageria.chat.repository.ScheduledCampaignRepository;
+import com.br.alchieri.consulting.mensageria.chat.repository.ScheduledMessageBatchInserter;
 import com.br.alchieri.consulting.mensageria.chat.repository.ScheduledMessageRepository;
 import com.br.alchieri.consulting.mensageria.chat.service.CallbackService;
 import com.br.alchieri.consulting.mensageria.chat.service.CampaignService;
@@ -51,7 +48,8 @@ public class CampaignServiceImpl implements CampaignService {
 
     private final ScheduledCampaignRepository campaignRepository;
     private final ScheduledMessageRepository messageRepository;
-    private final ContactRepository contactRepository;
+    private final AudienceResolver audienceResolver;
+    private final ScheduledMessageBatchInserter scheduledMessageBatchInserter;
     private final CompanyRepository companyRepository;
     private final WhatsAppPhoneNumberRepository phoneNumberRepository;
 
@@ -84,9 +82,9 @@ public class CampaignServiceImpl implements CampaignService {
             throw new BusinessException("Apenas usuários de empresas podem criar campanhas.");
         }
 
-        // 1. Encontrar os contatos alvo
-        List<Contact> targetContacts = findTargetContacts(request, company);
-        if (targetContacts.isEmpty()) {
+        // 1. Verificar se há contatos alvo (sem carregá-los)
+        AudienceResolver.Criteria criteria = toCriteria(request);
+        if (audienceResolver.count(company, criteria) == 0) {
             throw new BusinessException("Nenhum contato válido encontrado para os critérios fornecidos.");
         }
 
@@ -99,7 +97,6 @@ public class CampaignServiceImpl implements CampaignService {
         campaign.setLanguageCode(request.getLanguageCode());
         campaign.setScheduledAt(request.getScheduledAt());
         campaign.setStatus(ScheduledCampaign.CampaignStatus.PENDING);
-        campaign.setTotalMessages(targetContacts.size());
 
         // Armazena o mapeamento dos componentes como JSON
         try {
@@ -108,43 +105,33 @@ public class CampaignServiceImpl implements CampaignService {
             throw new BusinessException("Mapeamento de componentes inválido.", e);
         }
 
-        // 3. Criar as mensagens individuais agendadas
-        List<ScheduledMessage> messages = new ArrayList<>();
-        for (Contact contact : targetContacts) {
-            ScheduledMessage msg = new ScheduledMessage();
-            msg.setCampaign(campaign);
-            msg.setContact(contact);
-            msg.setScheduledAt(request.getScheduledAt());
-            msg.setStatus(ScheduledMessage.MessageStatus.PENDING);
-            messages.add(msg);
-        }
+        ScheduledCampaign savedCampaign = campaignRepository.save(campaign);
 
-        campaign.setMessages(messages);
+        // 3. Criar as mensagens individuais agendadas, página a página, via JDBC batch INSERT
+        //    (nenhuma ScheduledMessage/Contact fica no contexto de persistência)
+        long totalMessages = audienceResolver.forEachPage(company, criteria, page ->
+                scheduledMessageBatchInserter.insertPending(
+                        savedCampaign.getId(),
+                        page.stream().map(AudienceTarget::contactId).toList(),
+                        request.getScheduledAt()));
 
-        // 4. Salvar tudo (CascadeType.ALL cuidará de salvar as mensagens)
-        ScheduledCampaign savedCampaign = campaignRepository.save(campaign);
+        savedCampaign.setTotalMessages((int) totalMessages);
+        log.info("Campanha ID {} criada com {} mensagens agendadas.", savedCampaign.getId(), totalMessages);
 
         billingService.recordCampaignExecution(company);
 
         return savedCampaign;
     }
 
-    private List<Contact> findTargetContacts(ScheduleCampaignRequest request, Company company) {
+    private AudienceResolver.Criteria toCriteria(ScheduleCampaignRequest request) {
         if (request.getContactIds() != null && !request.getContactIds().isEmpty()) {
             log.info("Buscando {} contatos individuais para campanha.", request.getContactIds().size());
-            List<Contact> contacts = contactRepository.findAllById(request.getContactIds());
-            // Filtrar para garantir que todos os contatos pertencem à empresa correta
-            return contacts.stream()
-                    .filter(c -> c.getCompany().getId().equals(company.getId()))
-                    .collect(Collectors.toList());
+            // O resolver filtra pela empresa, garantindo que todos os contatos pertencem à empresa correta
+            return AudienceResolver.Criteria.byContactIds(request.getContactIds());
         }
         if (request.getTagIds() != null && !request.getTagIds().isEmpty()) {
-            // Lógica mais complexa para buscar contatos por tags.
-            // Requer um método customizado no ContactRepository.
-            // Ex: contactRepository.findByCompanyAndTagsIn(company, request.getTagIds());
-            log.warn("Busca de contatos por tags ainda não implementada.");
-            // throw new UnsupportedOperationException("Busca de contatos por tags ainda não implementada.");
-            return new ArrayList<>(); // Retorna vazio por enquanto
+            log.info("Buscando contatos por {} tags para campanha.", request.getTagIds().size());
+            return AudienceResolver.Criteria.byTagIds(request.getTagIds());
         }
         throw new BusinessException("É necessário especificar 'tagIds' ou 'contactIds' para a campanha.");
     }
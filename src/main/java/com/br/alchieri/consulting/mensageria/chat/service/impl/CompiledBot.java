@@ -0,0 +1,71 @@
+package com.br.alchieri.consulting.mensageria.chat.service.impl;
+
+import java.util.Locale;
+import java.util.Map;
+
+import com.br.alchieri.consulting.mensageria.chat.model.enums.BotStepType;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Bot compilado pelo {@link BotCompiler}: o grafo de passos/opções de uma versão da estrutura do bot,
+ * imutável e sem entidades JPA, compartilhado entre threads.
+ *
+ * @param version Valor de {@code Bot.structureVersion} usado na compilação.
+ * @param steps Passos por ID.
+ */
+public record CompiledBot(Long botId, long version, Long rootStepId, Map<Long, Step> steps) {
+
+    public Step step(Long stepId) {
+        return stepId != null ? steps.get(stepId) : null;
+    }
+
+    /**
+     * Chave usada na comparação entre a entrada do usuário e as palavras-chave das opções.
+     */
+    public static String normalizeKeyword(String value) {
+        return value != null ? value.trim().toLowerCase(Locale.ROOT) : null;
+    }
+
+    /**
+     * @param text Mensagem pronta para envio: menu já montado (TEXT) ou conteúdo livre (HANDOFF/END).
+     * @param options Opções pela palavra-chave normalizada.
+     * @param flow Flow resolvido (passos FLOW publicados).
+     * @param template Template resolvido (passos TEMPLATE aprovados).
+     * @param media Mídia (passos MEDIA).
+     * @param unavailableMessage Aviso enviado no lugar do passo quando a referência não pôde ser resolvida.
+     */
+    public record Step(Long id,
+                       BotStepType type,
+                       String text,
+                       Map<String, Option> options,
+                       FlowRef flow,
+                       TemplateRef template,
+                       MediaRef media,
+                       String unavailableMessage) {
+
+        public Option match(String input) {
+            String key = normalizeKeyword(input);
+            return key != null ? options.get(key) : null;
+        }
+    }
+
+    /**
+     * @param targetStepId null encerra o bot (sem destino).
+     */
+    public record Option(Long targetStepId, boolean handoff) {}
+
+    public record FlowRef(String flowName,
+                          String flowToken,
+                          String headerText,
+                          String bodyText,
+                          String footerText,
+                          String cta,
+                          String screen) {}
+
+    /**
+     * @param components Nó 'components' da metadata (null se ausente); convertido a cada envio.
+     */
+    public record TemplateRef(String templateName, String languageCode, JsonNode components) {}
+
+    public record MediaRef(String mediaId, String type, String caption) {}
+}
@@ -5,6 +5,7 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -19,12 +20,14 @@ import com.br.alchieri.consulting.mensageria.chat.dto.response.CsvImportResponse
 import com.br.alchieri.consulting.mensageria.chat.model.Contact;
 import com.br.alchieri.consulting.mensageria.chat.model.Tag;
 import com.br.alchieri.consulting.mensageria.chat.repository.ContactRepository;
+import com.br.alchieri.consulting.mensageria.chat.repository.ConversationRepository;
 import com.br.alchieri.consulting.mensageria.chat.repository.TagRepository;
 import com.br.alchieri.consulting.mensageria.chat.service.ContactService;
 import com.br.alchieri.consulting.mensageria.dto.request.ContactRequest;
 import com.br.alchieri.consulting.mensageria.exception.BusinessException;
 import com.br.alchieri.consulting.mensageria.exception.ResourceNotFoundException;
 import com.br.alchieri.consulting.mensageria.model.Company;
+import com.br.alchieri.consulting.mensageria.util.PhoneNumberNormalizer;
 import com.opencsv.bean.CsvToBean;
 import com.opencsv.bean.CsvToBeanBuilder;
 import com.opencsv.bean.HeaderColumnNameMappingStrategy;
@@ -39,6 +42,7 @@ public class ContactServiceImpl implements ContactService {
 
     private final ContactRepository contactRepository;
     private final TagRepository tagRepository;
+    private final ConversationRepository conversationRepository;
 
     @Override
     public Page<Contact> getContactsByCompany(Company company, Pageable pageable) {
@@ -55,7 +59,7 @@ public class ContactServiceImpl implements ContactService {
     public Contact createContact(ContactRequest request, Company company) {
         
         // 1. Normalização: Garante que estamos lidando com a versão "correta" (com 9 se for BR)
-        String normalizedNumber = normalizePhoneNumber(request.getPhoneNumber());
+        String normalizedNumber = PhoneNumberNormalizer.normalize(request.getPhoneNumber());
         request.setPhoneNumber(normalizedNumber); // Atualiza o request para garantir que mapDtoToEntity use o normalizado
 
         // 2. Verificação Robusta: Procura por duplicatas testando variações (com/sem 9)
@@ -64,7 +68,10 @@ public class ContactServiceImpl implements ContactService {
         Contact contact = new Contact();
         contact.setCompany(company);
         mapDtoToEntity(request, contact, company);
-        return contactRepository.save(contact);
+        Contact saved = contactRepository.save(contact);
+        // Conversas anteriores ao cadastro passam a exibir o nome do contato
+        conversationRepository.updateContactName(company, saved.getPhoneNumber(), saved.getName());
+        return saved;
     }
 
     @Override
@@ -74,16 +81,18 @@ public class ContactServiceImpl implements ContactService {
                 .orElseThrow(() -> new ResourceNotFoundException("Contato com ID " + contactId + " não encontrado ou não pertence à sua empresa."));
 
         // Normaliza o novo número recebido
-        String newNormalizedNumber = normalizePhoneNumber(request.getPhoneNumber());
+        String newNormalizedNumber = PhoneNumberNormalizer.normalize(request.getPhoneNumber());
         request.setPhoneNumber(newNormalizedNumber);
 
-        // Verifica duplicidade apenas se o número mudou
-        if (!contact.getPhoneNumber().equals(newNormalizedNumber)) {
+        // Verifica duplicidade apenas se o número mudou (adicionar/remover o 9º dígito não é mudança)
+        if (!Objects.equals(PhoneNumberNormalizer.phoneKey(contact.getPhoneNumber()), PhoneNumberNormalizer.phoneKey(newNormalizedNumber))) {
              checkIfPhoneNumberExists(company, newNormalizedNumber);
         }
 
         mapDtoToEntity(request, contact, company);
-        return contactRepository.save(contact);
+        Contact saved = contactRepository.save(contact);
+        conversationRepository.updateContactName(company, saved.getPhoneNumber(), saved.getName());
+        return saved;
     }
 
     @Override
@@ -132,12 +141,12 @@ public class ContactServiceImpl implements ContactService {
                 try {
                     // 1. Normaliza o telefone vindo do CSV
                     String rawPhone = contactDto.getPhoneNumber();
-                    String normalizedPhone = normalizePhoneNumber(rawPhone);
+                    String normalizedPhone = PhoneNumberNormalizer.normalize(rawPhone);
                     contactDto.setPhoneNumber(normalizedPhone);
 
                     // 2. Busca Inteligente (Upsert)
-                    // Tenta achar pelo número exato (já normalizado) OU pela variação sem 9
-                    Optional<Contact> existingContactOpt = findContactSmart(company, normalizedPhone);
+                    // Uma consulta pela chave canônica: acha o número com ou sem o 9º dígito
+                    Optional<Contact> existingContactOpt = contactRepository.findByCompanyAndPhone(company, normalizedPhone);
 
                     if (existingContactOpt.isPresent()) {
                         // Atualiza
@@ -263,57 +272,13 @@ public class ContactServiceImpl implements ContactService {
         }
     }
 
-    /**
-     * Padroniza números de celular do Brasil para ter sempre 13 dígitos (55 + DDD + 9 + 8 números).
-     */
-    private String normalizePhoneNumber(String phoneNumber) {
-        if (phoneNumber == null) return null;
-        // Remove caracteres não numéricos apenas por segurança
-        String cleaned = phoneNumber.replaceAll("\\D", "");
-        
-        // Se for Brasil (começa com 55) e tiver 12 dígitos (falta o 9), adiciona.
-        if (cleaned.startsWith("55") && cleaned.length() == 12) {
-            String normalized = cleaned.substring(0, 4) + "9" + cleaned.substring(4);
-            log.debug("Normalizando telefone: {} -> {}", cleaned, normalized);
-            return normalized;
-        }
-        return cleaned;
-    }
-
     /**
      * Verifica se o telefone já existe na empresa, considerando variações do 9º dígito.
      * Lança exceção se encontrar.
      */
     private void checkIfPhoneNumberExists(Company company, String normalizedPhoneNumber) {
-        // Busca direta pelo número (já normalizado)
-        if (contactRepository.findByCompanyAndPhoneNumber(company, normalizedPhoneNumber).isPresent()) {
-            throw new BusinessException("Contato com o número '" + normalizedPhoneNumber + "' já existe para esta empresa.");
-        }
-
-        // Se for celular BR (13 digitos), verifica se existe a versão SEM o 9 no banco (legado)
-        if (normalizedPhoneNumber.startsWith("55") && normalizedPhoneNumber.length() == 13) {
-            String numberWithoutNine = normalizedPhoneNumber.substring(0, 4) + normalizedPhoneNumber.substring(5);
-            if (contactRepository.findByCompanyAndPhoneNumber(company, numberWithoutNine).isPresent()) {
-                throw new BusinessException("Contato com o número '" + numberWithoutNine + "' (variação sem 9º dígito) já existe.");
-            }
-        }
-    }
-
-    /**
-     * Tenta encontrar um contato existente buscando pelo número normalizado E suas variações.
-     * Usado na importação CSV para fazer o "match" correto.
-     */
-    private Optional<Contact> findContactSmart(Company company, String normalizedPhoneNumber) {
-        // Tenta exato
-        Optional<Contact> exact = contactRepository.findByCompanyAndPhoneNumber(company, normalizedPhoneNumber);
-        if (exact.isPresent()) return exact;
-
-        // Se for celular BR, tenta a versão sem o 9 (caso o banco tenha dados antigos)
-        if (normalizedPhoneNumber.startsWith("55") && normalizedPhoneNumber.length() == 13) {
-            String numberWithoutNine = normalizedPhoneNumber.substring(0, 4) + normalizedPhoneNumber.substring(5);
-            return contactRepository.findByCompanyAndPhoneNumber(company, numberWithoutNine);
-        }
-        
-        return Optional.empty();
+        contactRepository.findByCompanyAndPhone(company, normalizedPhoneNumber).ifPresent(existing -> {
+            throw new BusinessException("Contato com o número '" + existing.getPhoneNumber() + "' já existe para esta empresa.");
+        });
     }
 }
@@ -0,0 +1,74 @@
+package com.br.alchieri.consulting.mensageria.chat.service.impl;
+
+import java.time.LocalDateTime;
+
+import org.springframework.stereotype.Service;
+
+import com.br.alchieri.consulting.mensageria.chat.model.WhatsAppMessageLog;
+import com.br.alchieri.consulting.mensageria.chat.model.enums.MessageDirection;
+import com.br.alchieri.consulting.mensageria.chat.repository.ConversationRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Mantém a tabela de resumo de conversas ({@link com.br.alchieri.consulting.mensageria.chat.model.Conversation})
+ * a cada log de mensagem gravado. Falhas aqui não interrompem o envio/recebimento: o resumo é apenas
+ * um modelo de leitura da caixa de entrada. O histórico anterior à tabela é carregado pelo
+ * {@link com.br.alchieri.consulting.mensageria.chat.scheduler.ConversationBackfillJob}.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ConversationSummaryUpdater {
+
+    private static final int SNIPPET_LENGTH = 50;
+
+    private final ConversationRepository conversationRepository;
+
+    /**
+     * Registra uma mensagem enviada (o nome do contato é resolvido pelo cadastro, se existir).
+     */
+    public void recordMessage(WhatsAppMessageLog messageLog) {
+        record(messageLog, null);
+    }
+
+    /**
+     * Registra uma mensagem no resumo da conversa; mensagens recebidas incrementam as não lidas.
+     * @param contactName Nome do contato (null = usa o cadastro ou mantém o atual).
+     */
+    public void record(WhatsAppMessageLog messageLog, String contactName) {
+        if (messageLog.getCompany() == null) {
+            return;
+        }
+        boolean incoming = messageLog.getDirection() == MessageDirection.INCOMING;
+        String contactPhone = messageLog.getContactPhone() != null
+                ? messageLog.getContactPhone()
+                : (incoming ? messageLog.getSenderPhoneNumber() : messageLog.getRecipient());
+        if (contactPhone == null) {
+            return;
+        }
+        LocalDateTime messageAt = messageLog.getCreatedAt() != null ? messageLog.getCreatedAt() : LocalDateTime.now();
+        try {
+            conversationRepository.upsertOnMessage(
+                    messageLog.getCompany().getId(),
+                    contactPhone,
+                    contactName,
+                    snippet(messageLog.getContent()),
+                    messageLog.getDirection().name(),
+                    messageAt,
+                    incoming ? messageAt : null,
+                    incoming ? 1 : 0);
+        } catch (Exception e) {
+            log.error("Falha ao atualizar resumo da conversa {} da empresa ID {}: {}",
+                    contactPhone, messageLog.getCompany().getId(), e.getMessage());
+        }
+    }
+
+    private static String snippet(String text) {
+        if (text == null || text.length() <= SNIPPET_LENGTH) {
+            return text;
+        }
+        return text.substring(0, SNIPPET_LENGTH) + "...";
+    }
+}
@@ -233,7 +233,7 @@ public class FlowDataServiceImpl implements FlowDataService {
         
         Contact contact = null;
         if (company != null) {
-            contact = contactRepository.findByCompanyAndPhoneNumber(company, userWaId).orElse(null);
+            contact = contactRepository.findByCompanyAndPhone(company, userWaId).orElse(null);
         }
 
         if (flow == null) {
@@ -43,6 +43,7 @@ import com.br.alchieri.consulting.mensageria.model.Company;
 import com.br.alchieri.consulting.mensageria.model.WhatsAppPhoneNumber;
 import com.br.alchieri.consulting.mensageria.repository.WhatsAppPhoneNumberRepository;
 import com.br.alchieri.consulting.mensageria.service.BillingService;
+import com.br.alchieri.consulting.mensageria.service.impl.TenantConfigCache;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -64,6 +65,7 @@ public class FlowServiceImpl implements FlowService {
     private final ObjectMapper objectMapper;
     
     private final BillingService billingService;
+    private final TenantConfigCache tenantConfigCache;
 
     @Value("${whatsapp.graph-api.base-url}")
     private String graphApiBaseUrl;
@@ -149,7 +151,7 @@ public class FlowServiceImpl implements FlowService {
                 flow.setStatus(publish ? FlowStatus.PUBLISHED : FlowStatus.DRAFT);
                 flow.setPublishedJsonDefinition(publish ? flowJsonString : null);
                 flow.setHasUnpublishedChanges(!publish);
-                Flow savedFlow = flowRepository.save(flow);
+                Flow savedFlow = saveFlow(flow);
 
                 // Se endpoint_uri foi fornecido, faz uma chamada de ATUALIZAÇÃO de metadados
                 if (StringUtils.hasText(request.getEndpointUri())) {
@@ -213,7 +215,7 @@ public class FlowServiceImpl implements FlowService {
                         if (request.getCategories() != null) flow.setCategoriesJson(objectMapper.writeValueAsString(request.getCategories()));
                     } catch (JsonProcessingException e) { log.error("Erro ao serializar categorias ao atualizar metadata", e); }
                     log.info("Metadados do Flow '{}' atualizados com sucesso.", flow.getName());
-                    return flowRepository.save(flow);
+                    return saveFlow(flow);
                 } else {
                     throw new BusinessException("API da Meta falhou ao atualizar metadados do Flow.");
                 }
@@ -261,7 +263,7 @@ public class FlowServiceImpl implements FlowService {
                         flow.setHasUnpublishedChanges(true);
                         flow.setStatus(FlowStatus.DRAFT); 
                         log.info("JSON do Flow '{}' atualizado com sucesso. Status alterado para DRAFT.", flow.getName());
-                        return flowRepository.save(flow);
+                        return saveFlow(flow);
                     } else {
                         throw new BusinessException("API da Meta falhou ao atualizar o JSON do Flow.");
                     }
@@ -316,7 +318,7 @@ public class FlowServiceImpl implements FlowService {
                                 } catch (JsonProcessingException e) {
                                     syncedFlow.setValidationErrors(errorBody);
                                 }
-                                flowRepository.save(syncedFlow);
+                                saveFlow(syncedFlow);
                                 return Mono.error(new BusinessException("Falha ao publicar Flow na Meta: " + errorBody));
                             })
                     )
@@ -327,7 +329,7 @@ public class FlowServiceImpl implements FlowService {
                             syncedFlow.setPublishedJsonDefinition(syncedFlow.getDraftJsonDefinition());
                             syncedFlow.setHasUnpublishedChanges(false);
                             syncedFlow.setValidationErrors(null);
-                            return flowRepository.save(syncedFlow);
+                            return saveFlow(syncedFlow);
                         } else {
                             throw new BusinessException("API da Meta falhou ao publicar o Flow.");
                         }
@@ -348,7 +350,7 @@ public class FlowServiceImpl implements FlowService {
         }
 
         if (flow.getMetaFlowId() == null) { // É apenas um rascunho local
-            flowRepository.delete(flow);
+            removeFlow(flow);
             return Mono.just(new ApiResponse(true, "Rascunho de Flow local deletado com sucesso.", null));
         }
 
@@ -366,7 +368,7 @@ public class FlowServiceImpl implements FlowService {
             .bodyToMono(JsonNode.class)
             .flatMap(responseNode -> {
                 if (responseNode.path("success").asBoolean(false)) {
-                    flowRepository.delete(flow);
+                    removeFlow(flow);
                     log.info("Flow ID local {} deletado com sucesso após confirmação da Meta.", flowId);
                     return Mono.just(new ApiResponse(true, "Flow deletado com sucesso.", null));
                 }
@@ -414,7 +416,7 @@ public class FlowServiceImpl implements FlowService {
                 if (responseNode.path("success").asBoolean(false)) {
                     flow.setStatus(FlowStatus.DEPRECATED);
                     log.info("Flow '{}' (Meta ID {}) desativado com sucesso.", flow.getName(), flow.getMetaFlowId());
-                    return flowRepository.save(flow);
+                    return saveFlow(flow);
                 } else {
                     throw new BusinessException("API da Meta falhou ao desativar o Flow.");
                 }
@@ -494,7 +496,7 @@ public class FlowServiceImpl implements FlowService {
                 log.info("Status do Flow '{}' (Meta ID {}) sincronizado para: {}", flow.getName(), flow.getMetaFlowId(), flow.getStatus());
                 
                 // 4. Salva a entidade atualizada
-                return flowRepository.save(flow);
+                return saveFlow(flow);
             });
     }
 
@@ -550,7 +552,7 @@ public class FlowServiceImpl implements FlowService {
                         Flow newFlow = new Flow();
                         newFlow.setCompany(company);
                         updateFlowEntityFromMetaJson(newFlow, metaFlow);
-                        flowRepository.save(newFlow);
+                        saveFlow(newFlow);
                         importedCount.incrementAndGet();
                         processedFlows.add(metaName);
                     } else {
@@ -560,7 +562,7 @@ public class FlowServiceImpl implements FlowService {
                             log.info("Atualizando status do Flow '{}' (MetaID: {}) de {} para {}",
                                     localFlow.getName(), metaFlowId, localFlow.getStatus(), localStatus);
                             localFlow.setStatus(localStatus);
-                            flowRepository.save(localFlow);
+                            saveFlow(localFlow);
                             updatedCount.incrementAndGet();
                             processedFlows.add(metaName);
                         }
@@ -627,6 +629,18 @@ public class FlowServiceImpl implements FlowService {
 
     // --- MÉTODOS HELPER ---
 
+    // Toda escrita de Flow passa por aqui para invalidar o cache usado pelos webhooks
+    private Flow saveFlow(Flow flow) {
+        Flow saved = flowRepository.save(flow);
+        tenantConfigCache.evictFlow(saved.getMetaFlowId());
+        return saved;
+    }
+
+    private void removeFlow(Flow flow) {
+        flowRepository.delete(flow);
+        tenantConfigCache.evictFlow(flow.getMetaFlowId());
+    }
+
     private String normalizeMetaName(String friendlyName) {
         if (!StringUtils.hasText(friendlyName)) {
             return "flow_" + UUID.randomUUID().toString().substring(0, 8);
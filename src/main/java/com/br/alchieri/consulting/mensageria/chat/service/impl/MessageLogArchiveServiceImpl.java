@@ -0,0 +1,264 @@
+package com.br.alchieri.consulting.mensageria.chat.service.impl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSetMetaData;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.br.alchieri.consulting.mensageria.chat.dto.response.MessageLogResponse;
+import com.br.alchieri.consulting.mensageria.chat.model.MessageLogArchive;
+import com.br.alchieri.consulting.mensageria.chat.model.enums.MessageDirection;
+import com.br.alchieri.consulting.mensageria.chat.repository.MessageLogArchiveRepository;
+import com.br.alchieri.consulting.mensageria.chat.repository.MessageLogPartitionDao;
+import com.br.alchieri.consulting.mensageria.chat.repository.MessageLogPartitionDao.PartitionInfo;
+import com.br.alchieri.consulting.mensageria.chat.service.MessageLogArchiveService;
+import com.br.alchieri.consulting.mensageria.exception.BusinessException;
+import com.br.alchieri.consulting.mensageria.model.Company;
+import com.br.alchieri.consulting.mensageria.repository.CompanyRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.awspring.cloud.s3.S3Template;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Arquivamento de partições frias de whatsapp_message_logs no S3.
+ *
+ * Os logs são exportados por empresa, em streaming, como NDJSON compactado
+ * ({@code <prefixo>/company=<id>/<partição>.ndjson.gz}). Cada empresa segue a própria janela de retenção:
+ * - partição fora da janela de todas as empresas: os segmentos restantes vão para o S3 e a partição é
+ *   desanexada e removida, sem DELETE nem VACUUM;
+ * - partição fora da janela só de algumas empresas: o segmento dessas empresas vai para o S3 e as linhas
+ *   delas são apagadas da partição (DELETE restrito à empresa), o resto fica até vencer.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MessageLogArchiveServiceImpl implements MessageLogArchiveService {
+
+    private final MessageLogPartitionDao partitionDao;
+    private final MessageLogArchiveRepository archiveRepository;
+    private final CompanyRepository companyRepository;
+    private final S3Template s3Template;
+    private final ObjectMapper objectMapper;
+
+    @Value("${aws.s3.media-bucket-name}")
+    private String bucketName;
+
+    @Value("${message-log.archive.s3-prefix:message-logs}")
+    private String s3Prefix;
+
+    @Value("${message-log.archive.default-retention-months:12}")
+    private int defaultRetentionMonths;
+
+    @Override
+    public int archiveExpiredPartitions() {
+        if (!partitionDao.isPartitioned()) {
+            log.warn("Arquivamento ignorado: whatsapp_message_logs não é particionada (ver db/partitioning).");
+            return 0;
+        }
+        Map<Long, Integer> customRetention = partitionDao.customRetentionMonths();
+        int maxRetention = partitionDao.maxRetentionMonths(defaultRetentionMonths);
+        int minRetention = customRetention.values().stream().reduce(defaultRetentionMonths, Math::min);
+        LocalDateTime partitionCutoff = cutoff(maxRetention);
+        LocalDateTime companyCutoff = cutoff(minRetention);
+
+        int archived = 0;
+        for (PartitionInfo partition : partitionDao.listPartitions()) {
+            if (partition.upperBound() == null || partition.upperBound().isAfter(companyCutoff)) {
+                continue; // DEFAULT ou ainda dentro da retenção de todas as empresas
+            }
+            try {
+                if (!partition.upperBound().isAfter(partitionCutoff)) {
+                    archivePartition(partition.name());
+                    archived++;
+                } else {
+                    archiveExpiredCompanies(partition, customRetention);
+                }
+            } catch (Exception e) {
+                // A partição permanece no banco e será tentada novamente na próxima execução
+                log.error("Falha ao arquivar a partição {}: {}", partition.name(), e.getMessage(), e);
+            }
+        }
+        return archived;
+    }
+
+    private void archivePartition(String partition) throws IOException {
+        log.info("Arquivando partição {} no S3 (bucket {}).", partition, bucketName);
+
+        // Empresas arquivadas antes (retenção menor) já não têm linhas na partição e mantêm seus segmentos
+        long totalRows = 0;
+        for (Long companyId : partitionDao.findCompanyIds(partition)) {
+            totalRows += archiveCompanySegment(partition, companyId);
+        }
+
+        partitionDao.detachAndDrop(partition);
+        log.info("Partição {} arquivada ({} logs) e removida do banco.", partition, totalRows);
+    }
+
+    /**
+     * Arquiva e remove da partição apenas as empresas cuja retenção já venceu para ela.
+     */
+    private void archiveExpiredCompanies(PartitionInfo partition, Map<Long, Integer> customRetention) throws IOException {
+        for (Long companyId : partitionDao.findCompanyIds(partition.name())) {
+            int retention = companyId != null ? customRetention.getOrDefault(companyId, defaultRetentionMonths) : defaultRetentionMonths;
+            if (partition.upperBound().isAfter(cutoff(retention))) {
+                continue;
+            }
+            long rows = archiveCompanySegment(partition.name(), companyId);
+            int deleted = partitionDao.deleteCompanyRows(partition.name(), companyId);
+            log.info("Logs da empresa ID {} na partição {} arquivados ({} logs) e removidos ({} linhas).",
+                    companyId, partition.name(), rows, deleted);
+        }
+    }
+
+    private static LocalDateTime cutoff(int retentionMonths) {
+        return YearMonth.now().minusMonths(retentionMonths).atDay(1).atStartOfDay();
+    }
+
+    private long archiveCompanySegment(String partition, Long companyId) throws IOException {
+        String key = String.format("%s/company=%s/%s.ndjson.gz", s3Prefix, companyId != null ? companyId : "none", partition);
+        Path tempFile = Files.createTempFile("message-log-archive-", ".ndjson.gz");
+        try {
+            SegmentStats stats = new SegmentStats();
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(Files.newOutputStream(tempFile)), StandardCharsets.UTF_8))) {
+                partitionDao.streamCompanyRows(partition, companyId, rs -> {
+                    ResultSetMetaData meta = rs.getMetaData();
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    for (int i = 1; i <= meta.getColumnCount(); i++) {
+                        Object value = rs.getObject(i);
+                        row.put(meta.getColumnLabel(i), value instanceof Timestamp ts ? ts.toLocalDateTime().toString() : value);
+                    }
+                    stats.add(rs.getTimestamp("created_at").toLocalDateTime());
+                    try {
+                        writer.write(objectMapper.writeValueAsString(row));
+                        writer.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            if (stats.rows == 0) {
+                return 0;
+            }
+            archiveRepository.deleteSegment(partition, companyId); // Reexecução após falha
+
+            try (InputStream in = Files.newInputStream(tempFile)) {
+                s3Template.upload(bucketName, key, in);
+            }
+
+            MessageLogArchive archive = new MessageLogArchive();
+            archive.setCompany(companyId != null ? companyRepository.getReferenceById(companyId) : null);
+            archive.setPartitionName(partition);
+            archive.setS3Key(key);
+            archive.setRowCount(stats.rows);
+            archive.setSizeBytes(Files.size(tempFile));
+            archive.setFirstMessageAt(stats.first);
+            archive.setLastMessageAt(stats.last);
+            archiveRepository.save(archive);
+            log.debug("Segmento {} gravado: {} logs, {} bytes.", key, stats.rows, archive.getSizeBytes());
+            return stats.rows;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    @Override
+    public List<MessageLogArchive> listArchives(Company company) {
+        return archiveRepository.findByCompanyOrderByFirstMessageAtDesc(company);
+    }
+
+    @Override
+    public List<MessageLogResponse> getArchivedHistory(Company company, String contactPhoneNumber, YearMonth month, int limit) {
+        LocalDateTime from = month.atDay(1).atStartOfDay();
+        LocalDateTime to = month.plusMonths(1).atDay(1).atStartOfDay();
+
+        List<MessageLogResponse> messages = new ArrayList<>();
+        for (MessageLogArchive archive : archiveRepository.findOverlapping(company, from, to)) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(s3Template.download(bucketName, archive.getS3Key()).getInputStream()), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    JsonNode row = objectMapper.readTree(line);
+                    LocalDateTime createdAt = LocalDateTime.parse(row.path("created_at").asText());
+                    if (createdAt.isBefore(from) || !createdAt.isBefore(to) || !belongsToConversation(row, contactPhoneNumber)) {
+                        continue;
+                    }
+                    messages.add(toResponse(row, createdAt));
+                }
+            } catch (IOException e) {
+                log.error("Falha ao ler segmento arquivado {}: {}", archive.getS3Key(), e.getMessage());
+                throw new BusinessException("Não foi possível ler o histórico arquivado de " + month + ".", e);
+            }
+        }
+
+        messages.sort(Comparator.comparing(MessageLogResponse::getCreatedAt).thenComparing(MessageLogResponse::getId).reversed());
+        return messages.size() > limit ? messages.subList(0, limit) : messages;
+    }
+
+    private boolean belongsToConversation(JsonNode row, String phone) {
+        String contactPhone = textOrNull(row, "contact_phone");
+        if (contactPhone != null) {
+            return contactPhone.equals(phone);
+        }
+        return phone.equals(textOrNull(row, "sender_phone_number")) || phone.equals(textOrNull(row, "recipient"));
+    }
+
+    private MessageLogResponse toResponse(JsonNode row, LocalDateTime createdAt) {
+        String updatedAt = textOrNull(row, "updated_at");
+        return MessageLogResponse.builder()
+                .id(row.path("id").asLong())
+                .wamid(textOrNull(row, "wamid"))
+                .userId(row.hasNonNull("user_id") ? row.get("user_id").asLong() : null)
+                .direction(MessageDirection.valueOf(row.path("direction").asText()))
+                .senderPhoneNumber(textOrNull(row, "sender_phone_number"))
+                .channelId(textOrNull(row, "channel_id"))
+                .recipient(textOrNull(row, "recipient"))
+                .messageType(textOrNull(row, "message_type"))
+                .content(textOrNull(row, "content"))
+                .metadata(textOrNull(row, "metadata"))
+                .status(textOrNull(row, "status"))
+                .createdAt(createdAt)
+                .updatedAt(updatedAt != null ? LocalDateTime.parse(updatedAt) : null)
+                .build();
+    }
+
+    private static String textOrNull(JsonNode row, String field) {
+        return row.hasNonNull(field) ? row.get(field).asText() : null;
+    }
+
+    private static final class SegmentStats {
+        private long rows;
+        private LocalDateTime first;
+        private LocalDateTime last;
+
+        void add(LocalDateTime createdAt) {
+            rows++;
+            if (first == null || createdAt.isBefore(first)) first = createdAt;
+            if (last == null || createdAt.isAfter(last)) last = createdAt;
+        }
+    }
+}
@@ -2,21 +2,23 @@ package com.br.alchieri.consulting.mensageria.chat.service.impl;
 
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Optional;
-import java.util.stream.Collectors;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.br.alchieri.consulting.mensageria.chat.dto.response.ActiveChatResponse;
 import com.br.alchieri.consulting.mensageria.chat.model.Contact;
+import com.br.alchieri.consulting.mensageria.chat.model.Conversation;
 import com.br.alchieri.consulting.mensageria.chat.model.InternalMessageReadReceipt;
 import com.br.alchieri.consulting.mensageria.chat.model.WhatsAppMessageLog;
-import com.br.alchieri.consulting.mensageria.chat.model.enums.MessageDirection;
 import com.br.alchieri.consulting.mensageria.chat.repository.ContactRepository;
+import com.br.alchieri.consulting.mensageria.chat.repository.ConversationRepository;
 import com.br.alchieri.consulting.mensageria.chat.repository.InternalMessageReadReceiptRepository;
 import com.br.alchieri.consulting.mensageria.chat.repository.WhatsAppMessageLogRepository;
 import com.br.alchieri.consulting.mensageria.chat.service.MessageLogService;
@@ -36,6 +38,10 @@ public class MessageLogServiceImpl implements MessageLogService {
     private final WhatsAppMessageLogRepository messageLogRepository;
     private final ContactRepository contactRepository;
     private final InternalMessageReadReceiptRepository readReceiptRepository;
+    private final ConversationRepository conversationRepository;
+
+    @Value("${conversation.inbox.max-page-size:200}")
+    private int maxPageSize;
 
     @Override
     public Page<WhatsAppMessageLog> getMessageHistoryForContact(Contact contact, Company company, Pageable pageable) {
@@ -52,76 +58,29 @@ public class MessageLogServiceImpl implements MessageLogService {
     }
 
     @Override
-    public List<ActiveChatResponse> getActiveChats(Company company, int hours) {
+    @Transactional(readOnly = true)
+    public List<ActiveChatResponse> getActiveChats(Company company, int hours, LocalDateTime beforeTimestamp, Long beforeId, int size) {
         LocalDateTime sinceTimestamp = LocalDateTime.now().minusHours(hours);
         log.info("Buscando chats ativos para a empresa ID {} desde {}", company.getId(), sinceTimestamp);
 
-        // 1. Encontrar os IDs das últimas mensagens de cada chat ativo
-        List<Long> lastMessageIds = messageLogRepository.findActiveChatLastMessageIds(company, sinceTimestamp);
-
-        if (lastMessageIds.isEmpty()) {
-            return List.of(); // Retorna lista vazia
-        }
-
-        // 2. Buscar as entidades completas dessas últimas mensagens, ordenadas
-        List<WhatsAppMessageLog> lastMessages = messageLogRepository.findByIdIn(
-                lastMessageIds,
-                Sort.by(Sort.Direction.DESC, "createdAt")
-        );
-
-        // 3. Mapear para o DTO de resposta
-        return lastMessages.stream()
-                .map(log -> {
-                    // Determina qual é o número do contato externo
-                    String contactPhoneNumber = log.getDirection() == MessageDirection.INCOMING
-                            ? log.getSenderPhoneNumber()
-                            : log.getRecipient();
-
-                    // Tenta encontrar o nome do contato no banco local
-                    Optional<Contact> contactOpt = contactRepository.findByCompanyAndPhoneNumber(company, contactPhoneNumber);
-                    String contactName = contactOpt.map(Contact::getName).orElse(null); // Pega o nome ou deixa nulo
-
-                    return ActiveChatResponse.builder()
-                            .contactPhoneNumber(contactPhoneNumber)
-                            .contactName(contactName)
-                            .lastMessageSnippet(truncate(log.getContent(), 50)) // Pega um trecho da msg
-                            .lastMessageDirection(log.getDirection().name())
-                            .lastMessageTimestamp(log.getCreatedAt())
-                            .build();
-                })
-                .collect(Collectors.toList());
+        Pageable limit = PageRequest.of(0, clampPageSize(size));
+        List<Conversation> conversations = isFirstPage(beforeTimestamp, beforeId)
+                ? conversationRepository.findActiveFirstPage(company, sinceTimestamp, limit)
+                : conversationRepository.findActivePageBefore(company, sinceTimestamp, beforeTimestamp, beforeId, limit);
+        return conversations.stream().map(this::toChatResponse).toList();
     }
 
     @Override
     @Transactional(readOnly = true)
-    public List<ActiveChatResponse> getChatList(Company company) {
+    public List<ActiveChatResponse> getChatList(Company company, LocalDateTime beforeTimestamp, Long beforeId, int size) {
         log.info("Buscando lista de chats para a empresa ID {}", company.getId());
 
-        // 1. Busca a última mensagem de cada conversa
-        List<WhatsAppMessageLog> lastMessages = messageLogRepository.findLastMessageOfEachChatForCompany(company.getId());
-
-        // 2. Mapeia para o DTO, buscando informações adicionais
-        return lastMessages.stream()
-                .map(log -> {
-                    String contactPhoneNumber = log.getDirection() == MessageDirection.INCOMING
-                            ? log.getSenderPhoneNumber()
-                            : log.getRecipient();
-
-                    // Busca o contato para pegar o nome E a contagem de não lidas
-                    Optional<Contact> contactOpt = contactRepository.findByCompanyAndPhoneNumber(company, contactPhoneNumber);
-                    String contactName = contactOpt.map(Contact::getName).orElse(null);
-                    long unreadCount = contactOpt.map(Contact::getUnreadMessagesCount).orElse(0); // Pega do contato
-
-                    return ActiveChatResponse.builder()
-                            .contactPhoneNumber(contactPhoneNumber)
-                            .contactName(contactName)
-                            .lastMessageSnippet(truncate(log.getContent(), 50))
-                            .lastMessageDirection(log.getDirection().name())
-                            .lastMessageTimestamp(log.getCreatedAt())
-                            .unreadCount(unreadCount) // Usa o contador da entidade Contact
-                            .build();
-                })
-                .collect(Collectors.toList());
+        // Lê o resumo mantido a cada mensagem (tabela conversations), sem agrupar o histórico de logs
+        Pageable limit = PageRequest.of(0, clampPageSize(size));
+        List<Conversation> conversations = isFirstPage(beforeTimestamp, beforeId)
+                ? conversationRepository.findInboxFirstPage(company, limit)
+                : conversationRepository.findInboxPageBefore(company, beforeTimestamp, beforeId, limit);
+        return conversations.stream().map(this::toChatResponse).toList();
     }
 
     @Override
@@ -131,6 +90,28 @@ public class MessageLogServiceImpl implements MessageLogService {
         return messageLogRepository.findByCompanyAndPhoneNumber(company, contactPhoneNumber, pageable);
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public Slice<WhatsAppMessageLog> getMessageHistoryBefore(String contactPhoneNumber, Company company, Long beforeMessageId, int size) {
+        int pageSize = clampPageSize(size);
+        // Busca um item a mais para saber se existe página seguinte
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+
+        List<WhatsAppMessageLog> messages;
+        if (beforeMessageId == null) {
+            messages = messageLogRepository.findHistoryFirstPage(company, contactPhoneNumber, limit);
+        } else {
+            WhatsAppMessageLog cursor = messageLogRepository.findCursorMessage(beforeMessageId, company, contactPhoneNumber)
+                    .orElseThrow(() -> new ResourceNotFoundException("Mensagem " + beforeMessageId + " não encontrada nesta conversa."));
+            messages = messageLogRepository.findHistoryPageBefore(
+                    company, contactPhoneNumber, cursor.getCreatedAt(), cursor.getId(), limit);
+        }
+
+        boolean hasMore = messages.size() > pageSize;
+        List<WhatsAppMessageLog> content = hasMore ? messages.subList(0, pageSize) : messages;
+        return new SliceImpl<>(content, PageRequest.of(0, pageSize), hasMore);
+    }
+
     @Override
     @Transactional
     public void logMessageReadByUser(Long contactId, User user) {
@@ -155,13 +136,32 @@ public class MessageLogServiceImpl implements MessageLogService {
             contact.setUnreadMessagesCount(0);
             contactRepository.save(contact);
         }
+        conversationRepository.resetUnreadCount(contact.getCompany(), contact.getPhoneNumber());
+    }
+
+    private ActiveChatResponse toChatResponse(Conversation conversation) {
+        return ActiveChatResponse.builder()
+                .conversationId(conversation.getId())
+                .contactPhoneNumber(conversation.getContactPhone())
+                .contactName(conversation.getContactName())
+                .lastMessageSnippet(conversation.getLastMessageSnippet())
+                .lastMessageDirection(conversation.getLastMessageDirection().name())
+                .lastMessageTimestamp(conversation.getLastMessageAt())
+                .unreadCount(conversation.getUnreadCount())
+                .build();
     }
 
-    // Helper para truncar a mensagem
-    private String truncate(String text, int length) {
-        if (text == null || text.length() <= length) {
-            return text;
+    private boolean isFirstPage(LocalDateTime beforeTimestamp, Long beforeId) {
+        if (beforeTimestamp == null && beforeId == null) {
+            return true;
+        }
+        if (beforeTimestamp == null || beforeId == null) {
+            throw new BusinessException("Informe 'beforeTimestamp' e 'beforeId' juntos para buscar a próxima página.");
         }
-        return text.substring(0, length) + "...";
+        return false;
+    }
+
+    private int clampPageSize(int size) {
+        return Math.max(1, Math.min(size, maxPageSize));
     }
 }
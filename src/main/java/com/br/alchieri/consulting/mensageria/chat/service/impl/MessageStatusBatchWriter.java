@@ -0,0 +1,201 @@
+package com.br.alchieri.consulting.mensageria.chat.service.impl;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.br.alchieri.consulting.mensageria.chat.dto.webhook.MessageStatusUpdate;
+import com.br.alchieri.consulting.mensageria.chat.model.ScheduledMessage;
+import com.br.alchieri.consulting.mensageria.chat.model.WhatsAppMessageLog;
+import com.br.alchieri.consulting.mensageria.chat.repository.ScheduledMessageRepository;
+import com.br.alchieri.consulting.mensageria.chat.repository.WhatsAppMessageLogRepository;
+import com.br.alchieri.consulting.mensageria.chat.service.CallbackService;
+import com.br.alchieri.consulting.mensageria.service.BillingService;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Aplica um lote de atualizações de status de mensagens em uma única transação.
+ *
+ * Os logs afetados são carregados com uma única query (wamid IN ...), as transições são resolvidas
+ * em memória respeitando a ordem SENT < DELIVERED < READ < FAILED (um DELIVERED atrasado nunca
+ * sobrescreve um READ) e as alterações são enviadas no commit como JDBC batch updates
+ * (ver hibernate.jdbc.batch_size). As ScheduledMessages vinculadas são atualizadas no mesmo passo e os
+ * callbacks de status dos logs alterados entram no outbox na mesma transação.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MessageStatusBatchWriter {
+
+    private final WhatsAppMessageLogRepository messageLogRepository;
+    private final ScheduledMessageRepository scheduledMessageRepository;
+    private final BillingService billingService;
+    private final CallbackService callbackService;
+
+    /**
+     * @param updates Atualizações de status recebidas (podem conter vários status para o mesmo WAMID).
+     * @return Quantidade de logs que mudaram de estado (cada um com seu callback de status no outbox).
+     */
+    @Transactional
+    public int applyBatch(Collection<MessageStatusUpdate> updates) {
+        Map<String, MergedStatus> mergedByWamid = mergeByWamid(updates);
+        if (mergedByWamid.isEmpty()) {
+            return 0;
+        }
+
+        List<WhatsAppMessageLog> logs = messageLogRepository.findByWamidInWithCompany(mergedByWamid.keySet());
+        if (logs.size() < mergedByWamid.size()) {
+            log.warn("{} de {} WAMIDs do lote não possuem log de mensagem OUTGOING. Status ignorados.",
+                    mergedByWamid.size() - logs.size(), mergedByWamid.size());
+        }
+
+        List<WhatsAppMessageLog> changedLogs = new ArrayList<>();
+        Map<Long, Long> companyIdByLogId = new HashMap<>();
+        Map<Long, WhatsAppMessageLog> logsByScheduledMessageId = new HashMap<>();
+
+        for (WhatsAppMessageLog msgLog : logs) {
+            MergedStatus merged = mergedByWamid.get(msgLog.getWamid());
+            boolean changed = false;
+
+            MessageStatusUpdate winner = merged.winner;
+            if (statusRank(winner.status()) > statusRank(msgLog.getStatus())) {
+                msgLog.setStatus(winner.status());
+                msgLog.setUpdatedAt(winner.timestamp());
+                if ("FAILED".equals(winner.status()) && winner.errorsJson() != null) {
+                    msgLog.setMetadata(winner.errorsJson());
+                }
+                changed = true;
+                if (msgLog.getScheduledMessageId() != null) {
+                    logsByScheduledMessageId.put(msgLog.getScheduledMessageId(), msgLog);
+                }
+            } else {
+                log.debug("Status {} para WAMID {} ignorado: log já está em {}.", winner.status(), msgLog.getWamid(), msgLog.getStatus());
+            }
+
+            // A precificação é aplicada uma única vez por mensagem (o primeiro status com 'pricing')
+            if (merged.pricing != null && msgLog.getMetaCost() == null) {
+                applyPricing(msgLog, merged.pricing);
+                changed = true;
+            }
+
+            if (changed) {
+                Long companyId = msgLog.getCompany() != null ? msgLog.getCompany().getId() : winner.companyHintId();
+                if (companyId != null) {
+                    changedLogs.add(msgLog);
+                    companyIdByLogId.put(msgLog.getId(), companyId);
+                } else {
+                    log.warn("Callback de status para WAMID {} não enviado: Nenhuma empresa associada encontrada.", msgLog.getWamid());
+                }
+            }
+        }
+
+        updateScheduledMessages(logsByScheduledMessageId);
+        callbackService.enqueueStatusCallbacks(changedLogs, companyIdByLogId);
+
+        log.info("Lote de status aplicado: {} atualizações recebidas, {} WAMIDs distintos, {} logs alterados.",
+                updates.size(), mergedByWamid.size(), changedLogs.size());
+        return changedLogs.size();
+    }
+
+    private void applyPricing(WhatsAppMessageLog msgLog, MessageStatusUpdate pricing) {
+        if (pricing.pricingCategory() != null) msgLog.setPricingCategory(pricing.pricingCategory());
+
+        if (Boolean.TRUE.equals(pricing.billable())) {
+            BigDecimal metaCost = billingService.calculateMetaCostForMessage(msgLog);
+            BigDecimal platformFee = billingService.calculatePlatformFee(msgLog);
+
+            msgLog.setMetaCost(metaCost);
+            msgLog.setPlatformFee(platformFee);
+            msgLog.setFinalPrice(metaCost.add(platformFee));
+
+            billingService.recordCosts(msgLog.getCompany(), metaCost, platformFee);
+        } else {
+            msgLog.setMetaCost(BigDecimal.ZERO);
+            msgLog.setPlatformFee(BigDecimal.ZERO);
+            msgLog.setFinalPrice(BigDecimal.ZERO);
+        }
+    }
+
+    private void updateScheduledMessages(Map<Long, WhatsAppMessageLog> logsByScheduledMessageId) {
+        if (logsByScheduledMessageId.isEmpty()) {
+            return;
+        }
+        List<ScheduledMessage> scheduledMessages = scheduledMessageRepository.findAllById(logsByScheduledMessageId.keySet());
+        for (ScheduledMessage scheduledMsg : scheduledMessages) {
+            WhatsAppMessageLog msgLog = logsByScheduledMessageId.get(scheduledMsg.getId());
+            ScheduledMessage.MessageStatus newStatus;
+            try {
+                newStatus = ScheduledMessage.MessageStatus.valueOf(msgLog.getStatus());
+            } catch (IllegalArgumentException e) {
+                log.warn("Não foi possível mapear o status '{}' da Meta para um status de ScheduledMessage. O status da mensagem agendada não foi alterado.", msgLog.getStatus());
+                continue;
+            }
+            if (statusRank(newStatus.name()) <= statusRank(scheduledMsg.getStatus().name())) {
+                continue;
+            }
+            scheduledMsg.setStatus(newStatus);
+            if (newStatus == ScheduledMessage.MessageStatus.FAILED) {
+                scheduledMsg.setFailureReason(msgLog.getMetadata());
+            }
+        }
+        log.debug("{} ScheduledMessages atualizadas no lote de status.", scheduledMessages.size());
+    }
+
+    /**
+     * Consolida os vários status de um mesmo WAMID: o de maior ordem vence
+     * (em empate, o mais recente) e a primeira informação de 'pricing' é preservada.
+     */
+    private Map<String, MergedStatus> mergeByWamid(Collection<MessageStatusUpdate> updates) {
+        Map<String, MergedStatus> merged = new LinkedHashMap<>();
+        for (MessageStatusUpdate update : updates) {
+            if (update.wamid() == null || update.status() == null) continue;
+            MergedStatus current = merged.computeIfAbsent(update.wamid(), k -> new MergedStatus(update));
+            int rank = statusRank(update.status());
+            int currentRank = statusRank(current.winner.status());
+            if (rank > currentRank || (rank == currentRank && update.timestamp() != null
+                    && current.winner.timestamp() != null && update.timestamp().isAfter(current.winner.timestamp()))) {
+                current.winner = update;
+            }
+            if (current.pricing == null && update.hasPricing()) {
+                current.pricing = update;
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Ordem monotônica dos status de entrega. Status desconhecidos têm ordem 0
+     * e nunca sobrescrevem um status conhecido.
+     */
+    static int statusRank(String status) {
+        if (status == null) return -1;
+        return switch (status.toUpperCase()) {
+            case "PENDING", "QUEUED", "ACCEPTED" -> 0;
+            case "SENT" -> 1;
+            case "DELIVERED" -> 2;
+            case "READ" -> 3;
+            case "FAILED" -> 4;
+            case "CANCELED" -> 5;
+            default -> 0;
+        };
+    }
+
+    private static final class MergedStatus {
+        private MessageStatusUpdate winner;
+        private MessageStatusUpdate pricing;
+
+        private MergedStatus(MessageStatusUpdate first) {
+            this.winner = first;
+            this.pricing = first.hasPricing() ? first : null;
+        }
+    }
+}
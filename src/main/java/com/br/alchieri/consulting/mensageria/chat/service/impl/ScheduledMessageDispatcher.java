@@ -0,0 +1,209 @@
+package com.br.alchieri.consulting.mensageria.chat.service.impl;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.br.alchieri.consulting.mensageria.chat.dto.request.OutgoingMessageRequest;
+import com.br.alchieri.consulting.mensageria.chat.dto.request.SendTemplateMessageRequest;
+import com.br.alchieri.consulting.mensageria.chat.dto.request.TemplateComponentRequest;
+import com.br.alchieri.consulting.mensageria.chat.model.ScheduledCampaign;
+import com.br.alchieri.consulting.mensageria.chat.model.ScheduledMessage;
+import com.br.alchieri.consulting.mensageria.chat.repository.ContactRepository;
+import com.br.alchieri.consulting.mensageria.chat.repository.ScheduledCampaignRepository;
+import com.br.alchieri.consulting.mensageria.chat.repository.ScheduledMessageRepository;
+import com.br.alchieri.consulting.mensageria.chat.service.CallbackService;
+import com.br.alchieri.consulting.mensageria.chat.util.OutgoingMessageGroupResolver;
+import com.br.alchieri.consulting.mensageria.chat.util.SqsBatchSender;
+import com.br.alchieri.consulting.mensageria.chat.util.TemplateMappingPlan;
+import com.br.alchieri.consulting.mensageria.chat.util.TemplateParameterGenerator;
+import com.br.alchieri.consulting.mensageria.exception.BusinessException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reserva e enfileira lotes de mensagens de campanha.
+ *
+ * Cada lote é reservado com SELECT ... FOR UPDATE SKIP LOCKED, então vários workers e réplicas
+ * processam lotes disjuntos. O contexto de cada campanha (empresa, criador, plano de mapeamento compilado)
+ * é carregado uma vez por lote, os contatos em uma única query, e o envio ao SQS usa SendMessageBatch com
+ * deduplication id por ScheduledMessage (um reenvio após crash antes do commit é descartado pela fila FIFO).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ScheduledMessageDispatcher {
+
+    private final ScheduledMessageRepository scheduledMessageRepository;
+    private final ScheduledCampaignRepository campaignRepository;
+    private final ContactRepository contactRepository;
+    private final TemplateParameterGenerator parameterGenerator;
+    private final OutgoingMessageGroupResolver messageGroupResolver;
+    private final SqsBatchSender sqsBatchSender;
+    private final CallbackService callbackService;
+    private final ObjectMapper objectMapper;
+
+    // Identifica a linha de cada entrada do SendMessageBatch
+    static final String SCHEDULED_MESSAGE_ID_HEADER = "scheduled-message-id";
+
+    @Value("${sqs.queue.outgoing}")
+    private String outgoingQueueName;
+
+    /**
+     * @param claimed Quantidade de mensagens reservadas no lote.
+     * @param campaignIds Campanhas afetadas (para checagem de conclusão após o commit).
+     */
+    public record DispatchResult(int claimed, Set<Long> campaignIds) {
+        static final DispatchResult EMPTY = new DispatchResult(0, Set.of());
+    }
+
+    @Transactional
+    public DispatchResult dispatchBatch(int limit) {
+        List<ScheduledMessage> claimed = scheduledMessageRepository.lockReadyToSend(LocalDateTime.now(), limit);
+        if (claimed.isEmpty()) {
+            return DispatchResult.EMPTY;
+        }
+
+        // Contexto carregado uma vez por campanha; os proxies de msg.getCampaign() apontam para estas instâncias
+        Set<Long> campaignIds = new HashSet<>();
+        Set<Long> contactIds = new HashSet<>();
+        for (ScheduledMessage msg : claimed) {
+            campaignIds.add(msg.getCampaign().getId());
+            contactIds.add(msg.getContact().getId());
+        }
+        Map<Long, CampaignContext> contexts = new HashMap<>();
+        for (ScheduledCampaign campaign : campaignRepository.findWithContextByIdIn(campaignIds)) {
+            contexts.put(campaign.getId(), loadContext(campaign));
+        }
+        contactRepository.findAllById(contactIds); // Carrega os contatos no contexto de persistência em uma query
+        campaignRepository.markProcessing(campaignIds);
+
+        Map<Long, ScheduledMessage> byId = new LinkedHashMap<>();
+        List<Message<String>> messages = new ArrayList<>(claimed.size());
+        for (ScheduledMessage msg : claimed) {
+            CampaignContext context = contexts.get(msg.getCampaign().getId());
+            try {
+                Message<String> message = buildMessage(msg, context);
+                messages.add(message);
+                byId.put(msg.getId(), msg);
+            } catch (Exception e) {
+                log.error("Falha ao gerar mensagem agendada ID {}: {}", msg.getId(), e.getMessage());
+                markFailed(msg, "Falha ao enfileirar: " + e.getMessage());
+            }
+        }
+
+        // Rejeições casadas pelo ID da ScheduledMessage (header), não pelo conteúdo do payload
+        Set<Long> rejected = new HashSet<>();
+        sqsBatchSender.sendAll(outgoingQueueName, messages)
+                .forEach(m -> rejected.add(m.getHeaders().get(SCHEDULED_MESSAGE_ID_HEADER, Long.class)));
+        byId.forEach((id, msg) -> {
+            if (rejected.contains(id)) {
+                markFailed(msg, "Falha ao enfileirar: mensagem rejeitada pela fila.");
+            } else {
+                msg.setStatus(ScheduledMessage.MessageStatus.QUEUED);
+            }
+        });
+
+        log.info("Lote de {} mensagens agendadas processado ({} campanhas, {} rejeitadas).",
+                claimed.size(), campaignIds.size(), rejected.size());
+        return new DispatchResult(claimed.size(), campaignIds);
+    }
+
+    /**
+     * Marca como COMPLETED as campanhas sem mensagens PENDING e dispara o callback de conclusão.
+     * Deve ser chamado após o commit dos lotes (uma vez por ciclo do scheduler), para enxergar as reservas
+     * dos outros workers já confirmadas. A contagem usa o índice (campaign_id, status).
+     */
+    public void completeFinishedCampaigns(Collection<Long> campaignIds) {
+        for (Long campaignId : campaignIds) {
+            long remainingPending = scheduledMessageRepository.countByCampaignIdAndStatus(campaignId, ScheduledMessage.MessageStatus.PENDING);
+            if (remainingPending > 0) {
+                log.debug("{} mensagens pendentes ainda restam para a campanha ID {}.", remainingPending, campaignId);
+                continue;
+            }
+            if (campaignRepository.markCompleted(campaignId) == 0) {
+                continue; // Já concluída por outro worker, ou pausada/cancelada
+            }
+            log.info("Todas as mensagens da campanha ID {} foram enfileiradas. Marcada como COMPLETED.", campaignId);
+            campaignRepository.findById(campaignId).ifPresent(campaign -> {
+                try {
+                    callbackService.sendCampaignStatusCallback(campaign.getCompany().getId(), campaign.getId());
+                } catch (Exception e) {
+                    // Logar erro na chamada do callback, mas não deixar que isso afete o dispatcher
+                    log.error("Falha ao iniciar o envio de callback de conclusão para campanha ID {}: {}",
+                            campaign.getId(), e.getMessage());
+                }
+            });
+        }
+    }
+
+    private Message<String> buildMessage(ScheduledMessage msg, CampaignContext context) throws JsonProcessingException {
+        ScheduledCampaign campaign = context.campaign();
+        if (context.plan() == null) {
+            throw new BusinessException("Mapeamento de componentes inválido na campanha ID " + campaign.getId() + ".");
+        }
+
+        // 1. Gera os componentes com parâmetros resolvidos para o contato da mensagem agendada
+        List<TemplateComponentRequest> resolvedComponents = parameterGenerator.generateComponents(
+                context.plan(), msg.getContact(), campaign.getCompany(), campaign.getCreatedByUser());
+
+        // 2. Monta o SendTemplateMessageRequest para este envio específico
+        SendTemplateMessageRequest templateRequestPayload = SendTemplateMessageRequest.builder()
+                .to(msg.getContact().getPhoneNumber())
+                .contactId(msg.getContact().getId())
+                .templateName(campaign.getTemplateName())
+                .languageCode(campaign.getLanguageCode())
+                .resolvedComponents(resolvedComponents) // Passa os componentes JÁ RESOLVIDOS
+                .build();
+
+        // 3. Monta o payload para a fila SQS
+        OutgoingMessageRequest queuePayload = OutgoingMessageRequest.builder()
+                .messageType("TEMPLATE")
+                .userId(campaign.getCreatedByUser().getId())
+                .templateRequest(templateRequestPayload)
+                .scheduledMessageId(msg.getId()) // Mantém o vínculo com a mensagem agendada
+                .originalRequestId("scheduler-" + msg.getId())
+                .build();
+
+        String messageGroupId = messageGroupResolver.resolve("campaign-" + campaign.getId(), templateRequestPayload.getTo());
+        return MessageBuilder.withPayload(objectMapper.writeValueAsString(queuePayload))
+                .setHeader("message-group-id", messageGroupId)
+                .setHeader("message-deduplication-id", "scheduled-message-" + msg.getId())
+                .setHeader(SCHEDULED_MESSAGE_ID_HEADER, msg.getId())
+                .build();
+    }
+
+    private CampaignContext loadContext(ScheduledCampaign campaign) {
+        TemplateMappingPlan plan;
+        try {
+            // O plano fica em cache pelo JSON da campanha: compilado uma vez e reutilizado pelos próximos lotes
+            plan = parameterGenerator.compile(campaign.getComponentMappingsJson());
+        } catch (Exception e) {
+            log.error("Mapeamento de componentes inválido na campanha ID {}: {}", campaign.getId(), e.getMessage());
+            plan = null; // As mensagens desta campanha falharão individualmente
+        }
+        return new CampaignContext(campaign, plan);
+    }
+
+    private void markFailed(ScheduledMessage msg, String reason) {
+        msg.setStatus(ScheduledMessage.MessageStatus.FAILED);
+        msg.setFailureReason(reason);
+    }
+
+    private record CampaignContext(ScheduledCampaign campaign, TemplateMappingPlan plan) {}
+}
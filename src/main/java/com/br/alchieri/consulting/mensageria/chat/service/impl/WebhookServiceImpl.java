@@ -1,22 +1,38 @@
 package com.br.alchieri.consulting.mensageria.chat.service.impl;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.YearMonth;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.br.alchieri.consulting.mensageria.catalog.model.Product;
 import com.br.alchieri.consulting.mensageria.catalog.repository.ProductRepository;
+import com.br.alchieri.consulting.mensageria.chat.consumer.MessageStatusBatcher;
+import com.br.alchieri.consulting.mensageria.chat.dto.webhook.MessageStatusUpdate;
+import com.br.alchieri.consulting.mensageria.chat.dto.webhook.WebhookEvent;
+import com.br.alchieri.consulting.mensageria.chat.dto.webhook.WebhookEvent.AccountUpdateEvent;
+import com.br.alchieri.consulting.mensageria.chat.dto.webhook.WebhookEvent.FlowEvent;
+import com.br.alchieri.consulting.mensageria.chat.dto.webhook.WebhookEvent.InboundMessageEvent;
+import com.br.alchieri.consulting.mensageria.chat.dto.webhook.WebhookEvent.OrderItem;
+import com.br.alchieri.consulting.mensageria.chat.dto.webhook.WebhookEvent.StatusEvent;
 import com.br.alchieri.consulting.mensageria.chat.dto.webhook.WebhookEventPayload;
 import com.br.alchieri.consulting.mensageria.chat.model.Contact;
 import com.br.alchieri.consulting.mensageria.chat.model.Flow;
@@ -27,33 +43,35 @@ import com.br.alchieri.consulting.mensageria.chat.model.WhatsAppMessageLog;
 import com.br.alchieri.consulting.mensageria.chat.model.enums.FlowStatus;
 import com.br.alchieri.consulting.mensageria.chat.model.enums.MessageDirection;
 import com.br.alchieri.consulting.mensageria.chat.model.enums.TemplateCategory;
+import com.br.alchieri.consulting.mensageria.chat.producer.SqsMicroBatchPublisher;
 import com.br.alchieri.consulting.mensageria.chat.repository.ContactRepository;
 import com.br.alchieri.consulting.mensageria.chat.repository.FlowDataRepository;
 import com.br.alchieri.consulting.mensageria.chat.repository.FlowHealthAlertRepository;
 import com.br.alchieri.consulting.mensageria.chat.repository.FlowRepository;
+import com.br.alchieri.consulting.mensageria.chat.repository.MessageWamidRepository;
 import com.br.alchieri.consulting.mensageria.chat.repository.ScheduledMessageRepository;
 import com.br.alchieri.consulting.mensageria.chat.repository.WhatsAppMessageLogRepository;
 import com.br.alchieri.consulting.mensageria.chat.service.BotEngineService;
 import com.br.alchieri.consulting.mensageria.chat.service.CallbackService;
 import com.br.alchieri.consulting.mensageria.chat.service.FlowService;
 import com.br.alchieri.consulting.mensageria.chat.service.WebhookService;
+import com.br.alchieri.consulting.mensageria.chat.util.WebhookEventDecoder;
+import com.br.alchieri.consulting.mensageria.chat.util.WebhookMessageGroupResolver;
 import com.br.alchieri.consulting.mensageria.dto.cart.CartItemDTO;
 import com.br.alchieri.consulting.mensageria.exception.BusinessException;
 import com.br.alchieri.consulting.mensageria.model.Company;
 import com.br.alchieri.consulting.mensageria.model.CompanyTierStatus;
 import com.br.alchieri.consulting.mensageria.model.User;
 import com.br.alchieri.consulting.mensageria.model.WhatsAppPhoneNumber;
-import com.br.alchieri.consulting.mensageria.model.enums.Role;
 import com.br.alchieri.consulting.mensageria.model.redis.UserSession;
 import com.br.alchieri.consulting.mensageria.repository.CompanyTierStatusRepository;
-import com.br.alchieri.consulting.mensageria.repository.UserRepository;
-import com.br.alchieri.consulting.mensageria.repository.WhatsAppPhoneNumberRepository;
 import com.br.alchieri.consulting.mensageria.service.AdminNotificationService;
 import com.br.alchieri.consulting.mensageria.service.BillingService;
 import com.br.alchieri.consulting.mensageria.service.impl.SessionService;
+import com.br.alchieri.consulting.mensageria.service.impl.TenantConfigCache;
+import com.br.alchieri.consulting.mensageria.util.PhoneNumberNormalizer;
 import com.br.alchieri.consulting.mensageria.util.SignatureUtil;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import io.awspring.cloud.sqs.operations.SqsTemplate;
@@ -68,16 +86,18 @@ public class WebhookServiceImpl implements WebhookService {
     private final ObjectMapper objectMapper;
     private final SignatureUtil signatureUtil;
     private final SqsTemplate sqsTemplate;
+    private final SqsMicroBatchPublisher sqsPublisher;
+    private final WebhookMessageGroupResolver messageGroupResolver;
+    private final WebhookEventDecoder eventDecoder;
     
     private final WhatsAppMessageLogRepository messageLogRepository;
+    private final MessageWamidRepository messageWamidRepository;
     private final ContactRepository contactRepository;
     private final ScheduledMessageRepository scheduledMessageRepository;
     private final FlowHealthAlertRepository flowHealthAlertRepository;
     private final FlowRepository flowRepository;
     private final CompanyTierStatusRepository companyTierStatusRepository;
     private final FlowDataRepository flowDataRepository;
-    private final UserRepository userRepository;
-    private final WhatsAppPhoneNumberRepository phoneNumberRepository;
     private final ProductRepository productRepository;
     
     private final CallbackService callbackService;
@@ -86,10 +106,16 @@ public class WebhookServiceImpl implements WebhookService {
     private final BillingService billingService;
     private final SessionService sessionService;
     private final BotEngineService botEngineService;
+    private final MessageStatusBatcher statusBatcher;
+    private final ConversationSummaryUpdater conversationSummaryUpdater;
+    private final TenantConfigCache tenantConfigCache;
 
     @Value("${webhook-queue.name}")
     private String webhookQueueName;
 
+    @Value("${webhook.status-batch.await-timeout-ms:30000}")
+    private long statusBatchTimeoutMs;
+
     @Override
     public boolean verifySignature(String payload, String signatureHeader) {
         return signatureUtil.verifySignature(payload, signatureHeader);
@@ -115,23 +141,8 @@ public class WebhookServiceImpl implements WebhookService {
     public void processWebhookPayload(String payload) {
         log.debug("Processando payload do webhook...");
         try {
-            JsonNode rootNode = objectMapper.readTree(payload);
-            log.trace("Payload JSON parseado: {}", rootNode);
-
-            if (rootNode.has("object") && "whatsapp_business_account".equals(rootNode.path("object").asText())) {
-                if (rootNode.has("entry")) {
-                    for (JsonNode entry : rootNode.get("entry")) {
-                        // Processa cada 'change' dentro de uma transação separada (REQUIRES_NEW)
-                        // para isolar falhas em um change das outras.
-                        processEntryChanges(entry);
-                    }
-                } else {
-                    log.warn("Webhook payload sem nó 'entry': {}", rootNode);
-                }
-            } else {
-                log.warn("Payload do webhook não corresponde à estrutura esperada (object=whatsapp_business_account). Payload: {}", payload);
-            }
-        } catch (JsonProcessingException e) {
+            processWebhookEvents(eventDecoder.decode(payload));
+        } catch (IOException e) {
             log.error("Erro Crítico: Falha ao fazer parse do JSON do payload do webhook: {}", payload, e);
         } catch (Exception e) {
             log.error("Erro inesperado ao processar payload do webhook: {}", payload, e);
@@ -150,13 +161,16 @@ public class WebhookServiceImpl implements WebhookService {
                     .build();
 
             String jsonPayload = objectMapper.writeValueAsString(queuePayload);
-            
-            // 2. Enfileirar o objeto wrapper
+
+            // 2. Define o grupo FIFO (por conversa no modo particionado, ou grupo único legado)
+            String messageGroupId = messageGroupResolver.resolve(payload);
+
+            // 3. Enfileirar o objeto wrapper
             sqsTemplate.send(to -> to.queue(webhookQueueName)
                                       .payload(jsonPayload)
-                                      .header("message-group-id", "webhook-events")); // Message group para FIFO
+                                      .header("message-group-id", messageGroupId)); // Message group para FIFO
             
-            log.info("Webhook event successfully queued.");
+            log.info("Webhook event successfully queued (group: {}).", messageGroupId);
 
         } catch (Exception e) {
             log.error("Falha ao enfileirar evento de webhook. O evento será perdido. Erro: {}", e.getMessage(), e);
@@ -177,19 +191,38 @@ public class WebhookServiceImpl implements WebhookService {
         log.info("Assinatura do webhook verificada com sucesso no consumidor.");
 
         // 2. Agora, o resto da lógica pode prosseguir como antes
+        processVerifiedWebhookPayload(payload);
+    }
+
+    @Override
+    public void queueWebhookEvent(byte[] payload, String signature) {
+        log.info("Queueing webhook event payload ({} bytes).", payload.length);
         try {
-            JsonNode rootNode = objectMapper.readTree(payload);
-            
-            if (rootNode.has("object") && "whatsapp_business_account".equals(rootNode.path("object").asText())) {
-                if (rootNode.has("entry")) {
-                    for (JsonNode entry : rootNode.get("entry")) {
-                        // O método processEntryChanges já é @Transactional
-                        processEntryChanges(entry);
-                    }
-                } else { /* log warn */ }
-            } else {
-                log.warn("Payload do webhook (da fila) não corresponde à estrutura esperada (object=whatsapp_business_account). Payload: {}", payload);
-            }
+            // Grupo FIFO calculado direto dos bytes (sem materializar o corpo como String)
+            String messageGroupId = messageGroupResolver.resolve(payload);
+
+            // O corpo da mensagem SQS precisa ser texto: os bytes UTF-8 da Meta são usados como estão, sem envelope.
+            // A publicação é em micro-lote e não espera o SQS (com o SQS fora, vai para o spool local).
+            sqsPublisher.publish(webhookQueueName, MessageBuilder.withPayload(new String(payload, StandardCharsets.UTF_8))
+                    .setHeader("message-group-id", messageGroupId)
+                    .setHeader(SIGNATURE_ATTRIBUTE, signature)
+                    .setHeader(RECEIVED_AT_ATTRIBUTE, String.valueOf(System.currentTimeMillis()))
+                    .setHeader(VERIFIED_ATTRIBUTE, "true")
+                    .build());
+
+            log.info("Webhook event successfully queued (group: {}).", messageGroupId);
+
+        } catch (Exception e) {
+            log.error("Falha ao enfileirar evento de webhook. O evento será perdido. Erro: {}", e.getMessage(), e);
+            // Propaga para o WebhookController responder 500 e a Meta reenviar
+            throw new RuntimeException("Falha ao enfileirar evento de webhook.", e);
+        }
+    }
+
+    @Override
+    public void processVerifiedWebhookPayload(String payload) {
+        try {
+            processWebhookEvents(eventDecoder.decode(payload));
         } catch (Exception e) {
             log.error("Erro ao processar payload de webhook da fila: {}", e.getMessage(), e);
             // Lançar exceção para que a mensagem seja reenviada ou vá para a DLQ
@@ -197,63 +230,86 @@ public class WebhookServiceImpl implements WebhookService {
         }
     }
 
-    // Processa changes de uma entry com transação própria
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
-    public void processEntryChanges(JsonNode entry) {
-        if (entry.has("changes")) {
-            for (JsonNode change : entry.get("changes")) {
-                try {
-                    String field = change.path("field").asText();
-                    String wabaId = entry.path("id").asText(null);
-                    JsonNode value = change.path("value");
-
-                    if (!value.isMissingNode()) {
-                        switch (field) {
-                            case "messages":
-                                String webhookPhoneNumberId = value.path("metadata").path("phone_number_id").asText(null);
-                                
-                                WhatsAppPhoneNumber channel = findChannelByMetaId(webhookPhoneNumberId);
-                                
-                                if (channel != null) {
-                                    processMessagesFieldValue(value, channel);
-                                } else {
-                                    log.warn("Ignorando mensagens para ID desconhecido: {}", webhookPhoneNumberId);
-                                }
-                                break;
-                            case "flows":
-                                handleFlowsField(value, wabaId);
-                                break;
-                            case "account_update":
-                                handleAccountUpdateField(value, wabaId);
-                                break;
-                            default:
-                                log.warn("Webhook field unknown: {}", field);
-                                break;
+    @Override
+    public void processWebhookEvents(List<WebhookEvent> events) {
+        // Um payload costuma trazer vários eventos do mesmo número: o canal é buscado uma vez por payload
+        Map<String, Optional<WhatsAppPhoneNumber>> channels = new HashMap<>();
+        List<StatusEvent> pendingStatuses = new ArrayList<>();
+
+        for (WebhookEvent event : events) {
+            // Status consecutivos do mesmo número são gravados juntos
+            if (!pendingStatuses.isEmpty() && !(event instanceof StatusEvent next
+                    && Objects.equals(next.phoneNumberId(), pendingStatuses.get(0).phoneNumberId()))) {
+                processStatusEvents(pendingStatuses, channels);
+            }
+            try {
+                switch (event) {
+                    case StatusEvent status -> pendingStatuses.add(status);
+                    case InboundMessageEvent message -> {
+                        WhatsAppPhoneNumber channel = resolveChannel(message.phoneNumberId(), channels);
+                        if (channel != null) {
+                            handleIncomingMessage(message, channel.getCompany(), channel);
+                        } else {
+                            log.warn("Ignorando mensagens para ID desconhecido: {}", message.phoneNumberId());
                         }
                     }
-                } catch (Exception e) {
-                    log.error("Error processing entry change", e);
+                    case FlowEvent flowEvent -> handleFlowsField(flowEvent);
+                    case AccountUpdateEvent accountUpdate -> handleAccountUpdateField(accountUpdate);
                 }
+            } catch (Exception e) {
+                log.error("Erro ao processar evento do webhook (WAMID {}): {}", event.wamid(), e.getMessage(), e);
             }
-        } else {
-            log.warn("Entry do webhook sem nó 'changes': {}", entry);
         }
+        processStatusEvents(pendingStatuses, channels);
+    }
+
+    private void processStatusEvents(List<StatusEvent> statuses, Map<String, Optional<WhatsAppPhoneNumber>> channels) {
+        if (statuses.isEmpty()) {
+            return;
+        }
+        List<StatusEvent> group = List.copyOf(statuses);
+        statuses.clear();
+
+        String phoneNumberId = group.get(0).phoneNumberId();
+        WhatsAppPhoneNumber channel = resolveChannel(phoneNumberId, channels);
+        if (channel == null) {
+            log.warn("Ignorando mensagens para ID desconhecido: {}", phoneNumberId);
+            return;
+        }
+        Company company = channel.getCompany();
+        try {
+            if (statusBatcher.isEnabled()) {
+                processStatusesInBatch(group, company);
+            } else {
+                group.forEach(status -> handleMessageStatusUpdateSafely(status, company));
+            }
+        } catch (Exception e) {
+            log.error("Erro ao processar {} status do número {}: {}", group.size(), phoneNumberId, e.getMessage(), e);
+        }
+    }
+
+    private WhatsAppPhoneNumber resolveChannel(String phoneNumberId, Map<String, Optional<WhatsAppPhoneNumber>> channels) {
+        if (phoneNumberId == null) {
+            return null;
+        }
+        return channels.computeIfAbsent(phoneNumberId, id -> Optional.ofNullable(findChannelByMetaId(id))).orElse(null);
     }
 
-    private void handleFlowsField(JsonNode valueNode, String wabaId) {
+    private void handleFlowsField(FlowEvent event) {
 
-        String eventType = valueNode.path("event").asText(null);
-        String metaFlowId = valueNode.path("flow_id").asText(null);
+        String eventType = event.event();
+        String metaFlowId = event.flowId();
+        String wabaId = event.wabaId();
 
         if (eventType == null || metaFlowId == null) {
-            log.warn("Webhook de 'flows' recebido com dados incompletos (event ou flow_id ausente): {}", valueNode);
+            log.warn("Webhook de 'flows' recebido com dados incompletos (event ou flow_id ausente): {}", event.rawJson());
             return;
         }
 
         log.info("Webhook de Flow recebido: Evento='{}', FlowID='{}', WABA_ID='{}'", eventType, metaFlowId, wabaId);
 
         // Encontra o Flow no nosso banco de dados
-        Optional<Flow> optFlow = flowRepository.findByMetaFlowId(metaFlowId);
+        Optional<Flow> optFlow = tenantConfigCache.findFlowByMetaId(metaFlowId);
         if (optFlow.isEmpty()) {
             log.warn("Recebido evento de Flow para o Meta Flow ID '{}', mas este Flow não está registrado em nosso sistema.", metaFlowId);
             // Poderíamos criar um alerta "órfão" aqui se quiséssemos
@@ -272,13 +328,9 @@ public class WebhookServiceImpl implements WebhookService {
         alert.setFlow(flow);
         alert.setMetaFlowId(metaFlowId);
         alert.setEventType(eventType);
-        alert.setMessage(valueNode.path("message").asText(null));
-        alert.setAlertState(valueNode.path("alert_state").asText(null));
-        try {
-            alert.setEventDataJson(objectMapper.writeValueAsString(valueNode));
-        } catch (JsonProcessingException e) {
-            log.error("Erro ao serializar dados do alerta de Flow para o banco.", e);
-        }
+        alert.setMessage(event.message());
+        alert.setAlertState(event.alertState());
+        alert.setEventDataJson(event.rawJson());
         flowHealthAlertRepository.save(alert);
         log.info("Alerta de saúde para o Flow ID {} salvo no banco.", flow.getId());
 
@@ -286,7 +338,7 @@ public class WebhookServiceImpl implements WebhookService {
         // 2. Lógica de Negócio Específica por Evento
         switch (eventType) {
             case "FLOW_STATUS_CHANGE":
-                String newStatusStr = valueNode.path("new_status").asText();
+                String newStatusStr = event.newStatus() != null ? event.newStatus() : "";
                 log.info("Status do Flow '{}' (ID {}) alterado para {}.", flow.getName(), flow.getId(), newStatusStr);
                 try {
                     // Mapeia o status da Meta para o nosso enum
@@ -299,14 +351,17 @@ public class WebhookServiceImpl implements WebhookService {
                         (flow.getStatus() == FlowStatus.THROTTLED && newStatus == FlowStatus.PUBLISHED) ||
                         (flow.getStatus() == FlowStatus.BLOCKED && newStatus == FlowStatus.THROTTLED))
                     {
-                        flow.setStatus(newStatus);
-                        flowRepository.save(flow);
+                        // O Flow do cache é compartilhado: a alteração é feita sobre a versão do banco
+                        Flow managedFlow = flowRepository.findById(flow.getId()).orElseThrow();
+                        managedFlow.setStatus(newStatus);
+                        flowRepository.save(managedFlow);
+                        tenantConfigCache.evictFlow(metaFlowId);
                         
                         // Dispara callback para o cliente sobre a mudança de status
                         callbackService.sendFlowStatusCallback(flow.getCompany().getId(), flow.getId());
                     } else {
                         log.info("Mudança de status '{}' para '{}' é gerenciada pelo usuário via API, ignorando webhook para este campo para evitar conflitos.",
-                                valueNode.path("old_status").asText(), newStatusStr);
+                                event.oldStatus(), newStatusStr);
                         // Apenas logamos, mas não alteramos o status se for uma mudança que o usuário fez (ex: DRAFT -> PUBLISHED),
                         // pois nosso serviço já deve ter atualizado o status. Isso evita corridas de condição.
                     }
@@ -317,7 +372,7 @@ public class WebhookServiceImpl implements WebhookService {
 
             case "ENDPOINT_ERROR_RATE":
             case "ENDPOINT_AVAILABILITY":
-                alertState = valueNode.path("alert_state").asText();
+                alertState = event.alertState();
                 if ("ACTIVATED".equalsIgnoreCase(alertState)) {
                     // Agora podemos acessar company.getName() sem erro
                     adminNotificationService.notifyCallbackFailure(
@@ -331,7 +386,7 @@ public class WebhookServiceImpl implements WebhookService {
                 break;
             case "ENDPOINT_LATENCY":
             case "CLIENT_ERROR_RATE":
-                alertState = valueNode.path("alert_state").asText();
+                alertState = event.alertState();
                 if ("ACTIVATED".equalsIgnoreCase(alertState)) {
                     
                     // Notifica o admin do BSP
@@ -358,55 +413,88 @@ public class WebhookServiceImpl implements WebhookService {
                 }
                 break;
             case "FLOW_VERSION_EXPIRY_WARNING":
-                log.warn("AVISO DE EXPIRAÇÃO DE VERSÃO para Flow ID {}: {}", flow.getId(), valueNode.path("warning").asText());
+                log.warn("AVISO DE EXPIRAÇÃO DE VERSÃO para Flow ID {}: {}", flow.getId(), event.warning());
                 // TODO: Notificar admin do BSP e/ou cliente sobre a necessidade de atualizar o Flow.
                 break;
         }
     }
 
-    private void processMessagesFieldValue(JsonNode valueNode, WhatsAppPhoneNumber channel) {
+    /**
+     * Entrega os status do webhook ao estágio de agrupamento e aguarda a gravação do lote,
+     * para que a mensagem SQS só seja confirmada após a persistência.
+     * Em caso de falha do lote (ou de timeout antes de o flush pegá-lo), cai para o processamento individual.
+     */
+    private void processStatusesInBatch(List<StatusEvent> statuses, Company company) {
+        List<MessageStatusUpdate> updates = new ArrayList<>();
+        for (StatusEvent status : statuses) {
+            MessageStatusUpdate update = toStatusUpdate(status, company);
+            if (update != null) updates.add(update);
+        }
+        if (updates.isEmpty()) {
+            return;
+        }
+        try {
+            awaitStatusBatch(statusBatcher.submit(updates));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrompido aguardando gravação do lote de status.", e);
+        } catch (Exception e) {
+            log.warn("Lote de status não confirmado ({}). Processando {} status individualmente.", e.getMessage(), updates.size());
+            statuses.forEach(status -> handleMessageStatusUpdateSafely(status, company));
+        }
+    }
 
-        Company company = channel.getCompany();
-        if (valueNode.has("statuses")) {
-            for (JsonNode statusNode : valueNode.get("statuses")) {
-                try { 
-                    handleMessageStatusUpdate(statusNode, company);
-                } catch (Exception e) { 
-                    log.error("Erro ao processar status individual: {}", statusNode, e);
-                }
-            }
-        } else if (valueNode.has("messages")) {
-            JsonNode contactsNode = valueNode.get("contacts");
-            String ourPhoneNumber = channel.getDisplayPhoneNumber();
-            for (JsonNode messageNode : valueNode.get("messages")) {
-                 try {
-                    handleIncomingMessage(messageNode, contactsNode, ourPhoneNumber, company, channel);
-                } catch (Exception e) {
-                    log.error("Erro ao processar mensagem recebida individual: {}", messageNode, e);
-                }
+    private void awaitStatusBatch(CompletableFuture<Void> batch) throws InterruptedException, ExecutionException, TimeoutException {
+        try {
+            batch.get(statusBatchTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (statusBatcher.withdraw(batch)) {
+                throw e; // Fora do lote: o fallback individual é o único a aplicar
             }
-        } else { 
-            log.warn("Nó 'value' do webhook de mensagem não continha 'statuses' nem 'messages'. Value: {}", valueNode.toString());
+            // O flush já pegou estas atualizações: aguarda o resultado em vez de aplicá-las de novo
+            batch.get();
         }
     }
 
+    private void handleMessageStatusUpdateSafely(StatusEvent status, Company company) {
+        try {
+            handleMessageStatusUpdate(status, company);
+        } catch (Exception e) {
+            log.error("Erro ao processar status individual: {}", status, e);
+        }
+    }
+
+    private MessageStatusUpdate toStatusUpdate(StatusEvent statusEvent, Company company) {
+        String wamid = statusEvent.wamid();
+        String status = statusEvent.status();
+        if (wamid == null || wamid.isBlank() || status == null || status.isBlank()) {
+            log.warn("WAMID ou status ausente na atualização de status: {}", statusEvent);
+            return null;
+        }
+        String statusUpper = status.toUpperCase();
+        LocalDateTime statusTimestamp = Instant.ofEpochSecond(statusEvent.timestamp()).atZone(ZoneId.systemDefault()).toLocalDateTime();
+        String errorsJson = "FAILED".equals(statusUpper) ? statusEvent.errorsJson() : null;
+
+        return new MessageStatusUpdate(wamid, statusUpper, statusTimestamp, errorsJson, statusEvent.pricingCategory(),
+                statusEvent.billable(), company != null ? company.getId() : null);
+    }
+
     @Transactional
-    private void handleMessageStatusUpdate(JsonNode statusNode, Company companyFromWebhookHint) { // Removido companyFromWebhook, pegaremos do log
+    private void handleMessageStatusUpdate(StatusEvent statusEvent, Company companyFromWebhookHint) { // Removido companyFromWebhook, pegaremos do log
         
-        String wamid = statusNode.path("id").asText(null);
+        String wamid = statusEvent.wamid();
         if (wamid == null || wamid.isBlank()) {
-            log.warn("WAMID ausente na atualização de status: {}", statusNode);
+            log.warn("WAMID ausente na atualização de status: {}", statusEvent);
             return;
         }
 
-        String status = statusNode.path("status").asText();
+        String status = statusEvent.status();
         if (status == null || status.isBlank()) {
-            log.warn("Status ausente na atualização de status para WAMID {}: {}", wamid, statusNode);
+            log.warn("Status ausente na atualização de status para WAMID {}: {}", wamid, statusEvent);
             return;
         }
         String statusUpper = status.toUpperCase();
-        long timestampEpochSeconds = statusNode.path("timestamp").asLong();
-        LocalDateTime statusTimestamp = Instant.ofEpochSecond(timestampEpochSeconds).atZone(ZoneId.systemDefault()).toLocalDateTime();
+        LocalDateTime statusTimestamp = Instant.ofEpochSecond(statusEvent.timestamp()).atZone(ZoneId.systemDefault()).toLocalDateTime();
 
         log.info("Processando atualização de status: WAMID={}, NovoStatus={}", wamid, statusUpper);
 
@@ -420,54 +508,54 @@ public class WebhookServiceImpl implements WebhookService {
         }
 
         WhatsAppMessageLog msgLog = optLog.get();
-        msgLog.setStatus(statusUpper);
-        msgLog.setUpdatedAt(statusTimestamp);
 
-        // 2. Atualiza o metadata com o erro, se houver
-        if ("FAILED".equals(statusUpper) && statusNode.has("errors")) {
-            try {
-                msgLog.setMetadata(objectMapper.writeValueAsString(statusNode.get("errors")));
-            } catch (JsonProcessingException e) {
-                log.error("Erro ao serializar erros de status para WAMID {}: {}", wamid, e.getMessage());
-                msgLog.setMetadata("Erro ao serializar detalhes da falha.");
-            }
+        // 2. Só avança o status (mesma ordem do lote): um DELIVERED atrasado nunca sobrescreve um READ
+        String failureMetadata = "FAILED".equals(statusUpper) ? statusEvent.errorsJson() : null;
+        boolean statusChanged = messageLogRepository.advanceStatus(msgLog.getId(), statusUpper,
+                MessageStatusBatchWriter.statusRank(statusUpper), statusTimestamp, failureMetadata) > 0;
+        if (statusChanged) {
+            msgLog.setStatus(statusUpper);
+            msgLog.setUpdatedAt(statusTimestamp);
+            if (failureMetadata != null) msgLog.setMetadata(failureMetadata);
+            log.debug("WhatsAppMessageLog ID {} (WAMID {}) atualizado para status {}", msgLog.getId(), wamid, statusUpper);
         } else {
-            // Limpa o metadata se o status não for 'failed' (opcional, pode ser útil manter o último erro)
-            // msgLog.setMetadata(null);
+            log.debug("Status {} para WAMID {} ignorado: log já está em status de ordem igual ou maior.", statusUpper, wamid);
         }
-        JsonNode pricingNode = statusNode.path("pricing");
-        if (!pricingNode.isMissingNode()) {
-            boolean billable = pricingNode.path("billable").asBoolean(false);
-            String pricingCategory = pricingNode.path("category").asText(null);
-            
+
+        boolean priced = false;
+        if (statusEvent.billable() != null && msgLog.getMetaCost() == null) { // Nó 'pricing' presente
+            String pricingCategory = statusEvent.pricingCategory();
             if (pricingCategory != null) msgLog.setPricingCategory(pricingCategory);
 
-            if (billable) {
-                BigDecimal metaCost = billingService.calculateMetaCostForMessage(msgLog);
-                BigDecimal platformFee = billingService.calculatePlatformFee(msgLog); // Pode precisar do metaCost como parâmetro
-                
-                msgLog.setMetaCost(metaCost);
-                msgLog.setPlatformFee(platformFee);
-                msgLog.setFinalPrice(metaCost.add(platformFee));
-                
+            BigDecimal metaCost = BigDecimal.ZERO;
+            BigDecimal platformFee = BigDecimal.ZERO; // Ou sua taxa mínima
+            if (statusEvent.billable()) {
+                metaCost = billingService.calculateMetaCostForMessage(msgLog);
+                platformFee = billingService.calculatePlatformFee(msgLog); // Pode precisar do metaCost como parâmetro
+            }
+            // A precificação é gravada uma única vez por mensagem, mesmo com webhooks concorrentes
+            priced = messageLogRepository.applyPricingIfAbsent(msgLog.getId(), pricingCategory,
+                    metaCost, platformFee, metaCost.add(platformFee)) > 0;
+            if (priced && statusEvent.billable()) {
                 // Atualizar o contador de custos mensais no BillingPlan
                 billingService.recordCosts(msgLog.getCompany(), metaCost, platformFee);
-            } else {
-                msgLog.setMetaCost(BigDecimal.ZERO);
-                msgLog.setPlatformFee(BigDecimal.ZERO); // Ou sua taxa mínima
-                msgLog.setFinalPrice(BigDecimal.ZERO);
             }
         }
-        messageLogRepository.save(msgLog);
-        log.debug("WhatsAppMessageLog ID {} (WAMID {}) atualizado para status {}", msgLog.getId(), wamid, statusUpper);
 
+        if (!statusChanged && !priced) {
+            return;
+        }
 
         // 3. Se o log estiver vinculado a uma mensagem agendada, atualiza-a também
-        if (msgLog.getScheduledMessageId() != null) {
+        if (statusChanged && msgLog.getScheduledMessageId() != null) {
             scheduledMessageRepository.findById(msgLog.getScheduledMessageId()).ifPresent(scheduledMsg -> {
                 try {
                     // Mapeia o status da Meta para o status da mensagem agendada
                     ScheduledMessage.MessageStatus scheduledStatus = ScheduledMessage.MessageStatus.valueOf(statusUpper);
+                    if (MessageStatusBatchWriter.statusRank(scheduledStatus.name())
+                            <= MessageStatusBatchWriter.statusRank(scheduledMsg.getStatus().name())) {
+                        return;
+                    }
                     scheduledMsg.setStatus(scheduledStatus);
                     if ("FAILED".equals(statusUpper)) {
                         scheduledMsg.setFailureReason(msgLog.getMetadata()); // Copia o motivo da falha
@@ -491,23 +579,23 @@ public class WebhookServiceImpl implements WebhookService {
     }
 
     @Transactional
-    private void handleIncomingMessage(JsonNode messageNode, JsonNode contactsNode, String ourPhoneNumber, Company companyAssociatedWithWebhook, WhatsAppPhoneNumber channel) {
+    private void handleIncomingMessage(InboundMessageEvent message, Company companyAssociatedWithWebhook, WhatsAppPhoneNumber channel) {
         
-        String wamid = messageNode.path("id").asText();
+        String wamid = message.wamid();
         if (wamid == null || wamid.isBlank()) { 
-            log.warn("WAMID ausente na mensagem recebida: {}", messageNode);
+            log.warn("WAMID ausente na mensagem recebida: {}", message);
             return;
         }
-        // Evita salvar duplicatas
-        if (messageLogRepository.findByWamid(wamid).isPresent()) {
+        // Evita salvar duplicatas: registro atômico em message_wamids (com a tabela de logs particionada,
+        // o índice único de whatsapp_message_logs é (wamid, created_at) e não barra reentregas)
+        if (messageWamidRepository.registerIfAbsent(wamid, LocalDateTime.now()) == 0) {
              log.warn("Mensagem recebida com WAMID {} já existe no log. Ignorando webhook duplicado.", wamid);
              return;
         }
 
-        String from = messageNode.path("from").asText();
-        String type = messageNode.path("type").asText();
-        long ts = messageNode.path("timestamp").asLong();
-        LocalDateTime messageTimestamp = Instant.ofEpochSecond(ts).atZone(ZoneId.systemDefault()).toLocalDateTime();
+        String from = message.from() != null ? message.from() : "";
+        String type = message.type() != null ? message.type() : "";
+        LocalDateTime messageTimestamp = Instant.ofEpochSecond(message.timestamp()).atZone(ZoneId.systemDefault()).toLocalDateTime();
 
         log.info("Processando mensagem recebida: WAMID={}, From={}, Type={}, Empresa={}", 
                 wamid, from, type, companyAssociatedWithWebhook != null ? companyAssociatedWithWebhook.getId() : "N/A");
@@ -521,56 +609,49 @@ public class WebhookServiceImpl implements WebhookService {
         newLog.setDirection(MessageDirection.INCOMING);
         newLog.setChannelId(channel.getPhoneNumberId());
         newLog.setSenderPhoneNumber(from);
-        newLog.setRecipient(ourPhoneNumber);
+        newLog.setRecipient(channel.getDisplayPhoneNumber());
         newLog.setMessageType(type.toUpperCase());
         newLog.setStatus("RECEIVED");
         newLog.setCreatedAt(messageTimestamp);
         newLog.setUpdatedAt(messageTimestamp);
 
-        try { 
-            extractMessageContentAndMetadata(messageNode, newLog); 
-        } catch (Exception e) {
-            log.error("Erro ao extrair conteúdo/metadata da mensagem recebida {}: {}", wamid, e.getMessage());
-            newLog.setContent("Erro ao processar conteúdo.");
-            newLog.setMetadata("{\"error\":\"Falha ao processar payload da mensagem.\"}");
-        }
+        // Conteúdo e metadata já extraídos pelo WebhookEventDecoder
+        newLog.setContent(message.content());
+        newLog.setMetadata(message.metadataJson());
 
-        WhatsAppMessageLog savedLog = messageLogRepository.save(newLog);
+        WhatsAppMessageLog savedLog;
+        try {
+            savedLog = messageLogRepository.save(newLog);
+        } catch (RuntimeException e) {
+            // Libera o WAMID para que a reentrega do webhook possa gravar o log
+            messageWamidRepository.deleteById(wamid);
+            throw e;
+        }
         log.debug("Log salvo com ID {}", savedLog.getId());
 
         // ---------------------------------------------------------
         // 2. Resolução de Contato (Mantendo sua lógica original 9º Dígito)
         // ---------------------------------------------------------
-        String profileName = "Contato " + from; 
-        if (contactsNode != null && contactsNode.isArray() && !contactsNode.isEmpty()) {
-            profileName = contactsNode.get(0).path("profile").path("name").asText(profileName);
-        }
+        String profileName = message.profileName() != null ? message.profileName() : "Contato " + from;
         Contact contact = findOrSaveContact(companyAssociatedWithWebhook, from, profileName);
         
         contact.setUnreadMessagesCount(contact.getUnreadMessagesCount() + 1);
         contact.setUpdatedAt(LocalDateTime.now());
         contact.setLastActiveAt(LocalDateTime.now());
         contactRepository.save(contact);
+        conversationSummaryUpdater.record(savedLog, contact.getName());
 
         // ---------------------------------------------------------
         // 3. Processamento Específico de Flows (Dual Strategy)
         // ---------------------------------------------------------
-        String flowJsonInput = null;
-        boolean isFlowResponse = false;
-
-        if ("interactive".equals(type) && messageNode.has("interactive")) {
-            JsonNode interactiveNode = messageNode.path("interactive");
-            if ("nfm_reply".equals(interactiveNode.path("type").asText())) {
-                isFlowResponse = true;
-                JsonNode nfmReplyNode = interactiveNode.path("nfm_reply");
-                flowJsonInput = nfmReplyNode.path("response_json").asText(null);
-                
-                // A. Sempre tenta salvar o dado bruto para auditoria/histórico (FlowData)
-                try {
-                    processAndSaveFlowData(interactiveNode, companyAssociatedWithWebhook, contact, from);
-                } catch (Exception e) {
-                    log.error("ERRO AO SALVAR FLOW DATA para WAMID {}: {}", wamid, e.getMessage());
-                }
+        boolean isFlowResponse = message.isFlowResponse();
+
+        if (isFlowResponse) {
+            // A. Sempre tenta salvar o dado bruto para auditoria/histórico (FlowData)
+            try {
+                processAndSaveFlowData(message, companyAssociatedWithWebhook, contact);
+            } catch (Exception e) {
+                log.error("ERRO AO SALVAR FLOW DATA para WAMID {}: {}", wamid, e.getMessage());
             }
         }
 
@@ -583,11 +664,11 @@ public class WebhookServiceImpl implements WebhookService {
                 User systemUser = getSystemUserForCompany(companyAssociatedWithWebhook);
                 
                 // Se for resposta de Flow, o input é o JSON. Se não, extrai texto normal.
-                String botInput = isFlowResponse ? flowJsonInput : extractContentForBot(messageNode, type);
+                String botInput = isFlowResponse ? message.flowResponseJson() : message.botInput();
 
                 // CENÁRIO A: É um Pedido Nativo
                 if ("order".equals(type)) {
-                    handleNativeOrderMessage(messageNode, companyAssociatedWithWebhook, contact, session);
+                    handleNativeOrderMessage(message, companyAssociatedWithWebhook, contact, session);
                     botEngineService.processInput("CHECKOUT_TRIGGER", contact, session, systemUser, channel);
                     return;
                 }
@@ -616,18 +697,15 @@ public class WebhookServiceImpl implements WebhookService {
         }
     }
 
-    private void handleNativeOrderMessage(JsonNode messageNode, Company company, Contact contact, UserSession session) {
-        JsonNode orderNode = messageNode.path("order");
-        JsonNode productItems = orderNode.path("product_items");
-        
+    private void handleNativeOrderMessage(InboundMessageEvent message, Company company, Contact contact, UserSession session) {
         // Limpa carrinho anterior na sessão (nova ordem substitui rascunho)
         session.getCart().clear();
         
-        for (JsonNode itemNode : productItems) {
-            String retailerId = itemNode.path("product_retailer_id").asText();
-            int quantity = itemNode.path("quantity").asInt();
-            BigDecimal itemPrice = new BigDecimal(itemNode.path("item_price").asText());
-            String currency = itemNode.path("currency").asText();
+        for (OrderItem item : message.orderItems()) {
+            String retailerId = item.productRetailerId();
+            int quantity = item.quantity();
+            BigDecimal itemPrice = new BigDecimal(item.itemPrice());
+            String currency = item.currency();
             
             // Busca nome do produto no banco para enriquecer o DTO
             String name = "Item " + retailerId;
@@ -643,204 +721,36 @@ public class WebhookServiceImpl implements WebhookService {
         log.info("Carrinho atualizado via mensagem nativa para contato {}", contact.getPhoneNumber());
     }
 
-    private String extractContentForBot(JsonNode messageNode, String type) {
-        if ("text".equals(type)) {
-            return messageNode.path("text").path("body").asText();
-        } else if ("interactive".equals(type)) {
-            JsonNode interactive = messageNode.path("interactive");
-            String subType = interactive.path("type").asText();
-            if ("button_reply".equals(subType)) return interactive.path("button_reply").path("id").asText();
-            if ("list_reply".equals(subType)) return interactive.path("list_reply").path("id").asText();
-        }
-        return "";
-    }
-
     private User getSystemUserForCompany(Company company) {
         
-        return userRepository.findFirstByCompanyAndRolesContaining(company, Role.ROLE_COMPANY_ADMIN)
-                // Se não achar, tenta buscar um Admin do BSP vinculado à empresa (fallback)
-                .or(() -> userRepository.findFirstByCompanyAndRolesContaining(company, Role.ROLE_BSP_ADMIN))
+        // Admin da empresa ou, na falta, um Admin do BSP vinculado à empresa (fallback)
+        return tenantConfigCache.findSystemUser(company)
                 .orElseThrow(() -> new BusinessException("Empresa " + company.getId() + " não possui usuários administradores válidos para envio de bot."));
     }
 
     /**
      * Método centralizado para lidar com a inconsistência do nono dígito no Brasil.
-     * Tenta achar o contato de todas as formas possíveis antes de criar um novo.
+     * Busca o contato pela chave canônica (uma consulta, com ou sem o 9º dígito) antes de criar um novo.
      */
     private Contact findOrSaveContact(Company company, String incomingNumber, String profileName) {
-        // 1. Tentativa Direta (Exatamente como veio)
-        Optional<Contact> optContact = contactRepository.findByCompanyAndPhoneNumber(company, incomingNumber);
-
-        // 2. Lógica Brasil (DDI 55)
-        if (optContact.isEmpty() && incomingNumber.startsWith("55")) {
-            // Caso A: Veio com 12 dígitos (55 + DDD + 8 números). Ex: 554588887777
-            // O sistema tenta achar a versão COM 9 (55 + DDD + 9 + 8 números).
-            if (incomingNumber.length() == 12) {
-                String numberWithNine = incomingNumber.substring(0, 4) + "9" + incomingNumber.substring(4);
-                optContact = contactRepository.findByCompanyAndPhoneNumber(company, numberWithNine);
-                
-                if (optContact.isPresent()) {
-                    log.debug("Contato encontrado adicionando 9º dígito: {} -> {}", incomingNumber, numberWithNine);
-                }
-            }
-            // Caso B: Veio com 13 dígitos (55 + DDD + 9 + 8 números). Ex: 5545988887777
-            // O sistema tenta achar a versão SEM 9 (para casos legados ou fixos cadastrados errados).
-            else if (incomingNumber.length() == 13) {
-                String numberWithoutNine = incomingNumber.substring(0, 4) + incomingNumber.substring(5);
-                optContact = contactRepository.findByCompanyAndPhoneNumber(company, numberWithoutNine);
-                
-                if (optContact.isPresent()) {
-                    log.debug("Contato encontrado removendo 9º dígito: {} -> {}", incomingNumber, numberWithoutNine);
-                }
-            }
-        }
-
-        // 3. Se achou, retorna. Se não, cria NOVO (Padronizando para salvar COM 9 se for celular BR)
-        return optContact.orElseGet(() -> {
+        return contactRepository.findByCompanyAndPhone(company, incomingNumber).orElseGet(() -> {
             log.info("Contato não encontrado. Criando novo para: {}", incomingNumber);
             Contact newContact = new Contact();
             newContact.setCompany(company);
             newContact.setName(profileName);
-            
-            // PADRONIZAÇÃO NA CRIAÇÃO:
-            // Se chegou sem o 9 (12 dígitos) e é Brasil, salvamos COM o 9 para evitar duplicidade futura.
-            String finalNumber = incomingNumber;
-            if (incomingNumber.startsWith("55") && incomingNumber.length() == 12) {
-                finalNumber = incomingNumber.substring(0, 4) + "9" + incomingNumber.substring(4);
-                log.info("Padronizando novo contato BR para formato 13 dígitos: {}", finalNumber);
-            }
-            
-            newContact.setPhoneNumber(finalNumber);
+            // Padroniza na criação (celular BR sempre com o 9) para evitar duplicidade futura
+            newContact.setPhoneNumber(PhoneNumberNormalizer.normalize(incomingNumber));
             return contactRepository.save(newContact);
         });
     }
 
-    @SuppressWarnings("static-access")
-    private void extractMessageContentAndMetadata(JsonNode messageNode, WhatsAppMessageLog log) throws JsonProcessingException {
-        
-        String type = log.getMessageType().toLowerCase();
-        log.setContent(null);
-        log.setMetadata(null);
-        Map<String, Object> metaMap = new HashMap<>();
-
-        switch (type) {
-            case "text":
-                log.setContent(messageNode.path("text").path("body").asText());
-                break;
-            case "image":
-            case "video":
-            case "audio":
-            case "document":
-                String mediaId = messageNode.path(type).path("id").asText();
-                String caption = messageNode.path(type).path("caption").asText(null);
-                log.setContent(mediaId);
-                metaMap.put("mime_type", messageNode.path(type).path("mime_type").asText(null));
-                if(caption != null) metaMap.put("caption", caption);
-                if("document".equals(type)) metaMap.put("filename", messageNode.path(type).path("filename").asText(null));
-                break;
-            case "interactive":
-                JsonNode interactiveNode = messageNode.path("interactive");
-                String interactiveType = interactiveNode.path("type").asText();
-                log.setMetadata(objectMapper.writeValueAsString(interactiveNode)); // Salva toda a estrutura interativa como metadados
-
-                switch (interactiveType) {
-                    case "button_reply":
-                        JsonNode buttonReplyNode = interactiveNode.path("button_reply");
-                        String buttonId = buttonReplyNode.path("id").asText();
-                        String buttonTitle = buttonReplyNode.path("title").asText();
-                        log.setContent(buttonId); // ID do botão clicado é o conteúdo principal
-                        this.log.info("  -> Resposta de Botão: ID='{}', Título='{}'", buttonId, buttonTitle);
-                        break;
-                    case "list_reply":
-                        JsonNode listReplyNode = interactiveNode.path("list_reply");
-                        String listRowId = listReplyNode.path("id").asText();
-                        String listRowTitle = listReplyNode.path("title").asText();
-                        String listRowDescription = listReplyNode.path("description").asText(null);
-                        log.setContent(listRowId); // ID da linha da lista é o conteúdo principal
-                        this.log.info("  -> Resposta de Lista: ID='{}', Título='{}', Descrição='{}'",
-                                 listRowId, listRowTitle, listRowDescription);
-                        break;
-                    case "nfm_reply": // Resposta de um Flow
-                        JsonNode nfmReplyNode = interactiveNode.path("nfm_reply");
-                        String flowReplyBody = nfmReplyNode.path("body").asText();
-                        String responseJsonString = nfmReplyNode.path("response_json").asText(null);
-                        
-                        this.log.info("  Conteúdo (Resposta Final de Flow): Botão='{}'", flowReplyBody);
-
-                        if (responseJsonString != null) {
-                            try {
-                                JsonNode responseJson = objectMapper.readTree(responseJsonString);
-                                String flowToken = responseJson.path("flow_token").asText("N/A");
-                                String metaFlowId = responseJson.path("flow_id").asText("N/A");
-                                JsonNode flowData = responseJson.path("flow_data");
-
-                                this.log.info("  Dados da Resposta Final do Flow: Token='{}', FlowID='{}', Dados='{}'",
-                                        flowToken, metaFlowId, flowData.toString());
-                                
-                                // Salva os dados no log principal
-                                log.setContent("Resposta Final do Flow: " + flowReplyBody);
-                                log.setMetadata(responseJsonString); // Salva o JSON completo como metadados
-                            } catch (JsonProcessingException e) {
-                                this.log.error("  Erro ao fazer parse do 'response_json' do nfm_reply: {}", responseJsonString, e);
-                                log.setContent("Resposta Final de Flow (JSON inválido)");
-                                log.setMetadata(responseJsonString);
-                            }
-                        } else {
-                            this.log.warn("  nfm_reply recebido sem 'response_json'.");
-                            log.setContent("Resposta Final de Flow (sem dados)");
-                        }
-                        break;
-                    default:
-                        log.setContent("Tipo interativo desconhecido: " + interactiveType);
-                        this.log.info("  -> Tipo de resposta interativa não tratada: {}", interactiveType);
-                        break;
-                }
-                break;
-            case "reaction":
-                String reactedWamid = messageNode.path("reaction").path("message_id").asText();
-                String emoji = messageNode.path("reaction").path("emoji").asText(null);
-                log.setContent(emoji);
-                metaMap.put("reacted_wamid", reactedWamid);
-                break;
-            case "location":
-                log.setContent(String.format("Lat: %s, Lon: %s",
-                        messageNode.path("location").path("latitude").asText(),
-                        messageNode.path("location").path("longitude").asText()));
-                metaMap.put("name", messageNode.path("location").path("name").asText(null));
-                metaMap.put("address", messageNode.path("location").path("address").asText(null));
-                metaMap.put("url", messageNode.path("location").path("url").asText(null));
-                break;
-            case "contacts":
-                log.setContent("Contato(s) Recebido(s)");
-                log.setMetadata(objectMapper.writeValueAsString(messageNode.path("contacts")));
-                break;
-            case "unsupported":
-                log.setContent("Mensagem não suportada recebida.");
-                log.setMetadata(messageNode.toString());
-                break;
-            case "system":
-                log.setContent(messageNode.path("system").path("body").asText());
-                metaMap.put("system_type", messageNode.path("system").path("type").asText());
-                break;
-            default:
-                log.setContent("Tipo desconhecido: " + type);
-                log.setMetadata(messageNode.toString());
-                break;
-        }
-
-        if (!metaMap.isEmpty() && log.getMetadata() == null) {
-            log.setMetadata(objectMapper.writeValueAsString(metaMap));
-        }
-    }
-
-    private void handleAccountUpdateField(JsonNode valueNode, String wabaId) {
-        String event = valueNode.path("event").asText(null);
-        if ("VOLUME_BASED_PRICING_TIER_UPDATE".equals(event)) {
-            JsonNode tierInfo = valueNode.path("volume_tier_info");
-            String region = tierInfo.path("region").asText();
-            String categoryStr = tierInfo.path("pricing_category").asText();
-            String tier = tierInfo.path("tier").asText();
-            String effectiveMonthStr = tierInfo.path("effective_month").asText(); // "2025-11"
+    private void handleAccountUpdateField(AccountUpdateEvent update) {
+        String wabaId = update.wabaId();
+        if ("VOLUME_BASED_PRICING_TIER_UPDATE".equals(update.event())) {
+            String region = Objects.requireNonNullElse(update.region(), "");
+            String categoryStr = Objects.requireNonNullElse(update.pricingCategory(), "");
+            String tier = Objects.requireNonNullElse(update.tier(), "");
+            String effectiveMonthStr = Objects.requireNonNullElse(update.effectiveMonth(), ""); // "2025-11"
 
             log.info("WEBHOOK DE NÍVEL DE VOLUME: WABA {} atingiu o nível '{}' para {} em {}.",
                     wabaId, tier, categoryStr, region);
@@ -876,26 +786,24 @@ public class WebhookServiceImpl implements WebhookService {
         }
     }
 
-    private void processAndSaveFlowData(JsonNode interactiveNode, Company company, Contact contact, String senderWaId) {
+    private void processAndSaveFlowData(InboundMessageEvent message, Company company, Contact contact) {
         
-        JsonNode nfmReplyNode = interactiveNode.path("nfm_reply");
-        String responseJsonString = nfmReplyNode.path("response_json").asText(null);
+        String responseJsonString = message.flowResponseJson();
+        String senderWaId = message.from();
 
         if (responseJsonString == null || responseJsonString.isBlank()) {
-            log.warn("Tentativa de salvar FlowData falhou: response_json vazio.");
+            log.warn("Tentativa de salvar FlowData falhou: response_json vazio ou inválido.");
             return;
         }
 
         try {
-            JsonNode responseJson = objectMapper.readTree(responseJsonString);
-
             // 1. Tenta identificar o Flow pelo TOKEN (Estratégia Recomendada)
             // O flow_token vem automaticamente no response_json se foi enviado no disparo
-            String flowToken = responseJson.path("flow_token").asText(null);
+            String flowToken = message.flowToken();
 
             // 2. Tenta identificar pelo ID explícito no payload (Fallback)
             // Caso você tenha mantido o campo no JSON, mas evite usar placeholder
-            String payloadFlowId = responseJson.path("flow_id").asText(null);
+            String payloadFlowId = message.flowId();
             
             Flow flow = null;
             // Lógica de Busca do Flow
@@ -906,13 +814,13 @@ public class WebhookServiceImpl implements WebhookService {
                     flow = flowRepository.findById(dbId).orElse(null);
                 } catch (NumberFormatException e) {
                     // Se não for número, tenta achar pelo Meta Flow ID (se você mandou o ID da Meta no token)
-                    flow = flowRepository.findByMetaFlowId(flowToken).orElse(null);
+                    flow = tenantConfigCache.findFlowByMetaId(flowToken).orElse(null);
                 }
             }
 
             // Se não achou pelo token, tenta pelo payload explícito (se não for o placeholder)
             if (flow == null && payloadFlowId != null && !"FLOW_ID_PLACEHOLDER".equals(payloadFlowId)) {
-                flow = flowRepository.findByMetaFlowId(payloadFlowId).orElse(null);
+                flow = tenantConfigCache.findFlowByMetaId(payloadFlowId).orElse(null);
             }
 
             if (flow == null) {
@@ -938,8 +846,6 @@ public class WebhookServiceImpl implements WebhookService {
                 callbackService.sendFlowDataCallback(company.getId(), savedFlowData.getId());
             }
 
-        } catch (JsonProcessingException e) {
-            log.error("Erro ao fazer parse do response_json ao salvar FlowData: {}", e.getMessage());
         } catch (Exception e) {
             log.error("Erro genérico ao salvar FlowData: {}", e.getMessage(), e);
         }
@@ -955,7 +861,7 @@ public class WebhookServiceImpl implements WebhookService {
             return null;
         }
         
-        return phoneNumberRepository.findByPhoneNumberId(metaPhoneNumberId)
+        return tenantConfigCache.findChannel(metaPhoneNumberId)
                 .orElseGet(() -> {
                     log.warn("Nenhum canal encontrado com phoneNumberId: {}", metaPhoneNumberId);
                     return null;
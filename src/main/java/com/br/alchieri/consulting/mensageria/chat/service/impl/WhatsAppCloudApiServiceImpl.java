@@ -88,6 +88,7 @@ public class WhatsAppCloudApiServiceImpl implements WhatsAppCloudApiService {
     private final FlowRepository flowRepository;
     private final CatalogRepository catalogRepository;
     private final WhatsAppPhoneNumberRepository phoneNumberRepository;
+    private final ConversationSummaryUpdater conversationSummaryUpdater;
 
     // URL base global, o token será específico do cliente
     @Value("${whatsapp.graph-api.base-url}")
@@ -121,7 +122,8 @@ public class WhatsAppCloudApiServiceImpl implements WhatsAppCloudApiService {
                     // Se ele foi implementado como "fire and forget" no controller, aqui no consumer
                     // precisamos chamar a lógica de construção e envio.
                     // Assumindo que você tem um método interno ou usa o público:
-                    return sendTemplateMessage(queueRequest.getTemplateRequest(), user, null);
+                    return sendTemplateMessage(queueRequest.getTemplateRequest(), user,
+                            queueRequest.getScheduledMessageId(), queueRequest.getBulkJobId());
                 }
                 break;
                 
@@ -242,6 +244,11 @@ public class WhatsAppCloudApiServiceImpl implements WhatsAppCloudApiService {
     @Override
     public Mono<Void> sendTemplateMessage(SendTemplateMessageRequest request, User user, Long scheduledMessageId) {
         
+        return sendTemplateMessage(request, user, scheduledMessageId, null);
+    }
+
+    private Mono<Void> sendTemplateMessage(SendTemplateMessageRequest request, User user, Long scheduledMessageId, Long bulkJobId) {
+        
         Company company = getCompanyFromUser(user);
 
         WhatsAppPhoneNumber senderNumber = resolveSenderNumber(company, request.getFromPhoneNumberId());
@@ -253,7 +260,7 @@ public class WhatsAppCloudApiServiceImpl implements WhatsAppCloudApiService {
 
         Mono<WhatsAppCloudApiRequest> metaRequestMono = buildTemplateMetaRequest(request, company, user);
         return metaRequestMono.flatMap(metaRequest -> {
-            return executeSendMessage(metaRequest, user, company, senderNumber, "TEMPLATE", request.getTemplateName(), scheduledMessageId);
+            return executeSendMessage(metaRequest, user, company, senderNumber, "TEMPLATE", request.getTemplateName(), scheduledMessageId, bulkJobId);
         });
     }
 
@@ -474,6 +481,11 @@ public class WhatsAppCloudApiServiceImpl implements WhatsAppCloudApiService {
 
     private Mono<Void> executeSendMessage(WhatsAppCloudApiRequest metaRequest, User user, Company company, WhatsAppPhoneNumber senderNumber, String messageType, String contentReference, Long scheduledMessageId) {
         
+        return executeSendMessage(metaRequest, user, company, senderNumber, messageType, contentReference, scheduledMessageId, null);
+    }
+
+    private Mono<Void> executeSendMessage(WhatsAppCloudApiRequest metaRequest, User user, Company company, WhatsAppPhoneNumber senderNumber, String messageType, String contentReference, Long scheduledMessageId, Long bulkJobId) {
+        
         WebClient bspWebClient = getBspWebClient();
         String endpoint = "/" + senderNumber.getPhoneNumberId() + "/messages";
         String recipientPhoneNumber = metaRequest.getTo();
@@ -492,26 +504,28 @@ public class WhatsAppCloudApiServiceImpl implements WhatsAppCloudApiService {
 
         return bspWebClient.post().uri(endpoint).body(BodyInserters.fromValue(metaRequest)).retrieve()
                 .bodyToMono(JsonNode.class)
+                // A gravação do log (JPA) não pode rodar na event loop do Netty, que atende as demais requisições em voo
+                .publishOn(Schedulers.boundedElastic())
                 .flatMap(responseNode -> {
                     saveSuccessMessageLog(responseNode, company, user, senderNumber, recipientPhoneNumber,
-                                          messageType, contentReference, scheduledMessageId);
+                                          messageType, contentReference, scheduledMessageId, bulkJobId);
                     billingService.recordMessagesSent(company, 1);
                     return Mono.empty();
                 })
                 .doOnError(WebClientResponseException.class, e -> {
                     saveFailedMessageLog(company, user, senderNumber, recipientPhoneNumber,
-                                         messageType, contentReference, e.getStatusCode().value(), e.getResponseBodyAsString());
+                                         messageType, contentReference, e.getStatusCode().value(), e.getResponseBodyAsString(), bulkJobId);
                 })
                 .then();
     }
 
-    private void saveSuccessMessageLog(JsonNode responseNode, Company company, User user, WhatsAppPhoneNumber sender, String recipientWaIdInput, String type, String contentReference, Long scheduledMessageId) {
+    private void saveSuccessMessageLog(JsonNode responseNode, Company company, User user, WhatsAppPhoneNumber sender, String recipientWaIdInput, String type, String contentReference, Long scheduledMessageId, Long bulkJobId) {
         
         try {
             String wamid = responseNode.path("messages").get(0).path("id").asText(null);
             if (wamid == null) {
                 logger.error("WAMID não encontrado na resposta de sucesso da Meta. Empresa ID {}: {}", company.getId(), responseNode);
-                saveFailedMessageLog(company, user, sender, recipientWaIdInput, type, contentReference, 200, "Resposta OK, mas sem WAMID.");
+                saveFailedMessageLog(company, user, sender, recipientWaIdInput, type, contentReference, 200, "Resposta OK, mas sem WAMID.", bulkJobId);
                 return;
             }
 
@@ -527,14 +541,16 @@ public class WhatsAppCloudApiServiceImpl implements WhatsAppCloudApiService {
             log.setContent(contentReference);
             log.setStatus("SENT");
             log.setScheduledMessageId(scheduledMessageId);
+            log.setBulkJobId(bulkJobId);
             messageLogRepository.save(log);
+            conversationSummaryUpdater.recordMessage(log);
 
         } catch (Exception e) {
             logger.error("Falha CRÍTICA ao salvar log de mensagem enviada com sucesso para Empresa ID {}. Erro: {}", company.getId(), e.getMessage(), e);
         }
     }
 
-    private void saveFailedMessageLog(Company company, User user, WhatsAppPhoneNumber sender, String recipient, String type, String contentReference, int httpStatus, String errorBody) {
+    private void saveFailedMessageLog(Company company, User user, WhatsAppPhoneNumber sender, String recipient, String type, String contentReference, int httpStatus, String errorBody, Long bulkJobId) {
         
         try {
             WhatsAppMessageLog log = new WhatsAppMessageLog();
@@ -549,7 +565,9 @@ public class WhatsAppCloudApiServiceImpl implements WhatsAppCloudApiService {
             log.setStatus("FAILED_API_ERROR");
             log.setMetadata(String.format("{\"httpStatus\": %d, \"errorBody\": \"%s\"}", httpStatus, escapeJson(errorBody)));
             log.setUpdatedAt(LocalDateTime.now());
+            log.setBulkJobId(bulkJobId);
             messageLogRepository.save(log);
+            conversationSummaryUpdater.recordMessage(log);
 
         } catch (Exception e) {
             logger.error("Falha CRÍTICA ao salvar log de mensagem FALHA para Empresa ID {}: {}", company.getId(), e.getMessage(), e);
@@ -583,7 +601,7 @@ public class WhatsAppCloudApiServiceImpl implements WhatsAppCloudApiService {
             else if (StringUtils.hasText(request.getTo())) {
                 recipientPhoneNumber = request.getTo();
                 // Opcional: tentar buscar o contato pelo número para usar seus dados
-                targetContact = contactRepository.findByCompanyAndPhoneNumber(company, recipientPhoneNumber).orElse(null);
+                targetContact = contactRepository.findByCompanyAndPhone(company, recipientPhoneNumber).orElse(null);
 
                 // Gera os componentes. Se o contato foi encontrado, usa seus dados.
                 // Se não, o parameterGenerator só poderá resolver 'company.*', 'user.*', 'fixedValue' e 'payloadValue'.
@@ -0,0 +1,35 @@
+package com.br.alchieri.consulting.mensageria.chat.util;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.br.alchieri.consulting.mensageria.util.PhoneNumberNormalizer;
+
+/**
+ * Resolve o "message-group-id" das mensagens publicadas na fila FIFO de saída.
+ *
+ * Em fila FIFO só há uma mensagem em processamento por grupo; com um único grupo por empresa/campanha,
+ * o consumer envia uma mensagem por vez. Com partições > 1, o grupo é dividido por hash do destinatário:
+ * a ordem continua garantida para cada contato e grupos distintos são enviados em paralelo.
+ */
+@Component
+public class OutgoingMessageGroupResolver {
+
+    @Value("${sqs.outgoing.message-group.partitions:1}")
+    private int partitions;
+
+    /**
+     * @param scope Escopo legado do grupo (ex: "company-10", "campaign-5").
+     * @param recipient Telefone do destinatário (pode ser null).
+     * @return O message-group-id a ser usado no envio.
+     */
+    public String resolve(String scope, String recipient) {
+        if (partitions <= 1 || recipient == null || recipient.isBlank()) {
+            return scope;
+        }
+        // Chave canônica: o mesmo celular com ou sem o 9º dígito cai sempre na mesma partição
+        String phoneKey = PhoneNumberNormalizer.phoneKey(recipient);
+        String key = phoneKey != null ? phoneKey : recipient;
+        return scope + "-" + Math.floorMod(key.hashCode(), partitions);
+    }
+}
@@ -0,0 +1,135 @@
+package com.br.alchieri.consulting.mensageria.chat.util;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.br.alchieri.consulting.mensageria.exception.BusinessException;
+import com.br.alchieri.consulting.mensageria.model.Company;
+import com.br.alchieri.consulting.mensageria.model.WhatsAppPhoneNumber;
+import com.br.alchieri.consulting.mensageria.repository.WhatsAppPhoneNumberRepository;
+
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.ConsumptionProbe;
+import io.github.bucket4j.TokensInheritanceStrategy;
+import io.github.bucket4j.distributed.proxy.ProxyManager;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Rate limit de envio para a Meta por número de telefone (WhatsAppPhoneNumber).
+ *
+ * Cada número tem seu próprio token bucket, dimensionado pelo tier de throughput da Meta
+ * ({@link WhatsAppPhoneNumber#getThroughputMps()}). Com o proxy manager do Redis ativo, o bucket é
+ * compartilhado entre todos os nós; caso contrário, cai para buckets locais em memória.
+ * Quando o tier de um número muda, a configuração do bucket é substituída mantendo os tokens já consumidos.
+ * A versão da configuração é o {@code updatedAt} do número: o Bucket4j só substitui quando a versão aumenta,
+ * então usar o próprio MPS como versão impediria que um rebaixamento de tier tivesse efeito.
+ */
+@Component
+@Slf4j
+public class PhoneNumberRateLimiter {
+
+    private static final String KEY_PREFIX = "meta_rate:";
+
+    private final WhatsAppPhoneNumberRepository phoneNumberRepository;
+    private final ProxyManager<String> proxyManager;
+
+    // Buckets locais (usados apenas sem Redis)
+    private final Map<String, LocalBucket> localBuckets = new ConcurrentHashMap<>();
+    // Cache curto de (empresa, número solicitado) -> número/tier, para não consultar o banco a cada mensagem
+    private final Map<String, SenderLimit> senderCache = new ConcurrentHashMap<>();
+
+    @Value("${whatsapp.meta.api.rate-limit.default-mps:80}")
+    private int defaultMps;
+
+    @Value("${whatsapp.meta.api.rate-limit.sender-cache-ttl-seconds:60}")
+    private long senderCacheTtlSeconds;
+
+    public PhoneNumberRateLimiter(WhatsAppPhoneNumberRepository phoneNumberRepository,
+                                  @Qualifier("metaApiRateLimiterProxyManager") ObjectProvider<ProxyManager<String>> proxyManager) {
+        this.phoneNumberRepository = phoneNumberRepository;
+        this.proxyManager = proxyManager.getIfAvailable();
+        if (this.proxyManager == null) {
+            log.warn("Proxy manager do Redis não configurado. Rate limit da Meta será local a cada instância.");
+        }
+    }
+
+    /**
+     * Tenta consumir um token do bucket do número remetente.
+     *
+     * @param company Empresa remetente.
+     * @param requestedPhoneNumberId Número informado no payload (null = número padrão da empresa).
+     * @return O probe do Bucket4j; se não consumido, {@code getNanosToWaitForRefill()} indica a espera.
+     */
+    public ConsumptionProbe tryConsume(Company company, String requestedPhoneNumberId) {
+        SenderLimit sender = resolveSender(company, requestedPhoneNumberId);
+        return bucketFor(sender).tryConsumeAndReturnRemaining(1);
+    }
+
+    private Bucket bucketFor(SenderLimit sender) {
+        BucketConfiguration configuration = configurationFor(sender.mps());
+        if (proxyManager != null) {
+            return proxyManager.builder()
+                    .withImplicitConfigurationReplacement(sender.configVersion(), TokensInheritanceStrategy.PROPORTIONALLY)
+                    .build(KEY_PREFIX + sender.phoneNumberId(), () -> configuration);
+        }
+        LocalBucket local = localBuckets.compute(sender.phoneNumberId(), (id, current) ->
+                current != null && current.mps() == sender.mps()
+                        ? current
+                        : new LocalBucket(sender.mps(), Bucket.builder().addLimit(configuration.getBandwidths()[0]).build()));
+        return local.bucket();
+    }
+
+    private BucketConfiguration configurationFor(int mps) {
+        // Rajada máxima de 1 segundo de throughput, reabastecimento contínuo
+        return BucketConfiguration.builder()
+                .addLimit(limit -> limit.capacity(mps).refillGreedy(mps, Duration.ofSeconds(1)))
+                .build();
+    }
+
+    private SenderLimit resolveSender(Company company, String requestedPhoneNumberId) {
+        String cacheKey = company.getId() + ":" + (requestedPhoneNumberId != null ? requestedPhoneNumberId : "");
+        SenderLimit cached = senderCache.get(cacheKey);
+        long now = System.currentTimeMillis();
+        if (cached != null && now - cached.loadedAt() < senderCacheTtlSeconds * 1000) {
+            return cached;
+        }
+
+        WhatsAppPhoneNumber phoneNumber;
+        if (requestedPhoneNumberId != null && !requestedPhoneNumberId.isBlank()) {
+            phoneNumber = phoneNumberRepository.findByCompanyAndPhoneNumberId(company, requestedPhoneNumberId)
+                    .orElseThrow(() -> new BusinessException("O número de telefone informado não pertence à sua empresa ou não está cadastrado."));
+        } else {
+            phoneNumber = phoneNumberRepository.findFirstByCompanyAndIsDefaultTrue(company)
+                    .or(() -> phoneNumberRepository.findByCompany(company).stream().findFirst())
+                    .orElseThrow(() -> new BusinessException("Nenhum número de WhatsApp configurado para esta empresa."));
+        }
+
+        int mps = phoneNumber.getThroughputMps() != null && phoneNumber.getThroughputMps() > 0
+                ? phoneNumber.getThroughputMps()
+                : defaultMps;
+        SenderLimit resolved = new SenderLimit(phoneNumber.getPhoneNumberId(), mps, configVersion(phoneNumber), now);
+        senderCache.put(cacheKey, resolved);
+        return resolved;
+    }
+
+    /**
+     * Versão monotônica da configuração do bucket: o último {@code updatedAt} do número (em millis).
+     */
+    private static long configVersion(WhatsAppPhoneNumber phoneNumber) {
+        LocalDateTime changedAt = phoneNumber.getUpdatedAt() != null ? phoneNumber.getUpdatedAt() : phoneNumber.getCreatedAt();
+        return changedAt != null ? changedAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : 0L;
+    }
+
+    private record SenderLimit(String phoneNumberId, int mps, long configVersion, long loadedAt) {}
+
+    private record LocalBucket(int mps, Bucket bucket) {}
+}
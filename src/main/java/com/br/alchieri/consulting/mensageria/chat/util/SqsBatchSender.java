@@ -0,0 +1,59 @@
+package com.br.alchieri.consulting.mensageria.chat.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.messaging.Message;
+import org.springframework.stereotype.Component;
+
+import io.awspring.cloud.sqs.operations.SendBatchOperationFailedException;
+import io.awspring.cloud.sqs.operations.SendResult;
+import io.awspring.cloud.sqs.operations.SqsTemplate;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Envio de mensagens para o SQS com SendMessageBatch (até 10 mensagens por chamada).
+ * Falhas parciais do lote são tratadas: apenas as mensagens rejeitadas são devolvidas ao chamador.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SqsBatchSender {
+
+    // Limite do SendMessageBatch do SQS
+    public static final int MAX_BATCH_SIZE = 10;
+
+    private final SqsTemplate sqsTemplate;
+
+    /**
+     * Envia todas as mensagens, em lotes de {@link #MAX_BATCH_SIZE}.
+     * @return Mensagens que não foram aceitas pela fila (vazio se todas foram enviadas).
+     */
+    public List<Message<String>> sendAll(String queueName, List<Message<String>> messages) {
+        List<Message<String>> rejected = new ArrayList<>();
+        for (int from = 0; from < messages.size(); from += MAX_BATCH_SIZE) {
+            rejected.addAll(sendBatch(queueName, messages.subList(from, Math.min(messages.size(), from + MAX_BATCH_SIZE))));
+        }
+        return rejected;
+    }
+
+    private List<Message<String>> sendBatch(String queueName, List<Message<String>> batch) {
+        SendResult.Batch<String> result;
+        try {
+            result = sqsTemplate.sendMany(queueName, batch);
+        } catch (SendBatchOperationFailedException e) {
+            // Falha parcial: parte do lote foi aceita
+            result = e.getSendBatchResult(String.class);
+        } catch (Exception e) {
+            log.error("Falha ao enfileirar lote de {} mensagens na fila {}: {}", batch.size(), queueName, e.getMessage());
+            return new ArrayList<>(batch);
+        }
+        List<Message<String>> rejected = new ArrayList<>();
+        for (SendResult.Failed<String> failed : result.failed()) {
+            log.warn("Mensagem rejeitada pela fila {}: {}", queueName, failed.errorMessage());
+            rejected.add(failed.message());
+        }
+        return rejected;
+    }
+}
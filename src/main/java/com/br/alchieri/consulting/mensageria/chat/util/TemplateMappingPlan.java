@@ -0,0 +1,390 @@
+package com.br.alchieri.consulting.mensageria.chat.util;
+
+import java.math.BigDecimal;
+import java.text.NumberFormat;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.springframework.util.StringUtils;
+
+import com.br.alchieri.consulting.mensageria.chat.dto.request.ScheduleCampaignRequest.ButtonMapping;
+import com.br.alchieri.consulting.mensageria.chat.dto.request.ScheduleCampaignRequest.ParameterMapping;
+import com.br.alchieri.consulting.mensageria.chat.dto.request.ScheduleCampaignRequest.TemplateComponentMapping;
+import com.br.alchieri.consulting.mensageria.chat.dto.request.TemplateComponentRequest;
+import com.br.alchieri.consulting.mensageria.chat.dto.request.TemplateParameterRequest;
+import com.br.alchieri.consulting.mensageria.chat.model.Contact;
+import com.br.alchieri.consulting.mensageria.exception.BusinessException;
+import com.br.alchieri.consulting.mensageria.model.Address;
+import com.br.alchieri.consulting.mensageria.model.Company;
+import com.br.alchieri.consulting.mensageria.model.User;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Plano imutável de resolução de parâmetros de template, compilado a partir de uma lista de
+ * {@link TemplateComponentMapping}.
+ *
+ * A compilação faz uma única vez o que antes era feito por contato: split/lowercase do 'sourceField',
+ * escolha do acessor do campo, criação do DateTimeFormatter e resolução de parâmetros constantes
+ * (fixedValue/payloadValue), que são pré-montados. Regras inválidas viram passos que lançam o mesmo
+ * erro no momento do envio, preservando o comportamento por mensagem.
+ */
+@Slf4j
+public final class TemplateMappingPlan {
+
+    public static final TemplateMappingPlan EMPTY = new TemplateMappingPlan(List.of());
+
+    // NumberFormat não é thread-safe
+    private static final ThreadLocal<NumberFormat> BRL_FORMAT =
+            ThreadLocal.withInitial(() -> NumberFormat.getCurrencyInstance(Locale.of("pt", "BR")));
+
+    private static final Map<String, Function<Contact, Object>> CONTACT_FIELDS = Map.ofEntries(
+            // Campos Padrão
+            field("name", Contact::getName),
+            field("phonenumber", Contact::getPhoneNumber),
+            field("email", Contact::getEmail),
+            field("dateofbirth", Contact::getDateOfBirth),
+            field("gender", Contact::getGender),
+            // Campos Profissionais
+            field("companyname", Contact::getCompanyName),
+            field("jobtitle", Contact::getJobTitle),
+            field("department", Contact::getDepartment),
+            // Campos de CRM
+            field("leadscore", Contact::getLeadScore),
+            field("leadsource", Contact::getLeadSource),
+            // Campos de Endereço (se Address não for nulo)
+            field("street", address(Address::getStreet)),
+            field("addressnumber", address(Address::getNumber)),
+            field("complement", address(Address::getComplement)),
+            field("neighborhood", address(Address::getNeighborhood)),
+            field("city", address(Address::getCity)),
+            field("state", address(Address::getState)),
+            field("postalcode", address(Address::getPostalCode)),
+            field("country", address(Address::getCountry)));
+
+    private static final Map<String, Function<Company, Object>> COMPANY_FIELDS = Map.of(
+            "name", Company::getName,
+            "documentnumber", Company::getDocumentNumber,
+            "contactemail", Company::getContactEmail,
+            "contactphonenumber", Company::getContactPhoneNumber);
+
+    private static final Map<String, Function<User, Object>> USER_FIELDS = Map.of(
+            "fullname", User::getFullName,
+            "email", User::getEmail,
+            "username", User::getUsername);
+
+    private final List<ComponentStep> components;
+
+    private TemplateMappingPlan(List<ComponentStep> components) {
+        this.components = components;
+    }
+
+    /**
+     * Compila as regras de mapeamento em um plano reutilizável (thread-safe).
+     */
+    public static TemplateMappingPlan compile(List<TemplateComponentMapping> mappings) {
+        if (mappings == null || mappings.isEmpty()) {
+            return EMPTY;
+        }
+        List<ComponentStep> steps = new ArrayList<>();
+        for (TemplateComponentMapping compMapping : mappings) {
+            String type = compMapping.getType() != null ? compMapping.getType().toLowerCase() : "";
+
+            // HEADER e BODY: um componente com os parâmetros na ordem das variáveis
+            if ("header".equals(type) || "body".equals(type)) {
+                List<ParameterMapping> paramMappings = "header".equals(type)
+                        ? compMapping.getHeaderParameters()
+                        : compMapping.getBodyParameters();
+                if (paramMappings != null && !paramMappings.isEmpty()) {
+                    steps.add(new ComponentStep(type, null, null,
+                            paramMappings.stream().map(TemplateMappingPlan::compileParameter).toList()));
+                }
+            }
+            // BUTTONS: um componente 'button' (url) por botão mapeado
+            else if ("buttons".equals(type)) {
+                if (compMapping.getButtonParameters() != null) {
+                    for (ButtonMapping buttonMapping : compMapping.getButtonParameters()) {
+                        List<ParameterStep> urlParams = buttonMapping.getUrlParameters() == null ? List.of()
+                                : buttonMapping.getUrlParameters().stream().map(TemplateMappingPlan::compileUrlParameter).toList();
+                        steps.add(new ComponentStep("button", "url", String.valueOf(buttonMapping.getIndex()), urlParams));
+                    }
+                }
+            } else {
+                log.warn("Tipo de componente de mapeamento desconhecido: {}", type);
+            }
+        }
+        return new TemplateMappingPlan(List.copyOf(steps));
+    }
+
+    /**
+     * Gera os componentes finais para um destinatário.
+     * Os parâmetros constantes são instâncias compartilhadas entre destinatários e não devem ser alterados.
+     */
+    public List<TemplateComponentRequest> apply(Contact contact, Company company, User user) {
+        if (components.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<TemplateComponentRequest> generated = new ArrayList<>(components.size());
+        for (ComponentStep step : components) {
+            List<TemplateParameterRequest> parameters = new ArrayList<>(step.parameters().size());
+            for (ParameterStep parameter : step.parameters()) {
+                parameters.add(parameter.build(contact, company, user));
+            }
+            TemplateComponentRequest component = new TemplateComponentRequest();
+            component.setType(step.type());
+            component.setSub_type(step.subType());
+            component.setIndex(step.index());
+            component.setParameters(parameters);
+            generated.add(component);
+        }
+        return generated;
+    }
+
+    public boolean isEmpty() {
+        return components.isEmpty();
+    }
+
+    // --- Compilação ---
+
+    @FunctionalInterface
+    private interface ValueSource {
+        Object resolve(Contact contact, Company company, User user);
+    }
+
+    @FunctionalInterface
+    private interface ParameterStep {
+        TemplateParameterRequest build(Contact contact, Company company, User user);
+    }
+
+    private record ComponentStep(String type, String subType, String index, List<ParameterStep> parameters) {}
+
+    private static ParameterStep compileParameter(ParameterMapping mapping) {
+        try {
+            ValueSource source = compileSource(mapping);
+            ParameterStep step = compileFormatter(mapping, source);
+            if (isConstant(mapping)) {
+                return constant(step.build(null, null, null));
+            }
+            return step;
+        } catch (BusinessException e) {
+            return failing(e);
+        }
+    }
+
+    private static ParameterStep compileUrlParameter(ParameterMapping mapping) {
+        try {
+            ValueSource source = compileSource(mapping);
+            ParameterStep step = (contact, company, user) -> {
+                TemplateParameterRequest urlParam = new TemplateParameterRequest();
+                urlParam.setType("text");
+                Object value = source.resolve(contact, company, user);
+                urlParam.setText(String.valueOf(value != null ? value : ""));
+                return urlParam;
+            };
+            return isConstant(mapping) ? constant(step.build(null, null, null)) : step;
+        } catch (BusinessException e) {
+            return failing(e);
+        }
+    }
+
+    private static ParameterStep compileFormatter(ParameterMapping mapping, ValueSource source) {
+        String declaredType = mapping.getType();
+        String type = declaredType != null ? declaredType.toLowerCase() : "";
+        switch (type) {
+            case "text":
+                return (contact, company, user) -> {
+                    Object value = source.resolve(contact, company, user);
+                    TemplateParameterRequest param = newParameter(declaredType);
+                    param.setText(String.valueOf(value != null ? value : ""));
+                    return param;
+                };
+            case "image":
+            case "document":
+            case "video":
+                return (contact, company, user) -> {
+                    Object value = source.resolve(contact, company, user);
+                    if (value == null) throw new BusinessException("Valor para parâmetro de mídia não pode ser nulo.");
+                    TemplateParameterRequest param = newParameter(declaredType);
+                    param.setMediaId(String.valueOf(value));
+                    return param;
+                };
+            case "currency":
+                String currencyCode = (mapping.getCurrencyCode() != null ? mapping.getCurrencyCode() : "BRL").toUpperCase();
+                return (contact, company, user) -> {
+                    Object value = source.resolve(contact, company, user);
+                    if (!(value instanceof Number)) {
+                        throw new BusinessException("Valor para 'currency' deve ser numérico, mas foi: " + (value != null ? value.getClass().getName() : "null"));
+                    }
+                    BigDecimal amount = new BigDecimal(value.toString());
+                    long amount1000 = amount.multiply(BigDecimal.valueOf(1000)).longValue();
+                    // Formatação de fallback
+                    String fallbackValue = BRL_FORMAT.get().format(amount);
+                    TemplateParameterRequest param = newParameter(declaredType);
+                    param.setCurrency(new TemplateParameterRequest.CurrencyRequest(fallbackValue, currencyCode, amount1000));
+                    return param;
+                };
+            case "date_time":
+                DateTimeFormatter formatter = compileDateFormatter(mapping.getDateTimeFormat());
+                String pattern = mapping.getDateTimeFormat();
+                return (contact, company, user) -> {
+                    Object value = source.resolve(contact, company, user);
+                    TemplateParameterRequest param = newParameter(declaredType);
+                    param.setDateTime(new TemplateParameterRequest.DateTimeRequest(formatDate(value, formatter, pattern)));
+                    return param;
+                };
+            default:
+                throw new BusinessException("Tipo de parâmetro não suportado na geração dinâmica: " + declaredType);
+        }
+    }
+
+    /**
+     * Determina a fonte do valor com base na prioridade: fixedValue, payloadValue, sourceField.
+     */
+    private static ValueSource compileSource(ParameterMapping mapping) {
+        if (StringUtils.hasText(mapping.getFixedValue())) {
+            String fixed = mapping.getFixedValue();
+            return (contact, company, user) -> fixed;
+        }
+        if (StringUtils.hasText(mapping.getPayloadValue())) {
+            String payload = mapping.getPayloadValue();
+            return (contact, company, user) -> payload;
+        }
+        if (StringUtils.hasText(mapping.getSourceField())) {
+            return compileSourceField(mapping.getSourceField());
+        }
+        throw new BusinessException("Mapeamento de parâmetro inválido: nenhuma fonte de valor (fixedValue, payloadValue ou sourceField) foi fornecida.");
+    }
+
+    /**
+     * Resolve uma fonte como "contact.name" ou "company.contactEmail" para um acessor direto do campo.
+     */
+    private static ValueSource compileSourceField(String sourceField) {
+        String[] parts = sourceField.split("\\.", 2); // Divide em no máximo 2 partes (ex: "contact", "customFields.cidade")
+        if (parts.length < 2) {
+            throw new BusinessException("Formato de 'sourceField' inválido. Deve ser 'tipo.campo', ex: 'contact.name'. Fonte recebida: " + sourceField);
+        }
+        String sourceType = parts[0].toLowerCase();
+        String fieldName = parts[1]; // Mantém o case aqui para campos customizados
+
+        switch (sourceType) {
+            case "contact": {
+                Function<Contact, Object> accessor = contactAccessor(fieldName);
+                return (contact, company, user) -> {
+                    if (contact == null) {
+                        throw new BusinessException("Fonte 'contact' solicitada, mas nenhum contexto de contato foi fornecido para o envio.");
+                    }
+                    return accessor.apply(contact);
+                };
+            }
+            case "company": {
+                Function<Company, Object> accessor = COMPANY_FIELDS.get(fieldName.toLowerCase());
+                if (accessor == null) throw new BusinessException("Campo de empresa desconhecido: '" + fieldName + "'.");
+                return (contact, company, user) -> {
+                    if (company == null) {
+                        throw new BusinessException("Fonte 'company' solicitada, mas nenhum contexto de empresa foi fornecido.");
+                    }
+                    return accessor.apply(company);
+                };
+            }
+            case "user": {
+                Function<User, Object> accessor = USER_FIELDS.get(fieldName.toLowerCase());
+                if (accessor == null) throw new BusinessException("Campo de usuário desconhecido: '" + fieldName + "'.");
+                return (contact, company, user) -> {
+                    if (user == null) {
+                        throw new BusinessException("Fonte 'user' solicitada, mas nenhum contexto de usuário foi fornecido.");
+                    }
+                    return accessor.apply(user);
+                };
+            }
+            default:
+                throw new BusinessException("Tipo de fonte desconhecido na definição de mapeamento: '" + sourceType + "'. Use 'contact', 'company', ou 'user'.");
+        }
+    }
+
+    private static Function<Contact, Object> contactAccessor(String fieldPath) {
+        String[] parts = fieldPath.split("\\.", 2);
+        String mainField = parts[0].toLowerCase();
+
+        Function<Contact, Object> standard = CONTACT_FIELDS.get(mainField);
+        if (standard != null) {
+            return standard;
+        }
+        // Campos Customizados
+        if ("customfields".equals(mainField)) {
+            if (parts.length < 2) {
+                throw new BusinessException("Fonte 'contact.customFields' requer uma chave. Ex: 'contact.customFields.nome_da_chave'.");
+            }
+            String customFieldKey = parts[1];
+            return contact -> contact.getCustomFields() != null ? contact.getCustomFields().get(customFieldKey) : null;
+        }
+        // Fallback para tentar buscar em campos customizados se o nome não for padrão
+        return contact -> {
+            if (contact.getCustomFields() != null && contact.getCustomFields().containsKey(fieldPath)) {
+                return contact.getCustomFields().get(fieldPath);
+            }
+            throw new BusinessException("Campo de contato desconhecido: '" + fieldPath + "'.");
+        };
+    }
+
+    private static Map.Entry<String, Function<Contact, Object>> field(String name, Function<Contact, Object> accessor) {
+        return Map.entry(name, accessor);
+    }
+
+    private static Function<Contact, Object> address(Function<Address, Object> field) {
+        return contact -> contact.getAddress() != null ? field.apply(contact.getAddress()) : null;
+    }
+
+    private static DateTimeFormatter compileDateFormatter(String format) {
+        if (!StringUtils.hasText(format)) {
+            return DateTimeFormatter.ISO_LOCAL_DATE;
+        }
+        try {
+            return DateTimeFormatter.ofPattern(format);
+        } catch (IllegalArgumentException e) {
+            log.warn("Padrão de data inválido '{}'. Os valores serão enviados com toString().", format);
+            return null;
+        }
+    }
+
+    private static String formatDate(Object value, DateTimeFormatter formatter, String pattern) {
+        if (value == null) return "";
+        if (value instanceof TemporalAccessor temporal) {
+            if (formatter == null) {
+                return value.toString();
+            }
+            try {
+                return formatter.format(temporal);
+            } catch (Exception e) {
+                log.warn("Falha ao formatar data '{}' com o padrão '{}'. Usando toString().", value, pattern);
+                return value.toString();
+            }
+        }
+        return String.valueOf(value);
+    }
+
+    private static boolean isConstant(ParameterMapping mapping) {
+        return StringUtils.hasText(mapping.getFixedValue()) || StringUtils.hasText(mapping.getPayloadValue());
+    }
+
+    private static ParameterStep constant(TemplateParameterRequest prebuilt) {
+        return (contact, company, user) -> prebuilt;
+    }
+
+    private static ParameterStep failing(BusinessException error) {
+        return (contact, company, user) -> {
+            throw error;
+        };
+    }
+
+    private static TemplateParameterRequest newParameter(String type) {
+        TemplateParameterRequest param = new TemplateParameterRequest();
+        param.setType(type);
+        return param;
+    }
+}
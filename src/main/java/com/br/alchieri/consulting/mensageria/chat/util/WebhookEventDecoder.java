@@ -0,0 +1,550 @@
+package com.br.alchieri.consulting.mensageria.chat.util;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.stereotype.Component;
+
+import com.br.alchieri.consulting.mensageria.chat.dto.webhook.WebhookEvent;
+import com.br.alchieri.consulting.mensageria.chat.dto.webhook.WebhookEvent.AccountUpdateEvent;
+import com.br.alchieri.consulting.mensageria.chat.dto.webhook.WebhookEvent.FlowEvent;
+import com.br.alchieri.consulting.mensageria.chat.dto.webhook.WebhookEvent.InboundMessageEvent;
+import com.br.alchieri.consulting.mensageria.chat.dto.webhook.WebhookEvent.OrderItem;
+import com.br.alchieri.consulting.mensageria.chat.dto.webhook.WebhookEvent.StatusEvent;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Decodifica um webhook da Meta em {@link WebhookEvent}s tipados com o parser de streaming do Jackson,
+ * lendo o payload uma única vez e sem montar a árvore ({@code JsonNode}).
+ *
+ * A Meta não garante a ordem dos campos (ex.: 'field' costuma vir depois de 'value' e 'type' depois do
+ * corpo da mensagem). Nesses pontos o trecho é copiado para um {@link TokenBuffer}, que guarda os tokens
+ * já lidos e é relido sem novo parse do texto. Subárvores guardadas como JSON no log (interactive,
+ * contacts, errors) são serializadas direto dos tokens.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class WebhookEventDecoder {
+
+    private static final String EXPECTED_OBJECT = "whatsapp_business_account";
+
+    private final ObjectMapper objectMapper;
+
+    public List<WebhookEvent> decode(String payload) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(payload)) {
+            return decode(parser);
+        }
+    }
+
+    public List<WebhookEvent> decode(byte[] payload) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(payload)) {
+            return decode(parser);
+        }
+    }
+
+    private List<WebhookEvent> decode(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Payload do webhook não é um objeto JSON.");
+        }
+        List<WebhookEvent> events = new ArrayList<>();
+        String object = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            switch (name) {
+                case "object" -> object = text(parser);
+                case "entry" -> readEntries(parser, events);
+                default -> parser.skipChildren();
+            }
+        }
+        if (!EXPECTED_OBJECT.equals(object)) {
+            log.warn("Payload do webhook não corresponde à estrutura esperada (object={}).", object);
+            return List.of();
+        }
+        return events;
+    }
+
+    private void readEntries(JsonParser parser, List<WebhookEvent> events) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String wabaId = null;
+            List<PendingChange> changes = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                switch (name) {
+                    case "id" -> wabaId = text(parser);
+                    case "changes" -> readChanges(parser, changes);
+                    default -> parser.skipChildren();
+                }
+            }
+            for (PendingChange change : changes) {
+                decodeChange(change, wabaId, events);
+            }
+        }
+    }
+
+    private void readChanges(JsonParser parser, List<PendingChange> changes) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String field = null;
+            TokenBuffer value = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                switch (name) {
+                    case "field" -> field = text(parser);
+                    case "value" -> value = buffer(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+            if (value != null) {
+                changes.add(new PendingChange(field, value));
+            }
+        }
+    }
+
+    private void decodeChange(PendingChange change, String wabaId, List<WebhookEvent> events) throws IOException {
+        try (JsonParser value = change.value().asParser()) {
+            value.nextToken();
+            switch (change.field() != null ? change.field() : "") {
+                case "messages" -> decodeMessagesValue(value, wabaId, events);
+                case "flows" -> events.add(decodeFlowValue(value, wabaId, change.value()));
+                case "account_update" -> events.add(decodeAccountUpdateValue(value, wabaId));
+                default -> log.warn("Webhook field unknown: {}", change.field());
+            }
+        }
+    }
+
+    // --- field 'messages' ---
+
+    private void decodeMessagesValue(JsonParser parser, String wabaId, List<WebhookEvent> events) throws IOException {
+        String phoneNumberId = null;
+        Map<String, String> profileNames = new HashMap<>();
+        String firstProfileName = null;
+        List<StatusFields> statuses = new ArrayList<>();
+        List<TokenBuffer> messages = new ArrayList<>();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            switch (name) {
+                case "metadata" -> phoneNumberId = readStringField(parser, "phone_number_id");
+                case "contacts" -> {
+                    for (String[] contact : readContacts(parser)) {
+                        if (firstProfileName == null) {
+                            firstProfileName = contact[1];
+                        }
+                        if (contact[0] != null) {
+                            profileNames.put(contact[0], contact[1]);
+                        }
+                    }
+                }
+                case "statuses" -> {
+                    if (parser.currentToken() == JsonToken.START_ARRAY) {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            statuses.add(readStatus(parser));
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                case "messages" -> {
+                    if (parser.currentToken() == JsonToken.START_ARRAY) {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            messages.add(buffer(parser));
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+
+        for (StatusFields status : statuses) {
+            events.add(new StatusEvent(wabaId, phoneNumberId, status.wamid, status.status, status.timestamp,
+                    status.recipientId, status.errorsJson, status.pricingCategory, status.billable));
+        }
+        for (TokenBuffer message : messages) {
+            events.add(decodeMessage(message, wabaId, phoneNumberId, profileNames, firstProfileName));
+        }
+    }
+
+    /**
+     * @return Pares [wa_id, profile.name].
+     */
+    private List<String[]> readContacts(JsonParser parser) throws IOException {
+        List<String[]> contacts = new ArrayList<>();
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return contacts;
+        }
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String waId = null;
+            String profileName = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                if ("wa_id".equals(name)) {
+                    waId = text(parser);
+                } else if ("profile".equals(name) && parser.currentToken() == JsonToken.START_OBJECT) {
+                    profileName = readStringField(parser, "name");
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            contacts.add(new String[] { waId, profileName });
+        }
+        return contacts;
+    }
+
+    private StatusFields readStatus(JsonParser parser) throws IOException {
+        StatusFields status = new StatusFields();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            switch (name) {
+                case "id" -> status.wamid = text(parser);
+                case "status" -> status.status = text(parser);
+                case "timestamp" -> status.timestamp = epochSeconds(parser);
+                case "recipient_id" -> status.recipientId = text(parser);
+                case "errors" -> status.errorsJson = rawJson(parser);
+                case "pricing" -> {
+                    Map<String, String> pricing = readStringFields(parser);
+                    status.billable = "true".equals(pricing.get("billable"));
+                    status.pricingCategory = pricing.get("category");
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        return status;
+    }
+
+    private InboundMessageEvent decodeMessage(TokenBuffer message, String wabaId, String phoneNumberId,
+                                              Map<String, String> profileNames, String firstProfileName) throws IOException {
+        // 1ª leitura dos tokens: campos simples (o 'type' pode vir depois do corpo)
+        String wamid = null;
+        String from = null;
+        String type = null;
+        long timestamp = 0;
+        try (JsonParser parser = message.asParser()) {
+            parser.nextToken();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                switch (name) {
+                    case "id" -> wamid = text(parser);
+                    case "from" -> from = text(parser);
+                    case "type" -> type = text(parser);
+                    case "timestamp" -> timestamp = epochSeconds(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+
+        MessageContent content = new MessageContent();
+        // 2ª leitura: apenas o corpo do tipo da mensagem
+        if (type != null) {
+            try (JsonParser parser = message.asParser()) {
+                parser.nextToken();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.currentName();
+                    parser.nextToken();
+                    if (name.equals(type)) {
+                        decodeContent(type, parser, content);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+        }
+        if (!content.decoded) {
+            content.fallback(type, rawJson(message));
+        }
+        if (!content.metaMap.isEmpty() && content.metadata == null) {
+            content.metadata = objectMapper.writeValueAsString(content.metaMap);
+        }
+
+        String profileName = from != null && profileNames.containsKey(from) ? profileNames.get(from) : firstProfileName;
+        return new InboundMessageEvent(wabaId, phoneNumberId, wamid, from, type, timestamp, profileName,
+                content.content, content.metadata, content.interactiveType, content.replyId,
+                content.flowResponseJson, content.flowToken, content.flowId, content.orderItems);
+    }
+
+    /**
+     * Mesmas regras de conteúdo/metadata que o log de mensagens recebidas sempre usou.
+     */
+    private void decodeContent(String type, JsonParser parser, MessageContent content) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT && !"contacts".equals(type)) {
+            parser.skipChildren();
+            return;
+        }
+        switch (type) {
+            case "text" -> {
+                content.content = readStringField(parser, "body");
+                content.decoded = true;
+            }
+            case "image", "video", "audio", "document" -> {
+                Map<String, String> fields = readStringFields(parser);
+                content.content = fields.get("id");
+                content.metaMap.put("mime_type", fields.get("mime_type"));
+                if (fields.get("caption") != null) content.metaMap.put("caption", fields.get("caption"));
+                if ("document".equals(type)) content.metaMap.put("filename", fields.get("filename"));
+                content.decoded = true;
+            }
+            case "interactive" -> {
+                decodeInteractive(buffer(parser), content);
+                content.decoded = true;
+            }
+            case "reaction" -> {
+                Map<String, String> fields = readStringFields(parser);
+                content.content = fields.get("emoji");
+                content.metaMap.put("reacted_wamid", fields.get("message_id"));
+                content.decoded = true;
+            }
+            case "location" -> {
+                Map<String, String> fields = readStringFields(parser);
+                content.content = String.format("Lat: %s, Lon: %s", fields.get("latitude"), fields.get("longitude"));
+                content.metaMap.put("name", fields.get("name"));
+                content.metaMap.put("address", fields.get("address"));
+                content.metaMap.put("url", fields.get("url"));
+                content.decoded = true;
+            }
+            case "contacts" -> {
+                content.content = "Contato(s) Recebido(s)";
+                content.metadata = rawJson(parser);
+                content.decoded = true;
+            }
+            case "system" -> {
+                Map<String, String> fields = readStringFields(parser);
+                content.content = fields.get("body");
+                content.metaMap.put("system_type", fields.get("type"));
+                content.decoded = true;
+            }
+            case "order" -> content.orderItems = readOrderItems(parser);
+            default -> parser.skipChildren();
+        }
+    }
+
+    private void decodeInteractive(TokenBuffer interactive, MessageContent content) throws IOException {
+        content.metadata = rawJson(interactive); // Toda a estrutura interativa como metadados
+        Map<String, String> reply = Map.of();
+        String nfmBody = null;
+        String responseJson = null;
+        try (JsonParser parser = interactive.asParser()) {
+            parser.nextToken();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                switch (name) {
+                    case "type" -> content.interactiveType = text(parser);
+                    case "button_reply", "list_reply" -> reply = readStringFields(parser);
+                    case "nfm_reply" -> {
+                        Map<String, String> nfm = readStringFields(parser);
+                        nfmBody = nfm.getOrDefault("body", "");
+                        responseJson = nfm.get("response_json");
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+
+        String interactiveType = content.interactiveType != null ? content.interactiveType : "";
+        switch (interactiveType) {
+            case "button_reply", "list_reply" -> {
+                content.replyId = reply.get("id");
+                content.content = content.replyId; // ID do botão/linha escolhido é o conteúdo principal
+            }
+            case "nfm_reply" -> {
+                if (responseJson == null) {
+                    log.warn("nfm_reply recebido sem 'response_json'.");
+                    content.content = "Resposta Final de Flow (sem dados)";
+                    break;
+                }
+                content.metadata = responseJson; // Salva o JSON completo da resposta como metadados
+                try (JsonParser parser = objectMapper.getFactory().createParser(responseJson)) {
+                    if (parser.nextToken() == JsonToken.START_OBJECT) {
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String name = parser.currentName();
+                            parser.nextToken();
+                            switch (name) {
+                                case "flow_token" -> content.flowToken = text(parser);
+                                case "flow_id" -> content.flowId = text(parser);
+                                default -> parser.skipChildren();
+                            }
+                        }
+                    }
+                    content.flowResponseJson = responseJson; // Só repassa adiante JSON válido
+                    content.content = "Resposta Final do Flow: " + nfmBody;
+                } catch (IOException e) {
+                    log.error("Erro ao fazer parse do 'response_json' do nfm_reply: {}", e.getMessage());
+                    content.content = "Resposta Final de Flow (JSON inválido)";
+                }
+            }
+            default -> content.content = "Tipo interativo desconhecido: " + interactiveType;
+        }
+    }
+
+    private List<OrderItem> readOrderItems(JsonParser parser) throws IOException {
+        List<OrderItem> items = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            if (!"product_items".equals(name) || parser.currentToken() != JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                Map<String, String> item = readStringFields(parser);
+                String quantity = item.get("quantity");
+                items.add(new OrderItem(item.get("product_retailer_id"),
+                        quantity != null ? Integer.parseInt(quantity) : 0,
+                        item.get("item_price"), item.get("currency")));
+            }
+        }
+        return items;
+    }
+
+    // --- fields 'flows' e 'account_update' ---
+
+    private FlowEvent decodeFlowValue(JsonParser parser, String wabaId, TokenBuffer raw) throws IOException {
+        Map<String, String> fields = readStringFields(parser);
+        return new FlowEvent(wabaId, fields.get("event"), fields.get("flow_id"), fields.get("message"),
+                fields.get("alert_state"), fields.get("new_status"), fields.get("old_status"), fields.get("warning"),
+                rawJson(raw));
+    }
+
+    private AccountUpdateEvent decodeAccountUpdateValue(JsonParser parser, String wabaId) throws IOException {
+        String event = null;
+        Map<String, String> tierInfo = Map.of();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            switch (name) {
+                case "event" -> event = text(parser);
+                case "volume_tier_info" -> tierInfo = readStringFields(parser);
+                default -> parser.skipChildren();
+            }
+        }
+        return new AccountUpdateEvent(wabaId, event, tierInfo.get("region"), tierInfo.get("pricing_category"),
+                tierInfo.get("tier"), tierInfo.get("effective_month"));
+    }
+
+    // --- utilitários de leitura ---
+
+    /**
+     * Lê os campos escalares do objeto corrente (subobjetos e arrays são ignorados).
+     */
+    private static Map<String, String> readStringFields(JsonParser parser) throws IOException {
+        Map<String, String> fields = new HashMap<>();
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return fields;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            fields.put(name, text(parser));
+        }
+        return fields;
+    }
+
+    private static String readStringField(JsonParser parser, String field) throws IOException {
+        return readStringFields(parser).get(field);
+    }
+
+    /**
+     * Texto do valor escalar corrente (números mantêm a representação original); null para null/objetos/arrays.
+     */
+    private static String text(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        return token == null || token == JsonToken.VALUE_NULL ? null : parser.getText();
+    }
+
+    private static long epochSeconds(JsonParser parser) throws IOException {
+        String value = text(parser);
+        try {
+            return value != null ? Long.parseLong(value.trim()) : 0L;
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    private static TokenBuffer buffer(JsonParser parser) throws IOException {
+        TokenBuffer buffer = new TokenBuffer(parser);
+        buffer.copyCurrentStructure(parser);
+        return buffer;
+    }
+
+    private String rawJson(JsonParser parser) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)) {
+            generator.copyCurrentStructure(parser);
+        }
+        return writer.toString();
+    }
+
+    private String rawJson(TokenBuffer buffer) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)) {
+            buffer.serialize(generator);
+        }
+        return writer.toString();
+    }
+
+    private record PendingChange(String field, TokenBuffer value) {}
+
+    private static final class StatusFields {
+        private String wamid;
+        private String status;
+        private long timestamp;
+        private String recipientId;
+        private String errorsJson;
+        private String pricingCategory;
+        private Boolean billable;
+    }
+
+    private static final class MessageContent {
+        private boolean decoded;
+        private String content;
+        private String metadata;
+        private final Map<String, Object> metaMap = new HashMap<>();
+        private String interactiveType;
+        private String replyId;
+        private String flowResponseJson;
+        private String flowToken;
+        private String flowId;
+        private List<OrderItem> orderItems = List.of();
+
+        /**
+         * Tipos sem tratamento (unsupported, order, desconhecidos): guarda a mensagem inteira como metadata.
+         */
+        void fallback(String type, String messageJson) {
+            content = "unsupported".equals(type) ? "Mensagem não suportada recebida." : "Tipo desconhecido: " + type;
+            metadata = messageJson;
+        }
+    }
+}
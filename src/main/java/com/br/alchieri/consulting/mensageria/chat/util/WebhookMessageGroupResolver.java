@@ -0,0 +1,120 @@
+package com.br.alchieri.consulting.mensageria.chat.util;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Resolve o "message-group-id" usado ao publicar eventos de webhook na fila FIFO.
+ *
+ * No modo particionado, a ordem FIFO é garantida apenas por conversa (número da Meta + wa_id do contato),
+ * permitindo que o SQS entregue grupos distintos em paralelo para o {@code WebhookSqsListener}.
+ * Eventos sem contato (flows, account_update) são agrupados pelo WABA ID.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class WebhookMessageGroupResolver {
+
+    public static final String DEFAULT_GROUP_ID = "webhook-events";
+
+    // Limite do SQS para MessageGroupId
+    private static final int MAX_GROUP_ID_LENGTH = 128;
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${webhook-queue.message-group.partitioned:false}")
+    private boolean partitioned;
+
+    /**
+     * Calcula o grupo FIFO a partir do payload bruto da Meta.
+     * Em caso de payload inesperado, retorna o grupo único padrão (comportamento legado).
+     *
+     * @param rawPayload O JSON bruto recebido no webhook.
+     * @return O message-group-id a ser usado no envio para a fila.
+     */
+    public String resolve(String rawPayload) {
+        if (!partitioned || rawPayload == null || rawPayload.isBlank()) {
+            return DEFAULT_GROUP_ID;
+        }
+        try {
+            return resolve(objectMapper.readTree(rawPayload));
+        } catch (Exception e) {
+            log.warn("Não foi possível extrair a chave de partição do webhook, usando grupo padrão: {}", e.getMessage());
+            return DEFAULT_GROUP_ID;
+        }
+    }
+
+    /**
+     * Igual a {@link #resolve(String)}, lendo direto dos bytes recebidos no webhook.
+     */
+    public String resolve(byte[] rawPayload) {
+        if (!partitioned || rawPayload == null || rawPayload.length == 0) {
+            return DEFAULT_GROUP_ID;
+        }
+        try {
+            return resolve(objectMapper.readTree(rawPayload));
+        } catch (Exception e) {
+            log.warn("Não foi possível extrair a chave de partição do webhook, usando grupo padrão: {}", e.getMessage());
+            return DEFAULT_GROUP_ID;
+        }
+    }
+
+    public String resolve(JsonNode rootNode) {
+        if (!partitioned || rootNode == null) {
+            return DEFAULT_GROUP_ID;
+        }
+
+        JsonNode entry = rootNode.path("entry").path(0);
+        String wabaId = entry.path("id").asText(null);
+        JsonNode change = entry.path("changes").path(0);
+        String field = change.path("field").asText("");
+        JsonNode value = change.path("value");
+
+        String groupId = null;
+        switch (field) {
+            case "messages":
+                String phoneNumberId = value.path("metadata").path("phone_number_id").asText(null);
+                String waId = extractContactWaId(value);
+                if (phoneNumberId != null && waId != null) {
+                    groupId = "wa-" + phoneNumberId + "-" + waId;
+                } else if (phoneNumberId != null) {
+                    groupId = "wa-" + phoneNumberId;
+                }
+                break;
+            case "flows":
+            case "account_update":
+                if (wabaId != null) {
+                    groupId = "waba-" + wabaId;
+                }
+                break;
+            default:
+                break;
+        }
+
+        if (groupId == null) {
+            return DEFAULT_GROUP_ID;
+        }
+        return groupId.length() > MAX_GROUP_ID_LENGTH ? groupId.substring(0, MAX_GROUP_ID_LENGTH) : groupId;
+    }
+
+    /**
+     * O wa_id do contato aparece em 'contacts' (mensagens recebidas), em 'messages[].from'
+     * ou em 'statuses[].recipient_id' (atualizações de status).
+     */
+    private String extractContactWaId(JsonNode value) {
+        String waId = value.path("contacts").path(0).path("wa_id").asText(null);
+        if (waId == null) {
+            waId = value.path("messages").path(0).path("from").asText(null);
+        }
+        if (waId == null) {
+            waId = value.path("statuses").path(0).path("recipient_id").asText(null);
+        }
+        return waId;
+    }
+}
@@ -1,9 +1,12 @@
 package com.br.alchieri.consulting.mensageria.config;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
@@ -11,14 +14,88 @@ import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 @EnableAsync // Habilita o @Async
 public class AsyncConfig {
 
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${async.executor.core-pool-size:5}")
+    private int corePoolSize;
+
+    @Value("${async.executor.max-pool-size:10}")
+    private int maxPoolSize;
+
+    @Value("${async.executor.queue-capacity:25}")
+    private int queueCapacity;
+
+    // Limite de tarefas simultâneas no modo virtual thread (ao atingir, quem submete aguarda em vez de ser rejeitado)
+    @Value("${async.executor.virtual.concurrency-limit:1000}")
+    private int virtualConcurrencyLimit;
+
+    @Value("${bulk.enqueue.executor.pool-size:8}")
+    private int bulkEnqueuePoolSize;
+
+    @Value("${bulk.job.executor.max-concurrent-jobs:4}")
+    private int bulkJobMaxConcurrent;
+
+    @Value("${bulk.job.executor.queue-capacity:50}")
+    private int bulkJobQueueCapacity;
+
     @Bean(name = "taskExecutor")
     public Executor taskExecutor() {
+        if (virtualThreads) {
+            // Uma virtual thread por tarefa: callbacks bloqueantes (WebClient.block, JPA) não ocupam threads de plataforma
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("CallbackExecutor-vt-");
+            executor.setVirtualThreads(true);
+            executor.setConcurrencyLimit(virtualConcurrencyLimit);
+            executor.setTaskTerminationTimeout(10_000);
+            return executor;
+        }
+
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(5); // Ajuste conforme necessário
-        executor.setMaxPoolSize(10);
-        executor.setQueueCapacity(25);
+        executor.setCorePoolSize(corePoolSize); // Ajuste conforme necessário
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
         executor.setThreadNamePrefix("CallbackExecutor-");
         executor.initialize();
         return executor;
     }
+
+    /**
+     * Executor dos jobs de envio em massa (BulkJobRunner.run). Cada job ocupa uma thread do início ao fim,
+     * então fica fora do taskExecutor; com a fila cheia, a submissão é rejeitada (TaskRejectedException)
+     * e o job é marcado como FAILED por quem o submeteu.
+     */
+    @Bean(name = "bulkJobExecutor")
+    public Executor bulkJobExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(bulkJobMaxConcurrent);
+        executor.setMaxPoolSize(bulkJobMaxConcurrent);
+        executor.setQueueCapacity(bulkJobQueueCapacity);
+        executor.setThreadNamePrefix("BulkJob-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Executor das páginas de envio em massa (BulkJobRunner). Separado do taskExecutor para que um job grande
+     * não ocupe as threads dos callbacks; as tarefas nunca aguardam outras tarefas do mesmo executor.
+     * Com o executor cheio, quem submete (o próprio job) processa a página (CallerRunsPolicy).
+     */
+    @Bean(name = "bulkEnqueueExecutor")
+    public Executor bulkEnqueueExecutor() {
+        if (virtualThreads) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("BulkEnqueue-vt-");
+            executor.setVirtualThreads(true);
+            executor.setConcurrencyLimit(bulkEnqueuePoolSize * 4);
+            return executor;
+        }
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(bulkEnqueuePoolSize);
+        executor.setMaxPoolSize(bulkEnqueuePoolSize);
+        executor.setQueueCapacity(bulkEnqueuePoolSize * 2);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setThreadNamePrefix("BulkEnqueue-");
+        executor.initialize();
+        return executor;
+    }
 }
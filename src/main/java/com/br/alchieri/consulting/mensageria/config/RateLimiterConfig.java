@@ -2,37 +2,48 @@ package com.br.alchieri.consulting.mensageria.config;
 
 import java.time.Duration;
 
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 
-import io.github.bucket4j.Bandwidth;
-import io.github.bucket4j.Bucket;
-import io.github.bucket4j.Refill;
+import io.github.bucket4j.distributed.ExpirationAfterWriteStrategy;
+import io.github.bucket4j.distributed.proxy.ProxyManager;
+import io.github.bucket4j.redis.lettuce.cas.LettuceBasedProxyManager;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
 
 @Configuration
 public class RateLimiterConfig {
 
-    // Pode ler do application.properties se quiser tornar configurável
-    @Value("${whatsapp.meta.api.rate-limit.capacity:5}") // Ex: Capacidade inicial de 5 tokens
-    private long capacity;
-
-    @Value("${whatsapp.meta.api.rate-limit.refill-tokens:5}") // Ex: Adiciona 5 tokens...
-    private long refillTokens;
-
-    @Value("${whatsapp.meta.api.rate-limit.refill-period-seconds:1}") // Ex: ...a cada 1 segundo
-    private long refillPeriodSeconds;
+    /**
+     * Conexão Lettuce dedicada aos buckets (chave String, valor byte[]), reutilizando o cliente do Spring Data Redis.
+     * É um bean próprio para que o Spring a feche no shutdown (close() inferido); o proxy manager não a fecha.
+     */
+    @Bean(name = "metaApiRateLimiterConnection")
+    @ConditionalOnProperty(name = "whatsapp.meta.api.rate-limit.distributed", havingValue = "true", matchIfMissing = true)
+    public StatefulRedisConnection<String, byte[]> metaApiRateLimiterConnection(LettuceConnectionFactory connectionFactory) {
+        if (!(connectionFactory.getNativeClient() instanceof RedisClient redisClient)) {
+            throw new IllegalStateException("Rate limit distribuído requer Redis standalone (RedisClient do Lettuce).");
+        }
+        return redisClient.connect(RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE));
+    }
 
-    @SuppressWarnings("deprecation")
-    @Bean(name = "metaApiRateLimiterBucket") // Nome específico para o bucket
-    public Bucket metaApiRateLimiterBucket() {
-        // Define a largura de banda: X tokens adicionados a cada Y período de tempo
-        Refill refill = Refill.intervally(refillTokens, Duration.ofSeconds(refillPeriodSeconds));
-        // Define o limite: Capacidade inicial e como é reabastecido
-        Bandwidth limit = Bandwidth.classic(capacity, refill);
-        // Cria o bucket (local na memória - thread-safe)
-        return Bucket.builder()
-                .addLimit(limit)
+    /**
+     * Proxy manager do Bucket4j sobre o Redis: os buckets de envio para a Meta (um por número de telefone)
+     * ficam no Redis e são compartilhados por todos os nós da aplicação.
+     */
+    @Bean(name = "metaApiRateLimiterProxyManager")
+    @ConditionalOnProperty(name = "whatsapp.meta.api.rate-limit.distributed", havingValue = "true", matchIfMissing = true)
+    public ProxyManager<String> metaApiRateLimiterProxyManager(
+            @Qualifier("metaApiRateLimiterConnection") StatefulRedisConnection<String, byte[]> connection) {
+        // Buckets ociosos expiram no Redis assim que estariam cheios novamente (+ margem)
+        return LettuceBasedProxyManager.builderFor(connection)
+                .withExpirationStrategy(ExpirationAfterWriteStrategy.basedOnTimeForRefillingBucketUpToMax(Duration.ofSeconds(10)))
                 .build();
     }
 }
@@ -47,4 +47,16 @@ public class SchedulerConfig {
             log.error("JOB DE RESET DIÁRIO: Falha durante a execução.", e);
         }
     }
+
+    /**
+     * Descarrega periodicamente os contadores de uso em memória (mensagens e custos) no BillingPlan.
+     */
+    @Scheduled(fixedDelayString = "${billing.metering.flush-interval-ms:5000}")
+    public void flushUsageCountersJob() {
+        try {
+            billingService.flushUsageCounters();
+        } catch (Exception e) {
+            log.error("JOB DE FLUSH DE USO: Falha durante a execução.", e);
+        }
+    }
 }
@@ -0,0 +1,50 @@
+package com.br.alchieri.consulting.mensageria.config;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+import io.awspring.cloud.sqs.config.SqsMessageListenerContainerFactory;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Modo virtual threads (spring.threads.virtual.enabled=true, Java 21+).
+ *
+ * O Spring Boot já move o Tomcat e o @Scheduled para virtual threads; aqui o mesmo é feito para os
+ * containers dos @SqsListener. O taskExecutor do @Async é tratado em {@link AsyncConfig} e o
+ * Schedulers.boundedElastic do Reactor em {@code MensageriaApplication#main} (precisa ser definido
+ * antes da inicialização do Reactor).
+ */
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+@Slf4j
+public class VirtualThreadConfig {
+
+    /**
+     * Ajusta a factory de containers SQS autoconfigurada (mantendo conversores, error handlers etc.)
+     * para executar os listeners em virtual threads.
+     */
+    @Bean
+    public static BeanPostProcessor sqsVirtualThreadPostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+                if (bean instanceof SqsMessageListenerContainerFactory<?> factory) {
+                    factory.configure(options -> options.componentsTaskExecutor(virtualThreadExecutor("sqs-vt-")));
+                    log.info("Containers SQS ({}) configurados para virtual threads.", beanName);
+                }
+                return bean;
+            }
+        };
+    }
+
+    private static SimpleAsyncTaskExecutor virtualThreadExecutor(String prefix) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(prefix);
+        executor.setVirtualThreads(true);
+        return executor;
+    }
+}
@@ -0,0 +1,71 @@
+package com.br.alchieri.consulting.mensageria.config;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Diagnóstico de pinning de virtual threads.
+ *
+ * No Java 23 uma virtual thread que bloqueia dentro de um bloco {@code synchronized} (ou código nativo)
+ * fica presa à thread carrier. Este monitor assina o evento JFR {@code jdk.VirtualThreadPinned} e
+ * loga o trecho da pilha responsável, para identificar os pontos que ainda precisam trocar
+ * {@code synchronized} por {@code ReentrantLock}.
+ */
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+@ConditionalOnProperty(name = "diagnostics.virtual-threads.pinning.enabled", havingValue = "true")
+@Slf4j
+public class VirtualThreadPinningMonitor {
+
+    private static final int MAX_FRAMES = 8;
+
+    @Value("${diagnostics.virtual-threads.pinning.threshold-ms:20}")
+    private long thresholdMs;
+
+    private RecordingStream recordingStream;
+
+    @PostConstruct
+    void start() {
+        recordingStream = new RecordingStream();
+        recordingStream.enable("jdk.VirtualThreadPinned")
+                .withThreshold(Duration.ofMillis(thresholdMs))
+                .withStackTrace();
+        recordingStream.onEvent("jdk.VirtualThreadPinned", this::logPinnedEvent);
+        recordingStream.startAsync();
+        log.info("Monitor de pinning de virtual threads ativo (limiar: {} ms).", thresholdMs);
+    }
+
+    private void logPinnedEvent(RecordedEvent event) {
+        StringBuilder stack = new StringBuilder();
+        if (event.getStackTrace() != null) {
+            event.getStackTrace().getFrames().stream()
+                    .limit(MAX_FRAMES)
+                    .map(RecordedFrame::getMethod)
+                    .forEach(method -> stack.append("\n\tat ").append(method.getType().getName())
+                            .append('.').append(method.getName()));
+        }
+        log.warn("Virtual thread presa à carrier por {} ms (thread: {}).{}",
+                event.getDuration().toMillis(),
+                event.getThread() != null ? event.getThread().getJavaName() : "?",
+                stack);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (recordingStream != null) {
+            recordingStream.close();
+        }
+    }
+}
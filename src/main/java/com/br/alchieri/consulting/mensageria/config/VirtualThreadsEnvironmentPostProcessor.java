@@ -0,0 +1,32 @@
+package com.br.alchieri.consulting.mensageria.config;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.ConfigurableEnvironment;
+
+/**
+ * Liga o boundedElastic do Reactor em virtual threads a partir de {@code spring.threads.virtual.enabled},
+ * a mesma propriedade usada pelo Spring e pelo AsyncConfig (uma única fonte de verdade).
+ *
+ * Roda na preparação do Environment, antes da criação dos beans: a propriedade de sistema do Reactor
+ * só tem efeito se for definida antes do primeiro uso de {@code Schedulers}.
+ */
+public class VirtualThreadsEnvironmentPostProcessor implements EnvironmentPostProcessor, Ordered {
+
+    static final String REACTOR_VIRTUAL_THREADS_PROPERTY = "reactor.schedulers.defaultBoundedElasticOnVirtualThreads";
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        if (environment.getProperty("spring.threads.virtual.enabled", Boolean.class, false)
+                && System.getProperty(REACTOR_VIRTUAL_THREADS_PROPERTY) == null) {
+            System.setProperty(REACTOR_VIRTUAL_THREADS_PROPERTY, "true");
+        }
+    }
+
+    @Override
+    public int getOrder() {
+        // Depois do ConfigDataEnvironmentPostProcessor, para enxergar o application.properties
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+}
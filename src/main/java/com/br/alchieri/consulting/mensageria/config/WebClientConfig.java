@@ -13,6 +13,7 @@ import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
 
 import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 @Configuration
 public class WebClientConfig {
@@ -22,6 +23,10 @@ public class WebClientConfig {
     @Value("${whatsapp.graph-api.base-url}")
     private String graphApiBaseUrl;
 
+    // Conexões simultâneas com a Graph API (o consumer assíncrono mantém muitos envios em voo)
+    @Value("${whatsapp.graph-api.max-connections:500}")
+    private int maxConnections;
+
     // Timeout de conexão e resposta (exemplo)
     private static final int CONNECT_TIMEOUT_MS = 20000; // 20 segundos
     private static final int RESPONSE_TIMEOUT_SECONDS = 15; // 15 segundos
@@ -30,7 +35,13 @@ public class WebClientConfig {
     public WebClient.Builder metaApiWebClientBuilder() { // Renomeado para clareza
         log.info("Configurando WebClient.Builder para Meta API com Base URL: {}", graphApiBaseUrl);
 
-        HttpClient httpClient = HttpClient.create()
+        ConnectionProvider connectionProvider = ConnectionProvider.builder("meta-api")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(-1)
+                .maxIdleTime(Duration.ofSeconds(30))
+                .build();
+
+        HttpClient httpClient = HttpClient.create(connectionProvider)
                 .responseTimeout(Duration.ofSeconds(RESPONSE_TIMEOUT_SECONDS))
                 .option(io.netty.channel.ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT_MS);
 
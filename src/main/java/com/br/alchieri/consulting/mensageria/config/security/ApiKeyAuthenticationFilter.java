@@ -10,9 +10,8 @@ import org.springframework.security.web.authentication.WebAuthenticationDetailsS
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
-import com.br.alchieri.consulting.mensageria.model.ApiKey;
 import com.br.alchieri.consulting.mensageria.service.ApiKeyService;
-import com.br.alchieri.consulting.mensageria.service.impl.AppUserDetailsService;
+import com.br.alchieri.consulting.mensageria.service.ApiKeyService.AuthenticatedApiKey;
 
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -27,7 +26,6 @@ import lombok.extern.slf4j.Slf4j;
 public class ApiKeyAuthenticationFilter extends OncePerRequestFilter {
 
     private final ApiKeyService apiKeyService;
-    private final AppUserDetailsService userDetailsService;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
@@ -38,12 +36,12 @@ public class ApiKeyAuthenticationFilter extends OncePerRequestFilter {
 
         if (apiKeyHeader != null && !apiKeyHeader.isBlank() && SecurityContextHolder.getContext().getAuthentication() == null) {
             try {
-                // 2. Valida no banco (e audita uso)
-                Optional<ApiKey> validKey = apiKeyService.validateAndAudit(apiKeyHeader);
+                // 2. Valida a chave (cache local; banco apenas em cache miss) e registra o uso
+                Optional<AuthenticatedApiKey> validKey = apiKeyService.authenticate(apiKeyHeader);
 
                 if (validKey.isPresent()) {
-                    ApiKey apiKey = validKey.get();
-                    UserDetails userDetails = userDetailsService.loadUserByUsername(apiKey.getUser().getUsername());
+                    AuthenticatedApiKey apiKey = validKey.get();
+                    UserDetails userDetails = apiKey.principal();
 
                     // 3. Autentica no Spring Security
                     // Usamos null nas credenciais pois a API Key já provou autenticidade
@@ -53,7 +51,7 @@ public class ApiKeyAuthenticationFilter extends OncePerRequestFilter {
                     authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                     SecurityContextHolder.getContext().setAuthentication(authToken);
                     
-                    log.debug("Usuário {} autenticado via API Key: {}", apiKey.getUser().getUsername(), apiKey.getName());
+                    log.debug("Usuário {} autenticado via API Key: {}", userDetails.getUsername(), apiKey.keyName());
                 }
             } catch (Exception e) {
                 log.error("Erro ao autenticar via API Key", e);
@@ -22,6 +22,7 @@ import com.br.alchieri.consulting.mensageria.model.Company;
 import com.br.alchieri.consulting.mensageria.model.User;
 import com.br.alchieri.consulting.mensageria.model.WhatsAppPhoneNumber;
 import com.br.alchieri.consulting.mensageria.repository.WhatsAppPhoneNumberRepository;
+import com.br.alchieri.consulting.mensageria.service.impl.TenantConfigCache;
 import com.br.alchieri.consulting.mensageria.util.SecurityUtils;
 
 import io.swagger.v3.oas.annotations.Operation;
@@ -41,6 +42,7 @@ public class WhatsAppPhoneNumberController {
 
     private final WhatsAppPhoneNumberRepository phoneRepository;
     private final SecurityUtils securityUtils;
+    private final TenantConfigCache tenantConfigCache;
 
     @GetMapping
     public ResponseEntity<ApiResponse> listNumbers() {
@@ -68,6 +70,7 @@ public class WhatsAppPhoneNumberController {
                 .wabaId(request.getWabaId())
                 .displayPhoneNumber(request.getDisplayPhoneNumber())
                 .alias(request.getAlias())
+                .throughputMps(request.getThroughputMps())
                 .status("CONNECTED") // Assume conectado ao criar
                 .qualityRating("UNKNOWN") // Atualizado via webhook depois
                 .isDefault(false) // Será tratado abaixo
@@ -84,6 +87,7 @@ public class WhatsAppPhoneNumberController {
         }
 
         WhatsAppPhoneNumber saved = phoneRepository.save(phoneNumber);
+        tenantConfigCache.evictChannel(saved.getPhoneNumberId()); // Pode haver um "não encontrado" em cache
         log.info("Novo número adicionado: {} para a empresa {}", saved.getPhoneNumberId(), company.getName());
 
         return ResponseEntity.status(HttpStatus.CREATED)
@@ -114,6 +118,7 @@ public class WhatsAppPhoneNumberController {
         // Marca o novo
         targetNumber.setDefault(true);
         phoneRepository.save(targetNumber);
+        tenantConfigCache.evictChannel(targetNumber.getPhoneNumberId());
 
         log.info("Número padrão alterado para {} na empresa {}", targetNumber.getPhoneNumberId(), company.getName());
 
@@ -136,12 +141,14 @@ public class WhatsAppPhoneNumberController {
 
         boolean wasDefault = targetNumber.isDefault();
         phoneRepository.delete(targetNumber);
+        tenantConfigCache.evictChannel(targetNumber.getPhoneNumberId());
         
         // Se deletou o padrão, verifica se restou algum para promover a padrão (opcional, mas recomendado para evitar erros)
         if (wasDefault) {
             phoneRepository.findByCompany(company).stream().findFirst().ifPresent(next -> {
                 next.setDefault(true);
                 phoneRepository.save(next);
+                tenantConfigCache.evictChannel(next.getPhoneNumberId());
                 log.info("Número padrão redefinido automaticamente para {} após exclusão.", next.getPhoneNumberId());
             });
         }
@@ -156,6 +163,7 @@ public class WhatsAppPhoneNumberController {
         phoneRepository.findFirstByCompanyAndIsDefaultTrue(company).ifPresent(current -> {
             current.setDefault(false);
             phoneRepository.save(current);
+            tenantConfigCache.evictChannel(current.getPhoneNumberId());
         });
     }
 }
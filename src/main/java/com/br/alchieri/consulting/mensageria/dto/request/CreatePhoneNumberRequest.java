@@ -2,6 +2,7 @@ package com.br.alchieri.consulting.mensageria.dto.request;
 
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Positive;
 import lombok.Data;
 
 @Data
@@ -22,6 +23,10 @@ public class CreatePhoneNumberRequest {
     @Schema(description = "Nome amigável para identificar este canal internamente (ex: Suporte, Vendas).", example = "Comercial Matriz")
     private String alias;
 
+    @Positive(message = "O throughput deve ser positivo.")
+    @Schema(description = "Throughput de envio liberado pela Meta para este número (mensagens por segundo). Se omitido, usa o padrão de 80 mps.", example = "80")
+    private Integer throughputMps;
+
     @Schema(description = "Define se este será o número padrão para envios que não especificam remetente.", defaultValue = "false")
     private boolean isDefault = false;
 }
@@ -2,6 +2,7 @@ package com.br.alchieri.consulting.mensageria.dto.request;
 
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
 import lombok.Data;
 
 @Data
@@ -18,6 +19,14 @@ public class UpdateCallbacksRequest {
             example = "https://meucliente.com/api/whatsapp/template-updates")
     private String templateStatusCallbackUrl;
 
+    @Schema(description = "Habilita a entrega de status de mensagens e mensagens recebidas em lotes (array JSON assinado) na URL geral. Deixe nulo para não alterar.",
+            example = "true")
+    private Boolean batchEnabled;
+
+    @Size(min = 16, max = 128, message = "O segredo de assinatura deve ter entre 16 e 128 caracteres.")
+    @Schema(description = "Segredo usado para assinar os lotes (HMAC-SHA256, header X-Callback-Signature). Obrigatório para habilitar lotes se ainda não houver um configurado.")
+    private String signingSecret;
+
     // Adicionar outras URLs de callback específicas se você as tiver, por exemplo:
     // @Pattern(regexp = "^https?://.+", message = "URL de callback de dados de Flow inválida.")
     // @Schema(description = "Nova URL para receber dados de formulários de Flows.")
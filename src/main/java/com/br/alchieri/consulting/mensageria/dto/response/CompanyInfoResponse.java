@@ -24,6 +24,7 @@ public class CompanyInfoResponse {
     private List<PhoneNumberSummary> phoneNumbers;
     private List<BusinessManagerSummary> businessManagers;
     private Integer botSessionTtl;
+    private boolean callbackBatchEnabled;
     // Adicionar outros campos se necessário
 
     public static CompanyInfoResponse fromEntity(Company company) {
@@ -51,6 +52,7 @@ public class CompanyInfoResponse {
                     return summary;
                 }).toList())
                 .botSessionTtl(company.getBotSessionTtl())
+                .callbackBatchEnabled(company.isCallbackBatchEnabled())
                 .build();
     }
 
@@ -0,0 +1,19 @@
+package com.br.alchieri.consulting.mensageria.exception;
+
+/**
+ * Lançada quando o envio é adiado pelo rate limit da Meta. A mensagem SQS não é confirmada
+ * e volta a ficar visível após a espera calculada pelo bucket.
+ */
+public class RateLimitExceededException extends RuntimeException {
+
+    private final long waitMillis;
+
+    public RateLimitExceededException(String message, long waitMillis) {
+        super(message);
+        this.waitMillis = waitMillis;
+    }
+
+    public long getWaitMillis() {
+        return waitMillis;
+    }
+}
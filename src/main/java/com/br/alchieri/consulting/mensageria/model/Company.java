@@ -10,6 +10,7 @@ import org.hibernate.annotations.UpdateTimestamp;
 import com.br.alchieri.consulting.mensageria.chat.model.ClientTemplate;
 import com.br.alchieri.consulting.mensageria.chat.model.WhatsAppMessageLog;
 import com.br.alchieri.consulting.mensageria.chat.model.enums.OnboardingStatus;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Column;
@@ -103,6 +104,14 @@ public class Company {
     @Column(nullable = true)
     private String templateStatusCallbackUrl; // Callback específico para status de template da empresa
 
+    // Entrega de status/mensagens recebidas em lotes (array JSON assinado) na URL geral
+    @Column(nullable = false, columnDefinition = "boolean default false")
+    private boolean callbackBatchEnabled = false;
+
+    @JsonIgnore
+    @Column(length = 128)
+    private String callbackSigningSecret; // Segredo HMAC-SHA256 da assinatura dos lotes
+
     @Column(unique = true, nullable = true)
     private String metaFlowPublicKeyId;
 
@@ -117,6 +126,10 @@ public class Company {
     @Column(name = "bot_session_ttl", nullable = false)
     private Integer botSessionTtl = 30;
 
+    // Meses de histórico de mensagens mantidos no banco antes do arquivamento no S3 (null = padrão da plataforma)
+    @Column(nullable = true)
+    private Integer messageLogRetentionMonths;
+
     @Column(nullable = false, updatable = false)
     @CreationTimestamp
     private LocalDateTime createdAt;
@@ -67,6 +67,9 @@ public class WhatsAppPhoneNumber {
     @Column(name = "status")
     private String status; // CONNECTED, DISCONNECTED, BANNED
 
+    @Column(name = "throughput_mps")
+    private Integer throughputMps; // Tier de throughput da Meta (mensagens/segundo). Null = padrão (80)
+
     @CreationTimestamp
     private LocalDateTime createdAt;
 
@@ -10,12 +10,14 @@ import org.hibernate.annotations.UpdateTimestamp;
 
 import com.br.alchieri.consulting.mensageria.dto.cart.CartDTO;
 import com.br.alchieri.consulting.mensageria.model.Address;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import jakarta.persistence.Column;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 @Data
 @Builder
@@ -57,6 +59,16 @@ public class UserSession implements Serializable {
 
     private Address tempAddress; // Endereço temporário durante o fluxo
 
+    // --- PERSISTÊNCIA (SessionStore) ---
+    // Campos do hash e carrinho como estão no Redis; a próxima gravação envia apenas a diferença
+    @JsonIgnore
+    @ToString.Exclude
+    private transient Map<String, String> persistedFields;
+
+    @JsonIgnore
+    @ToString.Exclude
+    private transient String persistedCart;
+
     public void addContextData(String key, String value) {
         if (this.contextData == null) {
             this.contextData = new HashMap<>();
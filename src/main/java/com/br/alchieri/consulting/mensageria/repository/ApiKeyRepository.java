@@ -1,10 +1,15 @@
 package com.br.alchieri.consulting.mensageria.repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.br.alchieri.consulting.mensageria.model.ApiKey;
 import com.br.alchieri.consulting.mensageria.model.User;
@@ -15,4 +20,18 @@ public interface ApiKeyRepository extends JpaRepository<ApiKey, Long> {
     Optional<ApiKey> findByKeyHash(String keyHash);
     List<ApiKey> findByUserAndActiveTrue(User user);
     List<ApiKey> findByUser(User user);
+
+    /**
+     * Busca a chave já com o usuário carregado (usado para montar o principal no cache de autenticação).
+     */
+    @Query("SELECT k FROM ApiKey k JOIN FETCH k.user WHERE k.keyHash = :keyHash")
+    Optional<ApiKey> findByKeyHashWithUser(@Param("keyHash") String keyHash);
+
+    /**
+     * Grava o último uso acumulado em memória; nunca retrocede a data já gravada.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE ApiKey k SET k.lastUsedAt = :usedAt WHERE k.id = :id AND (k.lastUsedAt IS NULL OR k.lastUsedAt < :usedAt)")
+    int updateLastUsedAt(@Param("id") Long id, @Param("usedAt") LocalDateTime usedAt);
 }
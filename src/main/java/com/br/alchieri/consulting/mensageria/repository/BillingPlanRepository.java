@@ -1,9 +1,15 @@
 package com.br.alchieri.consulting.mensageria.repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.br.alchieri.consulting.mensageria.model.BillingPlan;
 import com.br.alchieri.consulting.mensageria.model.Company;
@@ -13,4 +19,28 @@ public interface BillingPlanRepository extends JpaRepository<BillingPlan, Long>
 
     Optional<BillingPlan> findByCompany(Company company);
     Optional<BillingPlan> findByCompanyId(Long companyId);
+
+    /**
+     * Soma deltas de uso ao plano em um único UPDATE, apenas se os contadores já estiverem
+     * no período corrente (dia e mês). Retorna 0 quando é necessário resetar os contadores antes.
+     * Incrementa a versão (@Version) para que gravações via entidade com contadores antigos falhem
+     * com OptimisticLockException em vez de sobrescrever o uso somado aqui.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Transactional
+    @Query("UPDATE BillingPlan p SET " +
+           "p.currentDayMessagesSent = p.currentDayMessagesSent + :dayMessages, " +
+           "p.currentMonthMessagesSent = p.currentMonthMessagesSent + :monthMessages, " +
+           "p.currentMonthMetaCost = p.currentMonthMetaCost + :metaCost, " +
+           "p.currentMonthPlatformFee = p.currentMonthPlatformFee + :platformFee, " +
+           "p.updatedAt = CURRENT_TIMESTAMP, " +
+           "p.version = p.version + 1 " +
+           "WHERE p.id = :companyId AND p.lastDailyReset >= :dayStart AND p.lastMonthlyReset >= :monthStart")
+    int addUsageDeltas(@Param("companyId") Long companyId,
+                       @Param("dayMessages") int dayMessages,
+                       @Param("monthMessages") int monthMessages,
+                       @Param("metaCost") BigDecimal metaCost,
+                       @Param("platformFee") BigDecimal platformFee,
+                       @Param("dayStart") LocalDateTime dayStart,
+                       @Param("monthStart") LocalDateTime monthStart);
 }
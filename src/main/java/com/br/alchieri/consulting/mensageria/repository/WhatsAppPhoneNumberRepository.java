@@ -4,6 +4,8 @@ import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.br.alchieri.consulting.mensageria.model.Company;
@@ -14,6 +16,10 @@ public interface WhatsAppPhoneNumberRepository extends JpaRepository<WhatsAppPho
     
     // Busca por ID da Meta (usado no Webhook)
     Optional<WhatsAppPhoneNumber> findByPhoneNumberId(String phoneNumberId);
+
+    // Mesmo que o anterior, já com a empresa carregada (entrada do TenantConfigCache)
+    @Query("SELECT p FROM WhatsAppPhoneNumber p JOIN FETCH p.company WHERE p.phoneNumberId = :phoneNumberId")
+    Optional<WhatsAppPhoneNumber> findByPhoneNumberIdWithCompany(@Param("phoneNumberId") String phoneNumberId);
     
     // Lista todos da empresa
     List<WhatsAppPhoneNumber> findByCompany(Company company);
@@ -3,6 +3,8 @@ package com.br.alchieri.consulting.mensageria.service;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.security.core.userdetails.UserDetails;
+
 import com.br.alchieri.consulting.mensageria.model.ApiKey;
 import com.br.alchieri.consulting.mensageria.model.User;
 
@@ -14,5 +16,13 @@ public interface ApiKeyService {
 
     List<ApiKey> listKeys(User user);
     
-    Optional<ApiKey> validateAndAudit(String rawKey);
+    /**
+     * Valida a chave (com cache em memória) e registra o uso para o próximo flush de lastUsedAt.
+     */
+    Optional<AuthenticatedApiKey> authenticate(String rawKey);
+
+    /**
+     * Chave validada e o principal (usuário dono) a ser colocado no contexto de segurança.
+     */
+    record AuthenticatedApiKey(Long keyId, String keyName, UserDetails principal) {}
 }
@@ -74,4 +74,7 @@ public interface BillingService {
     
     /** Reseta apenas os contadores diários. */
     void resetDailyUsageCounters();
+
+    /** Grava no BillingPlan os contadores de uso acumulados em memória desde o último flush. */
+    void flushUsageCounters();
 }
@@ -0,0 +1,156 @@
+package com.br.alchieri.consulting.mensageria.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cache local (por nó) das API Keys validadas, indexado pelo hash da chave.
+ *
+ * Chaves válidas ficam em memória por um TTL curto; hashes desconhecidos ou revogados entram num cache
+ * negativo, para que chaves inválidas repetidas não consultem o banco a cada requisição.
+ * A entrada guarda só dados imutáveis da chave e o dono (ID/username): o principal é montado a cada
+ * requisição pelo {@link UserPrincipalCache}, que já é invalidado nas alterações de usuário/empresa.
+ * Revogações e alterações do dono são propagadas aos demais nós pelo canal Redis {@value #REVOCATION_CHANNEL}.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ApiKeyAuthCache implements MessageListener {
+
+    public static final String REVOCATION_CHANNEL = "api-key:revoked";
+
+    // Mensagens com este prefixo removem todas as chaves do usuário; as demais são hashes de chave
+    private static final String USER_PREFIX = "user:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    @Value("${api-key.cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${api-key.cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    @Value("${api-key.cache.negative-ttl-seconds:30}")
+    private long negativeTtlSeconds;
+
+    private Cache<String, Entry> validKeys;
+    private Cache<String, Boolean> unknownKeys;
+
+    /**
+     * @param expiresAt Expiração da chave (null = não expira), conferida a cada uso.
+     */
+    public record Entry(Long keyId, String keyName, Long userId, String username, LocalDateTime expiresAt) {
+
+        public boolean isExpired(LocalDateTime now) {
+            return expiresAt != null && expiresAt.isBefore(now);
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        validKeys = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+        unknownKeys = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(negativeTtlSeconds, TimeUnit.SECONDS)
+                .build();
+        listenerContainer.addMessageListener(this, new ChannelTopic(REVOCATION_CHANNEL));
+    }
+
+    public Entry getValid(String keyHash) {
+        return validKeys.getIfPresent(keyHash);
+    }
+
+    public boolean isKnownInvalid(String keyHash) {
+        return unknownKeys.getIfPresent(keyHash) != null;
+    }
+
+    public void putValid(String keyHash, Entry entry) {
+        unknownKeys.invalidate(keyHash);
+        validKeys.put(keyHash, entry);
+    }
+
+    public void putInvalid(String keyHash) {
+        validKeys.invalidate(keyHash);
+        unknownKeys.put(keyHash, Boolean.TRUE);
+    }
+
+    /**
+     * Remove a chave deste nó e avisa os demais nós pelo Redis.
+     */
+    public void evictEverywhere(String keyHash) {
+        validKeys.invalidate(keyHash);
+        try {
+            redisTemplate.convertAndSend(REVOCATION_CHANNEL, keyHash);
+        } catch (Exception e) {
+            // Os demais nós descartam a chave ao fim do TTL
+            log.error("Falha ao publicar revogação de API Key no Redis: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Remove as chaves do usuário após o commit da transação corrente (neste nó e nos demais),
+     * para que a próxima requisição releia o dono (ex: username alterado ou usuário removido).
+     */
+    public void evictUser(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictUserEverywhere(userId);
+                }
+            });
+        } else {
+            evictUserEverywhere(userId);
+        }
+    }
+
+    private void evictUserEverywhere(Long userId) {
+        evictUserLocal(userId);
+        try {
+            redisTemplate.convertAndSend(REVOCATION_CHANNEL, USER_PREFIX + userId);
+        } catch (Exception e) {
+            // Os demais nós descartam as chaves ao fim do TTL
+            log.error("Falha ao publicar invalidação das API Keys do usuário ID {} no Redis: {}", userId, e.getMessage());
+        }
+    }
+
+    private void evictUserLocal(Long userId) {
+        validKeys.asMap().values().removeIf(entry -> userId.equals(entry.userId()));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String target = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (target.startsWith(USER_PREFIX)) {
+            evictUserLocal(Long.valueOf(target.substring(USER_PREFIX.length())));
+            log.debug("API Keys do usuário removidas do cache local por alteração do usuário.");
+            return;
+        }
+        validKeys.invalidate(target);
+        log.debug("API Key removida do cache local por revogação.");
+    }
+}
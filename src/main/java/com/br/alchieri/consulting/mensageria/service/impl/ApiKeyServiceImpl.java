@@ -9,8 +9,11 @@ import java.util.Base64;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.br.alchieri.consulting.mensageria.exception.BusinessException;
 import com.br.alchieri.consulting.mensageria.model.ApiKey;
@@ -27,6 +30,9 @@ import lombok.extern.slf4j.Slf4j;
 public class ApiKeyServiceImpl implements ApiKeyService {
 
     private final ApiKeyRepository apiKeyRepository;
+    private final ApiKeyAuthCache apiKeyAuthCache;
+    private final ApiKeyUsageRecorder apiKeyUsageRecorder;
+    private final UserPrincipalCache userPrincipalCache;
     private static final SecureRandom secureRandom = new SecureRandom();
     private static final Base64.Encoder base64Encoder = Base64.getUrlEncoder();
 
@@ -79,6 +85,19 @@ public class ApiKeyServiceImpl implements ApiKeyService {
 
         apiKey.setActive(false);
         apiKeyRepository.save(apiKey);
+
+        // Só remove dos caches após o commit, para nenhum nó recarregar a chave ainda ativa
+        String keyHash = apiKey.getKeyHash();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apiKeyAuthCache.evictEverywhere(keyHash);
+                }
+            });
+        } else {
+            apiKeyAuthCache.evictEverywhere(keyHash);
+        }
         log.info("API Key ID {} revogada pelo usuário.", keyId);
     }
 
@@ -88,32 +107,52 @@ public class ApiKeyServiceImpl implements ApiKeyService {
     }
 
     /**
-     * Valida a chave e atualiza auditoria (lastUsedAt).
-     * Retorna a entidade ApiKey se válida, ou Empty se inválida.
+     * Valida a chave consultando primeiro o cache local; o banco só é lido em cache miss.
+     * O principal é uma cópia própria desta requisição, obtida do {@link UserPrincipalCache}.
+     * O lastUsedAt é acumulado em memória e gravado pelo {@link ApiKeyUsageRecorder}.
      */
     @Override
-    @Transactional(noRollbackFor = Exception.class) // Garante que o update de lastUsedAt ocorra
-    public Optional<ApiKey> validateAndAudit(String rawKey) {
+    public Optional<AuthenticatedApiKey> authenticate(String rawKey) {
         String hash = hashKey(rawKey);
-        
-        Optional<ApiKey> optKey = apiKeyRepository.findByKeyHash(hash);
-        
-        if (optKey.isPresent()) {
-            ApiKey key = optKey.get();
-            if (!key.isActive()) return Optional.empty();
-            
-            if (key.getExpiresAt() != null && key.getExpiresAt().isBefore(LocalDateTime.now())) {
+        if (apiKeyAuthCache.isKnownInvalid(hash)) {
+            return Optional.empty();
+        }
+
+        ApiKeyAuthCache.Entry entry = apiKeyAuthCache.getValid(hash);
+        if (entry == null) {
+            entry = loadEntry(hash);
+            if (entry == null) {
+                apiKeyAuthCache.putInvalid(hash);
                 return Optional.empty();
             }
+            apiKeyAuthCache.putValid(hash, entry);
+        }
 
-            // Auditoria: Atualiza data de uso
-            key.setLastUsedAt(LocalDateTime.now());
-            apiKeyRepository.save(key);
-            
-            return Optional.of(key);
+        LocalDateTime now = LocalDateTime.now();
+        if (entry.isExpired(now)) {
+            return Optional.empty();
         }
-        
-        return Optional.empty();
+
+        User principal;
+        try {
+            principal = userPrincipalCache.getPrincipal(entry.username(), null);
+        } catch (UsernameNotFoundException e) {
+            // Dono removido ou renomeado sem invalidação: relê a chave na próxima requisição
+            apiKeyAuthCache.putInvalid(hash);
+            return Optional.empty();
+        }
+
+        // Auditoria: o uso é gravado no próximo flush
+        apiKeyUsageRecorder.recordUse(entry.keyId(), now);
+        return Optional.of(new AuthenticatedApiKey(entry.keyId(), entry.keyName(), principal));
+    }
+
+    private ApiKeyAuthCache.Entry loadEntry(String hash) {
+        return apiKeyRepository.findByKeyHashWithUser(hash)
+                .filter(ApiKey::isActive)
+                .map(key -> new ApiKeyAuthCache.Entry(key.getId(), key.getName(),
+                        key.getUser().getId(), key.getUser().getUsername(), key.getExpiresAt()))
+                .orElse(null);
     }
 
     private String hashKey(String key) {
@@ -0,0 +1,64 @@
+package com.br.alchieri.consulting.mensageria.service.impl;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.br.alchieri.consulting.mensageria.repository.ApiKeyRepository;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Acumula o último uso de cada API Key em memória e grava periodicamente, em vez de um UPDATE por
+ * requisição. Vários usos da mesma chave entre dois flushes resultam em uma única escrita.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ApiKeyUsageRecorder {
+
+    private final ApiKeyRepository apiKeyRepository;
+
+    private final ConcurrentHashMap<Long, LocalDateTime> pending = new ConcurrentHashMap<>();
+
+    public void recordUse(Long keyId, LocalDateTime usedAt) {
+        pending.merge(keyId, usedAt, (current, next) -> next.isAfter(current) ? next : current);
+    }
+
+    @Scheduled(fixedDelayString = "${api-key.last-used.flush-interval-ms:30000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<Long, LocalDateTime>> drained = new ArrayList<>();
+        for (Long keyId : pending.keySet()) {
+            LocalDateTime usedAt = pending.remove(keyId);
+            if (usedAt != null) {
+                drained.add(Map.entry(keyId, usedAt));
+            }
+        }
+
+        for (Map.Entry<Long, LocalDateTime> use : drained) {
+            try {
+                apiKeyRepository.updateLastUsedAt(use.getKey(), use.getValue());
+            } catch (Exception e) {
+                log.error("Falha ao gravar último uso da API Key ID {}. Será tentado no próximo flush. Erro: {}",
+                        use.getKey(), e.getMessage());
+                recordUse(use.getKey(), use.getValue());
+            }
+        }
+        log.debug("Flush de último uso concluído para {} API Keys.", drained.size());
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+}
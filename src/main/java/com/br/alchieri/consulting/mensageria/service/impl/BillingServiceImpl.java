@@ -28,16 +28,13 @@ import com.br.alchieri.consulting.mensageria.model.BillingPlan;
 import com.br.alchieri.consulting.mensageria.model.Company;
 import com.br.alchieri.consulting.mensageria.model.Invoice;
 import com.br.alchieri.consulting.mensageria.model.InvoiceItem;
-import com.br.alchieri.consulting.mensageria.model.MetaRateCard;
 import com.br.alchieri.consulting.mensageria.repository.BillingPlanRepository;
 import com.br.alchieri.consulting.mensageria.repository.CompanyRepository;
 import com.br.alchieri.consulting.mensageria.repository.InvoiceRepository;
-import com.br.alchieri.consulting.mensageria.repository.MetaRateCardRepository;
 import com.br.alchieri.consulting.mensageria.service.BillingService;
 import com.br.alchieri.consulting.mensageria.util.CountryCodeMapper;
-import com.google.i18n.phonenumbers.PhoneNumberUtil;
-import com.google.i18n.phonenumbers.Phonenumber.PhoneNumber;
 
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -48,14 +45,13 @@ public class BillingServiceImpl implements BillingService {
 
     private final BillingPlanRepository billingPlanRepository;
     private final CompanyRepository companyRepository;
-    private final MetaRateCardRepository rateCardRepository;
+    private final RateCardIndex rateCardIndex;
     private final ClientTemplateRepository clientTemplateRepository;
     private final FlowRepository flowRepository;
     private final InvoiceRepository invoiceRepository;
 
     private final StringRedisTemplate redisTemplate;
-
-    private final PhoneNumberUtil phoneUtil = PhoneNumberUtil.getInstance();
+    private final UsageMeteringEngine usageMeteringEngine;
 
     @Override
     @Transactional
@@ -84,7 +80,9 @@ public class BillingServiceImpl implements BillingService {
             resetAllCounters(plan, LocalDateTime.now());
         }
 
-        return billingPlanRepository.save(plan);
+        BillingPlan savedPlan = billingPlanRepository.save(plan);
+        usageMeteringEngine.invalidateSnapshot(company.getId());
+        return savedPlan;
     }
 
     @Override
@@ -112,6 +110,13 @@ public class BillingServiceImpl implements BillingService {
             BigDecimal metaCost = plan.getCurrentMonthMetaCost();
             BigDecimal platformFee = plan.getCurrentMonthPlatformFee();
 
+            // Soma o uso ainda não gravado pelo flush periódico
+            UsageMeteringEngine.UsageDelta unflushed = usageMeteringEngine.unflushedUsage(company.getId());
+            currentDayMsg += (int) unflushed.dayMessages();
+            currentMonthMsg += (int) unflushed.monthMessages();
+            metaCost = metaCost.add(unflushed.metaCost());
+            platformFee = platformFee.add(unflushed.platformFee());
+
             if (plan.getLastDailyReset() == null || plan.getLastDailyReset().toLocalDate().isBefore(now.toLocalDate())) {
                 currentDayMsg = 0;
             }
@@ -138,19 +143,12 @@ public class BillingServiceImpl implements BillingService {
     }
 
     @Override
-    @Transactional(readOnly = true)
     public boolean canCompanySendMessages(Company company, int messageCount) {
-        BillingPlan plan = billingPlanRepository.findByCompany(company)
-            .orElseThrow(() -> new BusinessException("Plano de cobrança não encontrado para a empresa."));
-        
-        resetCountersIfNeeded(plan);
+        // Respondido pelo medidor em memória; o plano só é lido do banco quando o snapshot expira
+        UsageMeteringEngine.LimitCheck check = usageMeteringEngine.checkMessageLimits(company.getId(), messageCount, this::loadPlan);
 
-        if (plan.getDailyMessageLimit() != null && (plan.getCurrentDayMessagesSent() + messageCount) > plan.getDailyMessageLimit()) {
-            log.warn("Empresa ID {}: Limite diário de mensagens ({}) excedido.", company.getId(), plan.getDailyMessageLimit());
-            return false;
-        }
-        if ((plan.getCurrentMonthMessagesSent() + messageCount) > plan.getMonthlyMessageLimit()) {
-            log.warn("Empresa ID {}: Limite mensal de mensagens ({}) excedido.", company.getId(), plan.getMonthlyMessageLimit());
+        if (!check.allowed()) {
+            log.warn("Empresa ID {}: Limite {} de mensagens ({}) excedido.", company.getId(), check.exceededLimit(), check.limit());
             return false;
         }
         return true;
@@ -193,13 +191,9 @@ public class BillingServiceImpl implements BillingService {
     }
 
     @Override
-    @Transactional
     public void recordMessagesSent(Company company, int messageCount) {
-        billingPlanRepository.findByCompany(company).ifPresent(plan -> {
-            resetCountersIfNeeded(plan);
-            plan.setCurrentDayMessagesSent(plan.getCurrentDayMessagesSent() + messageCount);
-            plan.setCurrentMonthMessagesSent(plan.getCurrentMonthMessagesSent() + messageCount);
-        });
+        if (company == null) return;
+        usageMeteringEngine.recordMessages(company.getId(), messageCount);
     }
 
     @Override
@@ -212,21 +206,64 @@ public class BillingServiceImpl implements BillingService {
     }
 
     @Override
-    @Transactional
     public void recordCosts(Company company, BigDecimal metaCost, BigDecimal platformFee) {
         if (company == null || metaCost == null || platformFee == null) return;
-        billingPlanRepository.findByCompany(company).ifPresent(plan -> {
+        usageMeteringEngine.recordCosts(company.getId(), metaCost, platformFee);
+    }
+
+    @Override
+    public void flushUsageCounters() {
+        List<UsageMeteringEngine.UsageDelta> deltas = usageMeteringEngine.drain();
+        if (deltas.isEmpty()) return;
+
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime dayStart = now.toLocalDate().atStartOfDay();
+        LocalDateTime monthStart = dayStart.withDayOfMonth(1);
+
+        for (UsageMeteringEngine.UsageDelta delta : deltas) {
+            try {
+                int updated = billingPlanRepository.addUsageDeltas(delta.companyId(),
+                        (int) delta.dayMessages(), (int) delta.monthMessages(),
+                        delta.metaCost(), delta.platformFee(), dayStart, monthStart);
+                if (updated == 0) {
+                    // Contadores de um período anterior (ou plano inexistente): aplica pelo caminho com reset
+                    applyUsageDeltaWithReset(delta);
+                }
+                usageMeteringEngine.confirmFlush(delta);
+            } catch (Exception e) {
+                log.error("Falha ao gravar uso da empresa ID {} ({} msgs). Será tentado no próximo flush. Erro: {}",
+                        delta.companyId(), delta.monthMessages(), e.getMessage());
+                usageMeteringEngine.restore(delta);
+            }
+        }
+        log.debug("Flush de uso concluído para {} empresas.", deltas.size());
+    }
+
+    private void applyUsageDeltaWithReset(UsageMeteringEngine.UsageDelta delta) {
+        billingPlanRepository.findByCompanyId(delta.companyId()).ifPresentOrElse(plan -> {
             resetCountersIfNeeded(plan);
-            plan.setCurrentMonthMetaCost(plan.getCurrentMonthMetaCost().add(metaCost));
-            plan.setCurrentMonthPlatformFee(plan.getCurrentMonthPlatformFee().add(platformFee));
-        });
+            plan.setCurrentDayMessagesSent(plan.getCurrentDayMessagesSent() + (int) delta.dayMessages());
+            plan.setCurrentMonthMessagesSent(plan.getCurrentMonthMessagesSent() + (int) delta.monthMessages());
+            plan.setCurrentMonthMetaCost(plan.getCurrentMonthMetaCost().add(delta.metaCost()));
+            plan.setCurrentMonthPlatformFee(plan.getCurrentMonthPlatformFee().add(delta.platformFee()));
+            billingPlanRepository.save(plan);
+            usageMeteringEngine.invalidateSnapshot(delta.companyId());
+        }, () -> log.warn("Uso descartado: empresa ID {} não possui plano de cobrança.", delta.companyId()));
     }
 
+    @PreDestroy
+    public void flushUsageCountersOnShutdown() {
+        log.info("Gravando contadores de uso pendentes antes do desligamento.");
+        flushUsageCounters();
+    }
+
+    /**
+     * Custo Meta de uma mensagem tarifável: busca a tarifa no índice em memória e abre (ou reaproveita)
+     * a janela de 24h. Sem acesso ao banco, exceto quando o snapshot do plano (volume mensal) expira.
+     */
     @Override
-    @Transactional
     public BigDecimal calculateMetaCostForMessage(WhatsAppMessageLog messageLog) {
         
-        
         if (messageLog.getPricingCategory() == null || messageLog.getCompany() == null) {
             return BigDecimal.ZERO;
         }
@@ -240,10 +277,13 @@ public class BillingServiceImpl implements BillingService {
         // Simplificação: A Meta permite janelas sobrepostas de categorias diferentes.
         String windowKey = "billing_window:" + companyId + ":" + phoneNumber + ":" + category.name();
 
-        // Verifica se já existe uma janela aberta para esta categoria e destinatário
-        Boolean hasActiveWindow = redisTemplate.hasKey(windowKey);
+        // A tarifa é resolvida antes de abrir a janela: se falhar, nenhuma janela fica aberta sem cobrança
+        BigDecimal rate = getRateForCategory(messageLog, category);
+
+        // Verifica e abre a janela em um único comando (SET NX EX): só o primeiro status concorrente é cobrado
+        Boolean windowOpened = redisTemplate.opsForValue().setIfAbsent(windowKey, "ACTIVE", Duration.ofHours(24));
 
-        if (Boolean.TRUE.equals(hasActiveWindow)) {
+        if (!Boolean.TRUE.equals(windowOpened)) {
             log.info("Janela de 24h ativa para [Empresa: {}, Fone: {}, Categ: {}]. Custo Meta = ZERO.", companyId, phoneNumber, category);
             return BigDecimal.ZERO;
         }
@@ -251,24 +291,32 @@ public class BillingServiceImpl implements BillingService {
         // --- NOVA JANELA DE COBRANÇA ---
         log.info("Abrindo nova janela de conversação de 24h.");
         
-        // 1. Calcula o custo da abertura da janela
-        BigDecimal cost = getRateForCategory(messageLog, category); // Método auxiliar que busca no RateCardRepository
-
-        // 2. Registra a janela no Redis com TTL de 24 horas
-        redisTemplate.opsForValue().set(windowKey, "ACTIVE", Duration.ofHours(24));
-
-        return cost;
+        return rate;
     }
 
     private BigDecimal getRateForCategory(WhatsAppMessageLog messageLog, TemplateCategory category) {
-        String recipient = messageLog.getRecipient();
-        String countryCode = extractCountryCode(recipient);
-        String marketOrRegion = CountryCodeMapper.getMarketOrRegion(countryCode);
+        String marketOrRegion = CountryCodeMapper.getMarketOrRegionForPhone(messageLog.getRecipient());
+        long monthVolume = currentMonthVolume(messageLog.getCompany().getId());
         
-        return rateCardRepository.findEffectiveRate(marketOrRegion, category, 1L, LocalDate.now())
-                .map(MetaRateCard::getRate)
+        return rateCardIndex.findEffectiveRate(marketOrRegion, category, monthVolume, LocalDate.now())
                 .orElse(BigDecimal.ZERO);
     }
+
+    /**
+     * Volume mensal da empresa para a faixa de tarifa (no mínimo 1: a própria mensagem).
+     */
+    private long currentMonthVolume(Long companyId) {
+        try {
+            return Math.max(1L, usageMeteringEngine.monthlyMessages(companyId, this::loadPlan));
+        } catch (BusinessException e) {
+            return 1L; // Sem plano: tarifa da faixa inicial
+        }
+    }
+
+    private BillingPlan loadPlan(Long companyId) {
+        return billingPlanRepository.findByCompanyId(companyId)
+                .orElseThrow(() -> new BusinessException("Plano de cobrança não encontrado para a empresa."));
+    }
     
     @Override
     public BigDecimal calculatePlatformFee(WhatsAppMessageLog messageLog) {
@@ -381,6 +429,7 @@ public class BillingServiceImpl implements BillingService {
         // Após gerar a fatura, reseta os contadores
         resetAllCounters(plan, LocalDateTime.now());
         billingPlanRepository.save(plan);
+        usageMeteringEngine.invalidateSnapshot(company.getId());
     }
 
     @Override
@@ -396,43 +445,11 @@ public class BillingServiceImpl implements BillingService {
             }
         }
         // O @Transactional cuidará do save
+        usageMeteringEngine.invalidateAllSnapshots();
     }
 
     // --- Métodos Helper ---
 
-    /**
-     * Extrai o código do país de um número de telefone usando a biblioteca libphonenumber.
-     * @param phoneNumber O número de telefone (ex: 5511999998888).
-     * @return A string do código do país (ex: "55") ou "UNKNOWN" se não for possível fazer o parse.
-     */
-    private String extractCountryCode(String phoneNumber) {
-        if (phoneNumber == null || phoneNumber.isBlank()) {
-            return "UNKNOWN";
-        }
-        try {
-            // Adicionar o '+' na frente se não tiver, para ajudar a biblioteca no parse
-            String fullNumber = phoneNumber.startsWith("+") ? phoneNumber : "+" + phoneNumber;
-            
-            // O segundo parâmetro é a "região padrão" para ajudar no parse se o número for ambíguo
-            // Como esperamos E.164, a região padrão não é tão crítica, mas "BR" é um bom palpite para sua base.
-            PhoneNumber parsedNumber = phoneUtil.parse(fullNumber, "BR");
-
-            if (phoneUtil.isValidNumber(parsedNumber)) {
-                return String.valueOf(parsedNumber.getCountryCode());
-            } else {
-                log.warn("Número de telefone '{}' considerado inválido pela libphonenumber.", phoneNumber);
-                // Tenta uma extração manual como fallback
-                if (fullNumber.length() > 11) { // Heurística simples
-                    return fullNumber.substring(1, 3); // Ex: "+55..." -> "55"
-                }
-                return "UNKNOWN";
-            }
-        } catch (Exception e) {
-            log.error("Erro ao fazer parse do número de telefone '{}' com libphonenumber: {}", phoneNumber, e.getMessage());
-            return "UNKNOWN";
-        }
-    }
-
     private BillingPlan getAndResetPlanIfNeeded(Company company) {
         if (company == null) return null;
         BillingPlan plan = billingPlanRepository.findByCompany(company).orElse(null);
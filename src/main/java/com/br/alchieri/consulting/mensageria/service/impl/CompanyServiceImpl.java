@@ -43,6 +43,9 @@ public class CompanyServiceImpl implements CompanyService {
     private final CompanyRepository companyRepository;
     private final MetaBusinessManagerRepository businessManagerRepository;
     private final UserRepository userRepository;
+    private final UserPrincipalCache userPrincipalCache;
+    private final ApiKeyAuthCache apiKeyAuthCache;
+    private final TenantConfigCache tenantConfigCache;
 
     private final WebClient webClient = WebClient.create();
 
@@ -149,6 +152,8 @@ public class CompanyServiceImpl implements CompanyService {
         if (request.getOnboardingStatus() != null) company.setOnboardingStatus(request.getOnboardingStatus());
         if (request.getEnabled() != null) company.setEnabled(request.getEnabled());
 
+        userPrincipalCache.evictCompany(companyId);
+        tenantConfigCache.evictCompany(companyId);
         return companyRepository.save(company);
     }
 
@@ -208,6 +213,10 @@ public class CompanyServiceImpl implements CompanyService {
         roles.add(Role.ROLE_USER); // Todo usuário de empresa é pelo menos ROLE_USER
         userToAdd.setRoles(roles);
 
+        userPrincipalCache.evictUser(userToAdd.getUsername());
+        apiKeyAuthCache.evictUser(userToAdd.getId());
+        tenantConfigCache.evictUser(userToAdd.getId());
+        tenantConfigCache.evictSystemUser(companyId);
         return userRepository.save(userToAdd);
     }
 
@@ -241,6 +250,10 @@ public class CompanyServiceImpl implements CompanyService {
             userToRemove.setEnabled(false); // Exemplo: desabilitar usuário sem roles/empresa
         }
 
+        userPrincipalCache.evictUser(userToRemove.getUsername());
+        apiKeyAuthCache.evictUser(userToRemove.getId());
+        tenantConfigCache.evictUser(userToRemove.getId());
+        tenantConfigCache.evictSystemUser(companyId);
         userRepository.save(userToRemove);
         log.info("Usuário ID {} removido da Empresa ID {}.", userIdToRemove, companyId);
     }
@@ -266,9 +279,25 @@ public class CompanyServiceImpl implements CompanyService {
             updated = true;
         }
 
+        if (request.getSigningSecret() != null) {
+            company.setCallbackSigningSecret(request.getSigningSecret());
+            updated = true;
+        }
+
+        if (request.getBatchEnabled() != null) {
+            if (request.getBatchEnabled() && !StringUtils.hasText(company.getCallbackSigningSecret())) {
+                throw new BusinessException("Informe um 'signingSecret' para habilitar a entrega de callbacks em lote.");
+            }
+            log.debug("Atualizando callbackBatchEnabled para: {}", request.getBatchEnabled());
+            company.setCallbackBatchEnabled(request.getBatchEnabled());
+            updated = true;
+        }
+
         // Adicionar lógica para outras URLs de callback aqui...
 
         if (updated) {
+            userPrincipalCache.evictCompany(company.getId());
+            tenantConfigCache.evictCompany(company.getId());
             return companyRepository.save(company);
         } else {
             // Se nenhum campo foi fornecido para atualização, apenas retorna a entidade sem salvar
@@ -309,6 +338,8 @@ public class CompanyServiceImpl implements CompanyService {
                     businessManagerRepository.save(bm);
                 }
 
+                userPrincipalCache.evictCompany(companyId);
+                tenantConfigCache.evictCompany(companyId);
                 // Retorna a empresa atualizada (pode precisar de refresh se quiser ver a lista na hora)
                 return company; 
             } else {
@@ -52,6 +52,7 @@ public class PlatformConfigServiceImpl implements PlatformConfigService {
 
     private final WebClient.Builder webClientBuilder;
     private final MetaRateCardRepository rateCardRepository;
+    private final RateCardIndex rateCardIndex;
     private final CompanyRepository companyRepository;
     private final WhatsAppPhoneNumberRepository phoneNumberRepository;
 
@@ -207,6 +208,10 @@ public class PlatformConfigServiceImpl implements PlatformConfigService {
             throw new BusinessException("Erro ao ler o arquivo CSV de tarifas.", e);
         }
         
+        if (createdCount + updatedCount > 0) {
+            rateCardIndex.rebuildAfterCommit();
+        }
+
         String message = String.format("%d tarifas criadas, %d tarifas atualizadas. %d erros encontrados.",
                                        createdCount, updatedCount, errors.size());
         return new ApiResponse(true, message, Map.of("errors", errors));
@@ -343,6 +348,10 @@ public class PlatformConfigServiceImpl implements PlatformConfigService {
             throw new BusinessException("Erro ao ler o arquivo CSV de tiers: " + e.getMessage());
         }
         
+        if (createdCount + updatedCount > 0) {
+            rateCardIndex.rebuildAfterCommit();
+        }
+
         String message = String.format("%d faixas de preço criadas, %d faixas atualizadas. %d erros encontrados.",
                                     createdCount, updatedCount, errors.size());
         return new ApiResponse(true, message, Map.of("errors", errors));
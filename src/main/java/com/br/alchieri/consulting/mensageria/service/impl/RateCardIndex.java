@@ -0,0 +1,197 @@
+package com.br.alchieri.consulting.mensageria.service.impl;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.br.alchieri.consulting.mensageria.chat.model.enums.TemplateCategory;
+import com.br.alchieri.consulting.mensageria.model.MetaRateCard;
+import com.br.alchieri.consulting.mensageria.repository.MetaRateCardRepository;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Índice em memória das tarifas da Meta ({@link MetaRateCard}), imutável, por mercado e categoria.
+ *
+ * Para cada par guarda as datas efetivas em ordem e, por data, as faixas de volume em arrays ordenados
+ * pelo início da faixa. A consulta segue a mesma regra de {@code MetaRateCardRepository#findEffectiveRate}:
+ * a data efetiva mais recente (até a data pedida) que tenha uma faixa cobrindo o volume.
+ *
+ * O índice é carregado no primeiro uso e substituído por inteiro (troca de referência) após o commit de
+ * qualquer alteração de tarifas, neste nó e nos demais (canal Redis {@value #REBUILD_CHANNEL}).
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RateCardIndex implements MessageListener {
+
+    public static final String REBUILD_CHANNEL = "rate-card:rebuild";
+
+    private final MetaRateCardRepository rateCardRepository;
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private volatile Map<Key, Schedule> index;
+
+    private record Key(String marketName, TemplateCategory category) {}
+
+    /**
+     * Faixas de uma data efetiva, ordenadas pelo início. {@code ends[i]} é Long.MAX_VALUE na última faixa (aberta).
+     */
+    record Tiers(long[] starts, long[] ends, BigDecimal[] rates) {
+
+        BigDecimal rateFor(long volume) {
+            int i = Arrays.binarySearch(starts, volume);
+            i = i >= 0 ? lastWithStart(i) : -i - 2; // Última faixa com início <= volume
+            // Faixas sobrepostas (ex.: tarifa de lista + faixas de volume): vale a de início mais próximo
+            for (; i >= 0; i--) {
+                if (ends[i] >= volume) {
+                    return rates[i];
+                }
+            }
+            return null;
+        }
+
+        private int lastWithStart(int i) {
+            while (i + 1 < starts.length && starts[i + 1] == starts[i]) i++;
+            return i;
+        }
+    }
+
+    /**
+     * Datas efetivas em ordem crescente e as faixas de cada uma.
+     */
+    private record Schedule(LocalDate[] effectiveDates, Tiers[] tiers) {}
+
+    @PostConstruct
+    void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(REBUILD_CHANNEL));
+    }
+
+    /**
+     * Tarifa efetiva para o mercado/categoria, considerando o volume já enviado no mês.
+     */
+    public Optional<BigDecimal> findEffectiveRate(String marketName, TemplateCategory category, long currentMonthVolume, LocalDate date) {
+        Schedule schedule = current().get(new Key(marketName, category));
+        if (schedule == null) {
+            return Optional.empty();
+        }
+        int i = Arrays.binarySearch(schedule.effectiveDates(), date);
+        i = i >= 0 ? i : -i - 2; // Última data efetiva <= data pedida
+        for (; i >= 0; i--) {
+            BigDecimal rate = schedule.tiers()[i].rateFor(currentMonthVolume);
+            if (rate != null) {
+                return Optional.of(rate);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Reconstrói o índice após o commit da transação corrente (neste nó e nos demais).
+     */
+    public void rebuildAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    rebuildEverywhere();
+                }
+            });
+        } else {
+            rebuildEverywhere();
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        log.debug("Reconstrução do índice de tarifas solicitada por outro nó ({}).", new String(message.getBody(), StandardCharsets.UTF_8));
+        rebuildQuietly();
+    }
+
+    private void rebuildEverywhere() {
+        rebuildQuietly();
+        try {
+            redisTemplate.convertAndSend(REBUILD_CHANNEL, "rebuild");
+        } catch (Exception e) {
+            log.error("Falha ao publicar reconstrução do índice de tarifas no Redis: {}", e.getMessage());
+        }
+    }
+
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            // Mantém o índice anterior; o próximo rebuild (ou reinício) corrige
+            log.error("Falha ao reconstruir o índice de tarifas: {}", e.getMessage(), e);
+        }
+    }
+
+    private Map<Key, Schedule> current() {
+        Map<Key, Schedule> snapshot = index;
+        if (snapshot == null) {
+            synchronized (this) {
+                snapshot = index;
+                if (snapshot == null) {
+                    snapshot = rebuild();
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    private synchronized Map<Key, Schedule> rebuild() {
+        List<MetaRateCard> rates = rateCardRepository.findAll();
+
+        Map<Key, TreeMap<LocalDate, List<MetaRateCard>>> grouped = new HashMap<>();
+        for (MetaRateCard rate : rates) {
+            grouped.computeIfAbsent(new Key(rate.getMarketName(), rate.getCategory()), k -> new TreeMap<>())
+                    .computeIfAbsent(rate.getEffectiveDate(), d -> new ArrayList<>())
+                    .add(rate);
+        }
+
+        Map<Key, Schedule> built = new HashMap<>();
+        grouped.forEach((key, byDate) -> {
+            LocalDate[] dates = byDate.keySet().toArray(LocalDate[]::new);
+            Tiers[] tiers = new Tiers[dates.length];
+            for (int d = 0; d < dates.length; d++) {
+                List<MetaRateCard> tierRates = byDate.get(dates[d]);
+                tierRates.sort(Comparator.comparing(MetaRateCard::getVolumeTierStart));
+                long[] starts = new long[tierRates.size()];
+                long[] ends = new long[tierRates.size()];
+                BigDecimal[] values = new BigDecimal[tierRates.size()];
+                for (int t = 0; t < tierRates.size(); t++) {
+                    MetaRateCard rate = tierRates.get(t);
+                    starts[t] = rate.getVolumeTierStart();
+                    ends[t] = rate.getVolumeTierEnd() != null ? rate.getVolumeTierEnd() : Long.MAX_VALUE;
+                    values[t] = rate.getRate();
+                }
+                tiers[d] = new Tiers(starts, ends, values);
+            }
+            built.put(key, new Schedule(dates, tiers));
+        });
+
+        index = Map.copyOf(built);
+        log.info("Índice de tarifas da Meta carregado: {} tarifas em {} mercados/categorias.", rates.size(), built.size());
+        return index;
+    }
+}
@@ -23,6 +23,7 @@ import lombok.extern.slf4j.Slf4j;
 public class RateCardServiceImpl implements RateCardService {
 
     private final MetaRateCardRepository rateCardRepository;
+    private final RateCardIndex rateCardIndex;
 
     @Override
     @Transactional(readOnly = true)
@@ -49,7 +50,9 @@ public class RateCardServiceImpl implements RateCardService {
         MetaRateCard newRate = new MetaRateCard();
         mapDtoToEntity(request, newRate);
         log.info("Criando nova tarifa para o mercado '{}', categoria '{}'", request.getMarketName(), request.getCategory());
-        return rateCardRepository.save(newRate);
+        MetaRateCard saved = rateCardRepository.save(newRate);
+        rateCardIndex.rebuildAfterCommit();
+        return saved;
     }
 
     @Override
@@ -69,7 +72,9 @@ public class RateCardServiceImpl implements RateCardService {
 
         mapDtoToEntity(request, rateToUpdate);
         log.info("Atualizando tarifa ID {} (Mercado: {})", id, request.getMarketName());
-        return rateCardRepository.save(rateToUpdate);
+        MetaRateCard saved = rateCardRepository.save(rateToUpdate);
+        rateCardIndex.rebuildAfterCommit();
+        return saved;
     }
 
     @Override
@@ -80,6 +85,7 @@ public class RateCardServiceImpl implements RateCardService {
         }
         log.info("Excluindo tarifa ID {}", id);
         rateCardRepository.deleteById(id);
+        rateCardIndex.rebuildAfterCommit();
     }
     
     // Método helper para mapear DTO para Entidade
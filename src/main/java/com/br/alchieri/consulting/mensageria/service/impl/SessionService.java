@@ -2,9 +2,9 @@ package com.br.alchieri.consulting.mensageria.service.impl;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 
 import com.br.alchieri.consulting.mensageria.exception.BusinessException;
@@ -12,7 +12,6 @@ import com.br.alchieri.consulting.mensageria.model.Company;
 import com.br.alchieri.consulting.mensageria.model.User;
 import com.br.alchieri.consulting.mensageria.model.enums.ConversationState;
 import com.br.alchieri.consulting.mensageria.model.redis.UserSession;
-import com.br.alchieri.consulting.mensageria.repository.CompanyRepository;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -22,22 +21,19 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class SessionService {
 
-    private final RedisTemplate<String, Object> redisTemplate;
+    private final SessionStore sessionStore;
 
-    private final CompanyRepository companyRepository;
+    private final TenantConfigCache tenantConfigCache;
 
     @Value("${app.session.ttl-minutes}")
     private long sessionTtlMinutes;
 
-    private static final String KEY_PREFIX = "whatsapp:session:";
-
     /**
-     * Recupera a sessão ou cria uma nova (Estado IDLE) se não existir.
+     * Recupera a sessão (renovando o TTL) ou cria uma nova (Estado IDLE) se não existir.
      */
     public UserSession getSession(Company company, String phoneNumber) {
         
-        String key = buildKey(company.getId(), phoneNumber);
-        UserSession session = (UserSession) redisTemplate.opsForValue().get(key);
+        UserSession session = sessionStore.load(company.getId(), phoneNumber, getCompanyTtl(company.getId()));
 
         if (session == null) {
             log.debug("Nova sessão iniciada para {}", phoneNumber);
@@ -48,27 +44,21 @@ public class SessionService {
                     .botActive(true)
                     .build();
             saveSession(session);
-        } else {
-            refreshSessionTtl(key, company.getId());
         }
         return session;
     }
 
+    /**
+     * Grava no Redis apenas o que mudou na sessão desde a leitura (ver {@link SessionStore}).
+     */
     public void saveSession(UserSession session) {
 
-        String key = buildKey(session.getCompanyId(), session.getPhoneNumber());
-
-        long ttlMinutes = getCompanyTtl(session.getCompanyId());
+        Duration ttl = getCompanyTtl(session.getCompanyId());
 
-        redisTemplate.opsForValue().set(key, session, Duration.ofMinutes(sessionTtlMinutes));
+        sessionStore.save(session, ttl);
 
         log.debug("Sessão salva para {} (Empresa {}) com TTL de {} min.", 
-                session.getPhoneNumber(), session.getCompanyId(), ttlMinutes);
-    }
-
-    private void refreshSessionTtl(String key, Long companyId) {
-        long ttlMinutes = getCompanyTtl(companyId);
-        redisTemplate.expire(key, Duration.ofMinutes(ttlMinutes));
+                session.getPhoneNumber(), session.getCompanyId(), ttl.toMinutes());
     }
 
     /**
@@ -78,15 +68,22 @@ public class SessionService {
     public void validateSessionAccess(User user, String phoneNumber) {
         // Normaliza o telefone para garantir match com a chave do Redis
         // (Assumindo que sua lógica de normalização já foi feita antes, ou pode aplicar aqui)
-        
-        UserSession session = getSession(user.getCompany(), phoneNumber);
+
+        if (user.getCompany() == null) {
+            return; // Sem empresa não há sessão de conversa
+        }
+
+        // Lê só a atribuição: sem sessão (ou sem atendente) o envio é livre e nada é criado
+        Map<String, String> assignment = sessionStore.readFields(user.getCompany().getId(), phoneNumber,
+                SessionStore.ASSIGNED_USER_ID, SessionStore.ASSIGNED_USER_NAME);
+        String assignedUserId = assignment.get(SessionStore.ASSIGNED_USER_ID);
 
         // Se tiver um atendente atribuído E não for o usuário atual
-        if (session.getAssignedUserId() != null && !session.getAssignedUserId().equals(user.getId())) {
+        if (assignedUserId != null && !assignedUserId.equals(String.valueOf(user.getId()))) {
             throw new BusinessException(String.format(
-                "Acesso negado: Este atendimento pertence a %s (ID: %d).", 
-                session.getAssignedUserName(), 
-                session.getAssignedUserId()
+                "Acesso negado: Este atendimento pertence a %s (ID: %s).", 
+                assignment.get(SessionStore.ASSIGNED_USER_NAME), 
+                assignedUserId
             ));
         }
     }
@@ -150,15 +147,11 @@ public class SessionService {
         log.info("Sessão resetada para IDLE (User: {})", session.getPhoneNumber());
     }
 
-    private long getCompanyTtl(Long companyId) {
-        return companyRepository.findById(companyId)
+    private Duration getCompanyTtl(Long companyId) {
+        long minutes = tenantConfigCache.findCompany(companyId)
                 .map(Company::getBotSessionTtl)
                 .map(Integer::longValue)
                 .orElse(sessionTtlMinutes);
-    }
-
-    private String buildKey(Long companyId, String phoneNumber) {
-        
-        return KEY_PREFIX + companyId + ":" + phoneNumber;
+        return Duration.ofMinutes(minutes);
     }
 }
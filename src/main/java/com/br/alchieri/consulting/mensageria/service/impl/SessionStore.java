@@ -0,0 +1,478 @@
+package com.br.alchieri.consulting.mensageria.service.impl;
+
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.stereotype.Component;
+
+import com.br.alchieri.consulting.mensageria.dto.cart.CartDTO;
+import com.br.alchieri.consulting.mensageria.model.Address;
+import com.br.alchieri.consulting.mensageria.model.redis.UserSession;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.push.PushMessage;
+import io.lettuce.core.codec.StringCodec;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Persistência das sessões de conversa no Redis.
+ *
+ * Cada sessão é um hash ({@code whatsapp:session:v2:<empresa>:<telefone>}, um campo por atributo) e o carrinho
+ * fica em uma chave própria ({@code ...:cart}), gravada só quando muda. A gravação compara a sessão com o que
+ * foi lido/gravado por último e envia apenas os campos alterados (HSET/HDEL). Leitura e renovação do TTL vão
+ * no mesmo pipeline (HGETALL + GET + EXPIRE), em uma ida ao Redis.
+ *
+ * Usa uma conexão Lettuce dedicada (Redis standalone, como o rate limit distribuído). Com
+ * {@code app.session.near-cache.enabled=true} a conexão liga o CLIENT TRACKING (RESP3, NOLOOP) e mantém as
+ * sessões lidas em memória; o Redis avisa quando outro nó altera uma delas e a entrada local é descartada.
+ *
+ * Sessões do formato anterior ({@code whatsapp:session:<empresa>:<telefone>}, objeto JSON único) são
+ * migradas na primeira leitura que não encontra o hash: o valor antigo é gravado no formato novo e removido.
+ * Depois que todas as chaves antigas tiverem expirado, {@code app.session.legacy-fallback.enabled=false}
+ * evita a leitura extra em cada sessão nova.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SessionStore {
+
+    private static final String KEY_PREFIX = "whatsapp:session:v2:";
+    private static final String CART_SUFFIX = ":cart";
+    // Formato anterior (v1): a sessão inteira serializada pelo GenericJackson2JsonRedisSerializer
+    private static final String LEGACY_KEY_PREFIX = "whatsapp:session:";
+
+    // Campos do hash
+    public static final String BOT_ACTIVE = "botActive";
+    public static final String CURRENT_BOT_ID = "currentBotId";
+    public static final String CURRENT_STEP_ID = "currentStepId";
+    public static final String CURRENT_STATE = "currentState";
+    public static final String ASSIGNED_USER_ID = "assignedUserId";
+    public static final String ASSIGNED_USER_NAME = "assignedUserName";
+    public static final String ASSIGNED_USER_EMAIL = "assignedUserEmail";
+    public static final String ASSIGNMENT_TIME = "assignmentTime";
+    public static final String CREATED_AT = "createdAt";
+    public static final String UPDATED_AT = "updatedAt";
+    public static final String CONTEXT_DATA = "contextData";
+    public static final String TEMP_ADDRESS = "tempAddress";
+
+    private final LettuceConnectionFactory connectionFactory;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.session.redis-timeout-ms:2000}")
+    private long timeoutMs;
+
+    @Value("${app.session.legacy-fallback.enabled:true}")
+    private boolean legacyFallbackEnabled;
+
+    @Value("${app.session.near-cache.enabled:false}")
+    private boolean nearCacheEnabled;
+
+    @Value("${app.session.near-cache.max-entries:10000}")
+    private long nearCacheMaxEntries;
+
+    // Intervalo mínimo entre renovações de TTL de uma sessão servida pelo near-cache
+    @Value("${app.session.near-cache.touch-interval-seconds:60}")
+    private long touchIntervalSeconds;
+
+    private RedisClient redisClient;
+    private StatefulRedisConnection<String, String> connection;
+    private RedisConnectionStateListener connectionListener;
+
+    // Valores: Snapshot ou o marcador de uma leitura em andamento (descartado se houver invalidação no meio)
+    private Cache<String, Object> nearCache;
+    private volatile boolean tracking;
+
+    private final GenericJackson2JsonRedisSerializer legacySerializer = new GenericJackson2JsonRedisSerializer();
+
+    private record Snapshot(Map<String, String> fields, String cart, long touchedAtMillis) {
+
+        Snapshot touched(long now) {
+            return new Snapshot(fields, cart, now);
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        if (!(connectionFactory.getNativeClient() instanceof RedisClient client)) {
+            throw new IllegalStateException("Sessões no Redis requerem Redis standalone (RedisClient do Lettuce).");
+        }
+        redisClient = client;
+        connection = redisClient.connect(StringCodec.UTF8);
+
+        if (nearCacheEnabled) {
+            nearCache = CacheBuilder.newBuilder()
+                    .maximumSize(nearCacheMaxEntries)
+                    .build();
+            connection.addListener(this::onPushMessage);
+            connectionListener = new RedisConnectionStateListener() {
+                @Override
+                public void onRedisConnected(RedisChannelHandler<?, ?> handler, SocketAddress address) {
+                    if (handler == connection) {
+                        // O tracking é por conexão: após reconectar precisa ser ligado de novo
+                        enableTracking();
+                    }
+                }
+
+                @Override
+                public void onRedisDisconnected(RedisChannelHandler<?, ?> handler) {
+                    if (handler == connection) {
+                        tracking = false;
+                        nearCache.invalidateAll();
+                    }
+                }
+            };
+            redisClient.addListener(connectionListener);
+            enableTracking();
+        }
+    }
+
+    private void enableTracking() {
+        connection.async().clientTracking(TrackingArgs.Builder.enabled().noloop())
+                .whenComplete((reply, error) -> {
+                    if (error != null) {
+                        log.warn("CLIENT TRACKING indisponível ({}); near-cache de sessões desativado.", error.getMessage());
+                        tracking = false;
+                    } else {
+                        nearCache.invalidateAll();
+                        tracking = true;
+                    }
+                });
+    }
+
+    private void onPushMessage(PushMessage message) {
+        if (!"invalidate".equals(message.getType())) {
+            return;
+        }
+        List<Object> content = message.getContent(StringCodec.UTF8::decodeKey);
+        if (content.size() < 2 || !(content.get(1) instanceof List<?> keys)) {
+            nearCache.invalidateAll(); // FLUSHDB/FLUSHALL
+            return;
+        }
+        for (Object key : keys) {
+            String sessionKey = String.valueOf(key);
+            if (sessionKey.endsWith(CART_SUFFIX)) {
+                sessionKey = sessionKey.substring(0, sessionKey.length() - CART_SUFFIX.length());
+            }
+            nearCache.invalidate(sessionKey);
+        }
+    }
+
+    /**
+     * Lê a sessão e renova o TTL do hash e do carrinho.
+     * @return null se a sessão não existir.
+     */
+    public UserSession load(Long companyId, String phoneNumber, Duration ttl) {
+        String key = buildKey(companyId, phoneNumber);
+
+        if (tracking && nearCache.getIfPresent(key) instanceof Snapshot snapshot) {
+            long now = System.currentTimeMillis();
+            if (now - snapshot.touchedAtMillis() >= TimeUnit.SECONDS.toMillis(touchIntervalSeconds)) {
+                RedisAsyncCommands<String, String> async = connection.async();
+                await(async.expire(key, ttl.getSeconds()), async.expire(key + CART_SUFFIX, ttl.getSeconds()));
+                nearCache.asMap().replace(key, snapshot, snapshot.touched(now));
+            }
+            return snapshot.fields().isEmpty() ? null : toSession(companyId, phoneNumber, snapshot.fields(), snapshot.cart());
+        }
+
+        Object marker = new Object();
+        boolean cacheable = tracking;
+        if (cacheable) {
+            nearCache.put(key, marker);
+        }
+
+        // Comandos assíncronos na mesma conexão saem em pipeline: uma ida ao Redis
+        RedisAsyncCommands<String, String> async = connection.async();
+        RedisFuture<Map<String, String>> fieldsFuture = async.hgetall(key);
+        RedisFuture<String> cartFuture = async.get(key + CART_SUFFIX);
+        RedisFuture<Boolean> expireHash = async.expire(key, ttl.getSeconds());
+        RedisFuture<Boolean> expireCart = async.expire(key + CART_SUFFIX, ttl.getSeconds());
+        await(fieldsFuture, cartFuture, expireHash, expireCart);
+
+        Map<String, String> fields = Map.copyOf(LettuceFutures.awaitOrCancel(fieldsFuture, timeoutMs, TimeUnit.MILLISECONDS));
+        String cart = LettuceFutures.awaitOrCancel(cartFuture, timeoutMs, TimeUnit.MILLISECONDS);
+
+        if (cacheable) {
+            nearCache.asMap().replace(key, marker, new Snapshot(fields, cart, System.currentTimeMillis()));
+        }
+        if (fields.isEmpty()) {
+            return migrateLegacy(companyId, phoneNumber, ttl);
+        }
+        return toSession(companyId, phoneNumber, fields, cart);
+    }
+
+    /**
+     * Lê apenas os campos pedidos, sem criar a sessão nem renovar o TTL.
+     * @return Campos existentes (ausentes ficam fora do mapa).
+     */
+    public Map<String, String> readFields(Long companyId, String phoneNumber, String... fieldNames) {
+        String key = buildKey(companyId, phoneNumber);
+
+        if (tracking && nearCache.getIfPresent(key) instanceof Snapshot snapshot) {
+            Map<String, String> values = new HashMap<>();
+            for (String field : fieldNames) {
+                if (snapshot.fields().containsKey(field)) {
+                    values.put(field, snapshot.fields().get(field));
+                }
+            }
+            return values;
+        }
+
+        List<KeyValue<String, String>> result = LettuceFutures.awaitOrCancel(
+                connection.async().hmget(key, fieldNames), timeoutMs, TimeUnit.MILLISECONDS);
+        Map<String, String> values = new HashMap<>();
+        for (KeyValue<String, String> entry : result) {
+            if (entry.hasValue()) {
+                values.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (values.isEmpty()) {
+            // Sessão ainda no formato v1: lida sem migrar (a migração fica para o próximo load, que tem o TTL)
+            UserSession legacy = readLegacy(companyId, phoneNumber);
+            if (legacy != null) {
+                Map<String, String> legacyFields = toFields(legacy);
+                for (String field : fieldNames) {
+                    if (legacyFields.containsKey(field)) {
+                        values.put(field, legacyFields.get(field));
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Grava os campos e o carrinho que mudaram desde a última leitura/gravação e renova o TTL.
+     * Sem mudanças, não vai ao Redis.
+     */
+    public void save(UserSession session, Duration ttl) {
+        String key = buildKey(session.getCompanyId(), session.getPhoneNumber());
+        Map<String, String> previous = session.getPersistedFields() != null ? session.getPersistedFields() : Map.of();
+
+        Map<String, String> fields = toFields(session);
+        Map<String, String> changed = new HashMap<>();
+        fields.forEach((name, value) -> {
+            if (!value.equals(previous.get(name))) {
+                changed.put(name, value);
+            }
+        });
+        List<String> removed = new ArrayList<>();
+        for (String name : previous.keySet()) {
+            if (!fields.containsKey(name)) {
+                removed.add(name);
+            }
+        }
+        String cart = toCartJson(session.getCart());
+        boolean cartChanged = !Objects.equals(cart, session.getPersistedCart());
+
+        if (changed.isEmpty() && removed.isEmpty() && !cartChanged) {
+            return;
+        }
+
+        Object cached = tracking ? nearCache.getIfPresent(key) : null;
+
+        RedisAsyncCommands<String, String> async = connection.async();
+        List<RedisFuture<?>> futures = new ArrayList<>();
+        if (!changed.isEmpty()) {
+            futures.add(async.hset(key, changed));
+        }
+        if (!removed.isEmpty()) {
+            futures.add(async.hdel(key, removed.toArray(String[]::new)));
+        }
+        futures.add(async.expire(key, ttl.getSeconds()));
+        if (cartChanged) {
+            futures.add(cart != null ? async.setex(key + CART_SUFFIX, ttl.getSeconds(), cart) : async.del(key + CART_SUFFIX));
+        }
+        await(futures.toArray(RedisFuture[]::new));
+
+        Map<String, String> persisted = Map.copyOf(fields);
+        session.setPersistedFields(persisted);
+        session.setPersistedCart(cart);
+
+        // Só substitui a entrada que ainda é a lida por esta sessão (sem invalidação de outro nó no meio)
+        if (cached instanceof Snapshot) {
+            nearCache.asMap().replace(key, cached, new Snapshot(persisted, cart, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Converte a sessão v1, se existir, para o formato atual e remove a chave antiga.
+     * @return A sessão migrada ou null se não houver sessão v1.
+     */
+    private UserSession migrateLegacy(Long companyId, String phoneNumber, Duration ttl) {
+        UserSession session = readLegacy(companyId, phoneNumber);
+        if (session == null) {
+            return null;
+        }
+        save(session, ttl);
+        await(connection.async().del(legacyKey(companyId, phoneNumber)));
+        log.debug("Sessão v1 migrada para o formato atual (empresa {}).", companyId);
+        return session;
+    }
+
+    /**
+     * Lê a sessão v1 sem alterá-la (null se não existir, se a leitura estiver desligada ou se for ilegível).
+     */
+    private UserSession readLegacy(Long companyId, String phoneNumber) {
+        if (!legacyFallbackEnabled) {
+            return null;
+        }
+        String json = LettuceFutures.awaitOrCancel(
+                connection.async().get(legacyKey(companyId, phoneNumber)), timeoutMs, TimeUnit.MILLISECONDS);
+        if (json == null) {
+            return null;
+        }
+        UserSession session;
+        try {
+            session = legacySerializer.deserialize(json.getBytes(StandardCharsets.UTF_8), UserSession.class);
+        } catch (Exception e) {
+            log.warn("Sessão v1 ilegível no Redis (empresa {}), ignorada: {}", companyId, e.getMessage());
+            return null;
+        }
+        if (session == null) {
+            return null;
+        }
+        session.setCompanyId(companyId);
+        session.setPhoneNumber(phoneNumber);
+        if (session.getContextData() == null) {
+            session.setContextData(new HashMap<>());
+        }
+        if (session.getCart() == null) {
+            session.setCart(new CartDTO());
+        }
+        // Nada gravado no formato novo ainda: o save envia todos os campos
+        session.setPersistedFields(null);
+        session.setPersistedCart(null);
+        return session;
+    }
+
+    // --- Conversão ---
+
+    private Map<String, String> toFields(UserSession session) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put(BOT_ACTIVE, String.valueOf(session.isBotActive()));
+        putIfPresent(fields, CURRENT_BOT_ID, session.getCurrentBotId());
+        putIfPresent(fields, CURRENT_STEP_ID, session.getCurrentStepId());
+        putIfPresent(fields, CURRENT_STATE, session.getCurrentState());
+        putIfPresent(fields, ASSIGNED_USER_ID, session.getAssignedUserId());
+        putIfPresent(fields, ASSIGNED_USER_NAME, session.getAssignedUserName());
+        putIfPresent(fields, ASSIGNED_USER_EMAIL, session.getAssignedUserEmail());
+        putIfPresent(fields, ASSIGNMENT_TIME, session.getAssignmentTime());
+        putIfPresent(fields, CREATED_AT, session.getCreatedAt());
+        putIfPresent(fields, UPDATED_AT, session.getUpdatedAt());
+        if (session.getContextData() != null && !session.getContextData().isEmpty()) {
+            fields.put(CONTEXT_DATA, writeJson(session.getContextData()));
+        }
+        if (session.getTempAddress() != null) {
+            fields.put(TEMP_ADDRESS, writeJson(session.getTempAddress()));
+        }
+        return fields;
+    }
+
+    private UserSession toSession(Long companyId, String phoneNumber, Map<String, String> fields, String cart) {
+        UserSession session = new UserSession();
+        session.setCompanyId(companyId);
+        session.setPhoneNumber(phoneNumber);
+        session.setBotActive(Boolean.parseBoolean(fields.get(BOT_ACTIVE)));
+        session.setCurrentBotId(parseLong(fields.get(CURRENT_BOT_ID)));
+        session.setCurrentStepId(parseLong(fields.get(CURRENT_STEP_ID)));
+        session.setCurrentState(fields.get(CURRENT_STATE));
+        session.setAssignedUserId(parseLong(fields.get(ASSIGNED_USER_ID)));
+        session.setAssignedUserName(fields.get(ASSIGNED_USER_NAME));
+        session.setAssignedUserEmail(fields.get(ASSIGNED_USER_EMAIL));
+        session.setAssignmentTime(fields.get(ASSIGNMENT_TIME));
+        session.setCreatedAt(fields.containsKey(CREATED_AT) ? LocalDateTime.parse(fields.get(CREATED_AT)) : null);
+        session.setUpdatedAt(fields.containsKey(UPDATED_AT) ? LocalDateTime.parse(fields.get(UPDATED_AT)) : null);
+
+        Map<String, String> contextData = readJson(fields.get(CONTEXT_DATA), new TypeReference<HashMap<String, String>>() {});
+        session.setContextData(contextData != null ? contextData : new HashMap<>());
+        session.setTempAddress(readJson(fields.get(TEMP_ADDRESS), new TypeReference<Address>() {}));
+        CartDTO cartDTO = readJson(cart, new TypeReference<CartDTO>() {});
+        session.setCart(cartDTO != null ? cartDTO : new CartDTO());
+
+        session.setPersistedFields(fields);
+        session.setPersistedCart(cart);
+        return session;
+    }
+
+    private String toCartJson(CartDTO cart) {
+        return cart == null || cart.isEmpty() ? null : writeJson(cart);
+    }
+
+    private static void putIfPresent(Map<String, String> fields, String name, Object value) {
+        if (value != null) {
+            fields.put(name, value.toString());
+        }
+    }
+
+    private static Long parseLong(String value) {
+        return value != null ? Long.valueOf(value) : null;
+    }
+
+    private String writeJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (Exception e) {
+            throw new IllegalStateException("Falha ao serializar dados da sessão: " + e.getMessage(), e);
+        }
+    }
+
+    private <T> T readJson(String json, TypeReference<T> type) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (Exception e) {
+            log.warn("Campo de sessão inválido no Redis, ignorado: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void await(RedisFuture<?>... futures) {
+        if (!LettuceFutures.awaitAll(timeoutMs, TimeUnit.MILLISECONDS, futures)) {
+            throw new IllegalStateException("Timeout ao acessar a sessão no Redis.");
+        }
+    }
+
+    private String buildKey(Long companyId, String phoneNumber) {
+        return KEY_PREFIX + companyId + ":" + phoneNumber;
+    }
+
+    private String legacyKey(Long companyId, String phoneNumber) {
+        return LEGACY_KEY_PREFIX + companyId + ":" + phoneNumber;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (connectionListener != null) {
+            redisClient.removeListener(connectionListener);
+        }
+        connection.close();
+    }
+}
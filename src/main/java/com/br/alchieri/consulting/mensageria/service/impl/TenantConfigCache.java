@@ -0,0 +1,216 @@
+package com.br.alchieri.consulting.mensageria.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.br.alchieri.consulting.mensageria.chat.model.Bot;
+import com.br.alchieri.consulting.mensageria.chat.model.Flow;
+import com.br.alchieri.consulting.mensageria.chat.repository.BotRepository;
+import com.br.alchieri.consulting.mensageria.chat.repository.FlowRepository;
+import com.br.alchieri.consulting.mensageria.model.Company;
+import com.br.alchieri.consulting.mensageria.model.User;
+import com.br.alchieri.consulting.mensageria.model.WhatsAppPhoneNumber;
+import com.br.alchieri.consulting.mensageria.model.enums.Role;
+import com.br.alchieri.consulting.mensageria.repository.CompanyRepository;
+import com.br.alchieri.consulting.mensageria.repository.UserRepository;
+import com.br.alchieri.consulting.mensageria.repository.WhatsAppPhoneNumberRepository;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cache local (por nó, JCache/Ehcache — ver ehcache.xml) das configurações de tenant lidas a cada webhook:
+ * canal por phone_number_id, empresa, usuário de sistema, bots ativos e Flow por ID da Meta.
+ *
+ * As entidades devolvidas são compartilhadas entre threads e estão desanexadas: servem para leitura e
+ * como referência em associações, não devem ser alteradas. Quem altera esses dados chama o evict
+ * correspondente, que é aplicado após o commit neste nó e nos demais (canal Redis {@value #EVICTION_CHANNEL}).
+ * O TTL do ehcache.xml limita o tempo de uma entrada desatualizada se a mensagem de invalidação se perder.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TenantConfigCache implements MessageListener {
+
+    public static final String EVICTION_CHANNEL = "tenant-config:evict";
+
+    public static final String CHANNELS = "tenant-channels";
+    public static final String COMPANIES = "tenant-companies";
+    public static final String SYSTEM_USERS = "tenant-system-users";
+    public static final String ACTIVE_BOTS = "tenant-active-bots";
+    public static final String FLOWS = "tenant-flows";
+    public static final String COMPILED_BOTS = "tenant-compiled-bots"; // Mantido pelo BotCompiler
+    public static final String OUTGOING_USERS = "tenant-outgoing-users"; // Mantido pelo OutgoingUserCache
+
+    private static final String ALL_KEYS = "*";
+
+    private final WhatsAppPhoneNumberRepository phoneNumberRepository;
+    private final CompanyRepository companyRepository;
+    private final UserRepository userRepository;
+    private final BotRepository botRepository;
+    private final FlowRepository flowRepository;
+    private final CacheManager cacheManager;
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    @PostConstruct
+    void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(EVICTION_CHANNEL));
+    }
+
+    // --- Leituras (nulos/vazios também ficam em cache, até o evict ou o TTL) ---
+
+    /**
+     * Canal pelo ID da Meta, com a empresa já carregada.
+     */
+    @Cacheable(cacheNames = CHANNELS, key = "#phoneNumberId")
+    public Optional<WhatsAppPhoneNumber> findChannel(String phoneNumberId) {
+        return phoneNumberRepository.findByPhoneNumberIdWithCompany(phoneNumberId);
+    }
+
+    @Cacheable(cacheNames = COMPANIES, key = "#companyId")
+    public Optional<Company> findCompany(Long companyId) {
+        return companyRepository.findById(companyId);
+    }
+
+    /**
+     * Usuário usado nos envios automáticos (bot): primeiro admin da empresa ou, na falta, um admin do BSP.
+     */
+    @Cacheable(cacheNames = SYSTEM_USERS, key = "#company.id")
+    public Optional<User> findSystemUser(Company company) {
+        return userRepository.findFirstByCompanyAndRolesContaining(company, Role.ROLE_COMPANY_ADMIN)
+                .or(() -> userRepository.findFirstByCompanyAndRolesContaining(company, Role.ROLE_BSP_ADMIN));
+    }
+
+    @Cacheable(cacheNames = ACTIVE_BOTS, key = "#company.id")
+    public List<Bot> findActiveBots(Company company) {
+        return List.copyOf(botRepository.findByCompanyAndIsActiveTrue(company));
+    }
+
+    @Cacheable(cacheNames = FLOWS, key = "#metaFlowId")
+    public Optional<Flow> findFlowByMetaId(String metaFlowId) {
+        return flowRepository.findByMetaFlowId(metaFlowId);
+    }
+
+    // --- Invalidação ---
+
+    /**
+     * Dados da empresa mudaram: remove a empresa, seu usuário de sistema e seus bots. Canais, Flows e
+     * usuários da fila de saída carregam a empresa junto, então esses caches são limpos por inteiro
+     * (alterações são raras).
+     */
+    public void evictCompany(Long companyId) {
+        if (companyId == null) {
+            return;
+        }
+        afterCommit(COMPANIES, companyId.toString());
+        afterCommit(SYSTEM_USERS, companyId.toString());
+        afterCommit(ACTIVE_BOTS, companyId.toString());
+        afterCommit(CHANNELS, ALL_KEYS);
+        afterCommit(FLOWS, ALL_KEYS);
+        afterCommit(COMPILED_BOTS, ALL_KEYS);
+        afterCommit(OUTGOING_USERS, ALL_KEYS);
+    }
+
+    /**
+     * Usuário alterado (status, papéis, empresa) ou removido: descarta o solicitante em cache da fila de saída.
+     */
+    public void evictUser(Long userId) {
+        if (userId != null) {
+            afterCommit(OUTGOING_USERS, userId.toString());
+        }
+    }
+
+    /**
+     * Usuários/papéis da empresa mudaram (o usuário de sistema pode ser outro).
+     */
+    public void evictSystemUser(Long companyId) {
+        if (companyId != null) {
+            afterCommit(SYSTEM_USERS, companyId.toString());
+        }
+    }
+
+    public void evictChannel(String phoneNumberId) {
+        if (phoneNumberId != null) {
+            afterCommit(CHANNELS, phoneNumberId);
+        }
+    }
+
+    /**
+     * @param companyId null remove os bots de todas as empresas (ex.: passo sem bot associado).
+     */
+    public void evictBots(Long companyId) {
+        afterCommit(ACTIVE_BOTS, companyId != null ? companyId.toString() : ALL_KEYS);
+    }
+
+    /**
+     * Bots compilados guardam o Flow resolvido (nome/status) e são recompilados.
+     */
+    public void evictFlow(String metaFlowId) {
+        if (metaFlowId != null) {
+            afterCommit(FLOWS, metaFlowId);
+        }
+        afterCommit(COMPILED_BOTS, ALL_KEYS);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String target = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = target.indexOf(':');
+        if (separator > 0) {
+            evictLocal(target.substring(0, separator), target.substring(separator + 1));
+        }
+    }
+
+    private void afterCommit(String cacheName, String key) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictEverywhere(cacheName, key);
+                }
+            });
+        } else {
+            evictEverywhere(cacheName, key);
+        }
+    }
+
+    private void evictEverywhere(String cacheName, String key) {
+        evictLocal(cacheName, key);
+        try {
+            redisTemplate.convertAndSend(EVICTION_CHANNEL, cacheName + ":" + key);
+        } catch (Exception e) {
+            // Os demais nós descartam a entrada ao fim do TTL
+            log.error("Falha ao publicar invalidação de configuração ({}:{}) no Redis: {}", cacheName, key, e.getMessage());
+        }
+    }
+
+    private void evictLocal(String cacheName, String key) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache == null) {
+            return;
+        }
+        if (ALL_KEYS.equals(key)) {
+            cache.clear();
+        } else if (COMPANIES.equals(cacheName) || SYSTEM_USERS.equals(cacheName) || ACTIVE_BOTS.equals(cacheName)
+                || OUTGOING_USERS.equals(cacheName)) {
+            cache.evict(Long.valueOf(key)); // Chaves numéricas (ID da empresa ou do usuário)
+        } else {
+            cache.evict(key);
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.br.alchieri.consulting.mensageria.service.impl;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import com.br.alchieri.consulting.mensageria.model.BillingPlan;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Medição de uso (mensagens e custos) em memória, sem locks, por empresa.
+ *
+ * Os envios e custos são acumulados em {@link LongAdder}s e descarregados periodicamente no
+ * {@link BillingPlan} pelo {@code BillingServiceImpl#flushUsageCounters()} com um único UPDATE
+ * por empresa. As verificações de limite são respondidas a partir de um snapshot do plano
+ * (recarregado a cada {@code billing.metering.snapshot-ttl-seconds}) somado aos deltas ainda não gravados.
+ *
+ * Opcionalmente, os contadores são espelhados no Redis (INCRBY por dia/mês) para que vários nós
+ * enxerguem o consumo uns dos outros antes do próximo flush.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class UsageMeteringEngine {
+
+    // Custos são acumulados como inteiros na escala de 8 casas (mesma precisão de WhatsAppMessageLog)
+    private static final int COST_SCALE = 8;
+
+    private static final String REDIS_KEY_PREFIX = "billing_usage:";
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final Map<Long, CompanyMeter> meters = new ConcurrentHashMap<>();
+
+    @Value("${billing.metering.snapshot-ttl-seconds:60}")
+    private long snapshotTtlSeconds;
+
+    @Value("${billing.metering.redis-mirror.enabled:false}")
+    private boolean redisMirrorEnabled;
+
+    /**
+     * Verifica, sem acessar o banco (exceto quando o snapshot expira), se a empresa ainda cabe nos limites.
+     *
+     * @param companyId ID da empresa.
+     * @param messageCount Quantidade de mensagens a enviar.
+     * @param planLoader Carrega o plano do banco quando o snapshot está ausente ou expirado.
+     * @return {@link LimitCheck} com o resultado e o limite violado, se houver.
+     */
+    public LimitCheck checkMessageLimits(Long companyId, int messageCount, Function<Long, BillingPlan> planLoader) {
+        CompanyMeter meter = meter(companyId);
+        PlanSnapshot snapshot = currentSnapshot(companyId, meter, planLoader);
+
+        if (snapshot.dailyLimit() != null) {
+            long usedToday = Math.max(snapshot.dayBase() + meter.inFlightDay.get() + meter.pendingDay.sum(),
+                                      meter.clusterDay.valueFor(snapshot.day().toString()));
+            if (usedToday + messageCount > snapshot.dailyLimit()) {
+                return LimitCheck.dailyExceeded(snapshot.dailyLimit());
+            }
+        }
+        long usedMonth = Math.max(snapshot.monthBase() + meter.inFlightMonth.get() + meter.pendingMonth.sum(),
+                                  meter.clusterMonth.valueFor(snapshot.month().toString()));
+        if (usedMonth + messageCount > snapshot.monthlyLimit()) {
+            return LimitCheck.monthlyExceeded(snapshot.monthlyLimit());
+        }
+        return LimitCheck.OK;
+    }
+
+    /**
+     * Mensagens da empresa no mês corrente (gravadas + pendentes), na mesma base da verificação de limites.
+     * Usado para escolher a faixa de volume das tarifas da Meta.
+     */
+    public long monthlyMessages(Long companyId, Function<Long, BillingPlan> planLoader) {
+        CompanyMeter meter = meter(companyId);
+        PlanSnapshot snapshot = currentSnapshot(companyId, meter, planLoader);
+        return Math.max(snapshot.monthBase() + meter.inFlightMonth.get() + meter.pendingMonth.sum(),
+                        meter.clusterMonth.valueFor(snapshot.month().toString()));
+    }
+
+    public void recordMessages(Long companyId, int messageCount) {
+        if (companyId == null || messageCount <= 0) return;
+        CompanyMeter meter = meter(companyId);
+        meter.pendingDay.add(messageCount);
+        meter.pendingMonth.add(messageCount);
+        if (redisMirrorEnabled) {
+            mirrorToRedis(companyId, meter, messageCount);
+        }
+    }
+
+    public void recordCosts(Long companyId, BigDecimal metaCost, BigDecimal platformFee) {
+        if (companyId == null) return;
+        CompanyMeter meter = meter(companyId);
+        if (metaCost != null && metaCost.signum() != 0) meter.pendingMetaCost.add(toUnits(metaCost));
+        if (platformFee != null && platformFee.signum() != 0) meter.pendingPlatformFee.add(toUnits(platformFee));
+    }
+
+    /**
+     * Retira os deltas acumulados de todas as empresas para gravação. Os valores retirados ficam
+     * "em voo" (ainda contam nos limites) até {@link #confirmFlush} ou {@link #restore}.
+     */
+    public List<UsageDelta> drain() {
+        List<UsageDelta> deltas = new ArrayList<>();
+        meters.forEach((companyId, meter) -> {
+            long day = takeAll(meter.pendingDay);
+            long month = takeAll(meter.pendingMonth);
+            long metaUnits = takeAll(meter.pendingMetaCost);
+            long feeUnits = takeAll(meter.pendingPlatformFee);
+            if (day == 0 && month == 0 && metaUnits == 0 && feeUnits == 0) return;
+
+            meter.inFlightDay.addAndGet(day);
+            meter.inFlightMonth.addAndGet(month);
+            deltas.add(new UsageDelta(companyId, day, month, fromUnits(metaUnits), fromUnits(feeUnits), metaUnits, feeUnits));
+        });
+        return deltas;
+    }
+
+    /** Confirma a gravação de um delta e incorpora-o ao snapshot local. */
+    public void confirmFlush(UsageDelta delta) {
+        CompanyMeter meter = meters.get(delta.companyId());
+        if (meter == null) return;
+        PlanSnapshot snapshot = meter.snapshot;
+        if (snapshot != null) {
+            meter.snapshot = snapshot.withAddedUsage(delta.dayMessages(), delta.monthMessages());
+        }
+        meter.inFlightDay.addAndGet(-delta.dayMessages());
+        meter.inFlightMonth.addAndGet(-delta.monthMessages());
+    }
+
+    /** Devolve um delta não gravado para ser tentado novamente no próximo flush. */
+    public void restore(UsageDelta delta) {
+        CompanyMeter meter = meter(delta.companyId());
+        meter.inFlightDay.addAndGet(-delta.dayMessages());
+        meter.inFlightMonth.addAndGet(-delta.monthMessages());
+        meter.pendingDay.add(delta.dayMessages());
+        meter.pendingMonth.add(delta.monthMessages());
+        meter.pendingMetaCost.add(delta.metaCostUnits());
+        meter.pendingPlatformFee.add(delta.platformFeeUnits());
+    }
+
+    /** Uso ainda não gravado no banco (pendente + em voo), para relatórios de consumo. */
+    public UsageDelta unflushedUsage(Long companyId) {
+        CompanyMeter meter = meters.get(companyId);
+        if (meter == null) {
+            return new UsageDelta(companyId, 0, 0, BigDecimal.ZERO, BigDecimal.ZERO, 0, 0);
+        }
+        long metaUnits = meter.pendingMetaCost.sum();
+        long feeUnits = meter.pendingPlatformFee.sum();
+        return new UsageDelta(companyId,
+                meter.pendingDay.sum() + meter.inFlightDay.get(),
+                meter.pendingMonth.sum() + meter.inFlightMonth.get(),
+                fromUnits(metaUnits), fromUnits(feeUnits), metaUnits, feeUnits);
+    }
+
+    /** Descarta o snapshot do plano (ex: após alteração de limites ou reset de contadores). */
+    public void invalidateSnapshot(Long companyId) {
+        CompanyMeter meter = meters.get(companyId);
+        if (meter != null) {
+            meter.snapshot = null;
+        }
+    }
+
+    public void invalidateAllSnapshots() {
+        meters.values().forEach(meter -> meter.snapshot = null);
+    }
+
+    // --- Helpers ---
+
+    private CompanyMeter meter(Long companyId) {
+        return meters.computeIfAbsent(companyId, id -> new CompanyMeter());
+    }
+
+    private PlanSnapshot currentSnapshot(Long companyId, CompanyMeter meter, Function<Long, BillingPlan> planLoader) {
+        PlanSnapshot snapshot = meter.snapshot;
+        LocalDateTime now = LocalDateTime.now();
+        if (snapshot == null || snapshot.isStale(now, snapshotTtlSeconds)) {
+            snapshot = PlanSnapshot.fromPlan(planLoader.apply(companyId), now);
+            meter.snapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    /** Retira o valor acumulado sem perder incrementos concorrentes (ao contrário de sumThenReset). */
+    private static long takeAll(LongAdder adder) {
+        long value = adder.sum();
+        if (value != 0) adder.add(-value);
+        return value;
+    }
+
+    private static long toUnits(BigDecimal value) {
+        return value.setScale(COST_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    private static BigDecimal fromUnits(long units) {
+        return BigDecimal.valueOf(units, COST_SCALE);
+    }
+
+    private void mirrorToRedis(Long companyId, CompanyMeter meter, int messageCount) {
+        LocalDate today = LocalDate.now();
+        String dayKey = REDIS_KEY_PREFIX + companyId + ":day:" + today;
+        String monthKey = REDIS_KEY_PREFIX + companyId + ":month:" + YearMonth.from(today);
+        try {
+            List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                incrementWithTtl(connection, dayKey, messageCount, Duration.ofDays(2));
+                incrementWithTtl(connection, monthKey, messageCount, Duration.ofDays(40));
+                return null;
+            });
+            // Resultados: [INCRBY dia, EXPIRE dia, INCRBY mês, EXPIRE mês]
+            meter.clusterDay.update(today.toString(), ((Number) results.get(0)).longValue());
+            meter.clusterMonth.update(YearMonth.from(today).toString(), ((Number) results.get(2)).longValue());
+        } catch (Exception e) {
+            log.warn("Falha ao espelhar contadores de uso no Redis para empresa ID {}: {}", companyId, e.getMessage());
+        }
+    }
+
+    private void incrementWithTtl(RedisConnection connection, String key, long value, Duration ttl) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        connection.stringCommands().incrBy(rawKey, value);
+        connection.keyCommands().expire(rawKey, ttl.getSeconds());
+    }
+
+    // --- Estruturas internas ---
+
+    private static final class CompanyMeter {
+        private final LongAdder pendingDay = new LongAdder();
+        private final LongAdder pendingMonth = new LongAdder();
+        private final LongAdder pendingMetaCost = new LongAdder();
+        private final LongAdder pendingPlatformFee = new LongAdder();
+        private final AtomicLong inFlightDay = new AtomicLong();
+        private final AtomicLong inFlightMonth = new AtomicLong();
+        private final ClusterCounter clusterDay = new ClusterCounter();
+        private final ClusterCounter clusterMonth = new ClusterCounter();
+        private volatile PlanSnapshot snapshot;
+    }
+
+    /** Último total visto no Redis para um período (dia ou mês). */
+    private static final class ClusterCounter {
+        private volatile String period;
+        private volatile long value;
+
+        private synchronized void update(String newPeriod, long newValue) {
+            if (!newPeriod.equals(period) || newValue > value) {
+                this.period = newPeriod;
+                this.value = newValue;
+            }
+        }
+
+        private long valueFor(String expectedPeriod) {
+            return expectedPeriod.equals(period) ? value : 0L;
+        }
+    }
+
+    private record PlanSnapshot(Integer dailyLimit, int monthlyLimit, long dayBase, long monthBase,
+                                LocalDate day, YearMonth month, LocalDateTime loadedAt) {
+
+        static PlanSnapshot fromPlan(BillingPlan plan, LocalDateTime now) {
+            LocalDate today = now.toLocalDate();
+            YearMonth currentMonth = YearMonth.from(now);
+            // Mesma regra de reset do BillingServiceImpl: contadores de períodos anteriores valem zero
+            long dayBase = plan.getLastDailyReset() != null && !plan.getLastDailyReset().toLocalDate().isBefore(today)
+                    ? plan.getCurrentDayMessagesSent() : 0;
+            long monthBase = plan.getLastMonthlyReset() != null && !YearMonth.from(plan.getLastMonthlyReset()).isBefore(currentMonth)
+                    ? plan.getCurrentMonthMessagesSent() : 0;
+            return new PlanSnapshot(plan.getDailyMessageLimit(), plan.getMonthlyMessageLimit(), dayBase, monthBase,
+                    today, currentMonth, now);
+        }
+
+        boolean isStale(LocalDateTime now, long ttlSeconds) {
+            return !day.equals(now.toLocalDate()) || loadedAt.plusSeconds(ttlSeconds).isBefore(now);
+        }
+
+        PlanSnapshot withAddedUsage(long dayMessages, long monthMessages) {
+            return new PlanSnapshot(dailyLimit, monthlyLimit, dayBase + dayMessages, monthBase + monthMessages, day, month, loadedAt);
+        }
+    }
+
+    /**
+     * Delta de uso de uma empresa a ser gravado no {@link BillingPlan}.
+     */
+    public record UsageDelta(Long companyId, long dayMessages, long monthMessages,
+                             BigDecimal metaCost, BigDecimal platformFee,
+                             long metaCostUnits, long platformFeeUnits) {}
+
+    public record LimitCheck(boolean allowed, String exceededLimit, Integer limit) {
+        static final LimitCheck OK = new LimitCheck(true, null, null);
+
+        static LimitCheck dailyExceeded(Integer limit) {
+            return new LimitCheck(false, "diário", limit);
+        }
+
+        static LimitCheck monthlyExceeded(Integer limit) {
+            return new LimitCheck(false, "mensal", limit);
+        }
+    }
+}
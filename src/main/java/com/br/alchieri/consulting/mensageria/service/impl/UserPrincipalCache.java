@@ -0,0 +1,169 @@
+package com.br.alchieri.consulting.mensageria.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.br.alchieri.consulting.mensageria.model.Company;
+import com.br.alchieri.consulting.mensageria.model.User;
+import com.br.alchieri.consulting.mensageria.repository.CompanyRepository;
+import com.br.alchieri.consulting.mensageria.repository.UserRepository;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cache local (por nó) do usuário autenticado via JWT, indexado pelo username.
+ *
+ * Guarda um snapshot do {@link User} (papéis já carregados) por um TTL curto, para que o polling da
+ * interface não consulte o banco a cada requisição. Cada requisição recebe uma cópia do snapshot como
+ * principal, então alterações feitas por um serviço não vazam para outras requisições. Da empresa só o ID
+ * fica no cache: a {@link Company} é lida por chave primária a cada requisição, pois os serviços a alteram
+ * e salvam diretamente e ela tem coleções lazy que não podem ser compartilhadas entre requisições.
+ * Um token emitido depois do snapshot (novo login) força a recarga. Alterações de usuário/empresa
+ * removem os snapshots após o commit, neste nó e nos demais (canal Redis {@value #EVICTION_CHANNEL}).
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class UserPrincipalCache implements MessageListener {
+
+    public static final String EVICTION_CHANNEL = "user-principal:evict";
+
+    private static final String USER_PREFIX = "user:";
+    private static final String COMPANY_PREFIX = "company:";
+
+    private final UserRepository userRepository;
+    private final CompanyRepository companyRepository;
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    @Value("${security.principal-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${security.principal-cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${security.principal-cache.ttl-seconds:30}")
+    private long ttlSeconds;
+
+    private Cache<String, Snapshot> snapshots;
+
+    private record Snapshot(User user, Long companyId, long loadedAtMillis) {}
+
+    @PostConstruct
+    void init() {
+        snapshots = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+        listenerContainer.addMessageListener(this, new ChannelTopic(EVICTION_CHANNEL));
+    }
+
+    /**
+     * Retorna o principal do usuário, do cache ou do banco.
+     * @param tokenIssuedAt Emissão do token (null = não verifica); snapshots anteriores a ela são recarregados.
+     */
+    public User getPrincipal(String username, Date tokenIssuedAt) {
+        if (!enabled) {
+            return loadUser(username);
+        }
+        Snapshot snapshot = snapshots.getIfPresent(username);
+        if (snapshot == null || (tokenIssuedAt != null && tokenIssuedAt.getTime() > snapshot.loadedAtMillis())) {
+            long loadedAt = System.currentTimeMillis();
+            User user = loadUser(username);
+            snapshot = new Snapshot(copyOf(user, null), user.getCompany() != null ? user.getCompany().getId() : null, loadedAt);
+            snapshots.put(username, snapshot);
+        }
+        Company company = snapshot.companyId() != null ? companyRepository.findById(snapshot.companyId()).orElse(null) : null;
+        return copyOf(snapshot.user(), company);
+    }
+
+    /**
+     * Remove o snapshot do usuário após o commit da transação corrente (neste nó e nos demais).
+     */
+    public void evictUser(String username) {
+        if (username != null) {
+            afterCommit(USER_PREFIX + username);
+        }
+    }
+
+    /**
+     * Remove os snapshots de todos os usuários da empresa após o commit da transação corrente.
+     */
+    public void evictCompany(Long companyId) {
+        if (companyId != null) {
+            afterCommit(COMPANY_PREFIX + companyId);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        evictLocal(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    private void afterCommit(String target) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictEverywhere(target);
+                }
+            });
+        } else {
+            evictEverywhere(target);
+        }
+    }
+
+    private void evictEverywhere(String target) {
+        evictLocal(target);
+        try {
+            redisTemplate.convertAndSend(EVICTION_CHANNEL, target);
+        } catch (Exception e) {
+            // Os demais nós descartam o snapshot ao fim do TTL
+            log.error("Falha ao publicar invalidação de principal ({}) no Redis: {}", target, e.getMessage());
+        }
+    }
+
+    private void evictLocal(String target) {
+        if (target.startsWith(USER_PREFIX)) {
+            snapshots.invalidate(target.substring(USER_PREFIX.length()));
+        } else if (target.startsWith(COMPANY_PREFIX)) {
+            Long companyId = Long.valueOf(target.substring(COMPANY_PREFIX.length()));
+            snapshots.asMap().values().removeIf(snapshot -> companyId.equals(snapshot.companyId()));
+        }
+    }
+
+    private User loadUser(String username) {
+        return userRepository.findByUsername(username)
+                .orElseThrow(() -> new UsernameNotFoundException("Usuário não encontrado com username: " + username));
+    }
+
+    private static User copyOf(User source, Company company) {
+        User copy = new User();
+        copy.setId(source.getId());
+        copy.setUsername(source.getUsername());
+        copy.setPassword(source.getPassword());
+        copy.setFullName(source.getFullName());
+        copy.setEmail(source.getEmail());
+        copy.setEnabled(source.isEnabled());
+        copy.setCompany(company);
+        copy.setRoles(new HashSet<>(source.getRoles()));
+        return copy;
+    }
+}
@@ -42,6 +42,9 @@ public class UserServiceImpl implements UserService {
     private final UserRepository userRepository;
     private final CompanyRepository companyRepository;
     private final PasswordEncoder passwordEncoder;
+    private final UserPrincipalCache userPrincipalCache;
+    private final ApiKeyAuthCache apiKeyAuthCache;
+    private final TenantConfigCache tenantConfigCache;
 
     @Override
     @Transactional
@@ -66,6 +69,7 @@ public class UserServiceImpl implements UserService {
             Company company = companyRepository.findById(companyIdForAssociation)
                     .orElseThrow(() -> new ResourceNotFoundException("Empresa com ID " + companyIdForAssociation + " não encontrada para associação do usuário."));
             newUser.setCompany(company);
+            tenantConfigCache.evictSystemUser(company.getId());
             log.info("Usuário {} associado à empresa {}", request.getUsername(), company.getName());
         } else {
             log.info("Usuário {} registrado sem associação a uma empresa (provavelmente um admin BSP).", request.getUsername());
@@ -140,6 +144,9 @@ public class UserServiceImpl implements UserService {
                 .orElseThrow(() -> new ResourceNotFoundException("Usuário com ID " + userId + " não encontrado."));
 
         log.info("Admin BSP {} atualizando usuário ID {}", adminUser.getUsername(), userId);
+        userPrincipalCache.evictUser(userToUpdate.getUsername());
+        // Papéis/empresa podem mudar: o usuário de sistema da empresa de origem e da de destino é recalculado
+        Long previousCompanyId = userToUpdate.getCompany() != null ? userToUpdate.getCompany().getId() : null;
 
         if (StringUtils.hasText(request.getUsername()) && !userToUpdate.getUsername().equals(request.getUsername())) {
             userRepository.findByUsername(request.getUsername()).ifPresent(existingUser -> {
@@ -182,6 +189,14 @@ public class UserServiceImpl implements UserService {
             userToUpdate.setRoles(request.getRoles());
         }
 
+        userPrincipalCache.evictUser(userToUpdate.getUsername());
+        apiKeyAuthCache.evictUser(userToUpdate.getId());
+        tenantConfigCache.evictUser(userToUpdate.getId());
+        Long currentCompanyId = userToUpdate.getCompany() != null ? userToUpdate.getCompany().getId() : null;
+        tenantConfigCache.evictSystemUser(previousCompanyId);
+        if (!Objects.equals(previousCompanyId, currentCompanyId)) {
+            tenantConfigCache.evictSystemUser(currentCompanyId);
+        }
         return userRepository.save(userToUpdate);
     }
 
@@ -231,6 +246,7 @@ public class UserServiceImpl implements UserService {
         rolesToSet.add(Role.ROLE_USER);
         newUser.setRoles(rolesToSet);
 
+        tenantConfigCache.evictSystemUser(company.getId());
         return userRepository.save(newUser);
     }
 
@@ -251,6 +267,8 @@ public class UserServiceImpl implements UserService {
             throw new AccessDeniedException("Permissão negada para editar este usuário.");
         }
 
+        userPrincipalCache.evictUser(userToUpdate.getUsername());
+
         // 3. Atualiza os campos se eles foram fornecidos no request
         
         // Atualização de Username
@@ -315,7 +333,11 @@ public class UserServiceImpl implements UserService {
             userToUpdate.setRoles(newRoles);
         }
 
-        // 4. Salva a entidade atualizada no banco
+        // 4. Salva a entidade atualizada no banco (o snapshot em cache é descartado após o commit)
+        userPrincipalCache.evictUser(userToUpdate.getUsername());
+        apiKeyAuthCache.evictUser(userToUpdate.getId());
+        tenantConfigCache.evictUser(userToUpdate.getId());
+        tenantConfigCache.evictSystemUser(companyOfAdmin.getId());
         return userRepository.save(userToUpdate);
     }
 
@@ -343,6 +365,7 @@ public class UserServiceImpl implements UserService {
             Company company = companyRepository.findById(request.getCompanyId())
                     .orElseThrow(() -> new ResourceNotFoundException("Empresa com ID " + request.getCompanyId() + " não encontrada."));
             newUser.setCompany(company);
+            tenantConfigCache.evictSystemUser(company.getId());
         }
 
         log.info("Admin está criando um novo usuário: {}", newUser.getUsername());
@@ -367,6 +390,10 @@ public class UserServiceImpl implements UserService {
              }
         }
 
+        userPrincipalCache.evictUser(user.getUsername());
+        apiKeyAuthCache.evictUser(user.getId());
+        tenantConfigCache.evictUser(user.getId());
+        tenantConfigCache.evictSystemUser(company.getId());
         userRepository.delete(user);
     }
 
@@ -377,6 +404,9 @@ public class UserServiceImpl implements UserService {
             throw new BusinessException("Contexto de segurança não encontrado.");
         }
         UserDetails userDetails = (UserDetails) authentication.getPrincipal();
+        if (userDetails instanceof User user) { // Principal já carregado pelo filtro de autenticação
+            return user;
+        }
         return userRepository.findByUsername(userDetails.getUsername())
                 .orElseThrow(() -> new BusinessException("Usuário autenticado não encontrado no sistema."));
     }
@@ -18,6 +18,9 @@ public final class CountryCodeMapper {
     // Mapa de Código do País -> Nome da Região "Rest of..." (para o caminho inverso)
     private static final Map<String, String> CODE_TO_REGION;
 
+    // Mapa de Código do País -> Mercado/Região de tarifa, pré-calculado a partir dos dois mapas acima
+    private static final Map<String, String> CODE_TO_MARKET;
+
     static {
         Map<String, String> marketMap = new HashMap<>();
         // Mercados individuais
@@ -74,6 +77,10 @@ public final class CountryCodeMapper {
                 .forEach(code -> regionMap.put(code, "Rest of Middle East"));
 
         CODE_TO_REGION = Collections.unmodifiableMap(regionMap);
+
+        Map<String, String> codeToMarket = new HashMap<>(regionMap);
+        MARKET_TO_CODE.forEach((market, code) -> codeToMarket.put(code, getMarketOrRegion(code)));
+        CODE_TO_MARKET = Collections.unmodifiableMap(codeToMarket);
     }
 
     /**
@@ -126,4 +133,23 @@ public final class CountryCodeMapper {
         // 3. Se não encontrou em nenhum lugar, cai no fallback "Other"
         return "Other";
     }
+
+    /**
+     * Mercado/região de tarifa de um telefone em E.164 (com ou sem '+'), pelo prefixo do código do país
+     * (ver {@link PhoneNumberNormalizer#countryCode}).
+     *
+     * @param phoneNumber O número de telefone (ex: "5511999998888").
+     * @return O nome do mercado/região ou "Other" se o código não for conhecido.
+     */
+    public static String getMarketOrRegionForPhone(String phoneNumber) {
+        String countryCode = PhoneNumberNormalizer.countryCode(phoneNumber);
+        return countryCode != null ? CODE_TO_MARKET.get(countryCode) : "Other";
+    }
+
+    /**
+     * Todos os códigos de país conhecidos (mercados individuais e regiões "Rest of...").
+     */
+    public static Set<String> getKnownCountryCodes() {
+        return CODE_TO_MARKET.keySet();
+    }
 }
@@ -0,0 +1,143 @@
+package com.br.alchieri.consulting.mensageria.util;
+
+/**
+ * Normalização de telefones usada em todo o sistema (envio, webhook, cadastro, importação e tarifação).
+ *
+ * - {@link #normalize}: forma gravada/enviada. Só dígitos e, no Brasil, celular sempre com o 9º dígito.
+ * - {@link #phoneKey}: chave canônica de busca ({@code Contact.phoneKey}). No Brasil, sem o 9º dígito,
+ *   então "5545988887777" e "554588887777" têm a mesma chave e o contato é achado com uma única consulta.
+ * - {@link #countryCode}: código do país pelo prefixo, numa árvore de dígitos montada a partir dos códigos
+ *   conhecidos do {@link CountryCodeMapper}.
+ *
+ * A varredura é feita caractere a caractere, sem regex; um número que já só tem dígitos não gera alocação.
+ */
+public final class PhoneNumberNormalizer {
+
+    private static final String BRAZIL_CODE = "55";
+    // 55 + DDD + 8 dígitos (sem o 9) e 55 + DDD + 9 + 8 dígitos
+    private static final int BR_LENGTH_WITHOUT_NINE = 12;
+    private static final int BR_LENGTH_WITH_NINE = 13;
+    private static final int BR_NINE_POSITION = 4;
+
+    private static final Node COUNTRY_CODES = buildCountryCodeTrie();
+
+    private static final class Node {
+        final Node[] next = new Node[10];
+        String code; // Preenchido quando o caminho até aqui é um código de país
+    }
+
+    /**
+     * Construtor privado para impedir a instanciação da classe utilitária.
+     */
+    private PhoneNumberNormalizer() {}
+
+    /**
+     * Apenas os dígitos do número (ex: "+55 (45) 98888-7777" -> "5545988887777").
+     * Devolve a própria string se ela já contiver só dígitos.
+     */
+    public static String digits(String phoneNumber) {
+        if (phoneNumber == null) {
+            return null;
+        }
+        int length = phoneNumber.length();
+        int i = 0;
+        while (i < length && isDigit(phoneNumber.charAt(i))) {
+            i++;
+        }
+        if (i == length) {
+            return phoneNumber;
+        }
+        char[] out = new char[length - 1];
+        phoneNumber.getChars(0, i, out, 0);
+        int n = i;
+        for (i++; i < length; i++) {
+            char c = phoneNumber.charAt(i);
+            if (isDigit(c)) {
+                out[n++] = c;
+            }
+        }
+        return new String(out, 0, n);
+    }
+
+    /**
+     * Forma padrão do número: só dígitos e, se for Brasil com 12 dígitos (falta o 9), com o 9º dígito inserido.
+     */
+    public static String normalize(String phoneNumber) {
+        String digits = digits(phoneNumber);
+        if (digits != null && digits.length() == BR_LENGTH_WITHOUT_NINE && digits.startsWith(BRAZIL_CODE)) {
+            return new StringBuilder(BR_LENGTH_WITH_NINE)
+                    .append(digits, 0, BR_NINE_POSITION)
+                    .append('9')
+                    .append(digits, BR_NINE_POSITION, BR_LENGTH_WITHOUT_NINE)
+                    .toString();
+        }
+        return digits;
+    }
+
+    /**
+     * Chave canônica de busca: só dígitos e, se for Brasil com 13 dígitos, sem o 9º dígito.
+     * As duas variações do mesmo celular brasileiro geram a mesma chave.
+     *
+     * @return A chave ou null se o número não tiver dígitos.
+     */
+    public static String phoneKey(String phoneNumber) {
+        String digits = digits(phoneNumber);
+        if (digits == null || digits.isEmpty()) {
+            return null;
+        }
+        if (digits.length() == BR_LENGTH_WITH_NINE && digits.startsWith(BRAZIL_CODE)) {
+            return new StringBuilder(BR_LENGTH_WITHOUT_NINE)
+                    .append(digits, 0, BR_NINE_POSITION)
+                    .append(digits, BR_NINE_POSITION + 1, BR_LENGTH_WITH_NINE)
+                    .toString();
+        }
+        return digits;
+    }
+
+    /**
+     * Código do país de um telefone em E.164 (com ou sem '+' e formatação). Ignora caracteres que não são dígitos.
+     *
+     * @return O código (ex: "55", "1", "972") ou null se o prefixo não for um código conhecido.
+     */
+    public static String countryCode(String phoneNumber) {
+        if (phoneNumber == null) {
+            return null;
+        }
+        Node node = COUNTRY_CODES;
+        for (int i = 0; i < phoneNumber.length(); i++) {
+            char c = phoneNumber.charAt(i);
+            if (!isDigit(c)) {
+                continue;
+            }
+            node = node.next[c - '0'];
+            if (node == null) {
+                return null;
+            }
+            // Códigos de país não são prefixo uns dos outros: o primeiro encontrado é o código
+            if (node.code != null) {
+                return node.code;
+            }
+        }
+        return null;
+    }
+
+    private static Node buildCountryCodeTrie() {
+        Node root = new Node();
+        for (String code : CountryCodeMapper.getKnownCountryCodes()) {
+            Node node = root;
+            for (int i = 0; i < code.length(); i++) {
+                int digit = code.charAt(i) - '0';
+                if (node.next[digit] == null) {
+                    node.next[digit] = new Node();
+                }
+                node = node.next[digit];
+            }
+            node.code = code;
+        }
+        return root;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -8,6 +8,7 @@ import java.security.NoSuchAlgorithmException;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 
+import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.binary.Hex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,7 +26,9 @@ public class SignatureUtil {
     @Value("${meta.app.secret}")
     private String appSecret;
 
-    private Mac macInstance;
+    // Protótipo já inicializado com a chave; cada thread usa um clone próprio (Mac não é thread-safe)
+    private Mac macPrototype;
+    private final ThreadLocal<Mac> threadMac = ThreadLocal.withInitial(this::cloneMac);
 
     @PostConstruct
     private void initializeMac() {
@@ -36,8 +39,8 @@ public class SignatureUtil {
         }
         try {
             SecretKeySpec secretKeySpec = new SecretKeySpec(appSecret.getBytes(StandardCharsets.UTF_8), SIGNATURE_ALGORITHM);
-            macInstance = Mac.getInstance(SIGNATURE_ALGORITHM);
-            macInstance.init(secretKeySpec);
+            macPrototype = Mac.getInstance(SIGNATURE_ALGORITHM);
+            macPrototype.init(secretKeySpec);
             logger.info("Algoritmo {} para verificação de Webhook inicializado.", SIGNATURE_ALGORITHM);
         } catch (NoSuchAlgorithmException | InvalidKeyException e) {
             logger.error("Falha CRÍTICA ao inicializar o algoritmo {} para verificação de Webhook:", SIGNATURE_ALGORITHM, e);
@@ -47,37 +50,45 @@ public class SignatureUtil {
     }
 
     public boolean verifySignature(String payload, String signatureHeader) {
-        if (macInstance == null) {
+        return verifySignature(payload != null ? payload.getBytes(StandardCharsets.UTF_8) : null, signatureHeader);
+    }
+
+    /**
+     * Verifica o HMAC diretamente sobre os bytes recebidos, sem converter o corpo para String.
+     */
+    public boolean verifySignature(byte[] payload, String signatureHeader) {
+        if (macPrototype == null) {
             logger.error("Verificação de assinatura falhou: Mac não inicializado (App Secret ausente ou inválido?).");
             return false;
         }
-        if (signatureHeader == null || !signatureHeader.startsWith("sha256=")) {
+        if (payload == null || signatureHeader == null || !signatureHeader.startsWith("sha256=")) {
             logger.warn("Formato de assinatura do webhook inválido ou ausente: {}", signatureHeader);
             return false;
         }
 
         try {
-            String expectedHash = signatureHeader.substring(7); // Remove "sha256="
-            byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
-
-            // Sincroniza o acesso ao Mac se este utilitário puder ser chamado concorrentemente
-            // Embora a instância Mac geralmente seja thread-safe após init, é uma boa prática
-            // se houver qualquer dúvida sobre o ambiente de execução.
-            byte[] calculatedHashBytes;
-            synchronized (macInstance) {
-                 calculatedHashBytes = macInstance.doFinal(payloadBytes);
-            }
+            byte[] expectedHash = Hex.decodeHex(signatureHeader.substring(7)); // Remove "sha256="
 
-            String calculatedHash = Hex.encodeHexString(calculatedHashBytes);
-
-            logger.debug("Verificando assinatura - Esperado: {}, Calculado: {}", expectedHash, calculatedHash);
+            // Mac por thread: sem lock compartilhado entre as requisições de webhook
+            byte[] calculatedHash = threadMac.get().doFinal(payload);
 
             // Comparação segura contra timing attacks
-            return MessageDigest.isEqual(expectedHash.getBytes(StandardCharsets.UTF_8), calculatedHash.getBytes(StandardCharsets.UTF_8));
+            return MessageDigest.isEqual(expectedHash, calculatedHash);
 
-        } catch (Exception e) { // Pode incluir IllegalStateException do Mac não inicializado se a lógica PostConstruct falhar
+        } catch (DecoderException e) {
+            logger.warn("Assinatura do webhook não é um hexadecimal válido.");
+            return false;
+        } catch (Exception e) {
             logger.error("Erro durante a verificação da assinatura do webhook:", e);
             return false;
         }
     }
+
+    private Mac cloneMac() {
+        try {
+            return (Mac) macPrototype.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("Provedor de " + SIGNATURE_ALGORITHM + " não suporta clone do Mac", e);
+        }
+    }
 }
@@ -0,0 +1,72 @@
+-- Conversão única de whatsapp_message_logs para tabela particionada por mês (RANGE em created_at).
+--
+-- Executar em janela de manutenção, com a aplicação parada (PostgreSQL 13+). A tabela atual é mantida como
+-- a partição "legacy" (todo o histórico até o fim do mês corrente), sem cópia de dados; os meses seguintes
+-- são criados pelo MessageLogPartitionManager após habilitar message-log.partitioning.enabled=true.
+--
+-- Observações:
+--  * A PK passa a ser (id, created_at) e o índice único de WAMID passa a ser (wamid, created_at): o Postgres
+--    exige a chave de partição em restrições únicas. A deduplicação de webhooks usa a tabela não particionada
+--    message_wamids (wamid PRIMARY KEY), criada/semeada abaixo com os WAMIDs recebidos nos últimos 30 dias.
+--  * O ID deixa de ser IDENTITY e passa a usar a sequence whatsapp_message_logs_id_seq (identity em tabela
+--    particionada só existe a partir do PostgreSQL 17); o Hibernate continua omitindo o ID no insert.
+
+BEGIN;
+
+ALTER TABLE whatsapp_message_logs RENAME TO whatsapp_message_logs_legacy;
+ALTER TABLE whatsapp_message_logs_legacy RENAME CONSTRAINT whatsapp_message_logs_pkey TO whatsapp_message_logs_legacy_pkey;
+ALTER TABLE whatsapp_message_logs_legacy ALTER COLUMN id DROP IDENTITY IF EXISTS;
+
+ALTER INDEX IF EXISTS idx_wml_wamid RENAME TO idx_wml_legacy_wamid;
+ALTER INDEX IF EXISTS idx_wml_company_timestamp RENAME TO idx_wml_legacy_company_timestamp;
+ALTER INDEX IF EXISTS idx_wml_scheduled_message_id RENAME TO idx_wml_legacy_scheduled_message_id;
+ALTER INDEX IF EXISTS idx_wml_bulk_job_status RENAME TO idx_wml_legacy_bulk_job_status;
+ALTER INDEX IF EXISTS idx_wml_company_contact_created RENAME TO idx_wml_legacy_company_contact_created;
+
+CREATE TABLE whatsapp_message_logs (LIKE whatsapp_message_logs_legacy INCLUDING DEFAULTS)
+    PARTITION BY RANGE (created_at);
+
+CREATE SEQUENCE whatsapp_message_logs_id_seq OWNED BY whatsapp_message_logs.id;
+SELECT setval('whatsapp_message_logs_id_seq', COALESCE((SELECT MAX(id) FROM whatsapp_message_logs_legacy), 0) + 1, false);
+ALTER TABLE whatsapp_message_logs ALTER COLUMN id SET DEFAULT nextval('whatsapp_message_logs_id_seq');
+
+ALTER TABLE whatsapp_message_logs ADD CONSTRAINT whatsapp_message_logs_pkey PRIMARY KEY (id, created_at);
+CREATE UNIQUE INDEX idx_wml_wamid ON whatsapp_message_logs (wamid, created_at);
+CREATE INDEX idx_wml_company_timestamp ON whatsapp_message_logs (company_id, created_at);
+CREATE INDEX idx_wml_scheduled_message_id ON whatsapp_message_logs (scheduled_message_id);
+CREATE INDEX idx_wml_bulk_job_status ON whatsapp_message_logs (bulk_job_id, status);
+CREATE INDEX idx_wml_company_contact_created ON whatsapp_message_logs (company_id, contact_phone, created_at DESC, id);
+
+DO $$
+DECLARE
+    cutover date := (date_trunc('month', now()) + interval '1 month')::date;
+    month_start date;
+BEGIN
+    -- A restrição CHECK evita uma segunda varredura completa no ATTACH
+    EXECUTE format('ALTER TABLE whatsapp_message_logs_legacy ADD CONSTRAINT whatsapp_message_logs_legacy_bound CHECK (created_at < %L)', cutover);
+    EXECUTE format('ALTER TABLE whatsapp_message_logs ATTACH PARTITION whatsapp_message_logs_legacy FOR VALUES FROM (MINVALUE) TO (%L)', cutover);
+
+    -- Próximos meses (o MessageLogPartitionManager mantém a janela a partir daqui)
+    FOR i IN 0..2 LOOP
+        month_start := (cutover + make_interval(months => i))::date;
+        EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF whatsapp_message_logs FOR VALUES FROM (%L) TO (%L)',
+                       'whatsapp_message_logs_p' || to_char(month_start, 'YYYYMM'),
+                       month_start, (month_start + interval '1 month')::date);
+    END LOOP;
+END $$;
+
+-- Rede de segurança: linhas fora dos meses criados (ex.: job de partições parado)
+CREATE TABLE whatsapp_message_logs_default PARTITION OF whatsapp_message_logs DEFAULT;
+
+-- Registro de deduplicação (o Hibernate também a cria se ainda não existir)
+CREATE TABLE IF NOT EXISTS message_wamids (
+    wamid varchar(255) PRIMARY KEY,
+    created_at timestamp(6) NOT NULL
+);
+CREATE INDEX IF NOT EXISTS idx_mw_created_at ON message_wamids (created_at);
+INSERT INTO message_wamids (wamid, created_at)
+SELECT wamid, created_at FROM whatsapp_message_logs
+WHERE direction = 'INCOMING' AND wamid IS NOT NULL AND created_at > now() - interval '30 days'
+ON CONFLICT (wamid) DO NOTHING;
+
+COMMIT;
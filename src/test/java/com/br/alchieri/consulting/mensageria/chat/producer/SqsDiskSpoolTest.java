@@ -0,0 +1,184 @@
+package com.br.alchieri.consulting.mensageria.chat.producer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.br.alchieri.consulting.mensageria.chat.producer.SqsDiskSpool.Chunk;
+import com.br.alchieri.consulting.mensageria.chat.producer.SqsDiskSpool.SpooledMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class SqsDiskSpoolTest {
+
+    private static final long CAPACITY = 1024L * 1024L; // max-size-mb = 1
+    private static final String PAYLOAD = "x".repeat(10_000);
+
+    @TempDir
+    Path dir;
+
+    private SqsDiskSpool spool;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        spool = open();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        spool.close();
+    }
+
+    @Test
+    void appendPeekAndCommit() {
+        assertThat(spool.isEmpty()).isTrue();
+        assertThat(spool.append(List.of(message(1), message(2), message(3)))).isTrue();
+        assertThat(spool.isEmpty()).isFalse();
+
+        Chunk first = spool.peek(2);
+        assertThat(first.messages()).extracting(SpooledMessage::payload).containsExactly("1", "2");
+        // peek não consome
+        assertThat(spool.peek(2).messages()).extracting(SpooledMessage::payload).containsExactly("1", "2");
+
+        assertThat(spool.commit(first.endOffset(), List.of())).isTrue();
+        Chunk rest = spool.peek(10);
+        assertThat(rest.messages()).extracting(SpooledMessage::payload).containsExactly("3");
+        assertThat(rest.messages().get(0).headers()).containsEntry("companyId", "7");
+
+        assertThat(spool.commit(rest.endOffset(), List.of())).isTrue();
+        assertThat(spool.isEmpty()).isTrue();
+        assertThat(spool.peek(10).messages()).isEmpty();
+    }
+
+    @Test
+    void refusesMessagesThatDoNotFitAndKeepsTheSpoolIntact() {
+        int appended = fill();
+
+        long free = spool.freeBytes();
+        assertThat(free).isLessThan(PAYLOAD.length() + 200L);
+        // Todas ou nenhuma: o lote que não cabe não grava nada
+        assertThat(spool.append(List.of(message(1), large(appended)))).isFalse();
+        assertThat(spool.freeBytes()).isEqualTo(free);
+        assertThat(drain()).hasSize(appended);
+    }
+
+    @Test
+    void reusesDrainedSpaceByWrappingAround() {
+        int appended = fill();
+
+        // Consome metade: o espaço liberado fica no início do arquivo
+        Chunk half = spool.peek(appended / 2);
+        assertThat(spool.commit(half.endOffset(), List.of())).isTrue();
+
+        List<SpooledMessage> wrapped = new ArrayList<>();
+        for (int i = appended; i < appended + appended / 3; i++) {
+            wrapped.add(large(i));
+        }
+        assertThat(spool.append(wrapped)).isTrue();
+
+        List<SpooledMessage> drained = drain();
+        assertThat(drained).hasSize(appended - appended / 2 + appended / 3);
+        // Ordem preservada através da volta ao início
+        for (int i = 0; i < drained.size(); i++) {
+            assertThat(drained.get(i).attempts()).isEqualTo(appended / 2 + i);
+        }
+        assertThat(spool.isEmpty()).isTrue();
+        assertThat(spool.freeBytes()).isEqualTo(CAPACITY - 16);
+    }
+
+    @Test
+    void requeuesRejectedMessagesAtTheEnd() {
+        spool.append(List.of(message(1), message(2)));
+
+        Chunk chunk = spool.peek(10);
+        SpooledMessage rejected = chunk.messages().get(0);
+        SpooledMessage retry = new SpooledMessage(rejected.queue(), rejected.headers(), rejected.payload(), rejected.attempts() + 1);
+        assertThat(spool.commit(chunk.endOffset(), List.of(retry))).isTrue();
+
+        List<SpooledMessage> drained = drain();
+        assertThat(drained).extracting(SpooledMessage::payload).containsExactly("1");
+        assertThat(drained.get(0).attempts()).isEqualTo(1);
+    }
+
+    @Test
+    void commitConsumesNothingWhenTheRequeueDoesNotFit() {
+        int appended = fill();
+
+        Chunk first = spool.peek(1);
+        List<SpooledMessage> requeue = List.of(large(100), large(101), large(102));
+        assertThat(spool.commit(first.endOffset(), requeue)).isFalse();
+
+        assertThat(drain()).hasSize(appended);
+    }
+
+    @Test
+    void keepsPendingMessagesAcrossReopen() throws IOException {
+        spool.append(List.of(message(1), message(2), message(3)));
+        spool.commit(spool.peek(1).endOffset(), List.of());
+        spool.close();
+
+        spool = open();
+        assertThat(spool.isEmpty()).isFalse();
+        assertThat(drain()).extracting(SpooledMessage::payload).containsExactly("2", "3");
+    }
+
+    @Test
+    void keepsWrappedMessagesAcrossReopen() throws IOException {
+        int appended = fill();
+        spool.commit(spool.peek(appended - 2).endOffset(), List.of());
+        spool.append(List.of(large(appended), large(appended + 1)));
+        spool.close();
+
+        spool = open();
+        assertThat(drain()).extracting(SpooledMessage::attempts)
+                .containsExactly(appended - 2, appended - 1, appended, appended + 1);
+    }
+
+    private SqsDiskSpool open() throws IOException {
+        SqsDiskSpool opened = new SqsDiskSpool(new ObjectMapper());
+        ReflectionTestUtils.setField(opened, "spoolPath", dir.resolve("spool/sqs-spool.dat").toString());
+        ReflectionTestUtils.setField(opened, "maxSizeMb", 1);
+        ReflectionTestUtils.setField(opened, "forceOnWrite", false);
+        opened.open();
+        return opened;
+    }
+
+    /**
+     * Enche o spool com mensagens grandes (o número de cada uma vai em {@code attempts}) e devolve quantas couberam.
+     */
+    private int fill() {
+        int appended = 0;
+        while (spool.append(List.of(large(appended)))) {
+            appended++;
+        }
+        assertThat(appended).isGreaterThan(10);
+        return appended;
+    }
+
+    private List<SpooledMessage> drain() {
+        List<SpooledMessage> drained = new ArrayList<>();
+        while (!spool.isEmpty()) {
+            Chunk chunk = spool.peek(7);
+            drained.addAll(chunk.messages());
+            assertThat(spool.commit(chunk.endOffset(), List.of())).isTrue();
+        }
+        return drained;
+    }
+
+    private static SpooledMessage message(int n) {
+        return new SpooledMessage("fila-mensagens", Map.of("companyId", "7"), String.valueOf(n), 0);
+    }
+
+    private static SpooledMessage large(int n) {
+        return new SpooledMessage("fila-mensagens", Map.of("companyId", "7"), PAYLOAD, n);
+    }
+}
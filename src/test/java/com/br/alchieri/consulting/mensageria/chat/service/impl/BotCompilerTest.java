@@ -0,0 +1,230 @@
+package com.br.alchieri.consulting.mensageria.chat.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import com.br.alchieri.consulting.mensageria.chat.model.Bot;
+import com.br.alchieri.consulting.mensageria.chat.model.BotOption;
+import com.br.alchieri.consulting.mensageria.chat.model.BotStep;
+import com.br.alchieri.consulting.mensageria.chat.model.ClientTemplate;
+import com.br.alchieri.consulting.mensageria.chat.model.Flow;
+import com.br.alchieri.consulting.mensageria.chat.model.enums.BotStepType;
+import com.br.alchieri.consulting.mensageria.chat.model.enums.FlowStatus;
+import com.br.alchieri.consulting.mensageria.chat.repository.BotRepository;
+import com.br.alchieri.consulting.mensageria.chat.repository.BotStepRepository;
+import com.br.alchieri.consulting.mensageria.chat.repository.ClientTemplateRepository;
+import com.br.alchieri.consulting.mensageria.chat.repository.FlowRepository;
+import com.br.alchieri.consulting.mensageria.service.impl.TenantConfigCache;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class BotCompilerTest {
+
+    private static final Long BOT_ID = 1L;
+
+    private final BotRepository botRepository = mock(BotRepository.class);
+    private final BotStepRepository botStepRepository = mock(BotStepRepository.class);
+    private final FlowRepository flowRepository = mock(FlowRepository.class);
+    private final ClientTemplateRepository templateRepository = mock(ClientTemplateRepository.class);
+
+    private BotCompiler compiler;
+
+    @BeforeEach
+    void setUp() {
+        compiler = new BotCompiler(botRepository, botStepRepository, flowRepository, templateRepository,
+                new ConcurrentMapCacheManager(TenantConfigCache.COMPILED_BOTS), new ObjectMapper());
+    }
+
+    @Test
+    void buildsTextMenuInSequenceOrderWithNormalizedKeywords() {
+        BotStep root = step(10L, BotStepType.TEXT, "Escolha uma opção:");
+        BotStep sales = step(11L, BotStepType.TEXT, "Vendas");
+        option(root, "2", "Suporte", 2, null, true);
+        option(root, " 1 ", "Vendas", 1, sales, false);
+        // Palavra-chave repetida: vale a primeira na ordem de exibição
+        option(root, "1", "Repetida", 3, null, true);
+        Bot bot = bot(root, 0L);
+        when(botStepRepository.findGraphByBotId(BOT_ID)).thenReturn(List.of(root, sales));
+
+        CompiledBot compiled = compiler.compiled(bot);
+
+        assertThat(compiled.rootStepId()).isEqualTo(10L);
+        assertThat(compiled.steps()).containsOnlyKeys(10L, 11L);
+        CompiledBot.Step step = compiled.step(10L);
+        assertThat(step.text()).isEqualTo("Escolha uma opção:\n\n👉 * 1 * - Vendas\n👉 *2* - Suporte\n👉 *1* - Repetida\n");
+        assertThat(step.match("1")).isEqualTo(new CompiledBot.Option(11L, false));
+        assertThat(step.match("2")).isEqualTo(new CompiledBot.Option(null, true));
+        assertThat(step.match("3")).isNull();
+    }
+
+    @Test
+    void loadsTargetsOutsideTheBotSteps() {
+        BotStep root = step(10L, BotStepType.TEXT, "Menu");
+        BotStep shared = step(20L, BotStepType.TEXT, "Passo de outro bot");
+        BotStep sharedNext = step(21L, BotStepType.END, "Tchau");
+        option(root, "1", "Ir", 1, shared, false);
+        option(shared, "1", "Sair", 1, sharedNext, false);
+        when(botStepRepository.findGraphByBotId(BOT_ID)).thenReturn(List.of(root));
+        when(botStepRepository.findGraphByIdIn(Set.of(20L))).thenReturn(List.of(shared));
+        when(botStepRepository.findGraphByIdIn(Set.of(21L))).thenReturn(List.of(sharedNext));
+
+        CompiledBot compiled = compiler.compiled(bot(root, 0L));
+
+        assertThat(compiled.steps()).containsOnlyKeys(10L, 20L, 21L);
+        assertThat(compiled.step(21L).text()).isEqualTo("Tchau");
+    }
+
+    @Test
+    void stopsWhenMissingTargetsCannotBeLoaded() {
+        BotStep root = step(10L, BotStepType.TEXT, "Menu");
+        option(root, "1", "Removido", 1, step(99L, BotStepType.TEXT, "Removido"), false);
+        when(botStepRepository.findGraphByBotId(BOT_ID)).thenReturn(List.of(root));
+        when(botStepRepository.findGraphByIdIn(anyCollection())).thenReturn(List.of());
+
+        CompiledBot compiled = compiler.compiled(bot(root, 0L));
+
+        assertThat(compiled.steps()).containsOnlyKeys(10L);
+        assertThat(compiled.step(99L)).isNull();
+    }
+
+    @Test
+    void reusesCompiledBotUntilTheStructureVersionChanges() {
+        BotStep root = step(10L, BotStepType.TEXT, "Menu");
+        when(botStepRepository.findGraphByBotId(BOT_ID)).thenReturn(List.of(root));
+
+        CompiledBot first = compiler.compiled(bot(root, 3L));
+        assertThat(compiler.compiled(bot(root, 3L))).isSameAs(first);
+        verify(botStepRepository, times(1)).findGraphByBotId(BOT_ID);
+
+        root.setContent("Menu novo");
+        CompiledBot second = compiler.compiled(bot(root, 4L));
+        assertThat(second.version()).isEqualTo(4L);
+        assertThat(second.step(10L).text()).isEqualTo("Menu novo");
+        verify(botStepRepository, times(2)).findGraphByBotId(BOT_ID);
+    }
+
+    @Test
+    void recompilesAfterCommitOutsideATransactionImmediately() {
+        BotStep root = step(10L, BotStepType.TEXT, "Menu");
+        Bot bot = bot(root, 2L);
+        when(botRepository.findById(BOT_ID)).thenReturn(Optional.of(bot));
+        when(botStepRepository.findGraphByBotId(BOT_ID)).thenReturn(List.of(root));
+
+        compiler.recompileAfterCommit(BOT_ID);
+        compiler.compiled(bot);
+
+        verify(botStepRepository, times(1)).findGraphByBotId(BOT_ID);
+    }
+
+    @Test
+    void resolvesPublishedFlowWithMetadata() {
+        BotStep root = step(10L, BotStepType.FLOW, "5");
+        root.setMetadata("{\"body\":\"Preencha o cadastro\",\"cta_label\":\"Cadastrar\"}");
+        Flow flow = new Flow();
+        flow.setName("cadastro");
+        flow.setStatus(FlowStatus.PUBLISHED);
+        when(flowRepository.findById(5L)).thenReturn(Optional.of(flow));
+        when(botStepRepository.findGraphByBotId(BOT_ID)).thenReturn(List.of(root));
+
+        CompiledBot.Step step = compiler.compiled(bot(root, 0L)).step(10L);
+
+        assertThat(step.unavailableMessage()).isNull();
+        assertThat(step.flow()).isEqualTo(new CompiledBot.FlowRef("cadastro", "BOT_STEP_10", null,
+                "Preencha o cadastro", null, "Cadastrar", "SUCCESS"));
+    }
+
+    @Test
+    void marksUnpublishedFlowAsUnavailable() {
+        BotStep root = step(10L, BotStepType.FLOW, "5");
+        Flow flow = new Flow();
+        flow.setStatus(FlowStatus.DRAFT);
+        when(flowRepository.findById(5L)).thenReturn(Optional.of(flow));
+        when(botStepRepository.findGraphByBotId(BOT_ID)).thenReturn(List.of(root));
+
+        CompiledBot.Step step = compiler.compiled(bot(root, 0L)).step(10L);
+
+        assertThat(step.flow()).isNull();
+        assertThat(step.unavailableMessage()).isEqualTo("Erro técnico: Fluxo indisponível.");
+    }
+
+    @Test
+    void resolvesApprovedTemplateComponents() {
+        BotStep root = step(10L, BotStepType.TEMPLATE, "8");
+        root.setMetadata("{\"components\":[{\"type\":\"body\"}]}");
+        ClientTemplate template = new ClientTemplate();
+        template.setTemplateName("boas_vindas");
+        template.setLanguage("pt_BR");
+        template.setStatus("APPROVED");
+        when(templateRepository.findById(8L)).thenReturn(Optional.of(template));
+        when(botStepRepository.findGraphByBotId(BOT_ID)).thenReturn(List.of(root));
+
+        CompiledBot.Step step = compiler.compiled(bot(root, 0L)).step(10L);
+
+        assertThat(step.template().templateName()).isEqualTo("boas_vindas");
+        assertThat(step.template().languageCode()).isEqualTo("pt_BR");
+        assertThat(step.template().components().get(0).path("type").asText()).isEqualTo("body");
+    }
+
+    @Test
+    void compilesMediaAndHandoffSteps() {
+        BotStep media = step(10L, BotStepType.MEDIA, "media-123");
+        media.setMetadata("{\"type\":\"document\",\"caption\":\"Catálogo\"}");
+        BotStep handoff = step(11L, BotStepType.HANDOFF, " ");
+        when(botStepRepository.findGraphByBotId(BOT_ID)).thenReturn(List.of(media, handoff));
+
+        CompiledBot compiled = compiler.compiled(bot(media, 0L));
+
+        assertThat(compiled.step(10L).media()).isEqualTo(new CompiledBot.MediaRef("media-123", "document", "Catálogo"));
+        assertThat(compiled.step(11L).text()).isEqualTo("Aguarde um momento.");
+    }
+
+    @Test
+    void invalidReferenceBecomesTechnicalError() {
+        BotStep root = step(10L, BotStepType.TEMPLATE, "não é um ID");
+        option(root, "0", "Voltar", 1, null, false);
+        when(botStepRepository.findGraphByBotId(BOT_ID)).thenReturn(List.of(root));
+
+        CompiledBot.Step step = compiler.compiled(bot(root, 0L)).step(10L);
+
+        assertThat(step.unavailableMessage()).isEqualTo("Desculpe, ocorreu um erro técnico no bot.");
+        assertThat(step.match("0")).isNotNull();
+        verify(templateRepository, never()).findById(any());
+    }
+
+    private static Bot bot(BotStep root, Long structureVersion) {
+        Bot bot = new Bot();
+        bot.setId(BOT_ID);
+        bot.setName("Atendimento");
+        bot.setRootStep(root);
+        bot.setStructureVersion(structureVersion);
+        return bot;
+    }
+
+    private static BotStep step(Long id, BotStepType type, String content) {
+        return BotStep.builder().id(id).stepType(type).content(content).build();
+    }
+
+    private static void option(BotStep step, String keyword, String label, Integer sequence, BotStep target, boolean handoff) {
+        BotOption option = new BotOption();
+        option.setStep(step);
+        option.setKeyword(keyword);
+        option.setLabel(label);
+        option.setSequence(sequence);
+        option.setTargetStep(target);
+        option.setHandoff(handoff);
+        step.getOptions().add(option);
+    }
+}
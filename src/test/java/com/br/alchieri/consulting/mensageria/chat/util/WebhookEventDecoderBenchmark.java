@@ -0,0 +1,135 @@
+package com.br.alchieri.consulting.mensageria.chat.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compara o {@link WebhookEventDecoder} (streaming) com a leitura por árvore ({@code readTree} + {@code path})
+ * usada antes no WebhookServiceImpl, extraindo os mesmos campos de status e mensagens recebidas.
+ *
+ * Não roda no {@code mvn test}. Para executar, depois de {@code mvn test-compile}:
+ * {@code java -cp target/test-classes:target/classes:<classpath de teste> ...chat.util.WebhookEventDecoderBenchmark}
+ * (o classpath sai de {@code mvn dependency:build-classpath -Dmdep.includeScope=test}).
+ * Medir com {@code -prof gc} para ver a alocação por operação.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WebhookEventDecoderBenchmark {
+
+    private static final String STATUS = """
+            {"id":"wamid.HBgNNTU0NTk4ODg4Nzc3NxUCABEYEjA%1$d","status":"delivered","timestamp":"1718000000",
+             "recipient_id":"5545988887777","conversation":{"id":"c%1$d","origin":{"type":"marketing"}},
+             "pricing":{"billable":true,"pricing_model":"CBP","category":"marketing"}}""";
+
+    private static final String MESSAGE = """
+            {"from":"5545988887777","id":"wamid.HBgNNTU0NTk4ODg4Nzc3NxUCABIYFjM%1$d","timestamp":"1718000000",
+             "text":{"body":"Olá, gostaria de saber o status do meu pedido número %1$d."},"type":"text"}""";
+
+    @Param({ "statuses", "messages" })
+    public String kind;
+
+    @Param({ "1", "20" })
+    public int events;
+
+    private ObjectMapper objectMapper;
+    private WebhookEventDecoder decoder;
+    private byte[] payload;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper();
+        decoder = new WebhookEventDecoder(objectMapper);
+
+        StringBuilder items = new StringBuilder();
+        for (int i = 0; i < events; i++) {
+            if (i > 0) {
+                items.append(',');
+            }
+            items.append(String.format("statuses".equals(kind) ? STATUS : MESSAGE, i));
+        }
+        String contacts = "messages".equals(kind)
+                ? "\"contacts\":[{\"profile\":{\"name\":\"Cliente Teste\"},\"wa_id\":\"5545988887777\"}],"
+                : "";
+        // 'field' depois de 'value', como a Meta costuma enviar
+        payload = ("{\"object\":\"whatsapp_business_account\",\"entry\":[{\"id\":\"102290129340398\",\"changes\":[{"
+                + "\"value\":{\"messaging_product\":\"whatsapp\",\"metadata\":{\"display_phone_number\":\"15550783881\","
+                + "\"phone_number_id\":\"106540352242922\"}," + contacts + "\"" + kind + "\":[" + items + "]},"
+                + "\"field\":\"messages\"}]}]}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void streaming(Blackhole bh) throws IOException {
+        bh.consume(decoder.decode(payload));
+    }
+
+    @Benchmark
+    public void tree(Blackhole bh) throws IOException {
+        JsonNode root = objectMapper.readTree(payload);
+        if (!"whatsapp_business_account".equals(root.path("object").asText())) {
+            return;
+        }
+        for (JsonNode entry : root.path("entry")) {
+            bh.consume(entry.path("id").asText(null));
+            for (JsonNode change : entry.path("changes")) {
+                if (!"messages".equals(change.path("field").asText())) {
+                    continue;
+                }
+                JsonNode value = change.path("value");
+                bh.consume(value.path("metadata").path("phone_number_id").asText(null));
+                for (JsonNode status : value.path("statuses")) {
+                    bh.consume(status.path("id").asText(null));
+                    bh.consume(status.path("status").asText());
+                    bh.consume(status.path("timestamp").asLong());
+                    bh.consume(status.path("recipient_id").asText(null));
+                    if (status.has("errors")) {
+                        bh.consume(objectMapper.writeValueAsString(status.get("errors")));
+                    }
+                    JsonNode pricing = status.path("pricing");
+                    bh.consume(pricing.path("billable").asBoolean(false));
+                    bh.consume(pricing.path("category").asText(null));
+                }
+                JsonNode contacts = value.get("contacts");
+                for (JsonNode message : value.path("messages")) {
+                    bh.consume(message.path("id").asText());
+                    bh.consume(message.path("from").asText());
+                    bh.consume(message.path("type").asText());
+                    bh.consume(message.path("timestamp").asLong());
+                    bh.consume(message.path("text").path("body").asText(null));
+                    if (contacts != null && contacts.isArray() && !contacts.isEmpty()) {
+                        bh.consume(contacts.get(0).path("profile").path("name").asText(null));
+                    }
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(WebhookEventDecoderBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
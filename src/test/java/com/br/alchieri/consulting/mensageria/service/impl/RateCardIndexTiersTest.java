@@ -0,0 +1,76 @@
+package com.br.alchieri.consulting.mensageria.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.Test;
+
+class RateCardIndexTiersTest {
+
+    private static final BigDecimal FIRST = new BigDecimal("0.0625");
+    private static final BigDecimal SECOND = new BigDecimal("0.0590");
+    private static final BigDecimal THIRD = new BigDecimal("0.0550");
+
+    @Test
+    void picksTheTierCoveringTheVolume() {
+        RateCardIndex.Tiers tiers = new RateCardIndex.Tiers(
+                new long[] { 0, 1_000, 10_000 },
+                new long[] { 999, 9_999, Long.MAX_VALUE },
+                new BigDecimal[] { FIRST, SECOND, THIRD });
+
+        assertThat(tiers.rateFor(0)).isEqualTo(FIRST);
+        assertThat(tiers.rateFor(999)).isEqualTo(FIRST);
+        assertThat(tiers.rateFor(1_000)).isEqualTo(SECOND);
+        assertThat(tiers.rateFor(5_000)).isEqualTo(SECOND);
+        assertThat(tiers.rateFor(10_000)).isEqualTo(THIRD);
+        assertThat(tiers.rateFor(Long.MAX_VALUE)).isEqualTo(THIRD);
+    }
+
+    @Test
+    void returnsNullOutsideEveryTier() {
+        RateCardIndex.Tiers tiers = new RateCardIndex.Tiers(
+                new long[] { 100, 1_000 },
+                new long[] { 499, 1_999 },
+                new BigDecimal[] { FIRST, SECOND });
+
+        assertThat(tiers.rateFor(0)).isNull();
+        assertThat(tiers.rateFor(99)).isNull();
+        assertThat(tiers.rateFor(500)).isNull(); // Buraco entre as faixas
+        assertThat(tiers.rateFor(2_000)).isNull();
+    }
+
+    @Test
+    void overlappingTiersUseTheClosestStart() {
+        // Tarifa de lista (aberta) + faixas de volume sobrepostas
+        RateCardIndex.Tiers tiers = new RateCardIndex.Tiers(
+                new long[] { 0, 1_000, 5_000 },
+                new long[] { Long.MAX_VALUE, 4_999, 6_999 },
+                new BigDecimal[] { FIRST, SECOND, THIRD });
+
+        assertThat(tiers.rateFor(500)).isEqualTo(FIRST);
+        assertThat(tiers.rateFor(1_000)).isEqualTo(SECOND);
+        assertThat(tiers.rateFor(6_000)).isEqualTo(THIRD);
+        // Passou do fim das faixas de volume: volta para a tarifa de lista
+        assertThat(tiers.rateFor(7_000)).isEqualTo(FIRST);
+    }
+
+    @Test
+    void repeatedStartsUseTheLastMatchingTier() {
+        RateCardIndex.Tiers tiers = new RateCardIndex.Tiers(
+                new long[] { 0, 1_000, 1_000 },
+                new long[] { 999, 1_999, Long.MAX_VALUE },
+                new BigDecimal[] { FIRST, SECOND, THIRD });
+
+        // Mesmo início: a última faixa (na ordem do índice) que cobre o volume
+        assertThat(tiers.rateFor(1_500)).isEqualTo(THIRD);
+        assertThat(tiers.rateFor(3_000)).isEqualTo(THIRD);
+    }
+
+    @Test
+    void emptyTiersHaveNoRate() {
+        RateCardIndex.Tiers tiers = new RateCardIndex.Tiers(new long[0], new long[0], new BigDecimal[0]);
+
+        assertThat(tiers.rateFor(0)).isNull();
+    }
+}
@@ -0,0 +1,214 @@
+package com.br.alchieri.consulting.mensageria.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import com.br.alchieri.consulting.mensageria.model.enums.ConversationState;
+import com.br.alchieri.consulting.mensageria.model.redis.UserSession;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+
+/**
+ * SessionStore contra um Redis real: migração das chaves v1 e custo (comandos e bytes) em relação ao formato v1.
+ *
+ * A medição usa CONFIG RESETSTAT / INFO do próprio Redis e imprime o resultado; os asserts só garantem a
+ * direção (o formato v2 não pode custar mais que o v1 no ciclo típico de ler a sessão e alterar um campo).
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class SessionStoreRedisTest {
+
+    private static final Duration TTL = Duration.ofMinutes(30);
+    private static final long COMPANY_ID = 7L;
+    private static final int CYCLES = 200;
+
+    @Container
+    static final GenericContainer<?> REDIS = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
+            .withExposedPorts(6379);
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static RedisTemplate<String, Object> legacyTemplate;
+    private static RedisClient statsClient;
+    private static StatefulRedisConnection<String, String> statsConnection;
+
+    private SessionStore store;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(REDIS.getHost(), REDIS.getFirstMappedPort()));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+
+        // Mesmo template (e serializer) com que as sessões v1 eram gravadas
+        legacyTemplate = new RedisTemplate<>();
+        legacyTemplate.setConnectionFactory(connectionFactory);
+        legacyTemplate.setKeySerializer(new StringRedisSerializer());
+        legacyTemplate.setValueSerializer(new GenericJackson2JsonRedisSerializer());
+        legacyTemplate.afterPropertiesSet();
+
+        statsClient = RedisClient.create("redis://" + REDIS.getHost() + ":" + REDIS.getFirstMappedPort());
+        statsConnection = statsClient.connect();
+    }
+
+    @AfterAll
+    static void disconnect() {
+        statsConnection.close();
+        statsClient.shutdown();
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void setUp() {
+        statsConnection.sync().flushall();
+        store = new SessionStore(connectionFactory, new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(store, "timeoutMs", 2000L);
+        ReflectionTestUtils.setField(store, "legacyFallbackEnabled", true);
+        ReflectionTestUtils.setField(store, "nearCacheEnabled", false);
+        store.init();
+    }
+
+    @Test
+    void migratesLegacySessionOnFirstLoad() {
+        legacyTemplate.opsForValue().set("whatsapp:session:7:5545988887777", session("5545988887777"), TTL);
+
+        UserSession loaded = store.load(COMPANY_ID, "5545988887777", TTL);
+
+        assertThat(loaded).isNotNull();
+        assertThat(loaded.getCurrentState()).isEqualTo(ConversationState.IN_SERVICE_HUMAN.name());
+        assertThat(loaded.getAssignedUserId()).isEqualTo(42L);
+        assertThat(loaded.getContextData()).containsEntry("pedido", "123");
+
+        RedisCommands<String, String> redis = statsConnection.sync();
+        assertThat(redis.exists("whatsapp:session:7:5545988887777")).isZero();
+        assertThat(redis.hget("whatsapp:session:v2:7:5545988887777", SessionStore.ASSIGNED_USER_ID)).isEqualTo("42");
+        assertThat(redis.ttl("whatsapp:session:v2:7:5545988887777")).isPositive();
+    }
+
+    @Test
+    void readsLegacyFieldsWithoutMigrating() {
+        legacyTemplate.opsForValue().set("whatsapp:session:7:5545988887777", session("5545988887777"), TTL);
+
+        Map<String, String> fields = store.readFields(COMPANY_ID, "5545988887777",
+                SessionStore.ASSIGNED_USER_ID, SessionStore.ASSIGNED_USER_NAME);
+
+        assertThat(fields).containsEntry(SessionStore.ASSIGNED_USER_ID, "42")
+                .containsEntry(SessionStore.ASSIGNED_USER_NAME, "atendente");
+        assertThat(statsConnection.sync().exists("whatsapp:session:7:5545988887777")).isEqualTo(1L);
+    }
+
+    @Test
+    void measuresCommandsAndBytesAgainstLegacyFormat() {
+        for (int i = 0; i < CYCLES; i++) {
+            legacyTemplate.opsForValue().set("whatsapp:session:7:" + phone(i), session(phone(i)), TTL);
+            store.save(session(phone(i)), TTL);
+        }
+
+        // v1: GET + EXPIRE na leitura, SET com o objeto inteiro na gravação
+        Cost legacy = measure(() -> {
+            for (int i = 0; i < CYCLES; i++) {
+                String key = "whatsapp:session:7:" + phone(i);
+                UserSession session = (UserSession) legacyTemplate.opsForValue().get(key);
+                legacyTemplate.expire(key, TTL);
+                session.setCurrentStepId((long) i);
+                legacyTemplate.opsForValue().set(key, session, TTL);
+            }
+        });
+
+        // v2: HGETALL + GET + EXPIRE em pipeline na leitura, só o campo alterado na gravação
+        Cost current = measure(() -> {
+            for (int i = 0; i < CYCLES; i++) {
+                UserSession session = store.load(COMPANY_ID, phone(i), TTL);
+                session.setCurrentStepId((long) i);
+                store.save(session, TTL);
+            }
+        });
+
+        System.out.printf("Sessão (%d ciclos ler + alterar 1 campo): v1 %s | v2 %s%n", CYCLES, legacy, current);
+        assertThat(current.inputBytes()).isLessThan(legacy.inputBytes());
+        assertThat(current.outputBytes()).isLessThanOrEqualTo(legacy.outputBytes());
+    }
+
+    private record Cost(long commands, long inputBytes, long outputBytes) {
+
+        @Override
+        public String toString() {
+            return String.format("%d comandos, %d bytes enviados, %d bytes recebidos", commands, inputBytes, outputBytes);
+        }
+    }
+
+    private Cost measure(Runnable workload) {
+        RedisCommands<String, String> redis = statsConnection.sync();
+        redis.configResetstat();
+        workload.run();
+        Map<String, Long> stats = parseInfo(redis.info("stats"));
+        long commands = parseInfo(redis.info("commandstats")).entrySet().stream()
+                .filter(e -> e.getKey().startsWith("cmdstat_") && !e.getKey().equals("cmdstat_config"))
+                .mapToLong(Map.Entry::getValue)
+                .sum();
+        return new Cost(commands, stats.get("total_net_input_bytes"), stats.get("total_net_output_bytes"));
+    }
+
+    /**
+     * Linhas "nome:valor" do INFO; em commandstats o valor é o número de chamadas ("calls=N,...").
+     */
+    private static Map<String, Long> parseInfo(String info) {
+        Map<String, Long> values = new HashMap<>();
+        for (String line : info.split("\r\n")) {
+            int colon = line.indexOf(':');
+            if (colon <= 0 || line.startsWith("#")) {
+                continue;
+            }
+            String value = line.substring(colon + 1);
+            if (value.startsWith("calls=")) {
+                value = value.substring("calls=".length(), value.indexOf(','));
+            }
+            try {
+                values.put(line.substring(0, colon), Long.parseLong(value));
+            } catch (NumberFormatException ignored) {
+                // Campos não numéricos não interessam à medição
+            }
+        }
+        return values;
+    }
+
+    private static String phone(int i) {
+        return "55459888" + String.format("%05d", i);
+    }
+
+    private static UserSession session(String phoneNumber) {
+        UserSession session = new UserSession();
+        session.setCompanyId(COMPANY_ID);
+        session.setPhoneNumber(phoneNumber);
+        session.setBotActive(false);
+        session.setCurrentBotId(3L);
+        session.setCurrentStepId(1L);
+        session.setCurrentState(ConversationState.IN_SERVICE_HUMAN.name());
+        session.setAssignedUserId(42L);
+        session.setAssignedUserName("atendente");
+        session.setAssignedUserEmail("atendente@empresa.com.br");
+        session.setAssignmentTime("2024-06-10T10:00:00");
+        session.addContextData("pedido", "123");
+        session.addContextData("origem", "catalogo");
+        return session;
+    }
+}
@@ -0,0 +1,81 @@
+package com.br.alchieri.consulting.mensageria.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class PhoneNumberNormalizerTest {
+
+    @Test
+    void digitsKeepsOnlyDigits() {
+        assertThat(PhoneNumberNormalizer.digits("+55 (45) 98888-7777")).isEqualTo("5545988887777");
+        assertThat(PhoneNumberNormalizer.digits("(45)")).isEqualTo("45");
+        assertThat(PhoneNumberNormalizer.digits("+")).isEmpty();
+        assertThat(PhoneNumberNormalizer.digits("")).isEmpty();
+        assertThat(PhoneNumberNormalizer.digits(null)).isNull();
+    }
+
+    @Test
+    void digitsReturnsSameInstanceWhenAlreadyDigits() {
+        String phone = "5545988887777";
+        assertThat(PhoneNumberNormalizer.digits(phone)).isSameAs(phone);
+    }
+
+    @Test
+    void normalizeInsertsNinthDigitForBrazilianNumbers() {
+        assertThat(PhoneNumberNormalizer.normalize("554588887777")).isEqualTo("5545988887777");
+        assertThat(PhoneNumberNormalizer.normalize("+55 45 8888-7777")).isEqualTo("5545988887777");
+        assertThat(PhoneNumberNormalizer.normalize("5545988887777")).isEqualTo("5545988887777");
+    }
+
+    @Test
+    void normalizeLeavesOtherNumbersUntouched() {
+        // 12 dígitos, mas não é Brasil
+        assertThat(PhoneNumberNormalizer.normalize("541123456789")).isEqualTo("541123456789");
+        assertThat(PhoneNumberNormalizer.normalize("+1 (415) 555-0100")).isEqualTo("14155550100");
+        assertThat(PhoneNumberNormalizer.normalize(null)).isNull();
+    }
+
+    @Test
+    void phoneKeyIsTheSameForBothBrazilianVariations() {
+        assertThat(PhoneNumberNormalizer.phoneKey("5545988887777")).isEqualTo("554588887777");
+        assertThat(PhoneNumberNormalizer.phoneKey("554588887777")).isEqualTo("554588887777");
+        assertThat(PhoneNumberNormalizer.phoneKey("+55 (45) 98888-7777")).isEqualTo("554588887777");
+    }
+
+    @Test
+    void phoneKeyOfOtherNumbersIsTheirDigits() {
+        assertThat(PhoneNumberNormalizer.phoneKey("+1 415 555 0100")).isEqualTo("14155550100");
+        assertThat(PhoneNumberNormalizer.phoneKey("5491123456789")).isEqualTo("5491123456789");
+    }
+
+    @Test
+    void phoneKeyIsNullWithoutDigits() {
+        assertThat(PhoneNumberNormalizer.phoneKey(null)).isNull();
+        assertThat(PhoneNumberNormalizer.phoneKey("")).isNull();
+        assertThat(PhoneNumberNormalizer.phoneKey("abc")).isNull();
+    }
+
+    @Test
+    void countryCodeFindsKnownPrefixes() {
+        assertThat(PhoneNumberNormalizer.countryCode("5545988887777")).isEqualTo("55");
+        assertThat(PhoneNumberNormalizer.countryCode("+55 (45) 98888-7777")).isEqualTo("55");
+        assertThat(PhoneNumberNormalizer.countryCode("14155550100")).isEqualTo("1");
+        assertThat(PhoneNumberNormalizer.countryCode("+972 50 123 4567")).isEqualTo("972");
+    }
+
+    @Test
+    void countryCodeIsNullForUnknownOrIncompletePrefixes() {
+        assertThat(PhoneNumberNormalizer.countryCode("0123456789")).isNull();
+        assertThat(PhoneNumberNormalizer.countryCode("97")).isNull();
+        assertThat(PhoneNumberNormalizer.countryCode("+")).isNull();
+        assertThat(PhoneNumberNormalizer.countryCode(null)).isNull();
+    }
+
+    @Test
+    void countryCodeMatchesTheMapperForEveryKnownCode() {
+        for (String code : CountryCodeMapper.getKnownCountryCodes()) {
+            assertThat(PhoneNumberNormalizer.countryCode(code + "123456789")).as(code).isEqualTo(code);
+        }
+    }
+}